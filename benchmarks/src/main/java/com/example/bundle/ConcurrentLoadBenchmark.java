@@ -0,0 +1,108 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import com.bmc.arsys.rx.services.common.DataPageQueryParameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many End Users browsing the same grid at the same time, with a Web Api latency close to the Rawg.io one.
+ * Each request asks a random grid page among the first distinctPages pages: with a few pages most requests are
+ * answered by the caches, with many pages most of them call the Web Api.
+ * <p>
+ * The score is the number of grid pages served per second. The secondary results "gridPages" and "webApiCalls"
+ * are the grid pages served and the Web Api calls made during each iteration, see {@link Counters}. The number of
+ * Web Api calls per grid page is webApiCalls / gridPages.
+ * <p>
+ * java -jar benchmarks/target/benchmarks.jar ConcurrentLoadBenchmark -rf json -rff load.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(16)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class ConcurrentLoadBenchmark {
+    private static final int GRID_PAGE_SIZE = 50;
+
+    @Param({"20000"})
+    public long latencyMicros;
+
+    @Param({"true", "false"})
+    public boolean concurrentFetch;
+
+    @Param({"10", "200"})
+    public int distinctPages;
+
+    private final BenchmarkSettings settings = new BenchmarkSettings();
+    private FakeRecordService fakeRecordService;
+    private VideoGameGamesCustomRecordProvider provider;
+    private DataPageQueryParameters[] gridPages;
+    // Web Api calls already counted by a thread, see takeWebApiCalls().
+    private final AtomicLong webApiCallsTaken = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        settings.cached(true).concurrentFetch(concurrentFetch).apply();
+
+        fakeRecordService = new FakeRecordService(distinctPages * GRID_PAGE_SIZE, latencyMicros);
+        provider = new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+        gridPages = new DataPageQueryParameters[distinctPages];
+        webApiCallsTaken.set(0);
+
+        for (int i = 0; i < distinctPages; i++) {
+            gridPages[i] = FakeRecordDefinitions.gridQuery(i * GRID_PAGE_SIZE, GRID_PAGE_SIZE, "", null, false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        settings.clear();
+    }
+
+    /**
+     * @return long, the Web Api calls made since the last call, by any thread.
+     */
+    private long takeWebApiCalls() {
+        long webApiCalls = fakeRecordService.getWebApiCallCount();
+
+        return webApiCalls - webApiCallsTaken.getAndSet(webApiCalls);
+    }
+
+    @Benchmark
+    public DataPage browseGrid(Counters counters) {
+        counters.gridPages++;
+
+        return provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                gridPages[ThreadLocalRandom.current().nextInt(gridPages.length)], null, null);
+    }
+
+    /**
+     * Secondary results of the benchmark, summed over the threads by JMH.
+     * <p>
+     * The Web Api calls can be made by the upstream pool threads, not by the benchmark threads, so they are counted
+     * once for all the threads: the first thread to finish the iteration takes the calls made so far, the next ones only
+     * the calls made since then.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long gridPages;
+        public long webApiCalls;
+
+        @Setup(Level.Iteration)
+        public void setUpIteration() {
+            gridPages = 0;
+            webApiCalls = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration(ConcurrentLoadBenchmark benchmark) {
+            webApiCalls = benchmark.takeWebApiCalls();
+        }
+    }
+}
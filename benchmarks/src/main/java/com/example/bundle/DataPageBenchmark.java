@@ -0,0 +1,71 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import com.bmc.arsys.rx.services.common.DataPageQueryParameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request of a grid through getDataPage(), on one thread: a grid page of 50 games (page assembly from several
+ * Rawg.io pages), the "50+" link count, and the opening of a game.
+ * <p>
+ * The fake Web Api answers without latency, so the time measured is the work of the provider (and of the fake
+ * RecordService when the caches are disabled).
+ * <p>
+ * java -jar benchmarks/target/benchmarks.jar DataPageBenchmark -rf json -rff datapage.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataPageBenchmark {
+    @Param({"true", "false"})
+    public boolean cached;
+
+    // 0: two full Rawg.io pages, 130: the grid page begins in the middle of a Rawg.io page.
+    @Param({"0", "130"})
+    public int startIndex;
+
+    @Param({"", "'536870913' LIKE \"%witcher%\""})
+    public String queryExpression;
+
+    private final BenchmarkSettings settings = new BenchmarkSettings();
+    private VideoGameGamesCustomRecordProvider provider;
+    private DataPageQueryParameters gridPage;
+    private DataPageQueryParameters count;
+    private DataPageQueryParameters recordInstance;
+
+    @Setup
+    public void setUp() {
+        settings.cached(cached).concurrentFetch(true).apply();
+
+        FakeRecordService fakeRecordService = new FakeRecordService(5000, 0);
+        provider = new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+        gridPage = FakeRecordDefinitions.gridQuery(startIndex, 50, queryExpression, "-" + FakeRecordDefinitions.NAME_FIELD_ID, false);
+        count = FakeRecordDefinitions.gridQuery(0, 1, queryExpression, null, true);
+        recordInstance = FakeRecordDefinitions.gridQuery(0, 1, "'379' = \"game-42\"", null, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        settings.clear();
+    }
+
+    @Benchmark
+    public DataPage gridPage() {
+        return provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME, gridPage, null, null);
+    }
+
+    @Benchmark
+    public DataPage count() {
+        return provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME, count, null, null);
+    }
+
+    @Benchmark
+    public DataPage recordInstance() {
+        return provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME, recordInstance, null, null);
+    }
+}
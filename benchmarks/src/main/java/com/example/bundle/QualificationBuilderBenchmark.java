@@ -0,0 +1,158 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.record.domain.ExternalRecordDefinitionFieldMapping;
+import com.bmc.arsys.rx.services.record.domain.RecordDefinitionFieldMapping;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Web Api qualification built with {@link WebApiQualificationBuilder} to the previous
+ * implementation, which added "%PAGE_ID%", "%PAGE_SIZE%" and "%FIELD_ID%" placeholders and called
+ * String.replace() after each condition.
+ * <p>
+ * java -jar benchmarks/target/benchmarks.jar QualificationBuilderBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class QualificationBuilderBenchmark {
+    private static final List<String> RAWGIO_SORTABLE_FIELDS = List.of("name", "released", "added", "created", "updated", "rating", "metacritic");
+
+    @Param({"", "witcher", "grand \"theft\" auto"})
+    public String searchedValue;
+
+    private WebApiRecordDefinitionMetadata metadata;
+    private String[] sortFieldIds;
+    private boolean[] sortAscending;
+    private String[] platforms;
+
+    @Setup
+    public void setUp() {
+        metadata = FakeRecordDefinitions.metadata();
+        // The grid usually sorts on a column and adds a sort on the "id" column, which cannot be sorted on.
+        sortFieldIds = new String[]{Integer.toString(FakeRecordDefinitions.NAME_FIELD_ID), Integer.toString(FakeRecordDefinitions.ID_FIELD_ID)};
+        sortAscending = new boolean[]{true, false};
+        platforms = new String[]{"187", "4", "5"};
+    }
+
+    @Benchmark
+    public String legacyReplaceTemplating() {
+        String myQualification;
+
+        String pageFieldId = metadata.getQueryParameterFieldId("page");
+        myQualification = "'" + pageFieldId + "' = \"%PAGE_ID%\"";
+        myQualification = myQualification.replace("%PAGE_ID%", Integer.toString(3));
+
+        String pageSizeFieldId = metadata.getQueryParameterFieldId("page_size");
+        myQualification += " AND '" + pageSizeFieldId + "' = \"%PAGE_SIZE%\"";
+        myQualification = myQualification.replace("%PAGE_SIZE%", Integer.toString(25));
+
+        String sortBy = "";
+
+        for (int i = 0; i < sortFieldIds.length; i++) {
+            String webApiFieldName = "";
+            RecordDefinitionFieldMapping restExternalMapping = metadata.getFieldDefinition(sortFieldIds[i]).getFieldMapping();
+
+            if (restExternalMapping != null) {
+                String[] restPath = ((ExternalRecordDefinitionFieldMapping) restExternalMapping).getExternalFieldId().split("\\|");
+
+                webApiFieldName = restPath[restPath.length - 1];
+            }
+
+            if (!webApiFieldName.equals("") && RAWGIO_SORTABLE_FIELDS.contains(webApiFieldName)) {
+                if (!sortBy.equals("")) {
+                    sortBy += ",";
+                }
+
+                if (sortAscending[i]) {
+                    webApiFieldName = "-" + webApiFieldName;
+                }
+
+                sortBy += webApiFieldName;
+            }
+        }
+
+        if (!sortBy.equals("")) {
+            String sortFieldId = metadata.getQueryParameterFieldId("ordering");
+            myQualification += " AND '" + sortFieldId + "' = \"%FIELD_ID%\"";
+            myQualification = myQualification.replace("%FIELD_ID%", sortBy);
+        }
+
+        String platformList = null;
+
+        for (String platform : platforms) {
+            if (platform.matches("\\d+")) {
+                if (platformList != null) {
+                    platformList += "," + platform;
+                } else {
+                    platformList = platform;
+                }
+            }
+        }
+
+        if (searchedValue != null && !searchedValue.isEmpty()) {
+            String searchFieldId = metadata.getQueryParameterFieldId("search");
+            myQualification += " AND '" + searchFieldId + "' = \"%FIELD_ID%\"";
+            myQualification = myQualification.replace("%FIELD_ID%", searchedValue);
+        }
+
+        if (platformList != null && !platformList.isEmpty()) {
+            String platformsFieldId = metadata.getQueryParameterFieldId("platforms");
+            myQualification += " AND '" + platformsFieldId + "' = \"%FIELD_ID%\"";
+            myQualification = myQualification.replace("%FIELD_ID%", platformList);
+        }
+
+        return myQualification;
+    }
+
+    @Benchmark
+    public String qualificationBuilder() {
+        WebApiQualificationBuilder qualification = new WebApiQualificationBuilder(metadata);
+
+        qualification.add("page", 3);
+        qualification.add("page_size", 25);
+
+        WebApiFieldIndex fieldIndex = metadata.getFieldIndex();
+        StringBuilder sortBy = new StringBuilder();
+
+        for (int i = 0; i < sortFieldIds.length; i++) {
+            int slot = fieldIndex.indexOf(sortFieldIds[i]);
+
+            if (slot >= 0 && fieldIndex.isSortable(slot)) {
+                if (sortBy.length() > 0) {
+                    sortBy.append(',');
+                }
+
+                if (sortAscending[i]) {
+                    sortBy.append('-');
+                }
+
+                sortBy.append(fieldIndex.getWebApiFieldName(slot));
+            }
+        }
+
+        qualification.add("ordering", sortBy);
+
+        StringBuilder platformList = new StringBuilder();
+
+        for (String platform : platforms) {
+            if (platform.matches("\\d+")) {
+                if (platformList.length() > 0) {
+                    platformList.append(',');
+                }
+
+                platformList.append(platform);
+            }
+        }
+
+        qualification.add("search", searchedValue);
+        qualification.add("platforms", platformList);
+
+        return qualification.build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bundle;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translation of a grid query: parsing the grid qualification (with and without the parsed expressions cache) and
+ * rebuilding the metadata of the definitions, as done by getWebApiRecordDefinition() when they changed.
+ * <p>
+ * java -jar benchmarks/target/benchmarks.jar QueryTranslationBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class QueryTranslationBenchmark {
+    @Param({"name", "globalSearch", "filters"})
+    public String qualification;
+
+    private String queryExpression;
+    private QueryExpressionParser cachedParser;
+    private QueryExpressionParser uncachedParser;
+
+    @Setup
+    public void setUp() {
+        switch (qualification) {
+            case "name":
+                queryExpression = "'536870913' LIKE \"%witcher%\"";
+                break;
+            case "globalSearch":
+                // The grid "Global Search" looks for the text in every column.
+                queryExpression = "'536870913' LIKE \"%witcher%\" OR '536870914' LIKE \"%witcher%\" OR '536870915' LIKE \"%witcher%\" OR '379' LIKE \"%witcher%\"";
+                break;
+            default:
+                queryExpression = "('536870913' = \"test\" OR '536870913' = \"me\" OR '536870913' LIKE \"%foobar%\")"
+                        + " AND ('536870916' = \"187\" OR '536870916' = \"4\" OR '536870916' = \"5\")";
+                break;
+        }
+
+        cachedParser = new QueryExpressionParser();
+
+        BenchmarkSettings settings = new BenchmarkSettings().set("queryExpressionCacheSize", "0");
+        settings.apply();
+        uncachedParser = new QueryExpressionParser();
+        settings.clear();
+    }
+
+    @Benchmark
+    public QueryExpression parseCached() {
+        return cachedParser.parse(queryExpression);
+    }
+
+    @Benchmark
+    public QueryExpression parseUncached() {
+        return uncachedParser.parse(queryExpression);
+    }
+
+    @Benchmark
+    public WebApiRecordDefinitionMetadata metadataRebuild() {
+        return FakeRecordDefinitions.metadata();
+    }
+}
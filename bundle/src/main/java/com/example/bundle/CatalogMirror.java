@@ -0,0 +1,243 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Mirror mode ({@link ProviderSettings#isMirror()}): the games of a Web Api Record Definition are copied in memory
+ * by a crawl of the Rawg.io pages, and the grids are answered from that copy ({@link MirrorTable}).
+ * <p>
+ * Rawg.io can only sort on a few fields, its search is unreliable and it returns 40 games at most per call, so a
+ * grid sorted or filtered on another column cannot be answered correctly by Rawg.io. The mirror answers any sort,
+ * filter, LIKE search and exact total, without any call to Rawg.io while the End User waits.
+ * <p>
+ * The crawl runs in the background, on a thread of the {@link UpstreamExecutor}, when a request finds the mirror
+ * missing or older than {@link ProviderSettings#getMirrorRefreshSeconds()}. It reads the Rawg.io pages in the
+ * default order, one after the other, only when the rate limiter has spare capacity so the End Users calls always
+ * go first. A crawl waiting longer than {@link #MAX_SPARE_CAPACITY_WAIT_NANOS} for spare capacity fails, as does a crawl
+ * with a rate limiter that can never have spare capacity (see {@link UpstreamRateLimiter#canHaveSpareCapacity()}).
+ * Until the first crawl is done the grids are answered by Rawg.io as without the mirror, then each new
+ * crawl replaces the previous copy at once when it is complete, the previous copy being served meanwhile.
+ * <p>
+ * The copy is limited to {@link ProviderSettings#getMirrorMaxRecords()} games. With a Web Api Record Definition
+ * returning more games than that, the copy is truncated ({@link MirrorTable#isTruncated()}): it only answers the
+ * grids showing the first games in the Rawg.io default order, the others are answered by Rawg.io.
+ */
+final class CatalogMirror {
+    // Time between two crawls of a definition when a crawl fails, or is asked again while the mirror is missing.
+    private static final long RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long SPARE_CAPACITY_POLL_MILLIS = 100;
+    // Time a page waits for spare capacity before the crawl fails, under a steady End Users traffic for example.
+    static final long MAX_SPARE_CAPACITY_WAIT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int MAX_PAGE_ATTEMPTS = 5;
+
+    private final UpstreamExecutor upstreamExecutor;
+    private final int pageSize;
+    private final ConcurrentHashMap<String, MirrorTable> tables = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastCrawlStartNanos = new ConcurrentHashMap<>();
+    private final Set<String> crawlsInFlight = ConcurrentHashMap.newKeySet();
+    private final LongAdder crawledPages = new LongAdder();
+    private final LongAdder failedCrawls = new LongAdder();
+
+    /**
+     * @param upstreamExecutor UpstreamExecutor, runs the crawls.
+     * @param pageSize         int, Rawg.io page size of the crawl, the largest accepted by Rawg.io.
+     */
+    CatalogMirror(UpstreamExecutor upstreamExecutor, int pageSize) {
+        this.upstreamExecutor = upstreamExecutor;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the copy of the games of a Web Api Record Definition, if it was crawled with the current fields.
+     *
+     * @param metadata WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @return MirrorTable, the copy, or null if there is none yet.
+     */
+    MirrorTable getTable(WebApiRecordDefinitionMetadata metadata) {
+        MirrorTable table = tables.get(metadata.getWebApiRecordDefinitionName());
+
+        // The Custom Record Definition changed since the crawl, a column could be missing.
+        if (table == null || !table.getFieldIds().equals(metadata.getFieldIndex().getMappedFieldIds())) {
+            return null;
+        }
+
+        return table;
+    }
+
+    /**
+     * Starts a crawl in the background if the copy is missing or too old, and no crawl is running.
+     *
+     * @param metadata    WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param rateLimiter Supplier<UpstreamRateLimiter>, current rate limiter of the Web Api Record Definition, read
+     *                    again at each poll as it is created again when its settings change.
+     * @param pageFetcher IntFunction<DataPage>, fetches a Rawg.io page (from 1) of {@link #getPageSize()} games with
+     *                    all the mapped fields, without using the caches. Its total size is the Rawg.io "count".
+     */
+    void syncIfDue(WebApiRecordDefinitionMetadata metadata, Supplier<UpstreamRateLimiter> rateLimiter, IntFunction<DataPage> pageFetcher) {
+        String webApiRecordDefinitionName = metadata.getWebApiRecordDefinitionName();
+        MirrorTable table = getTable(metadata);
+        long now = System.nanoTime();
+
+        if (table != null && now - table.getSyncedAtNanos() < TimeUnit.SECONDS.toNanos(metadata.getSettings().getMirrorRefreshSeconds())) {
+            return;
+        }
+
+        Long lastStartNanos = lastCrawlStartNanos.get(webApiRecordDefinitionName);
+
+        if (lastStartNanos != null && now - lastStartNanos < RETRY_DELAY_NANOS) {
+            return;
+        }
+
+        if (!crawlsInFlight.add(webApiRecordDefinitionName)) {
+            return;
+        }
+
+        lastCrawlStartNanos.put(webApiRecordDefinitionName, now);
+
+        boolean accepted = upstreamExecutor.tryExecuteInBackground(() -> {
+            try {
+                tables.put(webApiRecordDefinitionName, crawl(metadata, rateLimiter, pageFetcher));
+            } catch (RuntimeException e) {
+                // The previous copy, if any, is still served, the crawl is tried again later.
+                failedCrawls.increment();
+            } finally {
+                crawlsInFlight.remove(webApiRecordDefinitionName);
+            }
+        });
+
+        if (!accepted) {
+            crawlsInFlight.remove(webApiRecordDefinitionName);
+            lastCrawlStartNanos.remove(webApiRecordDefinitionName);
+        }
+    }
+
+    /**
+     * Reads the Rawg.io pages until the last one, or until the maximum number of games.
+     *
+     * @param metadata    WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param rateLimiter Supplier<UpstreamRateLimiter>, current rate limiter of the Web Api Record Definition.
+     * @param pageFetcher IntFunction<DataPage>, fetches a Rawg.io page.
+     * @return MirrorTable, the new copy.
+     * @throws IllegalStateException if a page waited too long for spare capacity, or can never get it.
+     */
+    MirrorTable crawl(WebApiRecordDefinitionMetadata metadata, Supplier<UpstreamRateLimiter> rateLimiter, IntFunction<DataPage> pageFetcher) {
+        List<String> fieldIds = metadata.getFieldIndex().getMappedFieldIds();
+        int maxRecords = metadata.getSettings().getMirrorMaxRecords();
+        MirrorTable.Builder builder = new MirrorTable.Builder(fieldIds, getFieldIds(metadata, "name"), getFieldIds(metadata, "platforms"));
+        int upstreamCount = 0;
+
+        for (int page = 1; builder.size() < maxRecords; page++) {
+            // The Rawg.io calls themselves are not interruptible, the crawl stops between the pages when the bundle
+            // is stopped.
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Interrupted while crawling the Rawg.io games.");
+            }
+
+            DataPage dataPage = fetchPage(rateLimiter, pageFetcher, page);
+
+            crawledPages.increment();
+            builder.addAll(dataPage.getData());
+            upstreamCount = Math.max(upstreamCount, dataPage.getTotalSize());
+
+            if (dataPage.getData().size() < pageSize || (upstreamCount > 0 && page * pageSize >= upstreamCount)) {
+                break;
+            }
+        }
+
+        return builder.build(Math.max(upstreamCount, builder.size()));
+    }
+
+    /**
+     * Returns the Ids of the fields mapped to a Rawg.io property, for example "name". Those are the fields the grids
+     * search and filter on, see the appendFilterQualification() method of the provider, and are indexed.
+     */
+    private static Set<String> getFieldIds(WebApiRecordDefinitionMetadata metadata, String fieldName) {
+        WebApiFieldIndex fieldIndex = metadata.getFieldIndex();
+        Set<String> fieldIds = new HashSet<>();
+
+        for (int slot = 0; slot < fieldIndex.size(); slot++) {
+            if (fieldName.equals(fieldIndex.getFieldName(slot))) {
+                fieldIds.add(Integer.toString(fieldIndex.getFieldId(slot)));
+            }
+        }
+
+        return fieldIds;
+    }
+
+    /**
+     * Fetches a page once the End Users leave some capacity, a page rejected by the rate limiter is tried again.
+     */
+    private static DataPage fetchPage(Supplier<UpstreamRateLimiter> rateLimiter, IntFunction<DataPage> pageFetcher, int page) {
+        for (int attempt = 1; ; attempt++) {
+            awaitSpareCapacity(rateLimiter, page);
+
+            try {
+                return pageFetcher.apply(page);
+            } catch (WebApiCallRejectedException e) {
+                if (attempt >= MAX_PAGE_ATTEMPTS) {
+                    throw e;
+                }
+
+                sleep(TimeUnit.SECONDS.toMillis(attempt));
+            }
+        }
+    }
+
+    private static void awaitSpareCapacity(Supplier<UpstreamRateLimiter> rateLimiter, int page) {
+        long deadlineNanos = System.nanoTime() + MAX_SPARE_CAPACITY_WAIT_NANOS;
+
+        while (true) {
+            UpstreamRateLimiter currentRateLimiter = rateLimiter.get();
+
+            if (!currentRateLimiter.canHaveSpareCapacity()) {
+                throw new IllegalStateException("The rate limiter settings of " + currentRateLimiter.getWebApiRecordDefinitionName()
+                        + " leave no spare capacity to crawl the Rawg.io games, the burst and the concurrent calls must be at least 2.");
+            }
+
+            if (currentRateLimiter.hasSpareCapacity()) {
+                return;
+            }
+
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                throw new IllegalStateException("No spare capacity to crawl the Rawg.io page " + page + " of "
+                        + currentRateLimiter.getWebApiRecordDefinitionName() + ".");
+            }
+
+            sleep(SPARE_CAPACITY_POLL_MILLIS);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while crawling the Rawg.io games.", e);
+        }
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    long getCrawledPageCount() {
+        return crawledPages.sum();
+    }
+
+    long getFailedCrawlCount() {
+        return failedCrawls.sum();
+    }
+
+    long getTruncatedTableCount() {
+        return tables.values().stream().filter(MirrorTable::isTruncated).count();
+    }
+}
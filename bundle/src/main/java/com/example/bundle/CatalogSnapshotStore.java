@@ -0,0 +1,556 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a copy of the catalog caches (Rawg.io DataPages, counts and indexed games) in a local file, so a bundle
+ * redeploy or a server restart does not begin with empty caches, sending the first minutes of traffic to Rawg.io
+ * and hitting its rate limit.
+ * <p>
+ * The snapshot is read back in the background when the bundle is registered ({@link #restoreInBackground()}), the
+ * requests arriving before it is done simply miss the caches. It is then written again at most every
+ * {@link #getSaveIntervalNanos() interval}, by a background thread of the {@link UpstreamExecutor}, after a request
+ * found that the caches changed. No thread of its own is started, so an undeployed bundle that receives no more
+ * requests stops writing the file.
+ * <p>
+ * File format (big endian, see {@link DataOutputStream}):
+ * - magic number and format version, a file with another version is ignored,
+ * - time the file was written,
+ * - sections: kind (byte), length (int), content. A section of an unknown kind is skipped, a kind of 0 ends the file.
+ * Each entry keeps its creation and expiration times, as wall clock times, so an entry read back expires when it
+ * would have expired without the restart, and an expired entry is not read back at all.
+ * <p>
+ * The file is written to a temporary file first, then moved over the previous snapshot.
+ * <p>
+ * The caches read back are served to the End Users as if they came from Rawg.io, so the snapshot is disabled unless
+ * a file is configured ("snapshotFile" setting), in a directory private to the server. The directory and the file
+ * are created readable by the server process user only, and a file owned by another user, or that other users can
+ * write, is not read back.
+ */
+final class CatalogSnapshotStore {
+    private static final int MAGIC = 0x52415747; // "RAWG"
+    private static final int FORMAT_VERSION = 1;
+    private static final byte END = 0;
+    private static final byte DATA_PAGE = 1;
+    private static final byte COUNT = 2;
+    private static final byte RECORD_INSTANCE = 3;
+    // Value types, the values of the rows are the JSON values returned by Rawg.io.
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte BIG_DECIMAL = 6;
+    private static final byte BIG_INTEGER = 7;
+    private static final byte DATE = 8;
+    private static final byte LIST = 9;
+    private static final byte MAP = 10;
+
+    private static final int DEFAULT_SAVE_INTERVAL_SECONDS = 120;
+    // A corrupted length must not make us allocate gigabytes.
+    private static final int MAX_SECTION_LENGTH = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final long saveIntervalNanos;
+    private final WebApiDataPageLoader webApiDataPageLoader;
+    private final UpstreamExecutor upstreamExecutor;
+    private final AtomicBoolean saving = new AtomicBoolean();
+    // Saving is only allowed once the previous snapshot was read back, it would be overwritten by empty caches.
+    private volatile boolean restored;
+    private volatile long lastSaveNanos = System.nanoTime();
+    private volatile long lastSavedChanges = -1;
+
+    CatalogSnapshotStore(WebApiDataPageLoader webApiDataPageLoader, UpstreamExecutor upstreamExecutor) {
+        this(getConfiguredFile(),
+                TimeUnit.SECONDS.toNanos(ProviderSettings.getGlobalInt("snapshotIntervalSeconds", DEFAULT_SAVE_INTERVAL_SECONDS)),
+                webApiDataPageLoader, upstreamExecutor);
+    }
+
+    /**
+     * @param file                 Path, the snapshot file, null disables the snapshot.
+     * @param saveIntervalNanos    long, minimum time between two writes, 0 or less disables the snapshot.
+     * @param webApiDataPageLoader WebApiDataPageLoader, owner of the caches.
+     * @param upstreamExecutor     UpstreamExecutor, runs the reads and writes in the background.
+     */
+    CatalogSnapshotStore(Path file, long saveIntervalNanos, WebApiDataPageLoader webApiDataPageLoader, UpstreamExecutor upstreamExecutor) {
+        this.file = file;
+        this.saveIntervalNanos = saveIntervalNanos;
+        this.webApiDataPageLoader = webApiDataPageLoader;
+        this.upstreamExecutor = upstreamExecutor;
+    }
+
+    /**
+     * No default file: a shared directory such as java.io.tmpdir would let any local user write the snapshot first.
+     */
+    private static Path getConfiguredFile() {
+        String file = ProviderSettings.getGlobalString("snapshotFile", null);
+
+        return file != null ? Paths.get(file) : null;
+    }
+
+    /**
+     * Reads the snapshot back into the caches in the background, and allows the next writes.
+     */
+    void restoreInBackground() {
+        if (file == null || saveIntervalNanos <= 0) {
+            return;
+        }
+
+        upstreamExecutor.submit(() -> {
+            try {
+                restore();
+            } catch (IOException | RuntimeException e) {
+                // No usable snapshot, the caches are filled by the requests as without a snapshot.
+            } finally {
+                restored = true;
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Called by the requests, writes the snapshot in the background when the interval elapsed and the caches
+     * changed since the last write. Cheap when there is nothing to do.
+     */
+    void saveIfDue() {
+        if (!restored || System.nanoTime() - lastSaveNanos < saveIntervalNanos) {
+            return;
+        }
+
+        long changes = getChangeCount();
+
+        if (changes == lastSavedChanges || !saving.compareAndSet(false, true)) {
+            return;
+        }
+
+        boolean accepted = upstreamExecutor.tryExecuteInBackground(() -> {
+            try {
+                save();
+                lastSavedChanges = changes;
+            } catch (IOException | RuntimeException e) {
+                // The previous snapshot is kept, we will try again after the interval.
+            } finally {
+                lastSaveNanos = System.nanoTime();
+                saving.set(false);
+            }
+        });
+
+        if (!accepted) {
+            saving.set(false);
+        }
+    }
+
+    /**
+     * Every new DataPage or count is a cache miss first, so the misses tell us if there is something new to write.
+     */
+    private long getChangeCount() {
+        return webApiDataPageLoader.getDataPageCache().getMissCount() + webApiDataPageLoader.getCountCache().getMissCount();
+    }
+
+    /**
+     * Writes the caches to the snapshot file.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    void save() throws IOException {
+        Clock clock = new Clock();
+        Path directory = file.toAbsolutePath().getParent();
+
+        boolean posix = file.getFileSystem().supportedFileAttributeViews().contains("posix");
+
+        if (directory != null) {
+            Files.createDirectories(directory, ownerOnly(posix, "rwx------"));
+        }
+
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp", ownerOnly(posix, "rw-------"));
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(System.currentTimeMillis());
+
+                ByteArrayOutputStream section = new ByteArrayOutputStream();
+
+                for (Map.Entry<WebApiQuery, TtlLruCache.Entry<DataPage>> entry : webApiDataPageLoader.getDataPageCache().snapshot()) {
+                    DataPage dataPage = entry.getValue().getValue();
+
+                    writeSection(out, section, DATA_PAGE, sectionOut -> {
+                        writeQuery(sectionOut, entry.getKey());
+                        writeTimes(sectionOut, entry.getValue(), clock);
+                        sectionOut.writeInt(dataPage.getTotalSize());
+                        writeValue(sectionOut, dataPage.getData());
+                    });
+                }
+
+                for (Map.Entry<WebApiQuery, TtlLruCache.Entry<Integer>> entry : webApiDataPageLoader.getCountCache().snapshot()) {
+                    writeSection(out, section, COUNT, sectionOut -> {
+                        writeQuery(sectionOut, entry.getKey());
+                        writeTimes(sectionOut, entry.getValue(), clock);
+                        sectionOut.writeInt(entry.getValue().getValue());
+                    });
+                }
+
+                for (Map.Entry<String, TtlLruCache.Entry<Map<?, ?>>> entry : webApiDataPageLoader.getRecordInstanceIndex().getRowByRecordInstanceId().snapshot()) {
+                    writeSection(out, section, RECORD_INSTANCE, sectionOut -> {
+                        writeString(sectionOut, entry.getKey());
+                        writeTimes(sectionOut, entry.getValue(), clock);
+                        writeValue(sectionOut, entry.getValue().getValue());
+                    });
+                }
+
+                out.writeByte(END);
+            }
+
+            try {
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static FileAttribute<?>[] ownerOnly(boolean posix, String permissions) {
+        return posix ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))} : new FileAttribute<?>[0];
+    }
+
+    /**
+     * Writes a section, or nothing if one of its values cannot be written (an unknown value type). The section is
+     * built in memory first, so a skipped section leaves nothing behind in the file.
+     */
+    private static void writeSection(DataOutputStream out, ByteArrayOutputStream section, byte kind, SectionWriter sectionWriter) throws IOException {
+        section.reset();
+
+        try {
+            sectionWriter.write(new DataOutputStream(section));
+        } catch (UnsupportedValueException e) {
+            return;
+        }
+
+        out.writeByte(kind);
+        out.writeInt(section.size());
+        section.writeTo(out);
+    }
+
+    /**
+     * Reads the snapshot file back into the caches. A missing file, or a file of another version, is ignored.
+     *
+     * @return int, number of entries read back.
+     * @throws IOException if the file cannot be read, is corrupted, or could have been written by another user. The
+     *                     entries read before the error are kept.
+     */
+    int restore() throws IOException {
+        // A symbolic link is not followed, it could point to a file of another user.
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+
+        checkWrittenByTheServer();
+
+        Clock clock = new Clock();
+        int restoredEntries = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return 0;
+            }
+
+            in.readLong();
+
+            for (byte kind = in.readByte(); kind != END; kind = in.readByte()) {
+                int length = in.readInt();
+
+                if (length < 0 || length > MAX_SECTION_LENGTH) {
+                    throw new IOException("Corrupted snapshot section length " + length + " in " + file);
+                }
+
+                byte[] content = new byte[length];
+                in.readFully(content);
+
+                if (restoreSection(kind, new DataInputStream(new ByteArrayInputStream(content)), clock)) {
+                    restoredEntries++;
+                }
+            }
+        }
+
+        return restoredEntries;
+    }
+
+    /**
+     * @throws IOException if the file is not owned by the server process user, or other users can write it.
+     */
+    private void checkWrittenByTheServer() throws IOException {
+        UserPrincipal owner = Files.getOwner(file, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal serverUser = file.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+
+        if (!owner.equals(serverUser)) {
+            throw new IOException("The snapshot " + file + " is owned by " + owner.getName() + ", not by " + serverUser.getName());
+        }
+
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file, LinkOption.NOFOLLOW_LINKS);
+
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException("The snapshot " + file + " can be written by other users");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean restoreSection(byte kind, DataInputStream in, Clock clock) throws IOException {
+        switch (kind) {
+            case DATA_PAGE: {
+                WebApiQuery query = readQuery(in);
+                long[] times = readTimes(in, clock);
+                int totalSize = in.readInt();
+                List<Object> rows = (List<Object>) readValue(in);
+
+                return restore(webApiDataPageLoader.getDataPageCache(), query, new DataPage(totalSize, rows), times);
+            }
+            case COUNT: {
+                WebApiQuery query = readQuery(in);
+                long[] times = readTimes(in, clock);
+
+                return restore(webApiDataPageLoader.getCountCache(), query, in.readInt(), times);
+            }
+            case RECORD_INSTANCE: {
+                String key = readString(in);
+                long[] times = readTimes(in, clock);
+
+                return restore(webApiDataPageLoader.getRecordInstanceIndex().getRowByRecordInstanceId(), key, (Map<?, ?>) readValue(in), times);
+            }
+            default:
+                // Written by a newer version of the bundle, skipped.
+                return false;
+        }
+    }
+
+    private static <K, V> boolean restore(TtlLruCache<K, V> cache, K key, V value, long[] times) {
+        if (times[1] - System.nanoTime() <= 0) {
+            return false;
+        }
+
+        cache.restore(key, new TtlLruCache.Entry<>(value, times[0], times[1]));
+
+        return true;
+    }
+
+    private static void writeQuery(DataOutputStream out, WebApiQuery query) throws IOException {
+        writeString(out, query.getWebApiRecordDefinitionName());
+        writeString(out, query.getQualification());
+        out.writeInt(query.getPropertySelections().size());
+
+        for (String propertySelection : query.getPropertySelections()) {
+            writeString(out, propertySelection);
+        }
+
+        out.writeInt(query.getPageSize());
+        out.writeInt(query.getStartIndex());
+    }
+
+    private static WebApiQuery readQuery(DataInputStream in) throws IOException {
+        String webApiRecordDefinitionName = readString(in);
+        String qualification = readString(in);
+        int propertySelectionCount = in.readInt();
+        List<String> propertySelections = new ArrayList<>(Math.min(propertySelectionCount, 256));
+
+        for (int i = 0; i < propertySelectionCount; i++) {
+            propertySelections.add(readString(in));
+        }
+
+        return new WebApiQuery(webApiRecordDefinitionName, qualification, propertySelections, in.readInt(), in.readInt());
+    }
+
+    private static void writeTimes(DataOutputStream out, TtlLruCache.Entry<?> entry, Clock clock) throws IOException {
+        out.writeLong(clock.toEpochMillis(entry.getCreatedAtNanos()));
+        out.writeLong(clock.toEpochMillis(entry.getExpiresAtNanos()));
+    }
+
+    private static long[] readTimes(DataInputStream in, Clock clock) throws IOException {
+        return new long[]{clock.toNanos(in.readLong()), clock.toNanos(in.readLong())};
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(out, value.toString());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new UnsupportedValueException(value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case DATE:
+                return new Date(in.readLong());
+            case LIST: {
+                int size = readSize(in);
+                List<Object> list = new ArrayList<>(size);
+
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+
+                return list;
+            }
+            case MAP: {
+                int size = readSize(in);
+                Map<Object, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in), readValue(in));
+                }
+
+                return map;
+            }
+            default:
+                throw new IOException("Unknown value type " + type + " in the snapshot");
+        }
+    }
+
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+
+        // Every element takes at least one byte.
+        if (size < 0 || size > in.available()) {
+            throw new IOException("Corrupted snapshot size " + size);
+        }
+
+        return size;
+    }
+
+    /**
+     * Strings are written as their UTF-8 length and bytes, {@link DataOutputStream#writeUTF(String)} is limited to
+     * 64 KB and a game description can be longer.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readSize(in)];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long getSaveIntervalNanos() {
+        return saveIntervalNanos;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    boolean isRestored() {
+        return restored;
+    }
+
+    @FunctionalInterface
+    private interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Thrown when a value of a row has a type the snapshot does not know, the entry is then not written.
+     */
+    private static final class UnsupportedValueException extends IOException {
+        UnsupportedValueException(Object value) {
+            super("Unsupported value type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Converts the System.nanoTime() based times of the caches to wall clock times and back, from the same
+     * reference instant for the whole file.
+     */
+    private static final class Clock {
+        private final long nowNanos = System.nanoTime();
+        private final long nowMillis = System.currentTimeMillis();
+
+        long toEpochMillis(long nanos) {
+            return nowMillis + TimeUnit.NANOSECONDS.toMillis(nanos - nowNanos);
+        }
+
+        long toNanos(long epochMillis) {
+            return nowNanos + TimeUnit.MILLISECONDS.toNanos(epochMillis - nowMillis);
+        }
+    }
+}
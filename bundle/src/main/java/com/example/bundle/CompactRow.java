@@ -0,0 +1,305 @@
+package com.example.bundle;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Row of a Web Api Record Definition, as returned by getRecordInstancesByIdDataPage(), kept in flat arrays instead
+ * of a HashMap.
+ * <p>
+ * The rows of a definition share its {@link WebApiFieldIndex} as schema, and the rows with the same fields (the
+ * property selections of a query) share a {@link Layout}: the field Ids and their positions are stored once, a row
+ * only holds one value per selected field. The int, long and double values are stored unboxed in a long array,
+ * allocated only if the row has some. A cached grid page costs a few hundred bytes per row instead of a HashMap
+ * node, a key and a boxed value per field.
+ * <p>
+ * The row is still a Map<String, Object> for the Platform and the rest of the provider, the values are boxed again
+ * when they are read. It is immutable.
+ */
+final class CompactRow extends AbstractMap<String, Object> {
+    // Markers stored in the values array, a null value is stored as null.
+    private static final Object INT_VALUE = new Object();
+    private static final Object LONG_VALUE = new Object();
+    private static final Object DOUBLE_VALUE = new Object();
+
+    private final Layout layout;
+    private final Object[] values;
+    // Null if the row has no int, long or double value.
+    private final long[] primitives;
+
+    private CompactRow(Layout layout, Object[] values, long[] primitives) {
+        this.layout = layout;
+        this.values = values;
+        this.primitives = primitives;
+    }
+
+    /**
+     * Compacts the rows of a data page. The rows with the same fields share one layout.
+     *
+     * @param schema WebApiFieldIndex, the fields of the Web Api Record Definition.
+     * @param rows   List<Object>, the rows returned by Rawg.io.
+     * @return List<Object>, the rows, compacted when possible.
+     */
+    static List<Object> compact(WebApiFieldIndex schema, List<Object> rows) {
+        if (rows == null) {
+            return null;
+        }
+
+        List<Object> compactRows = new ArrayList<>(rows.size());
+        Layout layout = null;
+
+        for (Object row : rows) {
+            Object compactRow = row instanceof Map ? compact(schema, (Map<?, ?>) row, layout) : row;
+
+            if (compactRow instanceof CompactRow) {
+                layout = ((CompactRow) compactRow).layout;
+            }
+
+            compactRows.add(compactRow);
+        }
+
+        return compactRows;
+    }
+
+    /**
+     * Compacts a row. A row with a key that is not a field of the schema is returned as is, nothing is lost.
+     *
+     * @param schema WebApiFieldIndex, the fields of the Web Api Record Definition.
+     * @param row    Map<?, ?>, the row.
+     * @return Map<?, ?>, a CompactRow, or the row.
+     */
+    static Map<?, ?> compact(WebApiFieldIndex schema, Map<?, ?> row) {
+        return compact(schema, row, null);
+    }
+
+    /**
+     * @param layout Layout, the layout of the previous row, used if the row has the same fields.
+     */
+    private static Map<?, ?> compact(WebApiFieldIndex schema, Map<?, ?> row, Layout layout) {
+        if (row instanceof CompactRow && ((CompactRow) row).layout.schema == schema) {
+            return row;
+        }
+
+        int[] slots = new int[row.size()];
+        int fieldCount = 0;
+
+        for (Object fieldId : row.keySet()) {
+            int slot = fieldId instanceof String ? schema.indexOf((String) fieldId) : -1;
+
+            // "0379" is not the key "379", the row could have both.
+            if (slot < 0 || !schema.getFieldIdKey(slot).equals(fieldId)) {
+                return row;
+            }
+
+            slots[fieldCount++] = slot;
+        }
+
+        if (layout == null || layout.schema != schema || layout.slots.length != fieldCount || !layout.hasSlots(slots)) {
+            layout = new Layout(schema, slots);
+        }
+
+        Object[] values = new Object[fieldCount];
+        long[] primitives = null;
+
+        for (Map.Entry<?, ?> field : row.entrySet()) {
+            int position = layout.getPosition(schema.indexOf((String) field.getKey()));
+            Object value = field.getValue();
+            Class<?> valueClass = value != null ? value.getClass() : null;
+
+            if (valueClass == Integer.class || valueClass == Long.class || valueClass == Double.class) {
+                if (primitives == null) {
+                    primitives = new long[fieldCount];
+                }
+
+                if (valueClass == Integer.class) {
+                    values[position] = INT_VALUE;
+                    primitives[position] = (Integer) value;
+                } else if (valueClass == Long.class) {
+                    values[position] = LONG_VALUE;
+                    primitives[position] = (Long) value;
+                } else {
+                    values[position] = DOUBLE_VALUE;
+                    primitives[position] = Double.doubleToRawLongBits((Double) value);
+                }
+            } else {
+                values[position] = value;
+            }
+        }
+
+        return new CompactRow(layout, values, primitives);
+    }
+
+    /**
+     * Merges two rows of the same schema, the fields of the newer row win.
+     *
+     * @param older CompactRow, the row already known.
+     * @param newer CompactRow, the row just read.
+     * @return CompactRow, the merged row, or null if the schemas differ.
+     */
+    static CompactRow merge(CompactRow older, CompactRow newer) {
+        if (older.layout.schema != newer.layout.schema) {
+            return null;
+        }
+
+        Layout layout = newer.layout.hasSlots(older.layout.slots) ? newer.layout : Layout.union(older.layout, newer.layout);
+        int fieldCount = layout.slots.length;
+        Object[] values = new Object[fieldCount];
+        long[] primitives = older.primitives == null && newer.primitives == null ? null : new long[fieldCount];
+
+        for (int position = 0; position < fieldCount; position++) {
+            int slot = layout.slots[position];
+            int newerPosition = newer.layout.getPosition(slot);
+            CompactRow source = newerPosition >= 0 ? newer : older;
+            int sourcePosition = newerPosition >= 0 ? newerPosition : older.layout.getPosition(slot);
+
+            values[position] = source.values[sourcePosition];
+
+            if (source.primitives != null) {
+                primitives[position] = source.primitives[sourcePosition];
+            }
+        }
+
+        return new CompactRow(layout, values, primitives);
+    }
+
+    private Object getValue(int position) {
+        Object value = values[position];
+
+        if (value == INT_VALUE) {
+            return (int) primitives[position];
+        }
+
+        if (value == LONG_VALUE) {
+            return primitives[position];
+        }
+
+        if (value == DOUBLE_VALUE) {
+            return Double.longBitsToDouble(primitives[position]);
+        }
+
+        return value;
+    }
+
+    private int getPosition(Object key) {
+        int slot = key instanceof String ? layout.schema.indexOf((String) key) : -1;
+
+        return slot >= 0 && layout.schema.getFieldIdKey(slot).equals(key) ? layout.getPosition(slot) : -1;
+    }
+
+    WebApiFieldIndex getSchema() {
+        return layout.schema;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int position = getPosition(key);
+
+        return position >= 0 ? getValue(position) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getPosition(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int nextPosition;
+
+        @Override
+        public boolean hasNext() {
+            return nextPosition < values.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int position = nextPosition++;
+
+            return new SimpleImmutableEntry<>(layout.schema.getFieldIdKey(layout.slots[position]), getValue(position));
+        }
+    }
+
+    /**
+     * The fields of a set of rows: the schema slot of each position of the values, sorted, and the position of each
+     * schema slot. Immutable, shared by the rows of a data page.
+     */
+    private static final class Layout {
+        private final WebApiFieldIndex schema;
+        private final int[] slots;
+        // -1 for the slots of the schema that are not in the rows.
+        private final int[] positionBySlot;
+
+        private Layout(WebApiFieldIndex schema, int[] slots) {
+            this.schema = schema;
+            this.slots = slots.clone();
+            Arrays.sort(this.slots);
+            this.positionBySlot = new int[schema.size()];
+            Arrays.fill(positionBySlot, -1);
+
+            for (int position = 0; position < this.slots.length; position++) {
+                positionBySlot[this.slots[position]] = position;
+            }
+        }
+
+        private static Layout union(Layout layout1, Layout layout2) {
+            int[] slots = Arrays.copyOf(layout1.slots, layout1.slots.length + layout2.slots.length);
+            int slotCount = layout1.slots.length;
+
+            for (int slot : layout2.slots) {
+                if (layout1.getPosition(slot) < 0) {
+                    slots[slotCount++] = slot;
+                }
+            }
+
+            return new Layout(layout1.schema, Arrays.copyOf(slots, slotCount));
+        }
+
+        private int getPosition(int slot) {
+            return positionBySlot[slot];
+        }
+
+        /**
+         * @param otherSlots int[], distinct slots.
+         * @return boolean, true if all of them are in this layout.
+         */
+        private boolean hasSlots(int[] otherSlots) {
+            for (int slot : otherSlots) {
+                if (positionBySlot[slot] < 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bundle;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of a window over several lists put one after the other.
+ * <p>
+ * A grid page is made of one or more Rawg.io pages, and we only keep a window of them (see
+ * {@link RawgioPagePlanner}). The rows of the Rawg.io pages are not copied in a new list, this view reads them
+ * from the lists returned by the Web Api Record Definition, which are also the ones kept in the cache. That is
+ * why the view cannot be modified.
+ *
+ * @param <E> element type.
+ */
+final class ConcatenatedList<E> extends AbstractList<E> implements RandomAccess {
+    private final List<? extends E>[] lists;
+    // Index, in the concatenation, of the first element of each list.
+    private final int[] offsets;
+    private final int fromIndex;
+    private final int size;
+
+    @SuppressWarnings("unchecked")
+    private ConcatenatedList(List<? extends List<? extends E>> lists, int fromIndex, int toIndex) {
+        this.lists = lists.toArray(new List[0]);
+        this.offsets = new int[this.lists.length];
+
+        int offset = 0;
+
+        for (int i = 0; i < this.lists.length; i++) {
+            offsets[i] = offset;
+            offset += this.lists[i].size();
+        }
+
+        this.fromIndex = fromIndex;
+        this.size = toIndex - fromIndex;
+    }
+
+    /**
+     * Returns a read-only view of the elements fromIndex (included) to toIndex (excluded) of the lists put one after
+     * the other. The indexes are limited to the number of elements available.
+     *
+     * @param lists     List<? extends List<? extends E>>, the lists, they must not be modified afterwards.
+     * @param fromIndex int, first element of the window.
+     * @param toIndex   int, end of the window (excluded).
+     * @return List<E>, the read-only view.
+     */
+    static <E> List<E> of(List<? extends List<? extends E>> lists, int fromIndex, int toIndex) {
+        int totalSize = 0;
+
+        for (List<? extends E> list : lists) {
+            totalSize += list.size();
+        }
+
+        int from = Math.max(0, Math.min(fromIndex, totalSize));
+        int to = Math.max(from, Math.min(toIndex, totalSize));
+
+        if (from == to) {
+            return Collections.emptyList();
+        }
+
+        // Most of the time the window is in a single list (a single Rawg.io page, or a window within the first one).
+        if (lists.size() == 1 || to <= lists.get(0).size()) {
+            return Collections.unmodifiableList(lists.get(0).subList(from, to));
+        }
+
+        return new ConcatenatedList<>(new ArrayList<>(lists), from, to);
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        int concatenationIndex = fromIndex + index;
+        int list = lists.length - 1;
+
+        // There are only a few lists (Rawg.io pages), a linear search from the end is enough.
+        while (offsets[list] > concatenationIndex) {
+            list--;
+        }
+
+        return lists[list].get(concatenationIndex - offsets[list]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.bundle;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the {@link ProviderMetrics} as a JMX MBean of the platform MBean server, so they can be read with
+ * JConsole, VisualVM or any JMX based monitoring, under "com.example.bundle:type=ProviderMetrics,name={provider}".
+ * <p>
+ * Each metric is a read-only attribute. The monitoring tools read the attributes one by one, so the metrics are read
+ * at most once per second, all together, and the attributes are taken from that snapshot. A bundle redeployed in the same JVM
+ * replaces the MBean of the previous deployment, which would otherwise keep the old provider in memory.
+ */
+final class JmxMetricsSink implements MetricsSink {
+    private ObjectName objectName;
+
+    @Override
+    public synchronized void register(String providerId, ProviderMetrics metrics) {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = new ObjectName("com.example.bundle", createProperties(providerId));
+
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+
+            mBeanServer.registerMBean(new MetricsMBean(metrics), name);
+            objectName = name;
+        } catch (JMException e) {
+            // The metrics are only for monitoring, the provider works without them.
+            objectName = null;
+        }
+    }
+
+    private static Hashtable<String, String> createProperties(String providerId) {
+        Hashtable<String, String> properties = new Hashtable<>();
+
+        properties.put("type", "ProviderMetrics");
+        properties.put("name", ObjectName.quote(providerId));
+
+        return properties;
+    }
+
+    @Override
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already unregistered, by the next deployment for example.
+        }
+
+        objectName = null;
+    }
+
+    /**
+     * The attributes are the names of the metrics, their list is read again each time as gauges can be added.
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+        private static final long SNAPSHOT_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final ProviderMetrics metrics;
+        private volatile Map<String, Number> snapshot;
+        private volatile long snapshotNanos;
+
+        private MetricsMBean(ProviderMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * Returns the metrics read less than a second ago, or reads them again. Two tools refreshing at the same time
+         * may both read them, which is harmless.
+         */
+        private Map<String, Number> getSnapshot() {
+            long now = System.nanoTime();
+            Map<String, Number> currentSnapshot = snapshot;
+
+            if (currentSnapshot == null || now - snapshotNanos >= SNAPSHOT_MAX_AGE_NANOS) {
+                currentSnapshot = metrics.snapshot();
+                snapshotNanos = now;
+                snapshot = currentSnapshot;
+            }
+
+            return currentSnapshot;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = getSnapshot().get(attribute);
+
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            // One snapshot for all the attributes, so they are read at the same time.
+            Map<String, Number> currentSnapshot = getSnapshot();
+            AttributeList attributeList = new AttributeList();
+
+            for (String attribute : attributes) {
+                Number value = currentSnapshot.get(attribute);
+
+                if (value != null) {
+                    attributeList.add(new Attribute(attribute, value));
+                }
+            }
+
+            return attributeList;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only.");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(actionName + " is not supported."));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+            for (Map.Entry<String, Number> metric : getSnapshot().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(metric.getKey(), metric.getValue().getClass().getName(),
+                        metric.getKey(), true, false, false));
+            }
+
+            return new MBeanInfo(MetricsMBean.class.getName(), "Counters and latencies of the rawg.io provider.",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.bundle;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations, cheap enough to be recorded on every request.
+ * <p>
+ * The durations are counted in buckets growing exponentially: 4 buckets per power of 2, so a percentile is known
+ * within 25%, from 1 microsecond to about 18 minutes (2^40 ns) in 120 buckets, longer durations are counted in the
+ * last bucket. Recording a duration is a few arithmetic operations and a {@link LongAdder} increment, there is no
+ * lock and no allocation, and concurrent requests do not contend on the same counters.
+ * <p>
+ * The histogram counts since the provider started, the rates are computed by the tool reading it.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Durations below 1 microsecond are counted in the first bucket.
+    private static final int MIN_BIT = 10;
+    private static final int MAX_BIT = 40;
+    private static final int BUCKETS = (MAX_BIT - MIN_BIT) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos long, the duration in nanoseconds.
+     */
+    void record(long nanos) {
+        long duration = Math.max(0, nanos);
+
+        buckets[getBucket(duration)].increment();
+        count.increment();
+        totalNanos.add(duration);
+        maxNanos.accumulate(duration);
+    }
+
+    private static int getBucket(long nanos) {
+        int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+
+        if (highestBit < MIN_BIT) {
+            return 0;
+        }
+
+        if (highestBit >= MAX_BIT) {
+            return BUCKETS - 1;
+        }
+
+        int subBucket = (int) (nanos >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (highestBit - MIN_BIT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Upper bound of a bucket, the value reported for a percentile falling in it.
+     */
+    private static long getBucketUpperBoundNanos(int bucket) {
+        int highestBit = bucket / SUB_BUCKETS + MIN_BIT;
+        int subBucket = bucket % SUB_BUCKETS;
+
+        return (1L << highestBit) + ((long) (subBucket + 1) << (highestBit - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Returns a percentile of the recorded durations. As the buckets are read while durations are recorded, the
+     * value is approximate, which is fine for monitoring.
+     *
+     * @param percentile double, between 0 and 100.
+     * @return long, the duration in nanoseconds, 0 if nothing was recorded.
+     */
+    long getPercentileNanos(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(getBucketUpperBoundNanos(i), getMaxNanos());
+            }
+        }
+
+        return getMaxNanos();
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    long getMeanNanos() {
+        long recorded = getCount();
+
+        return recorded > 0 ? getTotalNanos() / recorded : 0;
+    }
+}
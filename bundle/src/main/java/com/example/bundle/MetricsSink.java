@@ -0,0 +1,22 @@
+package com.example.bundle;
+
+/**
+ * Publishes the {@link ProviderMetrics} of the provider to a monitoring tool.
+ * <p>
+ * A sink reads the metrics when the tool asks for them ({@link ProviderMetrics#snapshot()}), nothing is pushed
+ * from the request threads. See {@link JmxMetricsSink}, registered and unregistered in MyApplication.java.
+ */
+interface MetricsSink {
+    /**
+     * Starts publishing the metrics of a provider.
+     *
+     * @param providerId String, the Data Source Provider, identifies the provider in the tool.
+     * @param metrics    ProviderMetrics, the metrics to publish.
+     */
+    void register(String providerId, ProviderMetrics metrics);
+
+    /**
+     * Stops publishing the metrics, for example when the bundle is stopped.
+     */
+    void unregister();
+}
@@ -0,0 +1,692 @@
+package com.example.bundle;
+
+import java.util.*;
+
+/**
+ * Immutable in-memory copy of the games of a Web Api Record Definition, built by the {@link CatalogMirror} crawl.
+ * <p>
+ * The values are stored by column (one array per field Id), so a filter or a sort only reads the columns it needs.
+ * Each column also has the rank of every row in the ascending order of its values, computed once when the table is
+ * built: sorting a grid is then sorting integers, whatever the type of the column.
+ * <p>
+ * Unlike Rawg.io, a query on the table can sort on any column and on several columns, apply every condition of
+ * the grid qualification (AND / OR / NOT, comparisons, LIKE), and returns the exact number of matching games.
+ * <p>
+ * Some columns are also indexed: the names with a {@link TrigramIndex} and the platforms with a
+ * {@link ValueBitmapIndex}. The conditions on them are first answered with the indexes, combined as set
+ * intersections (AND) and unions (OR), and only the rows found there are read.
+ */
+final class MirrorTable {
+    // Rank of a null value, always sorted last.
+    private static final int NULL_RANK = Integer.MAX_VALUE;
+    private static final String NULL_KEYWORD = "$NULL$";
+
+    private final List<String> fieldIds;
+    private final Map<String, Integer> columnByFieldId;
+    private final Object[][] columns;
+    private final int[][] ranks;
+    private final int[] distinctValueCounts;
+    private final Map<Integer, TrigramIndex> trigramIndexByColumn = new HashMap<>();
+    private final Map<Integer, ValueBitmapIndex> valueBitmapIndexByColumn = new HashMap<>();
+    private final int rowCount;
+    private final int upstreamCount;
+    private final long syncedAtNanos;
+
+    private MirrorTable(List<String> fieldIds, Object[][] columns, int rowCount, int upstreamCount, long syncedAtNanos,
+                        Set<String> textIndexedFieldIds, Set<String> valueIndexedFieldIds) {
+        this.fieldIds = List.copyOf(fieldIds);
+        this.columnByFieldId = new HashMap<>();
+        this.columns = columns;
+        this.ranks = new int[columns.length][];
+        this.distinctValueCounts = new int[columns.length];
+        this.rowCount = rowCount;
+        this.upstreamCount = upstreamCount;
+        this.syncedAtNanos = syncedAtNanos;
+
+        for (int column = 0; column < columns.length; column++) {
+            String fieldId = this.fieldIds.get(column);
+
+            columnByFieldId.put(fieldId, column);
+            computeRanks(column);
+
+            if (textIndexedFieldIds.contains(fieldId)) {
+                trigramIndexByColumn.put(column, new TrigramIndex(columns[column], rowCount));
+            }
+
+            if (valueIndexedFieldIds.contains(fieldId)) {
+                valueBitmapIndexByColumn.put(column, new ValueBitmapIndex(columns[column], rowCount));
+            }
+        }
+    }
+
+    private void computeRanks(int column) {
+        Object[] values = columns[column];
+        int[] columnRanks = new int[rowCount];
+        List<Integer> nonNullRows = new ArrayList<>(rowCount);
+
+        for (int row = 0; row < rowCount; row++) {
+            if (values[row] == null) {
+                columnRanks[row] = NULL_RANK;
+            } else {
+                nonNullRows.add(row);
+            }
+        }
+
+        nonNullRows.sort((row1, row2) -> compareValues(values[row1], values[row2]));
+
+        // Equal values have the same rank, so the next sort key decides between them.
+        int rank = -1;
+        Object previousValue = null;
+
+        for (int row : nonNullRows) {
+            if (rank < 0 || compareValues(previousValue, values[row]) != 0) {
+                rank++;
+                previousValue = values[row];
+            }
+
+            columnRanks[row] = rank;
+        }
+
+        ranks[column] = columnRanks;
+        distinctValueCounts[column] = rank + 1;
+    }
+
+    /**
+     * Numbers are compared as numbers, everything else as text, ignoring the case. In a column mixing both, the
+     * numbers come first: comparing a number as text with some values and as a number with others would not be a
+     * consistent order.
+     */
+    private static int compareValues(Object value1, Object value2) {
+        boolean isNumber1 = value1 instanceof Number;
+        boolean isNumber2 = value2 instanceof Number;
+
+        if (isNumber1 && isNumber2) {
+            return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+        }
+
+        if (isNumber1 != isNumber2) {
+            return isNumber1 ? -1 : 1;
+        }
+
+        return String.CASE_INSENSITIVE_ORDER.compare(value1.toString(), value2.toString());
+    }
+
+    /**
+     * Returns a page of the games matching a qualification.
+     *
+     * @param queryExpression    QueryExpression, the grid qualification.
+     * @param sortKeys           List<SortKey>, the sort, a column that is not in the table is ignored.
+     * @param startIndex         int, index of the first game to return.
+     * @param pageSize           int, maximum number of games to return, 0 to only count them.
+     * @param propertySelections List<String>, the field Ids to return.
+     * @return Result, the games and the number of matching games.
+     */
+    Result query(QueryExpression queryExpression, List<SortKey> sortKeys, int startIndex, int pageSize, List<String> propertySelections) {
+        IndexHit indexHit = queryExpression.isEmpty() ? null : findCandidates(queryExpression.getRoot());
+
+        // The indexes answered the whole qualification, a count does not need to read the rows.
+        if (indexHit != null && indexHit.isExact() && pageSize <= 0) {
+            return new Result(indexHit.getRows().cardinality(), Collections.emptyList());
+        }
+
+        RowFilter rowFilter = queryExpression.isEmpty() || (indexHit != null && indexHit.isExact()) ? null : compile(queryExpression.getRoot());
+        int[] matchingRows = new int[indexHit != null ? indexHit.getRows().cardinality() : rowCount];
+        int matchingRowCount = 0;
+
+        if (indexHit != null) {
+            for (int row = indexHit.getRows().nextSetBit(0); row >= 0; row = indexHit.getRows().nextSetBit(row + 1)) {
+                if (rowFilter == null || rowFilter.matches(row)) {
+                    matchingRows[matchingRowCount++] = row;
+                }
+            }
+        } else {
+            for (int row = 0; row < rowCount; row++) {
+                if (rowFilter == null || rowFilter.matches(row)) {
+                    matchingRows[matchingRowCount++] = row;
+                }
+            }
+        }
+
+        int from = Math.min(Math.max(0, startIndex), matchingRowCount);
+        int to = (int) Math.min(matchingRowCount, (long) from + Math.max(0, pageSize));
+
+        if (from == to) {
+            return new Result(matchingRowCount, Collections.emptyList());
+        }
+
+        sort(matchingRows, matchingRowCount, sortKeys);
+
+        List<Object> rows = new ArrayList<>(to - from);
+        int[] selectedColumns = propertySelections.stream()
+                .map(columnByFieldId::get)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        for (int i = from; i < to; i++) {
+            Map<String, Object> fields = new HashMap<>(selectedColumns.length * 4 / 3 + 1);
+
+            for (int column : selectedColumns) {
+                fields.put(fieldIds.get(column), columns[column][matchingRows[i]]);
+            }
+
+            rows.add(fields);
+        }
+
+        return new Result(matchingRowCount, rows);
+    }
+
+    /**
+     * Sorts the matching rows, keeping the crawl order (the Rawg.io default order) between equal rows.
+     */
+    private void sort(int[] rows, int rowCount, List<SortKey> sortKeys) {
+        List<int[]> sortRanks = new ArrayList<>(sortKeys.size());
+        List<Integer> sortDistinctValueCounts = new ArrayList<>(sortKeys.size());
+        List<Boolean> ascending = new ArrayList<>(sortKeys.size());
+
+        for (SortKey sortKey : sortKeys) {
+            Integer column = columnByFieldId.get(sortKey.getFieldId());
+
+            if (column != null) {
+                sortRanks.add(ranks[column]);
+                sortDistinctValueCounts.add(distinctValueCounts[column]);
+                ascending.add(sortKey.isAscending());
+            }
+        }
+
+        if (sortRanks.isEmpty()) {
+            return;
+        }
+
+        // The usual case, one column: the sort key and the row are packed in a long and sorted as primitives.
+        if (sortRanks.size() == 1) {
+            int[] columnRanks = sortRanks.get(0);
+            long[] keys = new long[rowCount];
+
+            for (int i = 0; i < rowCount; i++) {
+                keys[i] = (long) sortKey(columnRanks[rows[i]], sortDistinctValueCounts.get(0), ascending.get(0)) << 32 | rows[i];
+            }
+
+            Arrays.sort(keys);
+
+            for (int i = 0; i < rowCount; i++) {
+                rows[i] = (int) keys[i];
+            }
+
+            return;
+        }
+
+        Integer[] boxedRows = new Integer[rowCount];
+
+        for (int i = 0; i < rowCount; i++) {
+            boxedRows[i] = rows[i];
+        }
+
+        Arrays.sort(boxedRows, (row1, row2) -> {
+            for (int key = 0; key < sortRanks.size(); key++) {
+                int[] columnRanks = sortRanks.get(key);
+                int result = Integer.compare(
+                        sortKey(columnRanks[row1], sortDistinctValueCounts.get(key), ascending.get(key)),
+                        sortKey(columnRanks[row2], sortDistinctValueCounts.get(key), ascending.get(key)));
+
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            return Integer.compare(row1, row2);
+        });
+
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = boxedRows[i];
+        }
+    }
+
+    private static int sortKey(int rank, int distinctValueCount, boolean ascending) {
+        if (rank == NULL_RANK) {
+            return NULL_RANK;
+        }
+
+        return ascending ? rank : distinctValueCount - 1 - rank;
+    }
+
+    /**
+     * Returns the rows that can match a node according to the indexes.
+     *
+     * @param node QueryExpression.Node, a node of the qualification.
+     * @return IndexHit, the candidate rows, or null if the indexes cannot tell (any row can match).
+     */
+    private IndexHit findCandidates(QueryExpression.Node node) {
+        if (node instanceof QueryExpression.And) {
+            BitSet rows = null;
+            boolean exact = true;
+
+            // An operand the indexes cannot answer does not remove any row, it is checked on the candidates.
+            for (QueryExpression.Node operand : ((QueryExpression.And) node).getOperands()) {
+                IndexHit operandHit = findCandidates(operand);
+
+                if (operandHit == null) {
+                    exact = false;
+                    continue;
+                }
+
+                if (rows == null) {
+                    rows = operandHit.getRows();
+                } else {
+                    rows.and(operandHit.getRows());
+                }
+
+                exact &= operandHit.isExact();
+            }
+
+            return rows != null ? new IndexHit(rows, exact) : null;
+        }
+
+        if (node instanceof QueryExpression.Or) {
+            BitSet rows = new BitSet(rowCount);
+            boolean exact = true;
+
+            for (QueryExpression.Node operand : ((QueryExpression.Or) node).getOperands()) {
+                IndexHit operandHit = findCandidates(operand);
+
+                if (operandHit == null) {
+                    return null;
+                }
+
+                rows.or(operandHit.getRows());
+                exact &= operandHit.isExact();
+            }
+
+            return new IndexHit(rows, exact);
+        }
+
+        if (node instanceof QueryExpression.Not) {
+            IndexHit operandHit = findCandidates(((QueryExpression.Not) node).getOperand());
+
+            // Only exact rows can be reversed, the reverse of candidates would miss rows.
+            return operandHit != null && operandHit.isExact() ? operandHit.complement(rowCount) : null;
+        }
+
+        QueryExpression.Condition condition = (QueryExpression.Condition) node;
+        Integer column = columnByFieldId.get(condition.getFieldId());
+
+        if (column == null || NULL_KEYWORD.equalsIgnoreCase(condition.getValue())) {
+            return null;
+        }
+
+        ValueBitmapIndex valueBitmapIndex = valueBitmapIndexByColumn.get(column);
+
+        if (valueBitmapIndex != null) {
+            if (condition.getOperator() == QueryExpression.Operator.EQUAL) {
+                return new IndexHit(valueBitmapIndex.getRows(condition.getValue()), true);
+            }
+
+            if (condition.getOperator() == QueryExpression.Operator.NOT_EQUAL) {
+                IndexHit indexHit = new IndexHit(valueBitmapIndex.getRows(condition.getValue()), true).complement(rowCount);
+
+                indexHit.getRows().andNot(valueBitmapIndex.getNullRows());
+
+                return indexHit;
+            }
+        }
+
+        TrigramIndex trigramIndex = trigramIndexByColumn.get(column);
+
+        if (trigramIndex != null
+                && (condition.getOperator() == QueryExpression.Operator.EQUAL || condition.getOperator() == QueryExpression.Operator.LIKE)) {
+            // The value of an equality has no wildcard, but its % and _ are still read as separators: the trigrams
+            // of the parts between them are in the value, the trigrams across them are not searched.
+            BitSet rows = trigramIndex.getCandidates(condition.getValue());
+
+            return rows != null ? new IndexHit(rows, false) : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Turns the qualification into a filter reading the columns, once per query.
+     */
+    private RowFilter compile(QueryExpression.Node node) {
+        if (node instanceof QueryExpression.And) {
+            RowFilter[] operands = compile(((QueryExpression.And) node).getOperands());
+
+            return row -> {
+                for (RowFilter operand : operands) {
+                    if (!operand.matches(row)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            };
+        }
+
+        if (node instanceof QueryExpression.Or) {
+            RowFilter[] operands = compile(((QueryExpression.Or) node).getOperands());
+
+            return row -> {
+                for (RowFilter operand : operands) {
+                    if (operand.matches(row)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            };
+        }
+
+        if (node instanceof QueryExpression.Not) {
+            RowFilter operand = compile(((QueryExpression.Not) node).getOperand());
+
+            return row -> !operand.matches(row);
+        }
+
+        QueryExpression.Condition condition = (QueryExpression.Condition) node;
+        Integer column = columnByFieldId.get(condition.getFieldId());
+        ValueFilter valueFilter = new ValueFilter(condition);
+
+        // A field that is not in the table has no value.
+        if (column == null) {
+            boolean matchesNull = valueFilter.matches(null);
+
+            return row -> matchesNull;
+        }
+
+        Object[] values = columns[column];
+
+        return row -> valueFilter.matches(values[row]);
+    }
+
+    private RowFilter[] compile(List<QueryExpression.Node> nodes) {
+        RowFilter[] rowFilters = new RowFilter[nodes.size()];
+
+        for (int i = 0; i < rowFilters.length; i++) {
+            rowFilters[i] = compile(nodes.get(i));
+        }
+
+        return rowFilters;
+    }
+
+    /**
+     * @return List<String>, the field Ids of the columns.
+     */
+    List<String> getFieldIds() {
+        return fieldIds;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return int, number of games Rawg.io had when the table was built, more than the row count when the crawl
+     * was stopped by {@link ProviderSettings#getMirrorMaxRecords()}.
+     */
+    int getUpstreamCount() {
+        return upstreamCount;
+    }
+
+    /**
+     * @return boolean, true if the crawl was stopped by {@link ProviderSettings#getMirrorMaxRecords()} before the
+     * last game.
+     */
+    boolean isTruncated() {
+        return rowCount < upstreamCount;
+    }
+
+    long getSyncedAtNanos() {
+        return syncedAtNanos;
+    }
+
+    @FunctionalInterface
+    private interface RowFilter {
+        boolean matches(int row);
+    }
+
+    /**
+     * One condition of the qualification, applied to a value. For a multi-valued field (a list, such as the
+     * platforms of a game), the condition matches if one of the values matches, and != if none is equal.
+     * <p>
+     * As in an AR System qualification, a field without value (null) only matches = $NULL$: it matches neither
+     * = nor != a value. A NOT still reverses its operand, NOT ('536870916' = "4") matches the games without platform.
+     */
+    private static final class ValueFilter {
+        private final QueryExpression.Operator operator;
+        private final String value;
+        private final boolean nullValue;
+        private final Double numericValue;
+
+        ValueFilter(QueryExpression.Condition condition) {
+            this.operator = condition.getOperator();
+            this.value = condition.getValue();
+            this.nullValue = NULL_KEYWORD.equalsIgnoreCase(value);
+            this.numericValue = parseDouble(value);
+        }
+
+        boolean matches(Object fieldValue) {
+            if (operator == QueryExpression.Operator.NOT_EQUAL) {
+                return (fieldValue != null || nullValue) && !matchesOne(fieldValue, QueryExpression.Operator.EQUAL);
+            }
+
+            return matchesOne(fieldValue, operator);
+        }
+
+        private boolean matchesOne(Object fieldValue, QueryExpression.Operator operator) {
+            if (fieldValue instanceof Collection) {
+                for (Object element : (Collection<?>) fieldValue) {
+                    if (matchesOne(element, operator)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            if (fieldValue == null || nullValue) {
+                return operator == QueryExpression.Operator.EQUAL && fieldValue == null && nullValue;
+            }
+
+            if (operator == QueryExpression.Operator.LIKE) {
+                return like(fieldValue.toString(), value);
+            }
+
+            int comparison = fieldValue instanceof Number && numericValue != null
+                    ? Double.compare(((Number) fieldValue).doubleValue(), numericValue)
+                    : String.CASE_INSENSITIVE_ORDER.compare(fieldValue.toString(), value);
+
+            switch (operator) {
+                case EQUAL:
+                    return comparison == 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                case GREATER_OR_EQUAL:
+                    return comparison >= 0;
+                default:
+                    return false;
+            }
+        }
+
+        private static Double parseDouble(String value) {
+            try {
+                return Double.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * LIKE matching ignoring the case: % matches any number of characters, _ matches one character.
+     */
+    static boolean like(String text, String pattern) {
+        int textIndex = 0;
+        int patternIndex = 0;
+        int lastPercentIndex = -1;
+        int textIndexAtLastPercent = 0;
+
+        while (textIndex < text.length()) {
+            if (patternIndex < pattern.length() && pattern.charAt(patternIndex) == '%') {
+                lastPercentIndex = patternIndex++;
+                textIndexAtLastPercent = textIndex;
+            } else if (patternIndex < pattern.length()
+                    && (pattern.charAt(patternIndex) == '_' || equalsIgnoreCase(pattern.charAt(patternIndex), text.charAt(textIndex)))) {
+                patternIndex++;
+                textIndex++;
+            } else if (lastPercentIndex >= 0) {
+                // Backtracking: the last % matches one more character.
+                patternIndex = lastPercentIndex + 1;
+                textIndex = ++textIndexAtLastPercent;
+            } else {
+                return false;
+            }
+        }
+
+        while (patternIndex < pattern.length() && pattern.charAt(patternIndex) == '%') {
+            patternIndex++;
+        }
+
+        return patternIndex == pattern.length();
+    }
+
+    private static boolean equalsIgnoreCase(char char1, char char2) {
+        return char1 == char2 || Character.toLowerCase(char1) == Character.toLowerCase(char2)
+                || Character.toUpperCase(char1) == Character.toUpperCase(char2);
+    }
+
+    /**
+     * Rows found with the indexes. Exact rows match the node, candidate rows still have to be checked.
+     */
+    private static final class IndexHit {
+        private final BitSet rows;
+        private final boolean exact;
+
+        IndexHit(BitSet rows, boolean exact) {
+            this.rows = rows;
+            this.exact = exact;
+        }
+
+        BitSet getRows() {
+            return rows;
+        }
+
+        boolean isExact() {
+            return exact;
+        }
+
+        IndexHit complement(int rowCount) {
+            rows.flip(0, rowCount);
+
+            return this;
+        }
+    }
+
+    /**
+     * A sort column and its direction.
+     */
+    static final class SortKey {
+        private final String fieldId;
+        private final boolean ascending;
+
+        SortKey(String fieldId, boolean ascending) {
+            this.fieldId = fieldId;
+            this.ascending = ascending;
+        }
+
+        String getFieldId() {
+            return fieldId;
+        }
+
+        boolean isAscending() {
+            return ascending;
+        }
+    }
+
+    /**
+     * A page of games and the number of games matching the query.
+     */
+    static final class Result {
+        private final int totalSize;
+        private final List<Object> rows;
+
+        Result(int totalSize, List<Object> rows) {
+            this.totalSize = totalSize;
+            this.rows = rows;
+        }
+
+        int getTotalSize() {
+            return totalSize;
+        }
+
+        List<Object> getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * Collects the rows returned by the crawl. A game returned twice (the Rawg.io order can move while we crawl)
+     * is kept once, at its first position, with its last values.
+     */
+    static final class Builder {
+        private final List<String> fieldIds;
+        private final Set<String> textIndexedFieldIds;
+        private final Set<String> valueIndexedFieldIds;
+        private final LinkedHashMap<Object, Map<?, ?>> rowByRecordInstanceId = new LinkedHashMap<>();
+
+        /**
+         * @param fieldIds             List<String>, the field Ids to copy.
+         * @param textIndexedFieldIds  Set<String>, the field Ids searched by text, indexed with a {@link TrigramIndex}.
+         * @param valueIndexedFieldIds Set<String>, the field Ids filtered by value, indexed with a {@link ValueBitmapIndex}.
+         */
+        Builder(List<String> fieldIds, Set<String> textIndexedFieldIds, Set<String> valueIndexedFieldIds) {
+            this.fieldIds = List.copyOf(fieldIds);
+            this.textIndexedFieldIds = Set.copyOf(textIndexedFieldIds);
+            this.valueIndexedFieldIds = Set.copyOf(valueIndexedFieldIds);
+        }
+
+        /**
+         * Adds the rows of a Rawg.io page, the rows without a record instance Id are ignored.
+         *
+         * @param rows List<Object>, the rows (maps of field Id to value).
+         */
+        void addAll(List<Object> rows) {
+            for (Object row : rows) {
+                if (row instanceof Map) {
+                    Object recordInstanceId = ((Map<?, ?>) row).get(RecordInstanceIndex.RECORD_INSTANCE_ID_FIELD_ID);
+
+                    if (recordInstanceId != null) {
+                        rowByRecordInstanceId.put(recordInstanceId, (Map<?, ?>) row);
+                    }
+                }
+            }
+        }
+
+        int size() {
+            return rowByRecordInstanceId.size();
+        }
+
+        /**
+         * @param upstreamCount int, number of games Rawg.io has.
+         * @return MirrorTable, the table.
+         */
+        MirrorTable build(int upstreamCount) {
+            int rowCount = rowByRecordInstanceId.size();
+            Object[][] columns = new Object[fieldIds.size()][rowCount];
+            int row = 0;
+
+            for (Map<?, ?> fields : rowByRecordInstanceId.values()) {
+                for (int column = 0; column < columns.length; column++) {
+                    columns[column][row] = fields.get(fieldIds.get(column));
+                }
+
+                row++;
+            }
+
+            return new MirrorTable(fieldIds, columns, rowCount, upstreamCount, System.nanoTime(), textIndexedFieldIds, valueIndexedFieldIds);
+        }
+    }
+}
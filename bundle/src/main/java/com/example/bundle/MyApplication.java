@@ -9,11 +9,16 @@ package com.example.bundle;
 
 import com.bmc.arsys.rx.services.common.RxBundle;
 import com.bmc.arsys.rx.services.common.domain.WebResourceDefinition;
+import org.osgi.framework.BundleContext;
 
 /**
  * Rx Web Activator class.
  */
 public class MyApplication extends RxBundle {
+    // Publishes the provider metrics over JMX, unregistered when the bundle is stopped.
+    private final MetricsSink metricsSink = new JmxMetricsSink();
+    // Its background threads are stopped with the bundle.
+    private VideoGameGamesCustomRecordProvider videoGameGamesCustomRecordProvider;
 
     /* (non-Javadoc)
      * @see com.bmc.arsys.rx.business.common.RxBundle#register()
@@ -27,8 +32,32 @@ public class MyApplication extends RxBundle {
         //
 
         // Declaring the Custom Record Definition Provider
-        registerDataProvider(new VideoGameGamesCustomRecordProvider());
+        videoGameGamesCustomRecordProvider = new VideoGameGamesCustomRecordProvider();
+
+        // Warming the caches up with the snapshot saved before the redeploy / restart, in the background.
+        videoGameGamesCustomRecordProvider.restoreCatalogSnapshot();
+        // Publishing the provider counters and latencies over JMX, see ProviderMetrics.
+        videoGameGamesCustomRecordProvider.registerMetricsSink(metricsSink);
+        registerDataProvider(videoGameGamesCustomRecordProvider);
 
         registerStaticWebResource(String.format("/%s", getId()), "/webapp");
     }
+
+    /* (non-Javadoc)
+     * @see org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
+     */
+    @Override
+    public void stop(BundleContext bundleContext) throws Exception {
+        // Removing the MBean, it would otherwise keep the stopped provider and its caches in memory until the
+        // next deployment replaces it.
+        metricsSink.unregister();
+
+        // Stopping the crawls, the batch fetchers and the read-ahead, their threads would otherwise keep the
+        // classes of the stopped bundle in memory.
+        if (videoGameGamesCustomRecordProvider != null) {
+            videoGameGamesCustomRecordProvider.stop();
+        }
+
+        super.stop(bundleContext);
+    }
 }
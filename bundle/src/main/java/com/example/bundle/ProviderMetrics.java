@@ -0,0 +1,311 @@
+package com.example.bundle;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latencies of the provider, to see where the time of a grid goes and how often Rawg.io is called.
+ * <p>
+ * Measured by the provider:
+ * - the latency of each request type (grid page, count, record instance, batch of record instances) and its errors,
+ * - the latency of each stage of a request: reading the definitions, translating the grid query to a Rawg.io
+ * qualification, and the Web Api call itself (getRecordInstancesByIdDataPage(), rate limiter wait excluded),
+ * - the Web Api calls failing, throttled by Rawg.io (HTTP 429) or rejected by the {@link UpstreamRateLimiter},
+ * - the Rawg.io pages needed per grid page, how often a grid page needs a second Rawg.io page, and the pages not
+ * requested as the Rawg.io "count" showed they would be empty.
+ * The hits and misses of the caches, and the other counters the components already keep, are added as gauges, read
+ * only when the metrics are read.
+ * <p>
+ * Everything is counted since the provider was created, with {@link LongAdder}, so recording costs next to nothing
+ * on the request threads. The metrics are published by a {@link MetricsSink}, for example over JMX.
+ */
+final class ProviderMetrics {
+    /**
+     * Stages of a request.
+     */
+    enum Stage {
+        METADATA("stage.metadata"),
+        QUERY_TRANSLATION("stage.queryTranslation"),
+        UPSTREAM_CALL("stage.upstreamCall");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Requests received from the Platform.
+     */
+    enum RequestType {
+        LIST("request.list"),
+        COUNT("request.count"),
+        RECORD_INSTANCE("request.recordInstance"),
+        RECORD_INSTANCES("request.recordInstances");
+
+        private final String name;
+
+        RequestType(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final Map<Stage, LatencyHistogram> stageLatencies = new EnumMap<>(Stage.class);
+    private final Map<RequestType, LatencyHistogram> requestLatencies = new EnumMap<>(RequestType.class);
+    private final Map<RequestType, LongAdder> requestErrors = new EnumMap<>(RequestType.class);
+    private final LongAdder upstreamErrors = new LongAdder();
+    private final LongAdder upstreamThrottled = new LongAdder();
+    private final LongAdder upstreamRejected = new LongAdder();
+    private final LongAdder gridPages = new LongAdder();
+    private final LongAdder gridPagesWithSeveralRawgioPages = new LongAdder();
+    private final LongAdder rawgioPagesForGridPages = new LongAdder();
+    private final LongAdder mirroredGridPages = new LongAdder();
+    private final LongAdder truncatedMirrorFallbacks = new LongAdder();
+    private final LongAdder partiallyFilteredGridPages = new LongAdder();
+    private final LongAdder skippedRawgioPages = new LongAdder();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    ProviderMetrics() {
+        for (Stage stage : Stage.values()) {
+            stageLatencies.put(stage, new LatencyHistogram());
+        }
+
+        for (RequestType requestType : RequestType.values()) {
+            requestLatencies.put(requestType, new LatencyHistogram());
+            requestErrors.put(requestType, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs a request and records its latency, and its error if it fails.
+     *
+     * @param requestType RequestType, the type of request.
+     * @param request     Supplier<T>, the request.
+     * @param <T>         result type.
+     * @return T, the result of the request.
+     */
+    <T> T time(RequestType requestType, Supplier<T> request) {
+        return time(requestType, System.nanoTime(), request);
+    }
+
+    /**
+     * Runs a request started earlier and records its latency, and its error if it fails. Used when the type of the
+     * request is only known once some of its work is done.
+     *
+     * @param requestType RequestType, the type of request.
+     * @param startNanos  long, System.nanoTime() when the request started.
+     * @param request     Supplier<T>, the rest of the request.
+     * @param <T>         result type.
+     * @return T, the result of the request.
+     */
+    <T> T time(RequestType requestType, long startNanos, Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (RuntimeException | Error e) {
+            requestErrors.get(requestType).increment();
+            throw e;
+        } finally {
+            requestLatencies.get(requestType).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Runs a stage of a request and records its latency, whether it succeeds or not.
+     *
+     * @param stage Stage, the stage.
+     * @param work  Supplier<T>, the work of the stage.
+     * @param <T>   result type.
+     * @return T, the result of the stage.
+     */
+    <T> T time(Stage stage, Supplier<T> work) {
+        long startNanos = System.nanoTime();
+
+        try {
+            return work.get();
+        } finally {
+            stageLatencies.get(stage).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records the latency of a stage measured by the caller.
+     *
+     * @param stage Stage, the stage.
+     * @param nanos long, the duration in nanoseconds.
+     */
+    void record(Stage stage, long nanos) {
+        stageLatencies.get(stage).record(nanos);
+    }
+
+    /**
+     * Counts a failed Web Api call, sorted by cause.
+     *
+     * @param error RuntimeException, the error thrown by the call or by the rate limiter.
+     */
+    void recordUpstreamError(RuntimeException error) {
+        if (error instanceof WebApiCallRejectedException) {
+            upstreamRejected.increment();
+        } else if (UpstreamRateLimiter.isThrottlingError(error)) {
+            upstreamThrottled.increment();
+        } else {
+            upstreamErrors.increment();
+        }
+    }
+
+    /**
+     * Counts a grid page answered with Rawg.io pages, from the caches or not.
+     *
+     * @param rawgioPages int, number of Rawg.io pages the grid page was built from.
+     */
+    void recordGridPage(int rawgioPages) {
+        gridPages.increment();
+        rawgioPagesForGridPages.add(rawgioPages);
+
+        if (rawgioPages > 1) {
+            gridPagesWithSeveralRawgioPages.increment();
+        }
+    }
+
+    void recordMirroredGridPage() {
+        mirroredGridPages.increment();
+    }
+
+    /**
+     * Counts a grid page answered by Rawg.io in mirror mode, as the copy of the games is truncated, see
+     * {@link ProviderSettings#getMirrorMaxRecords()}.
+     */
+    void recordTruncatedMirrorFallback() {
+        truncatedMirrorFallbacks.increment();
+    }
+
+    /**
+     * Counts a grid page, or a count, answered by Rawg.io without some conditions of its queryExpression, which
+     * Rawg.io cannot apply. The grid then shows more games than asked.
+     */
+    void recordPartiallyFilteredGridPage() {
+        partiallyFilteredGridPages.increment();
+    }
+
+    /**
+     * @param rawgioPages int, number of Rawg.io pages of a grid page not requested, being past the end of the results.
+     */
+    void recordSkippedRawgioPages(int rawgioPages) {
+        skippedRawgioPages.add(rawgioPages);
+    }
+
+    /**
+     * Adds a value read from another component when the metrics are read, for example the size of a cache.
+     *
+     * @param name  String, name of the metric.
+     * @param value LongSupplier, reads the current value.
+     */
+    void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Adds the hits, misses, evictions and size of a cache. The hit ratio is computed when the metrics are read.
+     *
+     * @param name  String, name of the cache, for example "dataPage".
+     * @param cache TtlLruCache<?, ?>, the cache.
+     */
+    void registerCache(String name, TtlLruCache<?, ?> cache) {
+        registerGauge("cache." + name + ".hits", cache::getHitCount);
+        registerGauge("cache." + name + ".misses", cache::getMissCount);
+        registerGauge("cache." + name + ".evictions", cache::getEvictionCount);
+        registerGauge("cache." + name + ".size", cache::size);
+    }
+
+    /**
+     * Reads all the metrics. The counters are read one after the other while requests keep running, so two related
+     * values can be off by a few requests.
+     *
+     * @return Map<String, Number>, the metrics by name, sorted by name. Durations are in microseconds.
+     */
+    Map<String, Number> snapshot() {
+        Map<String, Number> metrics = new TreeMap<>();
+        long upstreamCalls = stageLatencies.get(Stage.UPSTREAM_CALL).getCount();
+
+        for (RequestType requestType : RequestType.values()) {
+            LatencyHistogram latencies = requestLatencies.get(requestType);
+            long errors = requestErrors.get(requestType).sum();
+
+            putLatencies(metrics, requestType.name, latencies);
+            metrics.put(requestType.name + ".errors", errors);
+            metrics.put(requestType.name + ".errorRatio", ratio(errors, latencies.getCount()));
+        }
+
+        for (Stage stage : Stage.values()) {
+            putLatencies(metrics, stage.name, stageLatencies.get(stage));
+        }
+
+        // The rejected calls never reached Rawg.io, they are not part of the upstream calls.
+        metrics.put("upstream.errors", upstreamErrors.sum());
+        metrics.put("upstream.throttled", upstreamThrottled.sum());
+        metrics.put("upstream.rejected", upstreamRejected.sum());
+        metrics.put("upstream.errorRatio", ratio(upstreamErrors.sum() + upstreamThrottled.sum(), upstreamCalls));
+        metrics.put("upstream.throttledRatio", ratio(upstreamThrottled.sum(), upstreamCalls));
+
+        metrics.put("gridPage.count", gridPages.sum());
+        metrics.put("gridPage.mirrored", mirroredGridPages.sum());
+        metrics.put("gridPage.truncatedMirrorFallbacks", truncatedMirrorFallbacks.sum());
+        metrics.put("gridPage.partiallyFiltered", partiallyFilteredGridPages.sum());
+        metrics.put("gridPage.severalRawgioPages", gridPagesWithSeveralRawgioPages.sum());
+        metrics.put("gridPage.severalRawgioPagesRatio", ratio(gridPagesWithSeveralRawgioPages.sum(), gridPages.sum()));
+        metrics.put("gridPage.rawgioPagesPerGridPage", ratio(rawgioPagesForGridPages.sum(), gridPages.sum()));
+        metrics.put("gridPage.skippedRawgioPages", skippedRawgioPages.sum());
+        // All the Web Api calls, including the count, record instance, prefetch, refresh and crawl calls, as they
+        // run on other threads than the grid request. It tells how much of Rawg.io a grid page costs overall.
+        metrics.put("gridPage.upstreamCallsPerGridPage", ratio(upstreamCalls, gridPages.sum()));
+
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            metrics.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            String name = gauge.getKey();
+
+            if (name.startsWith("cache.") && name.endsWith(".hits")) {
+                String cacheName = name.substring(0, name.length() - ".hits".length());
+                Number misses = metrics.get(cacheName + ".misses");
+                long hits = metrics.get(name).longValue();
+
+                if (misses != null) {
+                    metrics.put(cacheName + ".hitRatio", ratio(hits, hits + misses.longValue()));
+                }
+            }
+        }
+
+        return metrics;
+    }
+
+    private static void putLatencies(Map<String, Number> metrics, String name, LatencyHistogram latencies) {
+        metrics.put(name + ".count", latencies.getCount());
+        metrics.put(name + ".meanMicros", latencies.getMeanNanos() / NANOS_PER_MICRO);
+        metrics.put(name + ".p50Micros", latencies.getPercentileNanos(50) / NANOS_PER_MICRO);
+        metrics.put(name + ".p90Micros", latencies.getPercentileNanos(90) / NANOS_PER_MICRO);
+        metrics.put(name + ".p99Micros", latencies.getPercentileNanos(99) / NANOS_PER_MICRO);
+        metrics.put(name + ".maxMicros", latencies.getMaxNanos() / NANOS_PER_MICRO);
+    }
+
+    private static double ratio(long numerator, long denominator) {
+        return denominator > 0 ? (double) numerator / denominator : 0d;
+    }
+
+    LatencyHistogram getLatencies(Stage stage) {
+        return stageLatencies.get(stage);
+    }
+
+    LatencyHistogram getLatencies(RequestType requestType) {
+        return requestLatencies.get(requestType);
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.bundle;
+
+import java.util.Objects;
+
+/**
+ * Settings of the provider for one Web Api Record Definition.
+ * <p>
+ * There is no configuration screen for a Custom Record Definition provider, so the settings are read from Java
+ * system properties (set in the server JVM options for example). A setting can be set for all the Web Api
+ * Record Definitions:
+ * -Dcom.example.bundle.concurrentFetch=false
+ * or only for one Web Api Record Definition, suffixing the property with its name:
+ * -Dcom.example.bundle.concurrentFetch.com.example.games:Rawg Games=false
+ * <p>
+ * Settings are immutable, they are loaded with the {@link WebApiRecordDefinitionMetadata} and are refreshed
+ * at the same time.
+ */
+final class ProviderSettings {
+    private static final String PROPERTY_ROOT = "com.example.bundle.";
+
+    private final boolean concurrentFetch;
+    private final int dataPageCacheTimeToLiveSeconds;
+    private final int countCacheTimeToLiveSeconds;
+    private final int rateLimitPerSecond;
+    private final int rateLimitBurst;
+    private final int maxConcurrentCalls;
+    private final int callQueueTimeoutMillis;
+    private final int prefetchPages;
+    private final int dataPageMaxStaleSeconds;
+    private final int batchFetchParallelism;
+    private final boolean mirror;
+    private final int mirrorRefreshSeconds;
+    private final int mirrorMaxRecords;
+    private final int requestTimeoutMillis;
+    private final int circuitBreakerFailureThreshold;
+    private final int circuitBreakerOpenSeconds;
+    private final int hedgeDelayMillis;
+
+    private ProviderSettings(boolean concurrentFetch, int dataPageCacheTimeToLiveSeconds, int countCacheTimeToLiveSeconds,
+                             int rateLimitPerSecond, int rateLimitBurst, int maxConcurrentCalls, int callQueueTimeoutMillis,
+                             int prefetchPages, int dataPageMaxStaleSeconds, int batchFetchParallelism,
+                             boolean mirror, int mirrorRefreshSeconds, int mirrorMaxRecords,
+                             int requestTimeoutMillis, int circuitBreakerFailureThreshold, int circuitBreakerOpenSeconds,
+                             int hedgeDelayMillis) {
+        this.concurrentFetch = concurrentFetch;
+        this.dataPageCacheTimeToLiveSeconds = dataPageCacheTimeToLiveSeconds;
+        this.countCacheTimeToLiveSeconds = countCacheTimeToLiveSeconds;
+        this.rateLimitPerSecond = rateLimitPerSecond;
+        this.rateLimitBurst = rateLimitBurst;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.callQueueTimeoutMillis = callQueueTimeoutMillis;
+        this.prefetchPages = prefetchPages;
+        this.dataPageMaxStaleSeconds = dataPageMaxStaleSeconds;
+        this.batchFetchParallelism = batchFetchParallelism;
+        this.mirror = mirror;
+        this.mirrorRefreshSeconds = mirrorRefreshSeconds;
+        this.mirrorMaxRecords = mirrorMaxRecords;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+        this.circuitBreakerOpenSeconds = circuitBreakerOpenSeconds;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /**
+     * Loads the settings of a Web Api Record Definition.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @return ProviderSettings, the settings.
+     */
+    static ProviderSettings load(String webApiRecordDefinitionName) {
+        return new ProviderSettings(
+                getBoolean("concurrentFetch", webApiRecordDefinitionName, true),
+                getInt("dataPageCacheTimeToLiveSeconds", webApiRecordDefinitionName, 60),
+                getInt("countCacheTimeToLiveSeconds", webApiRecordDefinitionName, 30),
+                getInt("rateLimitPerSecond", webApiRecordDefinitionName, 10),
+                getInt("rateLimitBurst", webApiRecordDefinitionName, 20),
+                getInt("maxConcurrentCalls", webApiRecordDefinitionName, 8),
+                getInt("callQueueTimeoutMillis", webApiRecordDefinitionName, 5000),
+                getInt("prefetchPages", webApiRecordDefinitionName, 0),
+                getInt("dataPageMaxStaleSeconds", webApiRecordDefinitionName, 0),
+                getInt("batchFetchParallelism", webApiRecordDefinitionName, 8),
+                getBoolean("mirror", webApiRecordDefinitionName, false),
+                getInt("mirrorRefreshSeconds", webApiRecordDefinitionName, 3600),
+                getInt("mirrorMaxRecords", webApiRecordDefinitionName, 10000),
+                getInt("requestTimeoutMillis", webApiRecordDefinitionName, 15000),
+                getInt("circuitBreakerFailureThreshold", webApiRecordDefinitionName, 5),
+                getInt("circuitBreakerOpenSeconds", webApiRecordDefinitionName, 30),
+                getInt("hedgeDelayMillis", webApiRecordDefinitionName, 0));
+    }
+
+    /**
+     * Returns a setting that is shared by all the Web Api Record Definitions, for example the size of a thread pool.
+     *
+     * @param key          String, setting name, without the "com.example.bundle." root.
+     * @param defaultValue int, value returned if the setting is not set or is not a number.
+     * @return int, the setting value.
+     */
+    static int getGlobalInt(String key, int defaultValue) {
+        return parseInt(System.getProperty(PROPERTY_ROOT + key), defaultValue);
+    }
+
+    /**
+     * Returns a text setting that is shared by all the Web Api Record Definitions, for example a file path.
+     *
+     * @param key          String, setting name, without the "com.example.bundle." root.
+     * @param defaultValue String, value returned if the setting is not set or is blank.
+     * @return String, the setting value.
+     */
+    static String getGlobalString(String key, String defaultValue) {
+        String value = System.getProperty(PROPERTY_ROOT + key);
+
+        return value != null && !value.isBlank() ? value.trim() : defaultValue;
+    }
+
+    private static String getProperty(String key, String webApiRecordDefinitionName) {
+        String value = System.getProperty(PROPERTY_ROOT + key + "." + webApiRecordDefinitionName);
+
+        return value != null ? value : System.getProperty(PROPERTY_ROOT + key);
+    }
+
+    private static boolean getBoolean(String key, String webApiRecordDefinitionName, boolean defaultValue) {
+        String value = getProperty(key, webApiRecordDefinitionName);
+
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    private static int getInt(String key, String webApiRecordDefinitionName, int defaultValue) {
+        return parseInt(getProperty(key, webApiRecordDefinitionName), defaultValue);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * When true, the Rawg.io pages needed to build one grid page are fetched at the same time instead of one
+     * after the other.
+     * It can be disabled if the Platform ever requires the calls to be done from the request thread.
+     *
+     * @return boolean, true if the pages are fetched concurrently.
+     */
+    boolean isConcurrentFetch() {
+        return concurrentFetch;
+    }
+
+    /**
+     * How long a DataPage returned by the Web Api Record Definition is kept in memory and served again for the
+     * same query, 0 disables the cache.
+     *
+     * @return int, time to live in seconds.
+     */
+    int getDataPageCacheTimeToLiveSeconds() {
+        return dataPageCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * How long a count is kept in memory and served again for the same search and filters, 0 disables the cache.
+     *
+     * @return int, time to live in seconds.
+     */
+    int getCountCacheTimeToLiveSeconds() {
+        return countCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * Maximum number of calls per second to the Web Api Record Definition, 0 disables the rate limit.
+     * The limit is lowered automatically while Rawg.io throttles us, see {@link UpstreamRateLimiter}.
+     *
+     * @return int, calls per second.
+     */
+    int getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    /**
+     * Number of calls that can be done at once after a quiet period, before the rate limit applies.
+     *
+     * @return int, burst size.
+     */
+    int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * Maximum number of calls to the Web Api Record Definition in flight at the same time, 0 for no limit.
+     *
+     * @return int, maximum calls in flight.
+     */
+    int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * How long a call can wait for the rate limit or for a free slot before it is rejected.
+     *
+     * @return int, time in milliseconds.
+     */
+    int getCallQueueTimeoutMillis() {
+        return callQueueTimeoutMillis;
+    }
+
+    /**
+     * Number of Rawg.io pages read ahead when a grid is read page after page (1 or 2 is usually enough),
+     * 0 disables the read ahead. See {@link RawgioPagePrefetcher}.
+     *
+     * @return int, number of pages.
+     */
+    int getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    /**
+     * How long a cached DataPage can still be served once it is older than
+     * {@link #getDataPageCacheTimeToLiveSeconds()}. Such a stale DataPage is returned at once and refreshed in the
+     * background, and keeps being served if the refresh fails. 0 disables this stale-while-revalidate mode.
+     *
+     * @return int, maximum staleness in seconds.
+     */
+    int getDataPageMaxStaleSeconds() {
+        return dataPageMaxStaleSeconds;
+    }
+
+    /**
+     * Number of games fetched at the same time by {@link VideoGameGamesCustomRecordProvider#getRecordInstances}.
+     *
+     * @return int, number of parallel fetches, 1 or less fetches the games one after the other.
+     */
+    int getBatchFetchParallelism() {
+        return batchFetchParallelism;
+    }
+
+    /**
+     * When enabled, the games are copied in memory by a background crawl, and the grids are sorted, filtered and
+     * counted from that copy instead of calling Rawg.io, see {@link CatalogMirror}.
+     *
+     * @return boolean, true if the mirror mode is enabled.
+     */
+    boolean isMirror() {
+        return mirror;
+    }
+
+    /**
+     * How old the mirror can get before it is crawled again. The previous copy is served during the crawl.
+     *
+     * @return int, time in seconds.
+     */
+    int getMirrorRefreshSeconds() {
+        return mirrorRefreshSeconds;
+    }
+
+    /**
+     * Maximum number of games copied by the mirror, the crawl stops there even if Rawg.io has more games.
+     *
+     * @return int, number of games.
+     */
+    int getMirrorMaxRecords() {
+        return mirrorMaxRecords;
+    }
+
+    /**
+     * Time a request can spend waiting for the Web Api Record Definition, all its Rawg.io pages included, before it
+     * fails with a {@link WebApiCallRejectedException}. 0 disables the deadline. See {@link RequestDeadline}.
+     * A call slower than this is also counted as a failure by the {@link UpstreamCircuitBreaker}.
+     *
+     * @return int, time in milliseconds.
+     */
+    int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Number of failed calls in a row after which the calls to the Web Api Record Definition are suspended, 0
+     * disables the circuit breaker. See {@link UpstreamCircuitBreaker}.
+     *
+     * @return int, number of failed calls.
+     */
+    int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * How long the calls are suspended once the circuit breaker opened, before a single call is tried again.
+     *
+     * @return int, time in seconds.
+     */
+    int getCircuitBreakerOpenSeconds() {
+        return circuitBreakerOpenSeconds;
+    }
+
+    /**
+     * When a call did not answer after this delay, the same call is sent a second time and the first answer is
+     * used, provided the rate limiter has spare capacity. Set it around the usual 95th percentile of the Rawg.io
+     * latency, 0 disables it.
+     *
+     * @return int, time in milliseconds.
+     */
+    int getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof ProviderSettings)) {
+            return false;
+        }
+
+        ProviderSettings that = (ProviderSettings) o;
+
+        return concurrentFetch == that.concurrentFetch
+                && dataPageCacheTimeToLiveSeconds == that.dataPageCacheTimeToLiveSeconds
+                && countCacheTimeToLiveSeconds == that.countCacheTimeToLiveSeconds
+                && rateLimitPerSecond == that.rateLimitPerSecond
+                && rateLimitBurst == that.rateLimitBurst
+                && maxConcurrentCalls == that.maxConcurrentCalls
+                && callQueueTimeoutMillis == that.callQueueTimeoutMillis
+                && prefetchPages == that.prefetchPages
+                && dataPageMaxStaleSeconds == that.dataPageMaxStaleSeconds
+                && batchFetchParallelism == that.batchFetchParallelism
+                && mirror == that.mirror
+                && mirrorRefreshSeconds == that.mirrorRefreshSeconds
+                && mirrorMaxRecords == that.mirrorMaxRecords
+                && requestTimeoutMillis == that.requestTimeoutMillis
+                && circuitBreakerFailureThreshold == that.circuitBreakerFailureThreshold
+                && circuitBreakerOpenSeconds == that.circuitBreakerOpenSeconds
+                && hedgeDelayMillis == that.hedgeDelayMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(concurrentFetch, dataPageCacheTimeToLiveSeconds, countCacheTimeToLiveSeconds,
+                rateLimitPerSecond, rateLimitBurst, maxConcurrentCalls, callQueueTimeoutMillis, prefetchPages,
+                dataPageMaxStaleSeconds, batchFetchParallelism, mirror, mirrorRefreshSeconds, mirrorMaxRecords,
+                requestTimeoutMillis, circuitBreakerFailureThreshold, circuitBreakerOpenSeconds, hedgeDelayMillis);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.bundle;
+
+import java.util.*;
+
+/**
+ * A parsed grid queryExpression, for example:
+ * ('536870913' = "test" OR '536870913' LIKE "%foobar%") AND ('536870916' = "187" OR '536870916' = "4")
+ * <p>
+ * The expression is kept as a tree of {@link And}, {@link Or}, {@link Not} and {@link Condition} nodes, so the
+ * AND / OR structure is not lost. A QueryExpression is immutable and is built once per expression string by
+ * {@link QueryExpressionParser}, then shared by all the requests using the same expression.
+ */
+final class QueryExpression {
+    /**
+     * Expression of an empty queryExpression, it has no condition.
+     */
+    static final QueryExpression EMPTY = new QueryExpression(new And(List.of()));
+
+    private final Node root;
+    private final Map<String, List<Condition>> conditionsByFieldId;
+    private final List<Condition> negatedConditions;
+
+    QueryExpression(Node root) {
+        Map<String, List<Condition>> conditionsByFieldId = new LinkedHashMap<>();
+        List<Condition> negatedConditions = new ArrayList<>();
+
+        root.collectConditions(conditionsByFieldId, negatedConditions, false);
+        conditionsByFieldId.replaceAll((fieldId, conditions) -> Collections.unmodifiableList(conditions));
+
+        this.root = root;
+        this.conditionsByFieldId = Collections.unmodifiableMap(conditionsByFieldId);
+        this.negatedConditions = Collections.unmodifiableList(negatedConditions);
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Map<String, List<Condition>>, the conditions of the expression that are not under a NOT, per field Id,
+     * in the order they appear in the expression.
+     */
+    Map<String, List<Condition>> getConditionsByFieldId() {
+        return conditionsByFieldId;
+    }
+
+    /**
+     * @param fieldId String, field Id.
+     * @return List<Condition>, the conditions on this field that are not under a NOT, empty if there is none.
+     */
+    List<Condition> getConditions(String fieldId) {
+        return conditionsByFieldId.getOrDefault(fieldId, List.of());
+    }
+
+    /**
+     * @return List<Condition>, the conditions under a NOT, Rawg.io has no query parameter to exclude values.
+     */
+    List<Condition> getNegatedConditions() {
+        return negatedConditions;
+    }
+
+    boolean isEmpty() {
+        return conditionsByFieldId.isEmpty() && negatedConditions.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    /**
+     * Comparison operators of a qualification.
+     */
+    enum Operator {
+        EQUAL("="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER(">"),
+        GREATER_OR_EQUAL(">="),
+        LIKE("LIKE");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        String getSymbol() {
+            return symbol;
+        }
+    }
+
+    abstract static class Node {
+        /**
+         * Adds the conditions of this node, either to the conditions per field Id or to the negated conditions.
+         *
+         * @param negated boolean, true when the node is under an odd number of NOT.
+         */
+        abstract void collectConditions(Map<String, List<Condition>> conditionsByFieldId, List<Condition> negatedConditions, boolean negated);
+    }
+
+    static final class And extends Node {
+        private final List<Node> operands;
+
+        And(List<Node> operands) {
+            this.operands = List.copyOf(operands);
+        }
+
+        List<Node> getOperands() {
+            return operands;
+        }
+
+        @Override
+        void collectConditions(Map<String, List<Condition>> conditionsByFieldId, List<Condition> negatedConditions, boolean negated) {
+            for (Node operand : operands) {
+                operand.collectConditions(conditionsByFieldId, negatedConditions, negated);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " AND ");
+        }
+    }
+
+    static final class Or extends Node {
+        private final List<Node> operands;
+
+        Or(List<Node> operands) {
+            this.operands = List.copyOf(operands);
+        }
+
+        List<Node> getOperands() {
+            return operands;
+        }
+
+        @Override
+        void collectConditions(Map<String, List<Condition>> conditionsByFieldId, List<Condition> negatedConditions, boolean negated) {
+            for (Node operand : operands) {
+                operand.collectConditions(conditionsByFieldId, negatedConditions, negated);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+
+    static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        Node getOperand() {
+            return operand;
+        }
+
+        @Override
+        void collectConditions(Map<String, List<Condition>> conditionsByFieldId, List<Condition> negatedConditions, boolean negated) {
+            operand.collectConditions(conditionsByFieldId, negatedConditions, !negated);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT (" + operand + ")";
+        }
+    }
+
+    /**
+     * A comparison between a field and a value: '536870913' LIKE "%foobar%"
+     * The value is unescaped (a doubled double quote is a single one). Keywords such as $NULL$ and numbers are
+     * kept as written.
+     */
+    static final class Condition extends Node {
+        private final String fieldId;
+        private final Operator operator;
+        private final String value;
+
+        Condition(String fieldId, Operator operator, String value) {
+            this.fieldId = fieldId;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        String getFieldId() {
+            return fieldId;
+        }
+
+        Operator getOperator() {
+            return operator;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        @Override
+        void collectConditions(Map<String, List<Condition>> conditionsByFieldId, List<Condition> negatedConditions, boolean negated) {
+            if (negated) {
+                negatedConditions.add(this);
+            } else {
+                conditionsByFieldId.computeIfAbsent(fieldId, key -> new ArrayList<>()).add(this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "'" + fieldId + "' " + operator.getSymbol() + " \"" + value.replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    private static String join(List<Node> operands, String separator) {
+        StringJoiner joiner = new StringJoiner(separator, "(", ")");
+
+        for (Node operand : operands) {
+            joiner.add(operand.toString());
+        }
+
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parses the queryExpression sent by a grid into a {@link QueryExpression}.
+ * <p>
+ * The grid builds its queryExpression from the columns filters and the global search, for example:
+ * ('536870913' = "test" OR '536870913' like "%foobar%") AND ('536870916' = "187" OR '536870916' = "4")
+ * AND ('536870913' LIKE "%foo%" OR '536870914' LIKE "%foo%")
+ * <p>
+ * The grammar is the one of a qualification, NOT has the highest priority and AND has a higher priority than OR:
+ * expression = and { (OR | ||) and }
+ * and        = unary { (AND | &&) unary }
+ * unary      = (NOT | !) unary | "(" expression ")" | condition
+ * condition  = 'fieldId' operator value
+ * operator   = "=" | "!=" | "<" | "<=" | ">" | ">=" | LIKE
+ * value      = "string, a double quote is doubled" | number | $KEYWORD$
+ * <p>
+ * A grid sends the same few expressions again and again (paging, sorting), so the parsed expressions are cached
+ * per expression string. The expressions that cannot be parsed are cached too, with their error.
+ * <p>
+ * The parentheses and the NOT can be nested at most {@link #MAX_NESTING_DEPTH} times, a deeper expression is not
+ * valid instead of overflowing the stack of the request thread.
+ * <p>
+ * The provider reads the expressions with {@link #parseOrEmpty(String)}: as with the regular expression used
+ * before, an expression it cannot read (an unknown keyword or character) does not filter the games instead of
+ * failing the grid.
+ */
+final class QueryExpressionParser {
+    private static final int DEFAULT_CACHE_SIZE = 500;
+    private static final long CACHE_TIME_TO_LIVE_NANOS = TimeUnit.HOURS.toNanos(1);
+    // The grid nests a few levels only, the columns filters inside the global search.
+    static final int MAX_NESTING_DEPTH = 64;
+
+    private final TtlLruCache<String, QueryExpression> queryExpressionCache;
+    // Error message by invalid expression.
+    private final TtlLruCache<String, String> invalidQueryExpressionCache;
+    private final LongAdder invalidQueryExpressions = new LongAdder();
+
+    QueryExpressionParser() {
+        int cacheSize = ProviderSettings.getGlobalInt("queryExpressionCacheSize", DEFAULT_CACHE_SIZE);
+        this.queryExpressionCache = new TtlLruCache<>(cacheSize, CACHE_TIME_TO_LIVE_NANOS);
+        this.invalidQueryExpressionCache = new TtlLruCache<>(cacheSize, CACHE_TIME_TO_LIVE_NANOS);
+    }
+
+    /**
+     * Returns the parsed expression, from the cache if it was already parsed.
+     *
+     * @param queryExpression String, the queryExpression, can be null or empty.
+     * @return QueryExpression, the parsed expression, {@link QueryExpression#EMPTY} if there is nothing to parse.
+     * @throws IllegalArgumentException if the expression is not a valid qualification.
+     */
+    QueryExpression parse(String queryExpression) {
+        if (queryExpression == null || queryExpression.isBlank()) {
+            return QueryExpression.EMPTY;
+        }
+
+        QueryExpression parsedQueryExpression = queryExpressionCache.get(queryExpression);
+
+        if (parsedQueryExpression == null) {
+            String errorMessage = invalidQueryExpressionCache.get(queryExpression);
+
+            if (errorMessage != null) {
+                throw new IllegalArgumentException(errorMessage);
+            }
+
+            try {
+                parsedQueryExpression = new QueryExpression(new Parser(queryExpression).parse());
+            } catch (IllegalArgumentException e) {
+                invalidQueryExpressionCache.put(queryExpression, e.getMessage());
+                throw e;
+            }
+
+            queryExpressionCache.put(queryExpression, parsedQueryExpression);
+        }
+
+        return parsedQueryExpression;
+    }
+
+    /**
+     * Returns the parsed expression, or no condition at all if the expression is not a valid qualification.
+     *
+     * @param queryExpression String, the queryExpression, can be null or empty.
+     * @return QueryExpression, the parsed expression, {@link QueryExpression#EMPTY} if there is nothing to parse or
+     * if it is not valid.
+     */
+    QueryExpression parseOrEmpty(String queryExpression) {
+        try {
+            return parse(queryExpression);
+        } catch (IllegalArgumentException e) {
+            invalidQueryExpressions.increment();
+            return QueryExpression.EMPTY;
+        }
+    }
+
+    long getInvalidQueryExpressionCount() {
+        return invalidQueryExpressions.sum();
+    }
+
+    TtlLruCache<String, QueryExpression> getQueryExpressionCache() {
+        return queryExpressionCache;
+    }
+
+    TtlLruCache<String, String> getInvalidQueryExpressionCache() {
+        return invalidQueryExpressionCache;
+    }
+
+    private enum TokenType {
+        FIELD,
+        STRING,
+        NUMBER,
+        KEYWORD,
+        OPERATOR,
+        AND,
+        OR,
+        NOT,
+        OPEN_PARENTHESIS,
+        CLOSE_PARENTHESIS,
+        END
+    }
+
+    /**
+     * Recursive descent parser, reading the tokens directly from the expression string (one token of look ahead).
+     * Not thread safe, one Parser is created per parsed expression.
+     */
+    private static final class Parser {
+        private final String input;
+        private int position;
+        private TokenType tokenType;
+        private String tokenValue;
+        private int tokenStart;
+        private int depth;
+
+        Parser(String input) {
+            this.input = input;
+            nextToken();
+        }
+
+        QueryExpression.Node parse() {
+            QueryExpression.Node node = parseOr();
+
+            if (tokenType != TokenType.END) {
+                throw error("Unexpected " + describeToken());
+            }
+
+            return node;
+        }
+
+        private QueryExpression.Node parseOr() {
+            QueryExpression.Node node = parseAnd();
+
+            if (tokenType != TokenType.OR) {
+                return node;
+            }
+
+            List<QueryExpression.Node> operands = new ArrayList<>();
+            addOperand(operands, node, QueryExpression.Or.class);
+
+            while (tokenType == TokenType.OR) {
+                nextToken();
+                addOperand(operands, parseAnd(), QueryExpression.Or.class);
+            }
+
+            return new QueryExpression.Or(operands);
+        }
+
+        private QueryExpression.Node parseAnd() {
+            QueryExpression.Node node = parseUnary();
+
+            if (tokenType != TokenType.AND) {
+                return node;
+            }
+
+            List<QueryExpression.Node> operands = new ArrayList<>();
+            addOperand(operands, node, QueryExpression.And.class);
+
+            while (tokenType == TokenType.AND) {
+                nextToken();
+                addOperand(operands, parseUnary(), QueryExpression.And.class);
+            }
+
+            return new QueryExpression.And(operands);
+        }
+
+        /**
+         * (a AND b) AND c is flattened to a AND b AND c, the grid adds a lot of parentheses.
+         */
+        private static void addOperand(List<QueryExpression.Node> operands, QueryExpression.Node operand, Class<? extends QueryExpression.Node> type) {
+            if (type == QueryExpression.And.class && operand instanceof QueryExpression.And) {
+                operands.addAll(((QueryExpression.And) operand).getOperands());
+            } else if (type == QueryExpression.Or.class && operand instanceof QueryExpression.Or) {
+                operands.addAll(((QueryExpression.Or) operand).getOperands());
+            } else {
+                operands.add(operand);
+            }
+        }
+
+        private QueryExpression.Node parseUnary() {
+            switch (tokenType) {
+                case NOT:
+                    enterNesting();
+                    nextToken();
+                    QueryExpression.Node negatedNode = new QueryExpression.Not(parseUnary());
+                    depth--;
+                    return negatedNode;
+                case OPEN_PARENTHESIS:
+                    enterNesting();
+                    nextToken();
+                    QueryExpression.Node node = parseOr();
+                    expect(TokenType.CLOSE_PARENTHESIS);
+                    depth--;
+                    return node;
+                case FIELD:
+                    return parseCondition();
+                default:
+                    throw error("Unexpected " + describeToken());
+            }
+        }
+
+        /**
+         * Each parenthesis and NOT recurses, the depth is limited so a crafted expression cannot overflow the stack.
+         */
+        private void enterNesting() {
+            if (++depth > MAX_NESTING_DEPTH) {
+                throw error("Nested deeper than " + MAX_NESTING_DEPTH + " levels");
+            }
+        }
+
+        private QueryExpression.Node parseCondition() {
+            String fieldId = tokenValue;
+            nextToken();
+
+            if (tokenType != TokenType.OPERATOR) {
+                throw error("Operator expected after field '" + fieldId + "', found " + describeToken());
+            }
+
+            QueryExpression.Operator operator = toOperator(tokenValue);
+            nextToken();
+
+            if (tokenType != TokenType.STRING && tokenType != TokenType.NUMBER && tokenType != TokenType.KEYWORD) {
+                throw error("Value expected after '" + fieldId + "' " + operator.getSymbol() + ", found " + describeToken());
+            }
+
+            String value = tokenValue;
+            nextToken();
+
+            return new QueryExpression.Condition(fieldId, operator, value);
+        }
+
+        private static QueryExpression.Operator toOperator(String symbol) {
+            switch (symbol) {
+                case "=":
+                    return QueryExpression.Operator.EQUAL;
+                case "!=":
+                    return QueryExpression.Operator.NOT_EQUAL;
+                case "<":
+                    return QueryExpression.Operator.LESS;
+                case "<=":
+                    return QueryExpression.Operator.LESS_OR_EQUAL;
+                case ">":
+                    return QueryExpression.Operator.GREATER;
+                case ">=":
+                    return QueryExpression.Operator.GREATER_OR_EQUAL;
+                default:
+                    return QueryExpression.Operator.LIKE;
+            }
+        }
+
+        private void expect(TokenType expectedTokenType) {
+            if (tokenType != expectedTokenType) {
+                throw error(expectedTokenType + " expected, found " + describeToken());
+            }
+
+            nextToken();
+        }
+
+        /**
+         * Reads the next token, setting tokenType, tokenValue and tokenStart.
+         */
+        private void nextToken() {
+            while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+                position++;
+            }
+
+            tokenStart = position;
+            tokenValue = null;
+
+            if (position >= input.length()) {
+                tokenType = TokenType.END;
+                return;
+            }
+
+            char c = input.charAt(position);
+
+            switch (c) {
+                case '(':
+                    position++;
+                    tokenType = TokenType.OPEN_PARENTHESIS;
+                    return;
+                case ')':
+                    position++;
+                    tokenType = TokenType.CLOSE_PARENTHESIS;
+                    return;
+                case '\'':
+                    tokenType = TokenType.FIELD;
+                    tokenValue = readQuoted('\'');
+                    return;
+                case '"':
+                    tokenType = TokenType.STRING;
+                    tokenValue = readQuoted('"');
+                    return;
+                case '$':
+                    int keywordEnd = input.indexOf('$', position + 1);
+
+                    if (keywordEnd < 0) {
+                        throw error("Unterminated keyword");
+                    }
+
+                    tokenType = TokenType.KEYWORD;
+                    tokenValue = input.substring(position, keywordEnd + 1);
+                    position = keywordEnd + 1;
+                    return;
+                case '=':
+                    position++;
+                    tokenType = TokenType.OPERATOR;
+                    tokenValue = "=";
+                    return;
+                case '<':
+                case '>':
+                    position++;
+                    tokenType = TokenType.OPERATOR;
+                    tokenValue = readOptionalEqual(c);
+                    return;
+                case '!':
+                    position++;
+
+                    if (position < input.length() && input.charAt(position) == '=') {
+                        position++;
+                        tokenType = TokenType.OPERATOR;
+                        tokenValue = "!=";
+                    } else {
+                        tokenType = TokenType.NOT;
+                    }
+                    return;
+                case '&':
+                case '|':
+                    if (position + 1 >= input.length() || input.charAt(position + 1) != c) {
+                        throw error("Unexpected character '" + c + "'");
+                    }
+
+                    position += 2;
+                    tokenType = c == '&' ? TokenType.AND : TokenType.OR;
+                    return;
+                default:
+                    break;
+            }
+
+            if (c == '-' || c == '.' || Character.isDigit(c)) {
+                int numberEnd = position + 1;
+
+                while (numberEnd < input.length() && (Character.isDigit(input.charAt(numberEnd)) || input.charAt(numberEnd) == '.')) {
+                    numberEnd++;
+                }
+
+                tokenType = TokenType.NUMBER;
+                tokenValue = input.substring(position, numberEnd);
+                position = numberEnd;
+                return;
+            }
+
+            if (Character.isLetter(c)) {
+                int wordEnd = position + 1;
+
+                while (wordEnd < input.length() && Character.isLetter(input.charAt(wordEnd))) {
+                    wordEnd++;
+                }
+
+                String word = input.substring(position, wordEnd);
+                position = wordEnd;
+
+                if (word.equalsIgnoreCase("AND")) {
+                    tokenType = TokenType.AND;
+                } else if (word.equalsIgnoreCase("OR")) {
+                    tokenType = TokenType.OR;
+                } else if (word.equalsIgnoreCase("NOT")) {
+                    tokenType = TokenType.NOT;
+                } else if (word.equalsIgnoreCase("LIKE")) {
+                    tokenType = TokenType.OPERATOR;
+                    tokenValue = "LIKE";
+                } else {
+                    position = tokenStart;
+                    throw error("Unexpected word '" + word + "'");
+                }
+
+                return;
+            }
+
+            throw error("Unexpected character '" + c + "'");
+        }
+
+        /**
+         * Reads a quoted field or string, a doubled quote inside it is a quote.
+         */
+        private String readQuoted(char quote) {
+            StringBuilder value = new StringBuilder();
+            position++;
+
+            while (position < input.length()) {
+                char c = input.charAt(position++);
+
+                if (c != quote) {
+                    value.append(c);
+                } else if (position < input.length() && input.charAt(position) == quote) {
+                    value.append(quote);
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            }
+
+            position = tokenStart;
+            throw error("Unterminated " + (quote == '"' ? "string" : "field"));
+        }
+
+        private String readOptionalEqual(char operator) {
+            if (position < input.length() && input.charAt(position) == '=') {
+                position++;
+                return operator + "=";
+            }
+
+            return String.valueOf(operator);
+        }
+
+        private String describeToken() {
+            return tokenType == TokenType.END ? "end of expression" : "'" + input.substring(tokenStart, Math.max(position, tokenStart + 1)) + "'";
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + tokenStart + " in queryExpression: " + input);
+        }
+    }
+}
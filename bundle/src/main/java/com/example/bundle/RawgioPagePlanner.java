@@ -0,0 +1,255 @@
+package com.example.bundle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Works out which Rawg.io pages to request to build a grid page.
+ * <p>
+ * A grid asks for a window of records (startIndex, pageSize), while Rawg.io only understands pages
+ * (page, page_size), the page being 1 based and page_size being at most 40. A Rawg.io page always covers
+ * the records [(page - 1) * page_size, page * page_size[, so not every window can be fetched with a
+ * single call. For example:
+ * startIndex = 0, pageSize = 50: page = 1, page_size = 25 and page = 2, page_size = 25.
+ * startIndex = 30, pageSize = 20: page = 2, page_size = 25 (records 25 to 49, 5 are dropped).
+ * startIndex = 10, pageSize = 10: page = 2, page_size = 10.
+ * <p>
+ * The planner returns the smallest number of Rawg.io calls covering the window and, for the same number
+ * of calls, the one fetching the fewest records. The Rawg.io pages of one plan never overlap, the records
+ * they return can be concatenated and the window is then obtained by dropping {@link Plan#getSkip()} records
+ * and keeping {@link Plan#getLimit()} records.
+ * <p>
+ * A window is limited to maxWindowSize records, a bigger pageSize only gets the first maxWindowSize records,
+ * so one grid page never turns into more than maxWindowSize / maxPageSize + 1 Rawg.io calls.
+ * <p>
+ * The grids page through the games with a fixed pageSize, so their windows are nearly always aligned: the window
+ * splits in equal Rawg.io pages beginning at startIndex. Those plans are computed directly, only the other windows
+ * search the best plan over every position of the window and every page_size. An aligned window is then split in
+ * the same Rawg.io pages as the grid pages next to it, which the DataPage cache and the read ahead can share.
+ */
+final class RawgioPagePlanner {
+    private final int maxPageSize;
+    private final int maxWindowSize;
+
+    /**
+     * @param maxPageSize   int, the biggest page_size accepted by Rawg.io.
+     * @param maxWindowSize int, the biggest window planned, in records.
+     */
+    RawgioPagePlanner(int maxPageSize, int maxWindowSize) {
+        this.maxPageSize = maxPageSize;
+        this.maxWindowSize = maxWindowSize;
+    }
+
+    /**
+     * Computes the Rawg.io pages to request for a window of records.
+     *
+     * @param startIndex int, index of the first record of the window (0 based).
+     * @param pageSize   int, number of records of the window, at most maxWindowSize are planned.
+     * @return Plan, the Rawg.io pages to request.
+     */
+    Plan plan(int startIndex, int pageSize) {
+        int start = Math.max(0, startIndex);
+        int windowSize = Math.min(Math.max(1, pageSize), maxWindowSize);
+        // The fewest calls possible, each fetching at most maxPageSize records.
+        int minCalls = (windowSize + maxPageSize - 1) / maxPageSize;
+
+        if (windowSize % minCalls == 0 && start % (windowSize / minCalls) == 0) {
+            return alignedPlan(start, windowSize, minCalls);
+        }
+
+        return searchPlan(start, windowSize);
+    }
+
+    /**
+     * Splits an aligned window in equal Rawg.io pages: the fewest calls, fetching no record outside the window.
+     */
+    private static Plan alignedPlan(int start, int windowSize, int calls) {
+        int pageSize = windowSize / calls;
+        ArrayList<PageRequest> pageRequests = new ArrayList<>(calls);
+
+        for (int call = 0; call < calls; call++) {
+            pageRequests.add(new PageRequest(start / pageSize + call + 1, pageSize));
+        }
+
+        return new Plan(Collections.unmodifiableList(pageRequests), 0, windowSize);
+    }
+
+    /**
+     * Searches the best plan over every position of the window and every page_size. Between plans as good, the
+     * first call is the smallest page.
+     *
+     * @param start      int, index of the first record of the window (0 based).
+     * @param windowSize int, number of records of the window, at most maxWindowSize.
+     * @return Plan, the Rawg.io pages to request.
+     */
+    Plan searchPlan(int start, int windowSize) {
+        int end = start + windowSize;
+
+        // Best choice found for each position to cover [position, end[, indexed by position - start and computed
+        // from the end of the window backwards, so the step after a position is always known. Only the first call
+        // may begin before the window (the records before startIndex are then dropped), the next ones must begin
+        // exactly where the previous one ended.
+        Step[] bestStepByOffset = new Step[windowSize];
+
+        for (int offset = windowSize - 1; offset > 0; offset--) {
+            int position = start + offset;
+            Step best = null;
+
+            for (int pageSizeCandidate = maxPageSize; pageSizeCandidate >= 1; pageSizeCandidate--) {
+                // A Rawg.io page can only begin at a multiple of its page_size.
+                if (position % pageSizeCandidate != 0) {
+                    continue;
+                }
+
+                Step step = buildStep(position, pageSizeCandidate, start, end, bestStepByOffset);
+
+                if (step != null && (best == null || step.isBetterThan(best))) {
+                    best = step;
+                }
+            }
+
+            bestStepByOffset[offset] = best;
+        }
+
+        Step firstStep = null;
+
+        for (int pageSizeCandidate = 1; pageSizeCandidate <= maxPageSize; pageSizeCandidate++) {
+            int blockStart = (start / pageSizeCandidate) * pageSizeCandidate;
+            Step step = buildStep(blockStart, pageSizeCandidate, start, end, bestStepByOffset);
+
+            if (step != null && (firstStep == null || step.isBetterThan(firstStep))) {
+                firstStep = step;
+            }
+        }
+
+        ArrayList<PageRequest> pageRequests = new ArrayList<>();
+
+        for (Step step = firstStep; step != null; step = step.next) {
+            pageRequests.add(new PageRequest(step.blockStart / step.pageSize + 1, step.pageSize));
+        }
+
+        return new Plan(Collections.unmodifiableList(pageRequests), start - firstStep.blockStart, windowSize);
+    }
+
+    /**
+     * Builds the step requesting the records [blockStart, blockStart + pageSize[, followed by the best
+     * steps covering the rest of the window, already computed as they begin further.
+     */
+    private static Step buildStep(int blockStart, int pageSize, int start, int end, Step[] bestStepByOffset) {
+        int blockEnd = blockStart + pageSize;
+
+        if (blockEnd >= end) {
+            return new Step(blockStart, pageSize, null);
+        }
+
+        Step next = bestStepByOffset[blockEnd - start];
+
+        return next != null ? new Step(blockStart, pageSize, next) : null;
+    }
+
+    private static final class Step {
+        private final int blockStart;
+        private final int pageSize;
+        private final Step next;
+        private final int calls;
+        private final int fetchedRecords;
+
+        private Step(int blockStart, int pageSize, Step next) {
+            this.blockStart = blockStart;
+            this.pageSize = pageSize;
+            this.next = next;
+            this.calls = next == null ? 1 : next.calls + 1;
+            this.fetchedRecords = next == null ? pageSize : next.fetchedRecords + pageSize;
+        }
+
+        private boolean isBetterThan(Step other) {
+            return calls < other.calls || (calls == other.calls && fetchedRecords < other.fetchedRecords);
+        }
+    }
+
+    /**
+     * One Rawg.io call, page and page_size query parameters.
+     */
+    static final class PageRequest {
+        private final int page;
+        private final int pageSize;
+
+        PageRequest(int page, int pageSize) {
+            this.page = page;
+            this.pageSize = pageSize;
+        }
+
+        int getPage() {
+            return page;
+        }
+
+        int getPageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return int, index (in the Rawg.io results) of the first record of the page.
+         */
+        int getStartIndex() {
+            return (page - 1) * pageSize;
+        }
+
+        /**
+         * @return int, index (in the Rawg.io results) following the last record of the page.
+         */
+        int getEndIndex() {
+            return page * pageSize;
+        }
+    }
+
+    /**
+     * The Rawg.io calls to perform, in order, and how to trim their concatenated records.
+     */
+    static final class Plan {
+        private final List<PageRequest> pageRequests;
+        private final int skip;
+        private final int limit;
+
+        Plan(List<PageRequest> pageRequests, int skip, int limit) {
+            this.pageRequests = pageRequests;
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        List<PageRequest> getPageRequests() {
+            return pageRequests;
+        }
+
+        /**
+         * @return int, number of records to drop at the beginning of the first Rawg.io page.
+         */
+        int getSkip() {
+            return skip;
+        }
+
+        /**
+         * @return int, number of records of the window.
+         */
+        int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Drops the Rawg.io pages that would be empty, once the number of results (the Rawg.io "count") is known.
+         *
+         * @param count int, number of results.
+         * @return Plan, the plan without the pages beginning at or after the end of the results. It has no page at
+         * all when the window begins after the end.
+         */
+        Plan truncate(int count) {
+            int pageCount = 0;
+
+            while (pageCount < pageRequests.size() && pageRequests.get(pageCount).getStartIndex() < count) {
+                pageCount++;
+            }
+
+            return pageCount == pageRequests.size() ? this : new Plan(pageRequests.subList(0, pageCount), skip, limit);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Reads ahead the next Rawg.io pages of a grid, when an End User goes through it page after page.
+ * <p>
+ * For each query (sort, search and filters, without the pagination) we remember where the last served grid page
+ * ended. When the next grid page begins exactly there, the End User is reading the grid in order, so once that
+ * page is served the next Rawg.io pages are loaded in the background into the DataPage cache, and the "next page"
+ * click is answered from memory.
+ * <p>
+ * The read ahead never competes with the End Users:
+ * - it stops at the end of the data, known from the Rawg.io "count" or from a page that is not full,
+ * - a page is only read ahead if the rate limiter has spare capacity, see {@link UpstreamRateLimiter#hasSpareCapacity()},
+ * - it is dropped if the background threads are busy.
+ */
+final class RawgioPagePrefetcher {
+    private static final int DEFAULT_TRACKED_QUERIES = 1000;
+    private static final long READ_POSITION_TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final UpstreamExecutor upstreamExecutor;
+    // Index (in the Rawg.io results) following the last served grid page, per query.
+    private final TtlLruCache<String, Integer> nextIndexByQuery;
+    private final LongAdder prefetchedPages = new LongAdder();
+
+    RawgioPagePrefetcher(UpstreamExecutor upstreamExecutor) {
+        this.upstreamExecutor = upstreamExecutor;
+        this.nextIndexByQuery = new TtlLruCache<>(ProviderSettings.getGlobalInt("prefetchTrackedQueries", DEFAULT_TRACKED_QUERIES), READ_POSITION_TIME_TO_LIVE_NANOS);
+    }
+
+    /**
+     * Called once a grid page was served, reads ahead the next Rawg.io pages if the grid is read in order.
+     *
+     * @param queryKey      String, identifies the query without its pagination (sort, search, filters, columns).
+     * @param plan          RawgioPagePlanner.Plan, the Rawg.io pages of the served grid page.
+     * @param dataPages     List<DataPage>, the fetched Rawg.io pages, their total size is the Rawg.io "count".
+     * @param prefetchPages int, number of Rawg.io pages to read ahead.
+     * @param rateLimiter   UpstreamRateLimiter, rate limiter of the Web Api Record Definition.
+     * @param pageLoader    Consumer<RawgioPagePlanner.PageRequest>, loads a Rawg.io page into the DataPage cache.
+     */
+    void onPagesServed(String queryKey, RawgioPagePlanner.Plan plan, List<DataPage> dataPages, int prefetchPages,
+                       UpstreamRateLimiter rateLimiter, Consumer<RawgioPagePlanner.PageRequest> pageLoader) {
+        if (prefetchPages <= 0 || dataPages.isEmpty()) {
+            return;
+        }
+
+        List<RawgioPagePlanner.PageRequest> pageRequests = plan.getPageRequests();
+        RawgioPagePlanner.PageRequest firstPageRequest = pageRequests.get(0);
+        RawgioPagePlanner.PageRequest lastPageRequest = pageRequests.get(dataPages.size() - 1);
+        DataPage lastDataPage = dataPages.get(dataPages.size() - 1);
+        int firstIndex = (firstPageRequest.getPage() - 1) * firstPageRequest.getPageSize();
+        int nextIndex = lastPageRequest.getPage() * lastPageRequest.getPageSize();
+
+        Integer expectedIndex = nextIndexByQuery.get(queryKey);
+        nextIndexByQuery.put(queryKey, nextIndex);
+
+        // Not the continuation of the previous grid page (first page, jump, sort change...), nothing to guess.
+        if (expectedIndex == null || expectedIndex != firstIndex) {
+            return;
+        }
+
+        // The last page was not full, there is nothing after it.
+        if (lastDataPage.getData().size() < lastPageRequest.getPageSize()) {
+            return;
+        }
+
+        int count = lastDataPage.getTotalSize();
+        int pageSize = lastPageRequest.getPageSize();
+
+        for (int page = lastPageRequest.getPage() + 1; page <= lastPageRequest.getPage() + prefetchPages; page++) {
+            // The Rawg.io "count" tells us the page would be empty.
+            if (count > 0 && (page - 1) * pageSize >= count) {
+                return;
+            }
+
+            if (!rateLimiter.hasSpareCapacity()) {
+                return;
+            }
+
+            RawgioPagePlanner.PageRequest pageRequest = new RawgioPagePlanner.PageRequest(page, pageSize);
+
+            boolean accepted = upstreamExecutor.tryExecuteInBackground(() -> {
+                try {
+                    pageLoader.accept(pageRequest);
+                    prefetchedPages.increment();
+                } catch (RuntimeException e) {
+                    // A read ahead is only a guess, if it fails the page will simply be fetched when asked.
+                }
+            });
+
+            if (!accepted) {
+                return;
+            }
+        }
+    }
+
+    long getPrefetchedPageCount() {
+        return prefetchedPages.sum();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.bundle;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the Rawg.io games already fetched, by Web Api Record Definition and record instance Id (the value of
+ * the field 379, the Rawg.io "slug" in our definitions).
+ * <p>
+ * Every row returned by the Web Api Record Definition for a list is indexed, so opening a game from a grid
+ * usually finds its row here, instead of doing a Rawg.io search_exact call.
+ * <p>
+ * A row only contains the fields that were selected by the query that returned it. A lookup gives the fields it
+ * needs, and a row missing one of them is not used. When the same game is returned again with other fields, the
+ * fields are merged.
+ */
+final class RecordInstanceIndex {
+    /**
+     * The "ID" field of a record definition.
+     */
+    static final String RECORD_INSTANCE_ID_FIELD_ID = "379";
+
+    private static final int DEFAULT_SIZE = 10000;
+
+    private final TtlLruCache<String, Map<?, ?>> rowByRecordInstanceId;
+
+    RecordInstanceIndex() {
+        this.rowByRecordInstanceId = new TtlLruCache<>(ProviderSettings.getGlobalInt("recordInstanceIndexSize", DEFAULT_SIZE), 0);
+    }
+
+    /**
+     * Indexes the rows returned by the Web Api Record Definition. Rows without a record instance Id are ignored.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param rows                       List<Object>, the rows (maps of field Id to value).
+     * @param timeToLiveNanos            long, how long the rows can be used.
+     */
+    void index(String webApiRecordDefinitionName, List<Object> rows, long timeToLiveNanos) {
+        if (timeToLiveNanos <= 0) {
+            return;
+        }
+
+        for (Object row : rows) {
+            if (!(row instanceof Map)) {
+                continue;
+            }
+
+            Map<?, ?> fields = (Map<?, ?>) row;
+            Object recordInstanceId = fields.get(RECORD_INSTANCE_ID_FIELD_ID);
+
+            if (recordInstanceId == null) {
+                continue;
+            }
+
+            // Not a lookup, the hits and misses of the index only count the games opened.
+            rowByRecordInstanceId.merge(getKey(webApiRecordDefinitionName, recordInstanceId.toString()), fields, timeToLiveNanos,
+                    RecordInstanceIndex::merge);
+        }
+    }
+
+    /**
+     * The newest values win, the fields only known by the indexed row are kept.
+     */
+    private static Map<?, ?> merge(Map<?, ?> indexedFields, Map<?, ?> fields) {
+        if (fields.keySet().containsAll(indexedFields.keySet())) {
+            return fields;
+        }
+
+        if (indexedFields instanceof CompactRow && fields instanceof CompactRow) {
+            CompactRow mergedRow = CompactRow.merge((CompactRow) indexedFields, (CompactRow) fields);
+
+            if (mergedRow != null) {
+                return mergedRow;
+            }
+        }
+
+        Map<Object, Object> mergedFields = new HashMap<>(indexedFields);
+        mergedFields.putAll(fields);
+
+        // A row restored from the snapshot is a plain map, it is compacted again once merged with a new row.
+        return fields instanceof CompactRow ? CompactRow.compact(((CompactRow) fields).getSchema(), mergedFields) : mergedFields;
+    }
+
+    /**
+     * Returns the row of a record instance if it is indexed and contains all the needed fields.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param recordInstanceId           String, record instance Id.
+     * @param fieldIds                   List<String>, the fields needed.
+     * @return Map<?, ?>, the row, or null if the record instance is not indexed or misses one of the fields.
+     */
+    Map<?, ?> get(String webApiRecordDefinitionName, String recordInstanceId, List<String> fieldIds) {
+        Map<?, ?> fields = rowByRecordInstanceId.get(getKey(webApiRecordDefinitionName, recordInstanceId));
+
+        return fields != null && fields.keySet().containsAll(fieldIds) ? fields : null;
+    }
+
+    private static String getKey(String webApiRecordDefinitionName, String recordInstanceId) {
+        return webApiRecordDefinitionName + '\u0000' + recordInstanceId;
+    }
+
+    TtlLruCache<String, Map<?, ?>> getRowByRecordInstanceId() {
+        return rowByRecordInstanceId;
+    }
+}
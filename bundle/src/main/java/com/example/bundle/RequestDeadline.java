@@ -0,0 +1,75 @@
+package com.example.bundle;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Time left to a request for its calls to the Web Api Record Definition, see
+ * {@link ProviderSettings#getRequestTimeoutMillis()}.
+ * <p>
+ * A grid page can need two Rawg.io pages. The deadline is created once when the request starts and passed to each
+ * fetch, so the second page only gets the time the first one left, and the request as a whole never waits longer
+ * than the timeout, however many pages it needs.
+ * <p>
+ * Deadlines are immutable and passed as method parameters, like everything else related to a request.
+ */
+final class RequestDeadline {
+    /**
+     * No deadline, for the work done in the background (read ahead, refresh, crawl), which no request waits for.
+     */
+    static final RequestDeadline NONE = new RequestDeadline(0, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private RequestDeadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * @param timeoutMillis int, time from now, 0 or less for no deadline.
+     * @return RequestDeadline, the deadline.
+     */
+    static RequestDeadline after(int timeoutMillis) {
+        return timeoutMillis > 0 ? new RequestDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), true) : NONE;
+    }
+
+    boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return long, time left in nanoseconds, Long.MAX_VALUE without deadline.
+     */
+    long getRemainingNanos() {
+        return bounded ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    boolean isExpired() {
+        return bounded && getRemainingNanos() <= 0;
+    }
+
+    /**
+     * Waits for a Web Api call done by another thread, at most until the deadline. The call is not cancelled when
+     * the deadline passes: it can be shared by other requests, and its result still fills the caches.
+     *
+     * @param future                     Future<T>, the pending result.
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name, for the error message.
+     * @param <T>                        result type.
+     * @return T, the result.
+     * @throws WebApiCallRejectedException if the deadline passed first.
+     */
+    <T> T await(Future<T> future, String webApiRecordDefinitionName) {
+        if (!bounded) {
+            return UpstreamExecutor.await(future);
+        }
+
+        try {
+            return UpstreamExecutor.await(future, Math.max(0, getRemainingNanos()));
+        } catch (TimeoutException e) {
+            throw new WebApiCallRejectedException(webApiRecordDefinitionName, "Rawg.io did not answer within the request timeout");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bundle;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Makes sure that only one call is in flight for a key at a time.
+ * <p>
+ * When a dashboard loads, many sessions ask for the same page within a few milliseconds. The first caller
+ * performs the call, the callers arriving while it is in flight wait for it and share its result (or its
+ * exception) instead of calling the Web Api again.
+ *
+ * @param <K> key type, must implement equals() and hashCode().
+ * @param <V> result type, results should be immutable as they are shared between callers.
+ */
+final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> callsInFlight = new ConcurrentHashMap<>();
+    private final LongAdder sharedCalls = new LongAdder();
+
+    /**
+     * Performs the call for a key, or waits for the identical call already in flight.
+     *
+     * @param key  K, the key identifying the call.
+     * @param call Supplier<V>, the call.
+     * @return V, the result of the call.
+     */
+    V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> ownCall = new CompletableFuture<>();
+        CompletableFuture<V> callInFlight = callsInFlight.putIfAbsent(key, ownCall);
+
+        if (callInFlight != null) {
+            sharedCalls.increment();
+            return join(callInFlight);
+        }
+
+        try {
+            V result = call.get();
+            ownCall.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            ownCall.completeExceptionally(e);
+            throw e;
+        } finally {
+            callsInFlight.remove(key, ownCall);
+        }
+    }
+
+    /**
+     * Waits for a call performed by another thread. The call is never cancelled from here, as other callers
+     * might be waiting for it too.
+     */
+    private V join(CompletableFuture<V> callInFlight) {
+        try {
+            return callInFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Web Api call.", e);
+        } catch (ExecutionException e) {
+            throw UpstreamExecutor.unwrap(e);
+        }
+    }
+
+    /**
+     * @return long, number of callers that waited for a call in flight instead of performing it.
+     */
+    long getSharedCallCount() {
+        return sharedCalls.sum();
+    }
+
+    int getCallsInFlight() {
+        return callsInFlight.size();
+    }
+}
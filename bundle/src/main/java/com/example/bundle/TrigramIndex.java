@@ -0,0 +1,134 @@
+package com.example.bundle;
+
+import java.util.*;
+
+/**
+ * Inverted index of the trigrams (3 consecutive characters, ignoring the case) of a text column of a
+ * {@link MirrorTable}, used for the searches on the game names: '536870913' LIKE "%zeld%".
+ * <p>
+ * The rows containing all the trigrams of the searched text are the only ones that can contain it, so a search
+ * only reads the rows having the rarest trigrams instead of every row of the table. The index gives candidates:
+ * the condition is still checked on each of them, as the trigrams can be found at different places of a name.
+ * Texts shorter than 3 characters cannot use the index.
+ */
+final class TrigramIndex {
+    private static final int[] NO_ROWS = new int[0];
+
+    // Rows containing each trigram, in ascending order.
+    private final Map<String, int[]> rowsByTrigram;
+    private final int rowCount;
+
+    /**
+     * @param values   Object[], the values of the column, a list value is indexed element by element.
+     * @param rowCount int, number of rows.
+     */
+    TrigramIndex(Object[] values, int rowCount) {
+        Map<String, RowList> rowListsByTrigram = new HashMap<>();
+
+        for (int row = 0; row < rowCount; row++) {
+            if (values[row] instanceof Collection) {
+                for (Object element : (Collection<?>) values[row]) {
+                    addTrigrams(rowListsByTrigram, element, row);
+                }
+            } else {
+                addTrigrams(rowListsByTrigram, values[row], row);
+            }
+        }
+
+        this.rowsByTrigram = new HashMap<>(rowListsByTrigram.size() * 4 / 3 + 1);
+        this.rowCount = rowCount;
+
+        for (Map.Entry<String, RowList> entry : rowListsByTrigram.entrySet()) {
+            rowsByTrigram.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    private static void addTrigrams(Map<String, RowList> rowListsByTrigram, Object value, int row) {
+        if (value == null) {
+            return;
+        }
+
+        String text = value.toString().toLowerCase(Locale.ROOT);
+
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            rowListsByTrigram.computeIfAbsent(text.substring(i, i + 3), trigram -> new RowList()).add(row);
+        }
+    }
+
+    /**
+     * Returns the rows that can match a LIKE pattern, or an equality: the rows containing all the trigrams of the
+     * parts of the pattern between its wildcards. For an equality a % or _ is a character of the value, the trigrams
+     * across it are simply not used, the candidates still include every matching row.
+     *
+     * @param pattern String, the pattern, % and _ being wildcards.
+     * @return BitSet, the candidate rows, or null if the pattern has no part of 3 characters or more.
+     */
+    BitSet getCandidates(String pattern) {
+        List<int[]> postings = new ArrayList<>();
+        String text = pattern.toLowerCase(Locale.ROOT);
+        int partStart = 0;
+
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '%' || text.charAt(i) == '_') {
+                for (int j = partStart; j + 3 <= i; j++) {
+                    postings.add(rowsByTrigram.getOrDefault(text.substring(j, j + 3), NO_ROWS));
+                }
+
+                partStart = i + 1;
+            }
+        }
+
+        if (postings.isEmpty()) {
+            return null;
+        }
+
+        // Starting from the rarest trigram keeps the intermediate sets small.
+        postings.sort(Comparator.comparingInt(rows -> rows.length));
+
+        BitSet candidates = toBitSet(postings.get(0));
+
+        for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates.and(toBitSet(postings.get(i)));
+        }
+
+        return candidates;
+    }
+
+    private BitSet toBitSet(int[] rows) {
+        BitSet bitSet = new BitSet(rowCount);
+
+        for (int row : rows) {
+            bitSet.set(row);
+        }
+
+        return bitSet;
+    }
+
+    int getTrigramCount() {
+        return rowsByTrigram.size();
+    }
+
+    /**
+     * Growing list of rows, a row added twice in a row (a trigram found twice in a name) is kept once.
+     */
+    private static final class RowList {
+        private int[] rows = new int[4];
+        private int size;
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row) {
+                return;
+            }
+
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+
+            rows[size++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.bundle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+
+/**
+ * Small bounded in-memory cache, entries expire after a time to live and the least recently used entries
+ * are evicted when the cache is full.
+ * <p>
+ * The cache is shared by all the request threads. Reads and writes are short (no call to the Web Api is
+ * ever done while holding the cache lock), so a synchronized LinkedHashMap in access order is enough.
+ * Hits, misses and evictions are counted so the cache efficiency can be checked.
+ *
+ * @param <K> key type, must implement equals() and hashCode().
+ * @param <V> value type, values should be immutable as they are shared between requests.
+ */
+final class TtlLruCache<K, V> {
+    private final int maxEntries;
+    private final long defaultTimeToLiveNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries             int, maximum number of entries, the least recently used entries are evicted
+     *                               beyond it.
+     * @param defaultTimeToLiveNanos long, time to live of an entry when none is given to {@link #put(Object, Object, long)}.
+     */
+    TtlLruCache(int maxEntries, long defaultTimeToLiveNanos) {
+        this.maxEntries = maxEntries;
+        this.defaultTimeToLiveNanos = defaultTimeToLiveNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, TtlLruCache.Entry<V>> eldest) {
+                if (size() > TtlLruCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value cached for a key if it did not expire.
+     *
+     * @param key K, the key.
+     * @return V, the value or null if there is no value or if it expired.
+     */
+    V get(K key) {
+        Entry<V> entry = getEntry(key);
+
+        return entry != null ? entry.getValue() : null;
+    }
+
+    /**
+     * Returns the entry cached for a key if it did not expire.
+     *
+     * @param key K, the key.
+     * @return Entry<V>, the entry or null if there is no entry or if it expired.
+     */
+    Entry<V> getEntry(K key) {
+        long now = System.nanoTime();
+        Entry<V> entry;
+
+        synchronized (entries) {
+            entry = entries.get(key);
+
+            if (entry != null && entry.isExpired(now)) {
+                entries.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Caches a value with the default time to live.
+     *
+     * @param key   K, the key.
+     * @param value V, the value.
+     */
+    void put(K key, V value) {
+        put(key, value, defaultTimeToLiveNanos);
+    }
+
+    /**
+     * Caches a value. A time to live of 0 or less does not cache anything.
+     *
+     * @param key             K, the key.
+     * @param value           V, the value.
+     * @param timeToLiveNanos long, time after which the value expires.
+     */
+    void put(K key, V value, long timeToLiveNanos) {
+        if (timeToLiveNanos <= 0 || maxEntries <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        Entry<V> entry = new Entry<>(value, now, now + timeToLiveNanos);
+
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Caches a value merged with the value already cached for the key, atomically: two threads merging a value for
+     * the same key at the same time both see their values kept. The cached value is read without counting a hit or
+     * a miss, it is not a lookup. A time to live of 0 or less does not cache anything.
+     *
+     * @param key               K, the key.
+     * @param value             V, the value.
+     * @param timeToLiveNanos   long, time after which the merged value expires.
+     * @param remappingFunction BinaryOperator<V>, merges the cached value (first) and the value (second). Called while
+     *                          holding the cache lock, it must be short, and only if a value is cached.
+     */
+    void merge(K key, V value, long timeToLiveNanos, BinaryOperator<V> remappingFunction) {
+        if (timeToLiveNanos <= 0 || maxEntries <= 0) {
+            return;
+        }
+
+        synchronized (entries) {
+            long now = System.nanoTime();
+            Entry<V> cachedEntry = entries.get(key);
+            V mergedValue = cachedEntry != null && !cachedEntry.isExpired(now) ? remappingFunction.apply(cachedEntry.getValue(), value) : value;
+
+            entries.put(key, new Entry<>(mergedValue, now, now + timeToLiveNanos));
+        }
+    }
+
+    /**
+     * Caches an entry with its own times, for example an entry read back from a {@link CatalogSnapshotStore}.
+     * An expired entry is ignored, and an entry already cached for the key is kept as it is newer.
+     *
+     * @param key   K, the key.
+     * @param entry Entry<V>, the entry.
+     */
+    void restore(K key, Entry<V> entry) {
+        if (maxEntries <= 0 || entry.isExpired(System.nanoTime())) {
+            return;
+        }
+
+        synchronized (entries) {
+            entries.putIfAbsent(key, entry);
+        }
+    }
+
+    /**
+     * Returns a copy of the entries that did not expire, from the least to the most recently used.
+     * Reading the copy does not change the order of the entries.
+     *
+     * @return List<Map.Entry<K, Entry<V>>>, the entries.
+     */
+    List<Map.Entry<K, Entry<V>>> snapshot() {
+        long now = System.nanoTime();
+        List<Map.Entry<K, Entry<V>>> snapshot;
+
+        synchronized (entries) {
+            snapshot = new ArrayList<>(entries.size());
+
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                if (!entry.getValue().isExpired(now)) {
+                    snapshot.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * A cached value, with the time it was cached and the time it expires (System.nanoTime() based).
+     *
+     * @param <V> value type.
+     */
+    static final class Entry<V> {
+        private final V value;
+        private final long createdAtNanos;
+        private final long expiresAtNanos;
+
+        Entry(V value, long createdAtNanos, long expiresAtNanos) {
+            this.value = value;
+            this.createdAtNanos = createdAtNanos;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        long getCreatedAtNanos() {
+            return createdAtNanos;
+        }
+
+        long getExpiresAtNanos() {
+            return expiresAtNanos;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.bundle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Suspends the calls to one Web Api Record Definition while Rawg.io is failing, so the requests fail at once, or
+ * are answered from the caches, instead of each one waiting for Rawg.io to time out.
+ * <p>
+ * After {@link ProviderSettings#getCircuitBreakerFailureThreshold()} failed calls in a row the circuit opens: every
+ * call is rejected with a {@link WebApiCallRejectedException} for
+ * {@link ProviderSettings#getCircuitBreakerOpenSeconds()}. Then a single trial call is let through: if it succeeds
+ * the circuit closes, otherwise it stays open for another period.
+ * <p>
+ * A call fails when it throws, or when it answers after the request timeout
+ * ({@link ProviderSettings#getRequestTimeoutMillis()}), as no request waited for it anyway. Throttling errors
+ * (HTTP 429) are left to the {@link UpstreamRateLimiter}, which already slows down, and calls rejected before
+ * reaching Rawg.io do not count either.
+ */
+final class UpstreamCircuitBreaker {
+    private final String webApiRecordDefinitionName;
+    private final ProviderSettings settings;
+    private final LongAdder openings;
+    private final LongAdder rejectedCalls;
+
+    // Guarded by "this".
+    private int consecutiveFailures;
+    private boolean open;
+    private long openedAtNanos;
+    private boolean trialCallInFlight;
+
+    /**
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param settings                   ProviderSettings, settings of the Web Api Record Definition.
+     * @param openings                   LongAdder, incremented each time a circuit opens, shared by all the
+     *                                   definitions.
+     */
+    UpstreamCircuitBreaker(String webApiRecordDefinitionName, ProviderSettings settings, LongAdder openings) {
+        this.webApiRecordDefinitionName = webApiRecordDefinitionName;
+        this.settings = settings;
+        this.openings = openings;
+        this.rejectedCalls = new LongAdder();
+    }
+
+    private UpstreamCircuitBreaker(UpstreamCircuitBreaker previous, ProviderSettings settings) {
+        this.webApiRecordDefinitionName = previous.webApiRecordDefinitionName;
+        this.settings = settings;
+        this.openings = previous.openings;
+        this.rejectedCalls = previous.rejectedCalls;
+
+        synchronized (previous) {
+            this.consecutiveFailures = previous.consecutiveFailures;
+            this.open = previous.open;
+            this.openedAtNanos = previous.openedAtNanos;
+            // A trial call in flight reports to the previous circuit breaker, the next call is the trial here.
+            this.trialCallInFlight = false;
+        }
+    }
+
+    /**
+     * Returns a circuit breaker with new settings, keeping the state of this one: an open circuit stays open, and
+     * the failures in a row still count.
+     *
+     * @param settings ProviderSettings, the new settings of the Web Api Record Definition.
+     * @return UpstreamCircuitBreaker, the new circuit breaker.
+     */
+    UpstreamCircuitBreaker withSettings(ProviderSettings settings) {
+        return new UpstreamCircuitBreaker(this, settings);
+    }
+
+    /**
+     * Lets a call through, or rejects it while the circuit is open.
+     *
+     * @return boolean, true if the call is the trial call of an open circuit. The caller must then report its
+     * outcome, or call {@link #onNotCalled()} if it did not happen.
+     * @throws WebApiCallRejectedException if the circuit is open.
+     */
+    synchronized boolean acquirePermission() {
+        if (!open) {
+            return false;
+        }
+
+        if (trialCallInFlight || System.nanoTime() - openedAtNanos < getOpenNanos()) {
+            throw reject();
+        }
+
+        trialCallInFlight = true;
+
+        return true;
+    }
+
+    /**
+     * Rejects a call at once while the circuit is open, before any thread or token is used for it. Unlike
+     * {@link #acquirePermission()}, it never takes the trial call.
+     *
+     * @throws WebApiCallRejectedException if the circuit is open.
+     */
+    synchronized void rejectIfOpen() {
+        if (open && (trialCallInFlight || System.nanoTime() - openedAtNanos < getOpenNanos())) {
+            throw reject();
+        }
+    }
+
+    private WebApiCallRejectedException reject() {
+        rejectedCalls.increment();
+
+        return new WebApiCallRejectedException(webApiRecordDefinitionName,
+                "Rawg.io is failing, the calls are suspended for " + settings.getCircuitBreakerOpenSeconds() + " s");
+    }
+
+    /**
+     * While the circuit is open only the trial call is reported, the other calls started before it opened.
+     *
+     * @param callNanos long, duration of the call.
+     * @param trialCall boolean, true for the trial call, see {@link #acquirePermission()}.
+     */
+    synchronized void onSuccess(long callNanos, boolean trialCall) {
+        if (settings.getRequestTimeoutMillis() > 0 && callNanos > TimeUnit.MILLISECONDS.toNanos(settings.getRequestTimeoutMillis())) {
+            onFailure(trialCall);
+            return;
+        }
+
+        if (open && !trialCall) {
+            return;
+        }
+
+        consecutiveFailures = 0;
+        open = false;
+        trialCallInFlight = false;
+    }
+
+    /**
+     * @param trialCall boolean, true for the trial call, see {@link #acquirePermission()}.
+     */
+    synchronized void onFailure(boolean trialCall) {
+        if (open && !trialCall) {
+            return;
+        }
+
+        consecutiveFailures++;
+        trialCallInFlight = false;
+
+        if (open) {
+            // The trial call failed.
+            openedAtNanos = System.nanoTime();
+        } else if (settings.getCircuitBreakerFailureThreshold() > 0 && consecutiveFailures >= settings.getCircuitBreakerFailureThreshold()) {
+            open = true;
+            openedAtNanos = System.nanoTime();
+            openings.increment();
+        }
+    }
+
+    /**
+     * The trial call was not done, rejected by the rate limiter for example, the next call will be the trial.
+     */
+    synchronized void onNotCalled() {
+        trialCallInFlight = false;
+    }
+
+    private long getOpenNanos() {
+        return TimeUnit.SECONDS.toNanos(settings.getCircuitBreakerOpenSeconds());
+    }
+
+    ProviderSettings getSettings() {
+        return settings;
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+
+    long getRejectedCallCount() {
+        return rejectedCalls.sum();
+    }
+}
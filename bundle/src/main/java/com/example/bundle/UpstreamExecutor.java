@@ -0,0 +1,206 @@
+package com.example.bundle;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded thread pool used to call the Web Api Record Definition in the background, for example to fetch
+ * the second Rawg.io page of a grid page while the request thread fetches the first one.
+ * <p>
+ * The pool is bounded both in threads and in queued tasks. When it is saturated the task is run by the
+ * calling thread, which simply falls back to fetching the pages one after the other.
+ * Idle threads are stopped, and the pool is shut down when the bundle is stopped, see {@link #shutdown()}, so a
+ * redeployed bundle does not leave threads behind.
+ * <p>
+ * The request threads also hand the Web Api calls over to this pool when they have a {@link RequestDeadline}, and
+ * only wait for them until the deadline. When Rawg.io hangs, it is then the threads of this bounded pool that are
+ * blocked, not the server threads shared with the other applications.
+ */
+final class UpstreamExecutor {
+    private static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int QUEUE_CAPACITY = 256;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    UpstreamExecutor() {
+        this(ProviderSettings.getGlobalInt("upstreamThreads", DEFAULT_THREADS));
+    }
+
+    UpstreamExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new UpstreamThread(runnable, "rawgio-upstream-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    // Once shut down, the tasks are rejected instead of being run by the calling thread.
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("The Rawg.io calls are stopped, the bundle is stopped.");
+                    }
+
+                    runnable.run();
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a task.
+     *
+     * @param task Callable<T>, the task.
+     * @param <T>  result type.
+     * @return Future<T>, the pending result.
+     * @throws RejectedExecutionException if the pool is shut down.
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Runs a task in the background only if the pool is not busy: the task is dropped (and not run by the calling
+     * thread) when more than half of the queue is used.
+     *
+     * @param task Runnable, the task.
+     * @return boolean, true if the task was accepted, false as well once the pool is shut down.
+     */
+    boolean tryExecuteInBackground(Runnable task) {
+        if (executor.isShutdown() || executor.getQueue().remainingCapacity() < QUEUE_CAPACITY / 2) {
+            return false;
+        }
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Shut down in the meantime.
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs a task in the background if the pool is not busy, see {@link #tryExecuteInBackground(Runnable)}.
+     *
+     * @param task Supplier<T>, the task.
+     * @param <T>  result type.
+     * @return CompletableFuture<T>, the pending result, or null if the task was not accepted.
+     */
+    <T> CompletableFuture<T> trySupplyInBackground(Supplier<T> task) {
+        SupplierTask<T> supplierTask = new SupplierTask<>(task);
+
+        return tryExecuteInBackground(supplierTask) ? supplierTask.future : null;
+    }
+
+    /**
+     * Stops the pool when the bundle is stopped: the queued tasks are dropped, their pending results cancelled, and
+     * the running ones interrupted (the crawls, the batch fetchers and the read-ahead stop at their next wait). The
+     * tasks submitted afterwards are rejected. Does not wait for the running tasks, a Rawg.io call in progress is
+     * not interruptible, the daemon threads end with it.
+     */
+    void shutdown() {
+        for (Runnable droppedTask : executor.shutdownNow()) {
+            if (droppedTask instanceof Future) {
+                ((Future<?>) droppedTask).cancel(false);
+            } else if (droppedTask instanceof SupplierTask) {
+                ((SupplierTask<?>) droppedTask).future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Tells if the current thread is a thread of a pool, a task running there must not wait for another task of
+     * the pool, which could be queued behind it.
+     *
+     * @return boolean, true on a thread of a pool.
+     */
+    static boolean isUpstreamThread() {
+        return Thread.currentThread() instanceof UpstreamThread;
+    }
+
+    /**
+     * Waits for a result, unwrapping the exception thrown by the task if any.
+     *
+     * @param future Future<T>, the pending result.
+     * @param <T>    result type.
+     * @return T, the result.
+     */
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Web Api call.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Waits for a result for a limited time, unwrapping the exception thrown by the task if any.
+     *
+     * @param future       Future<T>, the pending result.
+     * @param timeoutNanos long, maximum time to wait.
+     * @param <T>          result type.
+     * @return T, the result.
+     * @throws TimeoutException if the result is not there in time, the task is not cancelled.
+     */
+    static <T> T await(Future<T> future, long timeoutNanos) throws TimeoutException {
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Web Api call.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * Completes a CompletableFuture with the result of a Supplier, the future is cancelled if the task is dropped
+     * at shutdown.
+     */
+    private static final class SupplierTask<T> implements Runnable {
+        private final Supplier<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private SupplierTask(Supplier<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class UpstreamThread extends Thread {
+        private UpstreamThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+}
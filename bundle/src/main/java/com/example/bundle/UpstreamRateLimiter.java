@@ -0,0 +1,312 @@
+package com.example.bundle;
+
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Limits the calls done to one Web Api Record Definition, as Rawg.io throttles our api key (HTTP 429) when it
+ * receives too many calls.
+ * <p>
+ * Two limits are applied before each call:
+ * - a token bucket, allowing on average {@link ProviderSettings#getRateLimitPerSecond()} calls per second, with
+ * bursts of {@link ProviderSettings#getRateLimitBurst()} calls,
+ * - a fair semaphore, allowing at most {@link ProviderSettings#getMaxConcurrentCalls()} calls in flight.
+ * A call waits for both in order of arrival, but never longer than {@link ProviderSettings#getCallQueueTimeoutMillis()}.
+ * When it would wait longer, it is rejected with a {@link WebApiCallRejectedException}, so a burst of grids gets a
+ * quick error for the calls above the limit instead of every grid failing with a 429.
+ * <p>
+ * When Rawg.io throttles us anyway (another server using the same key for example), the rate is halved and the
+ * calls are paused for a backoff time, doubled at each throttling in a row. Each successful call then raises the
+ * rate back by a tenth of the configured rate.
+ */
+final class UpstreamRateLimiter {
+    private static final double MIN_RATE_RATIO = 0.1;
+    private static final double RECOVERY_RATE_RATIO = 0.1;
+    private static final long INITIAL_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final String webApiRecordDefinitionName;
+    private final ProviderSettings settings;
+    private final Semaphore callsInFlight;
+    private final LongAdder throttledCalls;
+    private final LongAdder rejectedCalls;
+
+    // Token bucket state, guarded by "this".
+    private double tokens;
+    private double currentRate;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private long backoffNanos;
+    private volatile boolean recovering;
+
+    UpstreamRateLimiter(String webApiRecordDefinitionName, ProviderSettings settings) {
+        this.webApiRecordDefinitionName = webApiRecordDefinitionName;
+        this.settings = settings;
+        this.callsInFlight = settings.getMaxConcurrentCalls() > 0 ? new Semaphore(settings.getMaxConcurrentCalls(), true) : null;
+        this.throttledCalls = new LongAdder();
+        this.rejectedCalls = new LongAdder();
+        this.tokens = Math.max(1, settings.getRateLimitBurst());
+        this.currentRate = settings.getRateLimitPerSecond();
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    private UpstreamRateLimiter(UpstreamRateLimiter previous, ProviderSettings settings) {
+        this.webApiRecordDefinitionName = previous.webApiRecordDefinitionName;
+        this.settings = settings;
+        // The calls in flight release the semaphore they acquired, it is kept while the limit is the same.
+        this.callsInFlight = previous.callsInFlight != null && previous.settings.getMaxConcurrentCalls() == settings.getMaxConcurrentCalls()
+                ? previous.callsInFlight
+                : settings.getMaxConcurrentCalls() > 0 ? new Semaphore(settings.getMaxConcurrentCalls(), true) : null;
+        this.throttledCalls = previous.throttledCalls;
+        this.rejectedCalls = previous.rejectedCalls;
+
+        synchronized (previous) {
+            long now = System.nanoTime();
+            previous.refill(now);
+
+            int previousRate = previous.settings.getRateLimitPerSecond();
+            boolean wasLimited = previousRate > 0 && settings.getRateLimitPerSecond() > 0;
+
+            this.tokens = wasLimited ? Math.min(Math.max(1, settings.getRateLimitBurst()), previous.tokens) : Math.max(1, settings.getRateLimitBurst());
+            // A rate lowered by Rawg.io throttling stays lowered in the same proportion.
+            this.currentRate = wasLimited ? settings.getRateLimitPerSecond() * (previous.currentRate / previousRate) : settings.getRateLimitPerSecond();
+            this.lastRefillNanos = now;
+            this.pausedUntilNanos = previous.pausedUntilNanos;
+            this.backoffNanos = previous.backoffNanos;
+            this.recovering = wasLimited && previous.recovering;
+        }
+    }
+
+    /**
+     * Returns a rate limiter with new settings, keeping the state of this one: the tokens left, the rate lowered
+     * and the pause after a throttling, the calls in flight if the limit did not change, and the counters.
+     *
+     * @param settings ProviderSettings, the new settings of the Web Api Record Definition.
+     * @return UpstreamRateLimiter, the new rate limiter.
+     */
+    UpstreamRateLimiter withSettings(ProviderSettings settings) {
+        return new UpstreamRateLimiter(this, settings);
+    }
+
+    /**
+     * Performs a call once the rate limit and the number of calls in flight allow it.
+     *
+     * @param call Supplier<T>, the call to the Web Api Record Definition.
+     * @param <T>  result type.
+     * @return T, the result of the call.
+     * @throws WebApiCallRejectedException if the call could not be done within the queue timeout.
+     */
+    <T> T call(Supplier<T> call) {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getCallQueueTimeoutMillis());
+
+        acquireToken(deadlineNanos);
+
+        try {
+            acquireCallSlot(deadlineNanos);
+        } catch (RuntimeException e) {
+            // No call was done, the token is given back for the next call.
+            releaseToken();
+            throw e;
+        }
+
+        try {
+            T result = call.get();
+            onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (isThrottlingError(e)) {
+                onThrottled();
+            }
+
+            throw e;
+        } finally {
+            if (callsInFlight != null) {
+                callsInFlight.release();
+            }
+        }
+    }
+
+    private void acquireToken(long deadlineNanos) {
+        if (settings.getRateLimitPerSecond() <= 0) {
+            return;
+        }
+
+        while (true) {
+            long waitNanos;
+
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+
+                if (now - pausedUntilNanos < 0) {
+                    waitNanos = pausedUntilNanos - now;
+                } else if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                } else {
+                    waitNanos = (long) ((1 - tokens) / currentRate * NANOS_PER_SECOND);
+                }
+            }
+
+            if (System.nanoTime() + waitNanos - deadlineNanos > 0) {
+                rejectedCalls.increment();
+                throw new WebApiCallRejectedException(webApiRecordDefinitionName,
+                        "Too many calls to Rawg.io, the call waited more than " + settings.getCallQueueTimeoutMillis() + " ms for the rate limit");
+            }
+
+            LockSupport.parkNanos(this, waitNanos);
+
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the Rawg.io rate limit.");
+            }
+        }
+    }
+
+    private void releaseToken() {
+        if (settings.getRateLimitPerSecond() <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            refill(System.nanoTime());
+            tokens = Math.min(Math.max(1, settings.getRateLimitBurst()), tokens + 1);
+        }
+    }
+
+    private void acquireCallSlot(long deadlineNanos) {
+        if (callsInFlight == null) {
+            return;
+        }
+
+        try {
+            if (!callsInFlight.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                rejectedCalls.increment();
+                throw new WebApiCallRejectedException(webApiRecordDefinitionName,
+                        "Too many calls to Rawg.io in flight, the call waited more than " + settings.getCallQueueTimeoutMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Rawg.io call slot.", e);
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(Math.max(1, settings.getRateLimitBurst()), tokens + (now - lastRefillNanos) * currentRate / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+    }
+
+    private void onSuccess() {
+        if (!recovering) {
+            return;
+        }
+
+        synchronized (this) {
+            refill(System.nanoTime());
+            backoffNanos = 0;
+            currentRate = Math.min(settings.getRateLimitPerSecond(), currentRate + settings.getRateLimitPerSecond() * RECOVERY_RATE_RATIO);
+            recovering = currentRate < settings.getRateLimitPerSecond();
+        }
+    }
+
+    private void onThrottled() {
+        throttledCalls.increment();
+
+        if (settings.getRateLimitPerSecond() <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            currentRate = Math.max(settings.getRateLimitPerSecond() * MIN_RATE_RATIO, currentRate / 2);
+            tokens = 0;
+            backoffNanos = backoffNanos == 0 ? INITIAL_BACKOFF_NANOS : Math.min(MAX_BACKOFF_NANOS, backoffNanos * 2);
+            pausedUntilNanos = now + backoffNanos;
+            recovering = true;
+        }
+    }
+
+    /**
+     * Tells if a call that is not needed right now (a read ahead for example) can be done without delaying the
+     * calls of the End Users: the calls are not paused and, after it, there would still be a token and a free
+     * call slot left.
+     *
+     * @return boolean, true if there is spare capacity.
+     */
+    boolean hasSpareCapacity() {
+        if (callsInFlight != null && callsInFlight.availablePermits() < 2) {
+            return false;
+        }
+
+        if (settings.getRateLimitPerSecond() <= 0) {
+            return true;
+        }
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+
+            return now - pausedUntilNanos >= 0 && tokens >= 2;
+        }
+    }
+
+    /**
+     * Tells if the settings allow {@link #hasSpareCapacity()} to ever be true: with a burst of 1 call or a single
+     * call in flight, every call is one the End Users could need.
+     *
+     * @return boolean, false if there can never be spare capacity.
+     */
+    boolean canHaveSpareCapacity() {
+        return (callsInFlight == null || settings.getMaxConcurrentCalls() >= 2)
+                && (settings.getRateLimitPerSecond() <= 0 || settings.getRateLimitBurst() >= 2);
+    }
+
+    /**
+     * The RecordService does not give us the HTTP status of the Web Api call, so a throttling error is recognized by
+     * its message ("429", "Too Many Requests") in the exception or its causes.
+     *
+     * @param throwable Throwable, error thrown by the call.
+     * @return boolean, true if Rawg.io throttled the call.
+     */
+    static boolean isThrottlingError(Throwable throwable) {
+        for (int depth = 0; throwable != null && depth < 10; depth++, throwable = throwable.getCause()) {
+            String message = throwable.getMessage();
+
+            if (message != null && (message.contains("429") || message.toLowerCase(Locale.ROOT).contains("too many requests"))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    String getWebApiRecordDefinitionName() {
+        return webApiRecordDefinitionName;
+    }
+
+    ProviderSettings getSettings() {
+        return settings;
+    }
+
+    synchronized double getCurrentRate() {
+        return currentRate;
+    }
+
+    int getCallsInFlight() {
+        return callsInFlight != null ? settings.getMaxConcurrentCalls() - callsInFlight.availablePermits() : 0;
+    }
+
+    long getThrottledCallCount() {
+        return throttledCalls.sum();
+    }
+
+    long getRejectedCallCount() {
+        return rejectedCalls.sum();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.bundle;
+
+import java.util.*;
+
+/**
+ * Bitmaps of the rows having each value of a column of a {@link MirrorTable}, used for the platform filters:
+ * ('536870916' = "187" OR '536870916' = "4") AND ...
+ * <p>
+ * A game has several platforms (a list value), each of them is indexed. The rows matching an equality are then
+ * read from one bitmap, and combined filters become unions and intersections of bitmaps. The answer is exact, the
+ * condition does not need to be checked again on each row, so a count does not even read the rows.
+ * <p>
+ * Values are compared as {@link MirrorTable} does: a number as a number ("4" finds 4 and 4.0), a text ignoring
+ * the case.
+ */
+final class ValueBitmapIndex {
+    private final Map<String, BitSet> rowsByText = new HashMap<>();
+    private final Map<Double, BitSet> rowsByNumber = new HashMap<>();
+    private final BitSet nullRows = new BitSet();
+
+    /**
+     * @param values   Object[], the values of the column, a list value is indexed element by element.
+     * @param rowCount int, number of rows.
+     */
+    ValueBitmapIndex(Object[] values, int rowCount) {
+        for (int row = 0; row < rowCount; row++) {
+            if (values[row] instanceof Collection) {
+                for (Object element : (Collection<?>) values[row]) {
+                    add(element, row);
+                }
+            } else if (values[row] == null) {
+                nullRows.set(row);
+            } else {
+                add(values[row], row);
+            }
+        }
+    }
+
+    private void add(Object value, int row) {
+        if (value instanceof Number) {
+            rowsByNumber.computeIfAbsent(normalize(((Number) value).doubleValue()), number -> new BitSet()).set(row);
+        } else if (value != null) {
+            rowsByText.computeIfAbsent(value.toString().toLowerCase(Locale.ROOT), text -> new BitSet()).set(row);
+        }
+    }
+
+    /**
+     * Returns the rows having a value, for an equality condition.
+     *
+     * @param value String, the value of the condition.
+     * @return BitSet, a new set of the rows having the value.
+     */
+    BitSet getRows(String value) {
+        BitSet rows = new BitSet();
+        BitSet textRows = rowsByText.get(value.toLowerCase(Locale.ROOT));
+
+        if (textRows != null) {
+            rows.or(textRows);
+        }
+
+        try {
+            BitSet numberRows = rowsByNumber.get(normalize(Double.parseDouble(value)));
+
+            if (numberRows != null) {
+                rows.or(numberRows);
+            }
+        } catch (NumberFormatException e) {
+            // Not a number, only the texts can be equal.
+        }
+
+        return rows;
+    }
+
+    /**
+     * Returns the rows without any value, which no != condition matches.
+     *
+     * @return BitSet, the rows with a null value, not to be modified.
+     */
+    BitSet getNullRows() {
+        return nullRows;
+    }
+
+    /**
+     * 0.0 and -0.0 are equal numbers but not equal Doubles.
+     */
+    private static Double normalize(double number) {
+        return number == 0 ? 0d : number;
+    }
+
+    int getValueCount() {
+        return rowsByText.size() + rowsByNumber.size();
+    }
+}
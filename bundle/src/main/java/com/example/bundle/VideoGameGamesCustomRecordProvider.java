@@ -9,9 +9,11 @@ import com.bmc.arsys.rx.services.record.ExternalRecordDataProvider;
 import com.bmc.arsys.rx.services.record.RecordService;
 import com.bmc.arsys.rx.services.record.domain.*;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * This class implements the main logic of a Custom Record Definition, what happens
@@ -29,89 +31,124 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
      * It will be displayed in Administration, when creating a new data source connection type "custom".
      */
     private static final String PROVIDER_ID = "rawg.io (Games)";
-    private static final String DATAPAGEQUERY_TYPE = "com.bmc.arsys.rx.application.record.datapage.RecordInstanceDataPageQuery";
-    private static final String WEB_API_QUERY_PARAMETER_ROOT = "GET_QUERY_PARAMETER_";
-    private static final int RAWGIO_MAX_PAGE_SIZE = 25;
-    private static final String RAWGIO_COUNT_FIELD_NAME = "count";
-    private static final List<String> RAWGIO_SORTABLE_FIELDS = List.of("name", "released", "added", "created", "updated", "rating", "metacritic");
-    private RecordService recordService = null;
-    private HashMap<String, FieldDefinition<? extends StorageType>> fieldDefinitionByFieldIdList = new HashMap<>();
-    private HashMap<String, String> webApiQueryParametersList = new HashMap<>();
-    private RecordDefinition webApiRecordDefinition = null;
-    private String rawgioCountFieldId = null;
+    private static final int RAWGIO_MAX_PAGE_SIZE = 40;
+    // Biggest grid page planned, 26 Rawg.io calls at most.
+    private static final int MAX_GRID_WINDOW_SIZE = 1000;
+    private static final int RAWGIO_DEFAULT_PAGE_SIZE = 25;
+    private static final int DEFAULT_GRID_PAGE_SIZE = 50;
+    private final WebApiRecordDefinitionMetadataCache webApiRecordDefinitionMetadataCache = new WebApiRecordDefinitionMetadataCache();
+    private final RawgioPagePlanner rawgioPagePlanner = new RawgioPagePlanner(RAWGIO_MAX_PAGE_SIZE, MAX_GRID_WINDOW_SIZE);
+    private final UpstreamExecutor upstreamExecutor = new UpstreamExecutor();
+    private final RawgioPagePrefetcher rawgioPagePrefetcher = new RawgioPagePrefetcher(upstreamExecutor);
+    private final CatalogMirror catalogMirror = new CatalogMirror(upstreamExecutor, RAWGIO_MAX_PAGE_SIZE);
+    private final Supplier<RecordService> recordServiceSupplier;
+    private final WebApiDataPageLoader webApiDataPageLoader;
+    private final CatalogSnapshotStore catalogSnapshotStore;
+    private final QueryExpressionParser queryExpressionParser = new QueryExpressionParser();
+    private final ProviderMetrics metrics = new ProviderMetrics();
 
     /**
-     * This method will get the Web Api and Custom Record Definitions and save some necessary
-     * information.
+     * The same instance is registered once in MyApplication.java and used by the Platform for all the
+     * concurrent requests, so it must not keep any per request state in its fields.
+     * Everything related to a request is passed as method parameters, and the only shared state are
+     * caches publishing immutable objects.
+     */
+    public VideoGameGamesCustomRecordProvider() {
+        this(ServiceLocator::getRecordService);
+    }
+
+    /**
+     * Constructor allowing to provide the RecordService, for example a simulated one.
      *
-     * @param customRecordDefinitionName String, Custom Record Definition Name.
+     * @param recordServiceSupplier Supplier<RecordService>, called each time the RecordService is needed.
      */
-    private void getWebApiRecordDefinition(String customRecordDefinitionName) {
-        String webApiRecordDefinitionName = "";
-
-        recordService = ServiceLocator.getRecordService();
-
-        // We get the Web Api Record Definition from the Custom Record Definition "Description? field.
-        // It is a workaround and it is ugly, but it should work :)
-        RecordDefinition customFullRecordDefinition = recordService.getRecordDefinition(customRecordDefinitionName);
-        webApiRecordDefinitionName = customFullRecordDefinition.getDescription();
-
-        // This will be used later to map a field name to a field Id. For a Web Api Record Definition we have many
-        // different information we will need later, the id (field Id) and the Web api mapping.
-        // Here below the field 1 would be mapped to the JSON path results..name.
-        // Tbat means that if we query on the field 1 for a qualification, we want to use the "name" (last leaf
-        // from a branch).
-        //  id = 1
-        //  name = "Display ID"
-        //  fieldMapping.externalFieldId = "results||name";
-        webApiRecordDefinition = recordService.getRecordDefinition(webApiRecordDefinitionName);
-        List<FieldDefinition<? extends StorageType>> fieldDefinitions = webApiRecordDefinition.getFieldDefinitions();
-
-        for (FieldDefinition<? extends StorageType> fieldDefinition : fieldDefinitions) {
-            // Mapping the field Id with its definition, will be used later in the logic.
-            fieldDefinitionByFieldIdList.put(Integer.toString(fieldDefinition.getId()), fieldDefinition);
-
-            // Mapping the Rawg.io query parameters (they begin by "GET_QUERY_PARAMETER_" in the Web Api Record Definition).
-            // We just need just get the query parameter name:
-            // from "GET_QUERY_PARAMETER_page" to "page" in order to have a map with:
-            //  ["page"] = <fieldId>
-            if (fieldDefinition.getName().startsWith(WEB_API_QUERY_PARAMETER_ROOT)) {
-                webApiQueryParametersList.put(fieldDefinition.getName().replace(WEB_API_QUERY_PARAMETER_ROOT, ""), String.valueOf(fieldDefinition.getId()));
-            }
+    VideoGameGamesCustomRecordProvider(Supplier<RecordService> recordServiceSupplier) {
+        this.recordServiceSupplier = recordServiceSupplier;
+        this.webApiDataPageLoader = new WebApiDataPageLoader(recordServiceSupplier, upstreamExecutor, metrics);
+        this.catalogSnapshotStore = new CatalogSnapshotStore(webApiDataPageLoader, upstreamExecutor);
+        registerMetricGauges();
+    }
 
-            // We need the "count" field later for our logic. This count is set by the Rawg.io Rest api call
-            // and is the total count of games that are matching the rest api (with or without search).
-            // {
-            //    "count": 101713,
-            //        "next": "https://api.rawg.io/api/games?key=a6e082bd0974424b859762036fed6384&page=2&search=the-witcher-3-wild-hunt",
-            //        "previous": null,
-            if (fieldDefinition.getName().equals(RAWGIO_COUNT_FIELD_NAME)) {
-                rawgioCountFieldId = String.valueOf(fieldDefinition.getId());
-            }
-        }
+    /**
+     * Adds to the metrics the counters kept by the caches and the other components.
+     */
+    private void registerMetricGauges() {
+        metrics.registerGauge("cache.metadata.hits", webApiRecordDefinitionMetadataCache::getHitCount);
+        metrics.registerGauge("cache.metadata.misses", webApiRecordDefinitionMetadataCache::getRevalidationCount);
+        metrics.registerGauge("cache.metadata.rebuilds", webApiRecordDefinitionMetadataCache::getRebuildCount);
+        metrics.registerCache("queryExpression", queryExpressionParser.getQueryExpressionCache());
+        metrics.registerCache("invalidQueryExpression", queryExpressionParser.getInvalidQueryExpressionCache());
+        metrics.registerGauge("queryExpression.invalid", queryExpressionParser::getInvalidQueryExpressionCount);
+        metrics.registerCache("dataPage", webApiDataPageLoader.getDataPageCache());
+        metrics.registerCache("count", webApiDataPageLoader.getCountCache());
+        metrics.registerCache("recordInstance", webApiDataPageLoader.getRecordInstanceIndex().getRowByRecordInstanceId());
+        metrics.registerGauge("dataPage.staleServed", webApiDataPageLoader::getStaleServedCount);
+        metrics.registerGauge("dataPage.failedRefreshes", webApiDataPageLoader::getFailedRefreshCount);
+        metrics.registerGauge("dataPage.sharedCalls", webApiDataPageLoader.getSingleFlight()::getSharedCallCount);
+        metrics.registerGauge("upstream.timedOutRequests", webApiDataPageLoader::getTimedOutRequestCount);
+        metrics.registerGauge("upstream.hedgedCalls", webApiDataPageLoader::getHedgedCallCount);
+        metrics.registerGauge("upstream.callerThreadFetches", webApiDataPageLoader::getCallerThreadFetchCount);
+        metrics.registerGauge("circuitBreaker.openings", webApiDataPageLoader::getCircuitBreakerOpeningCount);
+        metrics.registerGauge("circuitBreaker.open", webApiDataPageLoader::getOpenCircuitBreakerCount);
+        metrics.registerGauge("prefetch.pages", rawgioPagePrefetcher::getPrefetchedPageCount);
+        metrics.registerGauge("mirror.crawledPages", catalogMirror::getCrawledPageCount);
+        metrics.registerGauge("mirror.failedCrawls", catalogMirror::getFailedCrawlCount);
+        metrics.registerGauge("mirror.truncatedTables", catalogMirror::getTruncatedTableCount);
     }
 
     /**
-     * Utility method that returns the fieldId corresponding to
+     * Publishes the metrics of the provider, see {@link ProviderMetrics}. Called once when the bundle is registered,
+     * the sink is unregistered when the bundle is stopped, see MyApplication.java.
      *
-     * @param queryParameterName String, Parameter name ("page" for example)
-     * @return String, fieldId corresponding to the query parameter.
+     * @param metricsSink MetricsSink, where to publish the metrics, for example JMX.
+     */
+    void registerMetricsSink(MetricsSink metricsSink) {
+        metricsSink.register(PROVIDER_ID, metrics);
+    }
+
+    ProviderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads back, in the background, the catalog caches saved by the previous deployment of the bundle, and saves
+     * them from now on. Called once when the bundle is registered, see MyApplication.java.
      */
-    private String getQueryParameterFieldId(String queryParameterName) {
-        return webApiQueryParametersList.get(queryParameterName);
+    void restoreCatalogSnapshot() {
+        catalogSnapshotStore.restoreInBackground();
     }
 
     /**
-     * As per Rawg.io, it is not possible to sort on some fields, only those are available:
-     * https://api.rawg.io/docs/#tag/games
-     * name, released, added, created, updated, rating, metacritic
-     * This method returns true if the field is sortable.
+     * Stops the background work of the provider, the crawls of the mirror, the batch fetchers and the read-ahead,
+     * see {@link UpstreamExecutor#shutdown()}. Called when the bundle is stopped, see MyApplication.java, so the
+     * threads do not keep the stopped bundle in memory.
+     */
+    void stop() {
+        upstreamExecutor.shutdown();
+    }
+
+    /**
+     * This method will get the Web Api and Custom Record Definitions information.
+     * The definitions are only read when they are not cached yet, or when the cached information
+     * needs to be revalidated, see {@link WebApiRecordDefinitionMetadataCache}.
+     *
+     * @param customRecordDefinitionName String, Custom Record Definition Name.
+     * @return WebApiRecordDefinitionMetadata, immutable information about the Custom and Web Api Record Definitions.
+     */
+    private WebApiRecordDefinitionMetadata getWebApiRecordDefinition(String customRecordDefinitionName) {
+        return metrics.time(ProviderMetrics.Stage.METADATA,
+                () -> webApiRecordDefinitionMetadataCache.get(customRecordDefinitionName, recordServiceSupplier.get()));
+    }
+
+    /**
+     * Returns the number of records asked by the grid. When the grid does not set it (0 or negative value),
+     * we use the size of a grid page in a View (50).
      *
-     * @param fieldName String, the Rawg.io field name.
-     * @return boolean , true if the field is sortable.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @return int, the number of records to return.
      */
-    private boolean isFieldSortable(String fieldName) {
-        return RAWGIO_SORTABLE_FIELDS.contains(fieldName);
+    private int getGridPageSize(DataPageQueryParameters dataPageQueryParameters) {
+        return dataPageQueryParameters.getPageSize() > 0 ? dataPageQueryParameters.getPageSize() : DEFAULT_GRID_PAGE_SIZE;
     }
 
     /**
@@ -130,11 +167,43 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
      */
     @Override
     public DataPage getDataPage(String recordDefinitionName, DataPageQueryParameters dataPageQueryParameters, Set<DataProviderMappingConfig> customRecordDefinition, Set<Integer> noIdea) {
+        // Telling the type parses the queryExpression, which is part of the request latency.
+        long startNanos = System.nanoTime();
+
+        return metrics.time(getRequestType(dataPageQueryParameters), startNanos, () -> readDataPage(recordDefinitionName, dataPageQueryParameters));
+    }
+
+    /**
+     * Tells what a getDataPage() call is asking for, only to measure the requests by type. The cases are the ones of
+     * the readDataPage() method.
+     *
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @return ProviderMetrics.RequestType, the type of request.
+     */
+    private ProviderMetrics.RequestType getRequestType(DataPageQueryParameters dataPageQueryParameters) {
+        if (dataPageQueryParameters.getPageSize() != 1 || dataPageQueryParameters.getStartIndex() != 0) {
+            return ProviderMetrics.RequestType.LIST;
+        }
+
+        if (dataPageQueryParameters.shouldIncludeTotalSize()) {
+            return ProviderMetrics.RequestType.COUNT;
+        }
+
+        // The parsed queryExpression is cached, it is not parsed again by readDataPage().
+        return getRecordInstanceId(dataPageQueryParameters) != null ? ProviderMetrics.RequestType.RECORD_INSTANCE : ProviderMetrics.RequestType.LIST;
+    }
+
+    /**
+     * Answers a getDataPage() call.
+     *
+     * @param recordDefinitionName    String, custom record definition name.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @return DataPage, a DataPage object.
+     */
+    private DataPage readDataPage(String recordDefinitionName, DataPageQueryParameters dataPageQueryParameters) {
         /**
-         * Because of Rawg.io limitation (page_size of 40), we want to get two pages of 25 items
-         * to build a full datapagequery (50) expected by a grid in a View.
-         * Since we are limited to 40 and our grid page is 50, we'll have to cheat.
-         * Since for use one page is 50 and the max for rawg.io is 40, we could request 2 pages of 25.
+         * Because of Rawg.io limitation (page_size of 40), we cannot always get a full datapagequery (50)
+         * expected by a grid in a View with a single Rawg.io call, we'll have to cheat.
          * For Innovation Studio if we have:
          *  startIndex = 0, pageSize = 50 that means for Rawg.io:
          *      page = 1, page_size = 25
@@ -142,18 +211,26 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
          *  startIndex = 50, pageSize = 50 that means for Rawg.io:
          *      page = 3, page_size = 25
          *      page = 4, page_size = 25
-         *  startIndex = 100, pageSize = 50 that means for Rawg.io:
-         *      page = 5, page_size = 25
-         *      page = 6, page_size = 25
-         * Hence the formula if we use a page_size of 25:
-         *  pageStart = E(startIndex / page_size) + 1;
-         *  pageEnd = pageStart + 1;
+         *  startIndex = 30, pageSize = 20 that means for Rawg.io:
+         *      page = 2, page_size = 25, and we drop the first 5 records.
+         * The RawgioPagePlanner works out the fewest Rawg.io pages for any startIndex and pageSize.
          *
-         * When getting the first page, we can check the "count" to see if it's worth getting another DataPage.
-         * Once we get both DataPages, we can "merge" them and send it to the UI... 
+         * When getting a page that is not full, we know it's not worth getting the next DataPages.
+         * Once we get all DataPages, we can "merge" them, keep the window asked by the grid and send it to the UI...
          */
-        getWebApiRecordDefinition(recordDefinitionName);
-        List<Object> fullDataPages = new ArrayList<>();
+        WebApiRecordDefinitionMetadata metadata = getWebApiRecordDefinition(recordDefinitionName);
+        // All the Rawg.io calls of the request share this deadline, so a slow Rawg.io cannot hold the request thread.
+        RequestDeadline deadline = RequestDeadline.after(metadata.getSettings().getRequestTimeoutMillis());
+
+        catalogSnapshotStore.saveIfDue();
+
+        // In mirror mode the grid is answered from the copy of the games, without calling Rawg.io.
+        DataPage mirroredDataPage = getMirroredDataPage(metadata, dataPageQueryParameters);
+
+        if (mirroredDataPage != null) {
+            metrics.recordMirroredGridPage();
+            return mirroredDataPage;
+        }
 
         /**
          * For some reason, when trying to get a record instance:
@@ -168,14 +245,17 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
 
         String recordInstanceId = null;
 
-        boolean isRecordInstanceQuery = !dataPageQueryParameters.shouldIncludeTotalSize()
+        if (!dataPageQueryParameters.shouldIncludeTotalSize()
                 && dataPageQueryParameters.getPageSize() == 1
-                && dataPageQueryParameters.getStartIndex() == 0
-                && dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand().startsWith("'379' = ");
+                && dataPageQueryParameters.getStartIndex() == 0) {
+            recordInstanceId = getRecordInstanceId(dataPageQueryParameters);
+        }
+
+        // Opening a game from a grid usually finds it in the games already fetched, without calling Rawg.io.
+        if (recordInstanceId != null) {
+            List<Object> recordInstanceRows = getRecordInstanceRows(metadata, recordInstanceId, getWebApiPropertySelections(metadata, dataPageQueryParameters), deadline);
 
-        if (isRecordInstanceQuery) {
-            recordInstanceId = dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand().replace("'379' = ", "");
-            recordInstanceId = recordInstanceId.replace("\"", "");
+            return new DataPage(recordInstanceRows.size(), recordInstanceRows);
         }
 
         /**
@@ -183,87 +263,348 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
          *  For some reason the method "getRecordInstanceCount()" is not called...
          *  The Platform will only send one entry back, setting the total number of records.
          *  However, in the case of a Web Api call, the Platform returns the size of the returned data, so 1.
-         *  We take care of the "real" total size in the getWebApiDataPage() method.
+         *  We take care of the "real" total size in the getWebApiCount() method.
          *  When the UI requires the count:
          *  pageSize is 1, startIndex is 0 and shouldIncludeTotalSize is true.
+         *  In this case we only need the total size, no record is returned.
          */
         boolean isRequestForCountOnly = dataPageQueryParameters.shouldIncludeTotalSize()
                 && dataPageQueryParameters.getPageSize() == 1
                 && dataPageQueryParameters.getStartIndex() == 0;
 
-        int firstPageId = isRequestForCountOnly || isRecordInstanceQuery ? 1 : (dataPageQueryParameters.getStartIndex() / RAWGIO_MAX_PAGE_SIZE) + 1;
-        DataPage firstDataPage = getWebApiDataPage(firstPageId, dataPageQueryParameters, recordInstanceId);
+        // The grids Rawg.io cannot filter as asked are answered anyway, with the conditions it can apply, and counted.
+        QueryExpression queryExpression = queryExpressionParser.parseOrEmpty(dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand());
+
+        if (getDroppedConditionCount(metadata.getFieldIndex(), queryExpression) > 0) {
+            metrics.recordPartiallyFilteredGridPage();
+        }
+
+        if (isRequestForCountOnly) {
+            return new DataPage(getWebApiCount(metadata, dataPageQueryParameters, deadline), Collections.emptyList());
+        }
+
+        // The Rawg.io "count" of the search and filters is remembered, from the "50+" link or from a previous grid
+        // page, so we do not request the pages past the end of the results, or the grid page at all.
+        WebApiQuery countQuery = metadata.getRawgioCountFieldId() != null
+                ? metrics.time(ProviderMetrics.Stage.QUERY_TRANSLATION, () -> getCountQuery(metadata, dataPageQueryParameters))
+                : null;
+        Integer knownCount = countQuery != null ? webApiDataPageLoader.getKnownCount(countQuery) : null;
+        RawgioPagePlanner.Plan fullPlan = rawgioPagePlanner.plan(dataPageQueryParameters.getStartIndex(), getGridPageSize(dataPageQueryParameters));
+        RawgioPagePlanner.Plan plan = knownCount != null ? fullPlan.truncate(knownCount) : fullPlan;
+
+        metrics.recordSkippedRawgioPages(fullPlan.getPageRequests().size() - plan.getPageRequests().size());
+
+        if (plan.getPageRequests().isEmpty()) {
+            metrics.recordGridPage(0);
+            return new DataPage(0, Collections.emptyList());
+        }
+
+        List<DataPage> webApiDataPages = getWebApiDataPages(metadata, plan, dataPageQueryParameters, countQuery, knownCount, deadline);
+
+        metrics.recordGridPage(webApiDataPages.size());
+        prefetchNextPages(metadata, plan, webApiDataPages, dataPageQueryParameters);
+
+        List<List<Object>> webApiRows = new ArrayList<>(webApiDataPages.size());
+
+        for (DataPage webApiDataPage : webApiDataPages) {
+            webApiRows.add(webApiDataPage.getData());
+        }
+
+        // Keeping only the window asked by the grid, the Rawg.io pages might begin before it or end after it.
+        // The rows are not copied, the "merged" DataPage is a read-only view over the Rawg.io pages.
+        List<Object> fullDataPages = ConcatenatedList.of(webApiRows, plan.getSkip(), plan.getSkip() + plan.getLimit());
+
+        return new DataPage(fullDataPages.size(), fullDataPages);
+    }
+
+    /**
+     * Answers a grid from the copy of the games when the mirror mode is enabled, see {@link CatalogMirror}.
+     * Any sort, filter and search of the grid is applied, and the total is exact.
+     * <p>
+     * A copy stopped by {@link ProviderSettings#getMirrorMaxRecords()} only has the first games of the Rawg.io
+     * default order. It only answers the grids in that order, without search or filter, up to its last game, with
+     * the Rawg.io count as total. The other grids would miss games, they are answered by Rawg.io.
+     *
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @return DataPage, the DataPage, or null if the mirror mode is disabled, the first crawl is not done yet, or
+     * the copy is truncated and cannot answer the grid.
+     */
+    private DataPage getMirroredDataPage(WebApiRecordDefinitionMetadata metadata, DataPageQueryParameters dataPageQueryParameters) {
+        ProviderSettings settings = metadata.getSettings();
+
+        if (!settings.isMirror()) {
+            return null;
+        }
+
+        catalogMirror.syncIfDue(metadata, webApiDataPageLoader.getCurrentRateLimiter(metadata.getWebApiRecordDefinitionName(), settings),
+                page -> getWebApiMirrorPage(metadata, page));
+
+        MirrorTable mirrorTable = catalogMirror.getTable(metadata);
+
+        if (mirrorTable == null) {
+            return null;
+        }
+
+        QueryExpression queryExpression = queryExpressionParser.parseOrEmpty(dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand());
+        List<MirrorTable.SortKey> sortKeys = new ArrayList<>();
+
+        for (SortByValue sortOrder : dataPageQueryParameters.getSortByValues()) {
+            // Same direction as the Rawg.io ordering, turning the mirror on must not flip the sorted grids.
+            sortKeys.add(new MirrorTable.SortKey(sortOrder.getPropertyName(), !isRawgioDescending(sortOrder)));
+        }
+
+        // The "50+" link only needs the total, see getDataPage().
+        boolean isRequestForCountOnly = dataPageQueryParameters.shouldIncludeTotalSize()
+                && dataPageQueryParameters.getPageSize() == 1
+                && dataPageQueryParameters.getStartIndex() == 0;
+
+        int pageSize = isRequestForCountOnly ? 0 : getGridPageSize(dataPageQueryParameters);
+
+        if (mirrorTable.isTruncated() && (!queryExpression.isEmpty() || !sortKeys.isEmpty()
+                || (long) dataPageQueryParameters.getStartIndex() + pageSize > mirrorTable.getRowCount())) {
+            metrics.recordTruncatedMirrorFallback();
+            return null;
+        }
+
+        MirrorTable.Result result = mirrorTable.query(queryExpression, sortKeys, dataPageQueryParameters.getStartIndex(),
+                pageSize, dataPageQueryParameters.getPropertySelections());
 
-        fullDataPages.addAll(firstDataPage.getData());
+        return new DataPage(mirrorTable.isTruncated() ? mirrorTable.getUpstreamCount() : result.getTotalSize(), result.getRows());
+    }
 
-        // Due to the paging limitation from Rawg.io explained earlier, we might only get 25 records, when
-        // Innovation Studio expects 50 for a grid. In this case, we might need to perform an additional call
-        // to get those 50 items.
-        if (!isRequestForCountOnly && !isRecordInstanceQuery && firstDataPage.getData().size() >= RAWGIO_MAX_PAGE_SIZE) {
-            DataPage nextDataPage = getWebApiDataPage(firstPageId + 1, dataPageQueryParameters, recordInstanceId);
+    /**
+     * Fetches a Rawg.io page for the mirror crawl: all the mapped fields, in the Rawg.io default order, without
+     * using the DataPage cache.
+     *
+     * @param metadata WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param page     int, Rawg.io page, from 1.
+     * @return DataPage, the games of the page, the total size being the Rawg.io "count".
+     */
+    private DataPage getWebApiMirrorPage(WebApiRecordDefinitionMetadata metadata, int page) {
+        List<String> propertySelections = new ArrayList<>(metadata.getFieldIndex().getMappedFieldIds());
+        String rawgioCountFieldId = metadata.getRawgioCountFieldId();
 
-            fullDataPages.addAll(nextDataPage.getData());
+        if (rawgioCountFieldId != null && !propertySelections.contains(rawgioCountFieldId)) {
+            propertySelections.add(rawgioCountFieldId);
         }
 
-        // In the case of a count, we should have the "real" total Size set by the getWebApiDataPage() method.
-        // This is because the Platform, in the Datapage call, will return the number of items in the Datapage,
-        // and not the total size of items.
-        int totalSize = isRequestForCountOnly ? firstDataPage.getTotalSize() : fullDataPages.size();
+        WebApiQualificationBuilder qualification = new WebApiQualificationBuilder(metadata);
+        appendPaginationQualification(qualification, page, catalogMirror.getPageSize());
+
+        WebApiQuery webApiQuery = new WebApiQuery(metadata.getWebApiRecordDefinitionName(),
+                qualification.build(),
+                propertySelections,
+                catalogMirror.getPageSize(),
+                (page - 1) * catalogMirror.getPageSize());
+        DataPage webApiDataPage = webApiDataPageLoader.call(webApiQuery, metadata);
 
-        return new DataPage(totalSize, fullDataPages);
+        return new DataPage(readRawgioCount(metadata, webApiDataPage), webApiDataPage.getData());
     }
 
     /**
-     * This method gets a specific Rawg.io page (if recordInstanceId is null).
-     * This method gets a specific Rawg.io game (if recordInstanceId is not null).
+     * Fetches the Rawg.io pages of a plan, in order.
+     * As soon as a page is not full, or reaches the Rawg.io "count", there is nothing after it, so the next pages
+     * are not returned.
+     * <p>
+     * Only the first page remembers the "count", and only if it is not known yet. The total size of the pages is then
+     * set to the count, whichever page it was read from.
+     *
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param plan                    RawgioPagePlanner.Plan, the Rawg.io pages to fetch.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @param countQuery              WebApiQuery, the count query of the search and filters, null if the Web Api
+     *                                Record Definition has no "count" field.
+     * @param knownCount              Integer, the Rawg.io "count" if it is known, null otherwise.
+     * @param deadline                RequestDeadline, time left to the request, shared by all the pages.
+     * @return List<DataPage>, the fetched pages, at least one.
+     */
+    private List<DataPage> getWebApiDataPages(WebApiRecordDefinitionMetadata metadata, RawgioPagePlanner.Plan plan, DataPageQueryParameters dataPageQueryParameters,
+                                              WebApiQuery countQuery, Integer knownCount, RequestDeadline deadline) {
+        List<RawgioPagePlanner.PageRequest> pageRequests = plan.getPageRequests();
+        List<Future<DataPage>> nextDataPageFutures = new ArrayList<>();
+        List<DataPage> dataPages = new ArrayList<>(pageRequests.size());
+
+        // The Rawg.io pages do not depend on each other, so when the concurrent fetch is enabled the next
+        // pages are requested in the background while we request the first one, instead of paying the Web Api
+        // round trips one after the other.
+        if (metadata.getSettings().isConcurrentFetch()) {
+            for (RawgioPagePlanner.PageRequest pageRequest : pageRequests.subList(1, pageRequests.size())) {
+                nextDataPageFutures.add(upstreamExecutor.submit(() -> getWebApiDataPage(metadata, pageRequest, dataPageQueryParameters, null, deadline)));
+            }
+        }
+
+        int count = knownCount != null ? knownCount : 0;
+
+        try {
+            for (int i = 0; i < pageRequests.size(); i++) {
+                RawgioPagePlanner.PageRequest pageRequest = pageRequests.get(i);
+                DataPage dataPage = i == 0 || nextDataPageFutures.isEmpty()
+                        ? getWebApiDataPage(metadata, pageRequest, dataPageQueryParameters, i == 0 && knownCount == null ? countQuery : null, deadline)
+                        : deadline.await(nextDataPageFutures.get(i - 1), metadata.getWebApiRecordDefinitionName());
+
+                if (dataPage.getTotalSize() > 0) {
+                    count = dataPage.getTotalSize();
+                } else if (count > 0) {
+                    dataPage = new DataPage(count, dataPage.getData());
+                }
+
+                dataPages.add(dataPage);
+
+                // A full page can still be the last one, Rawg.io has exactly this number of games.
+                if (dataPage.getData().size() < pageRequest.getPageSize() || (count > 0 && pageRequest.getEndIndex() >= count)) {
+                    break;
+                }
+            }
+        } finally {
+            // The pages we do not need anymore (or all of them if something failed) are thrown away. A page already
+            // being fetched is not interrupted, its DataPage fills the cache for the next requests.
+            for (Future<DataPage> nextDataPageFuture : nextDataPageFutures) {
+                nextDataPageFuture.cancel(false);
+            }
+        }
+
+        return dataPages;
+    }
+
+    /**
+     * When the read ahead is enabled (see {@link ProviderSettings#getPrefetchPages()}) and the grid is read page after
+     * page, the next Rawg.io pages are loaded in the background into the DataPage cache, see {@link RawgioPagePrefetcher}.
+     *
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param plan                    RawgioPagePlanner.Plan, the Rawg.io pages of the served grid page.
+     * @param webApiDataPages         List<DataPage>, the fetched Rawg.io pages.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     */
+    private void prefetchNextPages(WebApiRecordDefinitionMetadata metadata, RawgioPagePlanner.Plan plan, List<DataPage> webApiDataPages, DataPageQueryParameters dataPageQueryParameters) {
+        ProviderSettings settings = metadata.getSettings();
+
+        // Without the DataPage cache the pages read ahead could not be served.
+        if (settings.getPrefetchPages() <= 0 || settings.getDataPageCacheTimeToLiveSeconds() <= 0) {
+            return;
+        }
+
+        // The grid pages of a same query only differ by their pagination.
+        WebApiQualificationBuilder qualification = new WebApiQualificationBuilder(metadata);
+        appendSortQualification(qualification, metadata, dataPageQueryParameters);
+        appendFilterQualification(qualification, metadata, dataPageQueryParameters);
+        String queryKey = metadata.getWebApiRecordDefinitionName() + '\n' + qualification.build() + '\n' + dataPageQueryParameters.getPropertySelections();
+
+        rawgioPagePrefetcher.onPagesServed(queryKey, plan, webApiDataPages, settings.getPrefetchPages(),
+                webApiDataPageLoader.getRateLimiter(metadata.getWebApiRecordDefinitionName(), settings),
+                pageRequest -> getWebApiDataPage(metadata, pageRequest, dataPageQueryParameters, null, RequestDeadline.NONE));
+    }
+
+    /**
+     * Returns the total number of games matching the search and filters of the grid.
+     * <p>
+     * We only need the Rawg.io "count", so the Web Api Record Definition is called with page_size = 1 and only
+     * the "count" field selected. The sort is not applied as it does not change the count.
+     * Counts are cached for a short time per search and filters, so the "50+" link and the count based process
+     * activities usually do not call Rawg.io at all.
+     *
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @param deadline                RequestDeadline, time left to the request.
+     * @return int, the total number of games.
+     */
+    private int getWebApiCount(WebApiRecordDefinitionMetadata metadata, DataPageQueryParameters dataPageQueryParameters, RequestDeadline deadline) {
+        WebApiQuery countQuery = metrics.time(ProviderMetrics.Stage.QUERY_TRANSLATION, () -> getCountQuery(metadata, dataPageQueryParameters));
+
+        return webApiDataPageLoader.loadCount(countQuery, metadata, deadline, webApiDataPage -> readRawgioCount(metadata, webApiDataPage));
+    }
+
+    /**
+     * Builds the query reading the Rawg.io "count" of the search and filters of the grid, with page_size = 1 and only
+     * the "count" field selected. It is also the key under which the count is remembered, when a grid page returns it.
+     *
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @return WebApiQuery, the count query.
+     */
+    private WebApiQuery getCountQuery(WebApiRecordDefinitionMetadata metadata, DataPageQueryParameters dataPageQueryParameters) {
+        String rawgioCountFieldId = metadata.getRawgioCountFieldId();
+        WebApiQualificationBuilder qualification = new WebApiQualificationBuilder(metadata);
+
+        appendPaginationQualification(qualification, 1, 1);
+        appendFilterQualification(qualification, metadata, dataPageQueryParameters);
+
+        return new WebApiQuery(metadata.getWebApiRecordDefinitionName(),
+                qualification.build(),
+                rawgioCountFieldId != null ? List.of(rawgioCountFieldId) : List.of(),
+                1,
+                0);
+    }
+
+    /**
+     * Returns the fields of the grid to select in the Web Api Record Definition. The fields it does not have, or
+     * without a Web Api mapping, cannot be returned by Rawg.io, and a field selected twice is selected once.
+     * <p>
+     * The order does not matter, the {@link WebApiQuery} sorts the selected fields, so two grids with the same
+     * columns in another order, or only differing by a column Rawg.io cannot supply, share their cached DataPages.
+     *
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     * @return List<String>, the field Ids to select.
+     */
+    private List<String> getWebApiPropertySelections(WebApiRecordDefinitionMetadata metadata, DataPageQueryParameters dataPageQueryParameters) {
+        WebApiFieldIndex fieldIndex = metadata.getFieldIndex();
+        List<String> gridPropertySelections = dataPageQueryParameters.getPropertySelections();
+        List<String> propertySelections = new ArrayList<>(gridPropertySelections.size() + 1);
+        boolean[] selected = new boolean[fieldIndex.size()];
+
+        for (String fieldId : gridPropertySelections) {
+            int slot = fieldIndex.indexOf(fieldId);
+
+            if (slot >= 0 && fieldIndex.getWebApiFieldName(slot) != null && !selected[slot]) {
+                selected[slot] = true;
+                propertySelections.add(fieldIndex.getFieldIdKey(slot));
+            }
+        }
+
+        return propertySelections;
+    }
+
+    /**
+     * This method gets a specific Rawg.io page.
      * This is due to the paging limitation of Rawg.io explained in the method "getDataPage()".
      *
-     * @param pageId                  int, Rawg.io page Id to fetch.
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param pageRequest             RawgioPagePlanner.PageRequest, Rawg.io page and page size to fetch.
      * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid
      *                                containing for example the pagination, search, displayed columns, filters, sorting etc...
      *                                For example sorting by the "name" column or searching for "foo".
-     * @param recordInstanceId,       [OPTIONAL (null)] String record instance id to fetch (if we want to fetch
-     *                                one specific entry.
-     * @return DataPage, DataPage object containing the number of records to get.
+     * @param countQuery              WebApiQuery, when the Rawg.io "count" is not known, the count query of the search
+     *                                and filters under which the count read from the page is remembered. Null if the
+     *                                count is already known, or another page remembers it.
+     * @param deadline                RequestDeadline, time left to the request.
+     * @return DataPage, DataPage object containing the number of records to get, the total size being the Rawg.io
+     * "count", or 0 if it was not read.
      */
-    private DataPage getWebApiDataPage(int pageId, DataPageQueryParameters dataPageQueryParameters, String recordInstanceId) {
-        // Parameters that will be used to query the Web Api record definition
-        Map<String, List<String>> dataPageParams = new HashMap<String, List<String>>();
-        // The qualification will contain the different parameters passed to the Rest Api.
-        String myQualification = "";
+    private DataPage getWebApiDataPage(WebApiRecordDefinitionMetadata metadata, RawgioPagePlanner.PageRequest pageRequest, DataPageQueryParameters dataPageQueryParameters,
+                                       WebApiQuery countQuery, RequestDeadline deadline) {
+        long translationStartNanos = System.nanoTime();
 
         /**
          * I) Building the datapagequery parameters.
          */
-        //  Standard datapagequery.
-        dataPageParams.put("dataPageType", new ArrayList<String>(Arrays.asList(DATAPAGEQUERY_TYPE)));
-
         // List of fields to fetch, here all the fields required by the grid (Custom Record Definition) are
         // also required for the Web Api Record Definition.
-        // We just transfer the request.
-        List<String> propertySelections = new ArrayList<String>();
-        propertySelections.addAll(dataPageQueryParameters.getPropertySelections());
+        // We just transfer the request, without the fields Rawg.io cannot supply.
+        List<String> propertySelections = getWebApiPropertySelections(metadata, dataPageQueryParameters);
 
         // We add the "count" field. This "count" field is special
         // as in our case it contains the number of records returned by the Rawg.io
         // rest api, since the one returned by the Platform is always the number
         // of records returned, and not the "real" total number of records available.
+        // It is always asked for, even when the count is already known: the selected fields are part of the
+        // DataPage cache key, a page cached with and without the count would be two entries.
+        String rawgioCountFieldId = metadata.getRawgioCountFieldId();
+
         if (rawgioCountFieldId != null && !propertySelections.contains(rawgioCountFieldId)) {
             propertySelections.add(rawgioCountFieldId);
         }
 
-        dataPageParams.put("propertySelection", new ArrayList<String>(propertySelections));
-
-        // We want to fetch data from the Web Api Record Definition.
-        dataPageParams.put("recorddefinition", new ArrayList<String>(Arrays.asList(webApiRecordDefinition.getName())));
-
-        // Number of records to return, we just transfer the values passed by the grid.
-        // Since the Web Api does not understand those values, we will use them later to build
-        // the qualification using the Rawg.io Rest Api query parameters "page" and "page_size".
-        // Those two settings are not important, as they will be ignored by the Platform call to the web api.
-        dataPageParams.put("pageSize", new ArrayList<String>(Arrays.asList(Integer.toString(dataPageQueryParameters.getPageSize()))));
-        dataPageParams.put("startIndex", new ArrayList<String>(Arrays.asList(Integer.toString(dataPageQueryParameters.getStartIndex()))));
-
         /**
          * II) Building the Web Api qualification.
          * Most of the parameters are not understood by the Web Api / Rawg.io Rest Api.
@@ -272,6 +613,48 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
          * We have to build a qualification (queryExpression) that would "convert" from a datapagequery parameter to something that
          * Rawg.io understands.
          */
+        WebApiQualificationBuilder qualification = new WebApiQualificationBuilder(metadata);
+
+        appendPaginationQualification(qualification, pageRequest.getPage(), pageRequest.getPageSize());
+        appendSortQualification(qualification, metadata, dataPageQueryParameters);
+        appendFilterQualification(qualification, metadata, dataPageQueryParameters);
+
+        /**
+         * III) Building the datapage query Parameters and calling the Web Api Record definition.
+         * datagequery.
+         */
+        // The Web Api does not understand pageSize and startIndex, the pagination is done by the qualification
+        // using the Rawg.io Rest Api query parameters "page" and "page_size".
+        // We still pass the values matching the Rawg.io page, they are ignored by the Platform call to the web api.
+        WebApiQuery webApiQuery = new WebApiQuery(metadata.getWebApiRecordDefinitionName(),
+                qualification.build(),
+                propertySelections,
+                pageRequest.getPageSize(),
+                (pageRequest.getPage() - 1) * pageRequest.getPageSize());
+
+        metrics.record(ProviderMetrics.Stage.QUERY_TRANSLATION, System.nanoTime() - translationStartNanos);
+
+        // Fetching records from the Web Api Record Definition, or from the cache if the same query was done recently.
+        DataPage webApiDataPage = webApiDataPageLoader.load(webApiQuery, metadata, deadline);
+        int rawgioCount = readRawgioCount(metadata, webApiDataPage);
+
+        // An empty first page means there is no game at all, an empty page after it does not tell the count.
+        if (countQuery != null && (!webApiDataPage.getData().isEmpty() || pageRequest.getPage() == 1)) {
+            webApiDataPageLoader.rememberCount(countQuery, rawgioCount, metadata.getSettings());
+        }
+
+        // We try to return the "real number of games.
+        return new DataPage(rawgioCount, webApiDataPage.getData());
+    }
+
+    /**
+     * Adds to the Web Api qualification the conditions doing the pagination.
+     *
+     * @param qualification WebApiQualificationBuilder, the qualification being built.
+     * @param pageId        int, Rawg.io page.
+     * @param pageSize      int, Rawg.io page size.
+     */
+    private void appendPaginationQualification(WebApiQualificationBuilder qualification, int pageId, int pageSize) {
         /** Pagination */
         // As we saw earlier the pagination is passed by the grid through
         // pageSize = dataPageQueryParameters.getPageSize() and startIndex = dataPageQueryParameters.getStartIndex().
@@ -282,21 +665,26 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
         // Here we build a qualification to leverage this field, so:
         // '{page field Id}' = "{pageId}"
         // '5310000001' = "1"
-        String pageFieldId = getQueryParameterFieldId("page");
-        myQualification = "'" + pageFieldId + "' = \"%PAGE_ID%\"";
-        myQualification = myQualification.replace("%PAGE_ID%", Integer.toString(pageId));
+        qualification.add("page", pageId);
 
         // Same principle for the page_size, we continue to build the qualification.
         // Same for the page size which is saved as "GET_QUERY_PARAMETER_page_size" with a fieldId, for example 5310000002.
         // Here we build a qualification to leverage this field, so:
         // AND '{page_size field Id}' = "{page size}"
         // AND '5310000002' = "25"
-        String pageSizeFieldId = getQueryParameterFieldId("page_size");
-        myQualification += " AND '" + pageSizeFieldId + "' = \"%PAGE_SIZE%\"";
         // Rawg.io seems to have a limitation where the page_size is only 40, which is very unfortunate for us.
-        // So we'll have to paginate twice. In this case, we always ask for 25 records.
-        myQualification = myQualification.replace("%PAGE_SIZE%", Integer.toString(RAWGIO_MAX_PAGE_SIZE));
+        // So we might have to paginate several times, the page size was computed by the RawgioPagePlanner.
+        qualification.add("page_size", pageSize);
+    }
 
+    /**
+     * Adds to the Web Api qualification the condition doing the sort, if there is something to sort on.
+     *
+     * @param qualification           WebApiQualificationBuilder, the qualification being built.
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     */
+    private void appendSortQualification(WebApiQualificationBuilder qualification, WebApiRecordDefinitionMetadata metadata, DataPageQueryParameters dataPageQueryParameters) {
         /** Sort */
         // The sort is provided by the sortBy datagequery parameter which is an array of columns.
         // Once again as for the qualification we have to replace the fields labels by ids.
@@ -312,44 +700,54 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
         // Here we build a qualification to leverage this field, so:
         // AND '{ordering field Id}' = "{fields to order on}"
         // AND '5310000003' = "-name,released"
-        String sortBy = "";
+        WebApiFieldIndex fieldIndex = metadata.getFieldIndex();
+        StringBuilder sortBy = new StringBuilder();
 
         for (SortByValue sortOrder : dataPageQueryParameters.getSortByValues()) {
-            String fieldId = sortOrder.getPropertyName();
-            String webApiFieldName = "";
-
             // We look for the field Id and we replace by the name, which is stored in the Web Api mapping, at least in our case.
             // For example for the Web Api Record Definitionfield Id "1" the mapping in the Rawg.io Rest Api could be results.name,
-            // but in our Definition it is stored as "results||id". We will parse this to extract the Rawg.io property ("id") here:
+            // but in our Definition it is stored as "results||id". The field index already extracted the Rawg.io property ("id"):
             // 1 => results||id => id
             // We also have to do this as the grid usually adds a sort on the "id" column, which sadly we cannot sort on.
-            RecordDefinitionFieldMapping restExternalMapping = fieldDefinitionByFieldIdList.get(fieldId).getFieldMapping();
-
-            if (restExternalMapping != null) {
-                String[] restPath = ((ExternalRecordDefinitionFieldMapping) restExternalMapping).getExternalFieldId().split("\\|");
+            int slot = fieldIndex.indexOf(sortOrder.getPropertyName());
 
-                webApiFieldName = restPath[restPath.length - 1];
-            }
-
-            if (!webApiFieldName.equals("") && isFieldSortable(webApiFieldName)) {
-                if (!sortBy.equals("")) {
-                    sortBy += ",";
+            if (slot >= 0 && fieldIndex.isSortable(slot)) {
+                if (sortBy.length() > 0) {
+                    sortBy.append(',');
                 }
 
-                if (sortOrder.getIsAscending()) {
-                    webApiFieldName = "-" + webApiFieldName;
+                if (isRawgioDescending(sortOrder)) {
+                    sortBy.append('-');
                 }
 
-                sortBy += webApiFieldName;
+                sortBy.append(fieldIndex.getWebApiFieldName(slot));
             }
         }
 
-        if (!sortBy.equals("")) {
-            String sortFieldId = getQueryParameterFieldId("ordering");
-            myQualification += " AND '" + sortFieldId + "' = \"%FIELD_ID%\"";
-            myQualification = myQualification.replace("%FIELD_ID%", sortBy);
-        }
+        qualification.add("ordering", sortBy);
+    }
 
+    /**
+     * Tells the direction of a sort of the grid, for both the Rawg.io ordering and the {@link CatalogMirror}.
+     * <p>
+     * The provider always sent the ascending sorts of the grid as a "-" Rawg.io ordering, which Rawg.io sorts in
+     * descending order. The End Users know the grids this way, the mirror sorts them the same way.
+     *
+     * @param sortOrder SortByValue, a sort of the grid.
+     * @return boolean, true if the games are sorted in descending order of the property.
+     */
+    private static boolean isRawgioDescending(SortByValue sortOrder) {
+        return sortOrder.getIsAscending();
+    }
+
+    /**
+     * Adds to the Web Api qualification the conditions doing the search and the filters.
+     *
+     * @param qualification           WebApiQualificationBuilder, the qualification being built.
+     * @param metadata                WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the grid.
+     */
+    private void appendFilterQualification(WebApiQualificationBuilder qualification, WebApiRecordDefinitionMetadata metadata, DataPageQueryParameters dataPageQueryParameters) {
         /** Search */
         // As other parameters we need to pass to the Web Api, we need to add the search in the qualification.
         // Note:
@@ -360,107 +758,151 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
         // Here we build a qualification to leverage this field, so:
         // AND '{search field Id}' = "{value to search}"
         // AND '5310000004' = "foo"
-        if (recordInstanceId == null) {
-            // Here we are handling the grid "Global Search" and regular search (filters), which add a "queryExpression" in the original
-            // datapageQueryParameters. We have something like this, where we are just interested in the value that is searched, "foo":
-            // queryExpression = '1' LIKE "%foo%" AND '8' LIKE "%foo%"
-            // We need to "translate" into this qualification which is expected by the Rawg.io Rest api:
-            // &search=foo
-            String initialQueryExpression = dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand();
-            String searchedValue = null;
-            String platformList = null;
-            HashMap<String, ArrayList<HashMap<String, String>>> searchFieldIdMapping = parseQueryExpression(initialQueryExpression);
-
-            for (String fieldId : searchFieldIdMapping.keySet()) {
-                String fieldName = fieldDefinitionByFieldIdList.get(fieldId).getName();
-
-                // If we search in the "name" (here the fieldId is "536870913"), we sadly can only take the first value if there are several,
-                // like in:
-                // ('536870913' = "test" OR '536870913' = "me" OR '536870913' like "%foobar%")
-                // AND ('536870916' = "187" OR '536870916' = "4" OR '536870916' = "5")
-                // We can only search for "test" (this is how Rawg.io works).
-                if (fieldName.equals("name") && searchedValue == null) {
-                    searchedValue = searchFieldIdMapping.get(fieldId).get(0).get("value");
-
-                    // Removing the leading and trailing % if necessary, if the End User looked for %foobar%
-                    // it will be changed to foobar.
-                    if (searchedValue != null && !searchedValue.isEmpty() && searchFieldIdMapping.get(fieldId).get(0).get("operator").toUpperCase().equals("LIKE")) {
-                        searchedValue = searchedValue.replace("%", "");
-                    }
-                }
-
-                // We need to build a list, but we need to check that the format is correct
-                // aka only digits for Rawg.io:
+        // Here we are handling the grid "Global Search" and regular search (filters), which add a "queryExpression" in the original
+        // datapageQueryParameters. We have something like this, where we are just interested in the value that is searched, "foo":
+        // queryExpression = '1' LIKE "%foo%" AND '8' LIKE "%foo%"
+        // We need to "translate" into this qualification which is expected by the Rawg.io Rest api:
+        // &search=foo
+        // The queryExpression is parsed once into a tree of AND / OR / NOT and conditions, and kept in a cache,
+        // so paging or sorting the same grid does not parse it again.
+        String initialQueryExpression = dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand();
+        String searchedValue = null;
+        StringBuilder platformList = new StringBuilder();
+        QueryExpression queryExpression = queryExpressionParser.parseOrEmpty(initialQueryExpression);
+        WebApiFieldIndex fieldIndex = metadata.getFieldIndex();
+
+        for (QueryExpression.Condition condition : getRawgioConditions(fieldIndex, queryExpression)) {
+            if (fieldIndex.getFieldName(fieldIndex.indexOf(condition.getFieldId())).equals("name")) {
+                // Removing the % if necessary, if the End User looked for %foobar%
+                // it will be changed to foobar.
+                searchedValue = condition.getOperator() == QueryExpression.Operator.LIKE ? condition.getValue().replace("%", "") : condition.getValue();
+            } else {
                 // &platforms=123,456
-                if (fieldName.equals("platforms")) {
-                    for (HashMap<String, String> platformFilter : searchFieldIdMapping.get(fieldId)) {
-                        String platform = platformFilter.get("value");
-
-                        if (isOnlyDigits(platform)) {
-                            if (platformList != null) {
-                                platformList += "," + platform;
-                            } else {
-                                platformList = platform;
-                            }
-                        }
-                    }
+                if (platformList.length() > 0) {
+                    platformList.append(',');
                 }
+
+                platformList.append(condition.getValue());
             }
+        }
 
-            if (searchedValue != null && !searchedValue.isEmpty()) {
-                String searchFieldId = getQueryParameterFieldId("search");
-                myQualification += " AND '" + searchFieldId + "' = \"%FIELD_ID%\"";
-                myQualification = myQualification.replace("%FIELD_ID%", searchedValue);
+        qualification.add("search", searchedValue);
+        qualification.add("platforms", platformList);
+    }
+
+    /**
+     * Returns the conditions of the grid Rawg.io can apply: the first equality or LIKE on the name, as the search,
+     * and the equalities on the platforms, as the platforms list. The other conditions are not sent, see
+     * {@link #getDroppedConditionCount(WebApiFieldIndex, QueryExpression)}.
+     *
+     * @param fieldIndex      WebApiFieldIndex, the fields of the Web Api Record Definition.
+     * @param queryExpression QueryExpression, the parsed queryExpression of the grid.
+     * @return List<QueryExpression.Condition>, the conditions sent to Rawg.io.
+     */
+    private List<QueryExpression.Condition> getRawgioConditions(WebApiFieldIndex fieldIndex, QueryExpression queryExpression) {
+        List<QueryExpression.Condition> rawgioConditions = new ArrayList<>();
+        boolean hasSearch = false;
+
+        // Only the conditions that are not under a NOT are used, Rawg.io cannot exclude a name or a platform.
+        for (Map.Entry<String, List<QueryExpression.Condition>> fieldConditions : queryExpression.getConditionsByFieldId().entrySet()) {
+            int slot = fieldIndex.indexOf(fieldConditions.getKey());
+
+            if (slot < 0) {
+                continue;
+            }
+
+            String fieldName = fieldIndex.getFieldName(slot);
+
+            // If we search in the "name" (here the fieldId is "536870913"), we sadly can only take the first value if there are several,
+            // like in:
+            // ('536870913' = "test" OR '536870913' = "me" OR '536870913' like "%foobar%")
+            // AND ('536870916' = "187" OR '536870916' = "4" OR '536870916' = "5")
+            // We can only search for "test" (this is how Rawg.io works).
+            if (fieldName.equals("name") && !hasSearch) {
+                for (QueryExpression.Condition condition : fieldConditions.getValue()) {
+                    // Rawg.io cannot search for names before or after a value.
+                    if (condition.getOperator() == QueryExpression.Operator.EQUAL || condition.getOperator() == QueryExpression.Operator.LIKE) {
+                        rawgioConditions.add(condition);
+                        hasSearch = true;
+                        break;
+                    }
+                }
             }
 
-            if (platformList != null && !platformList.isEmpty()) {
-                String platformsFieldId = getQueryParameterFieldId("platforms");
-                myQualification += " AND '" + platformsFieldId + "' = \"%FIELD_ID%\"";
-                myQualification = myQualification.replace("%FIELD_ID%", platformList);
+            // We need to build a list, but we need to check that the format is correct
+            // aka only digits for Rawg.io.
+            if (fieldName.equals("platforms")) {
+                for (QueryExpression.Condition condition : fieldConditions.getValue()) {
+                    if (condition.getOperator() == QueryExpression.Operator.EQUAL && isOnlyDigits(condition.getValue())) {
+                        rawgioConditions.add(condition);
+                    }
+                }
             }
-        } else {
-            // We want to get a specific Entry, usually called by the "getRecordInstance()" method.
-            // In this case we use the search_exact and the search query parameters which are
-            // saved as "GET_QUERY_PARAMETER_search" and "GET_QUERY_PARAMETER_search_exact" with fieldIds,
-            // for example 5310000004 and 5310000005.
-            // Here we build a qualification to leverage those fields, so:
-            // AND '{search field Id}' = "{value to search}" AND '{search_exact field Id}' = "true"
-            // AND '5310000004' = "foo" AND '5310000005' = "true"
-            // https://api.rawg.io/api/games?search=<slug></>&search_exact=true
-            // https://api.rawg.io/api/games?search=grand-theft-auto-v&search_exact=true
-            String searchFieldId = getQueryParameterFieldId("search");
-            myQualification += " AND '" + searchFieldId + "' = \"%FIELD_ID%\"";
-            myQualification = myQualification.replace("%FIELD_ID%", recordInstanceId);
-
-            String searchExactFieldId = getQueryParameterFieldId("search_exact");
-            myQualification += " AND '" + searchExactFieldId + "' = \"%FIELD_ID%\"";
-            myQualification = myQualification.replace("%FIELD_ID%", "true");
         }
 
-        /**
-         * III) Building the datapage query Parameters and calling the Web Api Record definition.
-         * datagequery.
-         */
-        // Adding the final queryExpression.
-        dataPageParams.put("queryExpression", new ArrayList<String>(Arrays.asList(myQualification)));
-        DataPageQueryParameters queryParameters = new DataPageQueryParameters(dataPageParams);
+        return rawgioConditions;
+    }
 
-        // Fetching records from the Web Api Record Definition.
-        DataPage webApiDataPage = recordService.getRecordInstancesByIdDataPage(queryParameters);
-        int restApiCallTotalSize = 0;
+    /**
+     * Counts the conditions of the grid that are not sent to Rawg.io, see
+     * {@link #getRawgioConditions(WebApiFieldIndex, QueryExpression)}: the conditions under a NOT, the other
+     * operators, the other values of the name (the branches of an OR), and the fields without a Rawg.io filter.
+     * Rawg.io then returns more games than the grid asked for.
+     *
+     * @param fieldIndex      WebApiFieldIndex, the fields of the Web Api Record Definition.
+     * @param queryExpression QueryExpression, the parsed queryExpression of the grid.
+     * @return int, the number of conditions not applied.
+     */
+    private int getDroppedConditionCount(WebApiFieldIndex fieldIndex, QueryExpression queryExpression) {
+        int conditionCount = queryExpression.getNegatedConditions().size();
 
-        // We try to return the "real number of games.
-        // The Platform returns as total size the number of items, when we are interested by the
-        // total number of games available.
-        if (!webApiDataPage.getData().isEmpty()) {
-            if (rawgioCountFieldId != null) {
-                restApiCallTotalSize = ((HashMap<String, Integer>) (webApiDataPage.getData().get(0))).get(rawgioCountFieldId);
-            }
+        for (List<QueryExpression.Condition> conditions : queryExpression.getConditionsByFieldId().values()) {
+            conditionCount += conditions.size();
         }
 
-        return new DataPage(restApiCallTotalSize, webApiDataPage.getData());
+        return conditionCount - getRawgioConditions(fieldIndex, queryExpression).size();
+    }
+
+    /**
+     * Adds to the Web Api qualification the conditions searching for one game.
+     *
+     * @param qualification    WebApiQualificationBuilder, the qualification being built.
+     * @param recordInstanceId String, record instance id, the Rawg.io "slug".
+     */
+    private void appendRecordInstanceQualification(WebApiQualificationBuilder qualification, String recordInstanceId) {
+        // We want to get a specific Entry, when a game is opened and it was not in the games already fetched.
+        // In this case we use the search_exact and the search query parameters which are
+        // saved as "GET_QUERY_PARAMETER_search" and "GET_QUERY_PARAMETER_search_exact" with fieldIds,
+        // for example 5310000004 and 5310000005.
+        // Here we build a qualification to leverage those fields, so:
+        // AND '{search field Id}' = "{value to search}" AND '{search_exact field Id}' = "true"
+        // AND '5310000004' = "foo" AND '5310000005' = "true"
+        // https://api.rawg.io/api/games?search=<slug></>&search_exact=true
+        // https://api.rawg.io/api/games?search=grand-theft-auto-v&search_exact=true
+        qualification.add("search", recordInstanceId);
+        qualification.add("search_exact", "true");
     }
 
+    /**
+     * Reads the "real" number of games from a DataPage returned by the Web Api Record Definition.
+     * The Platform returns as total size the number of items, when we are interested by the
+     * total number of games available, which Rawg.io returns in the "count" field of each record.
+     *
+     * @param metadata      WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param webApiDataPage DataPage, DataPage returned by the Web Api Record Definition.
+     * @return int, the total number of games, 0 if unknown.
+     */
+    private int readRawgioCount(WebApiRecordDefinitionMetadata metadata, DataPage webApiDataPage) {
+        String rawgioCountFieldId = metadata.getRawgioCountFieldId();
+
+        if (webApiDataPage.getData().isEmpty() || rawgioCountFieldId == null) {
+            return 0;
+        }
+
+        Object count = ((Map<?, ?>) webApiDataPage.getData().get(0)).get(rawgioCountFieldId);
+
+        return count instanceof Number ? ((Number) count).intValue() : 0;
+    }
 
     /**
      * It seems this method is supposed to return a record instance, for example when called from a
@@ -469,7 +911,7 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
      * IMPORTANT:
      * This method does not seem to be called when getting a record instance:
      * http://server:post/api/rx/application/record/recordinstance/{Record Definition Name}/{Guid}
-     * It is unclear how it is used, so, it is a WIP as it cannot be tested...
+     * It is unclear how it is used, so it cannot really be tested...
      * The method called is actually "getDataPage()" for some reason.
      * Moreover, this is rather useless as a Custom Record cannot be used in a Record Editor...
      * Maybe it could be used in a "Get Record" process activity (?).
@@ -493,57 +935,232 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
      * IMPORTANT:
      * It seems the search functionality is busted in the Rawg.io /games rest api, as many exact search return several values, or
      * just cannot be found.
+     * So we first look for the game in the games already fetched by the grids, see {@link #getRecordInstanceRows}.
      *
      * @param recordDefinitionName, String, custom record definition name.
      * @param recordInstanceId,     String, record instance Id, in our example it is the "slug".
-     * @return RecordInstance, object as a RecordInstance.
+     * @return RecordInstance, object as a RecordInstance, empty if the game was not found.
      */
     @Override
     public RecordInstance getRecordInstance(String recordDefinitionName, String recordInstanceId) {
-        RecordInstance recordInstance = new RecordInstance();
-        // We need to create some datapage parameters with the strict minimum information.
-        // We only want one record.
-        DataPageQueryParameters dataPageQueryParameters = null;
-        Map<String, List<String>> dataPageParams = new HashMap<String, List<String>>();
-        String myQualification = "";
+        return metrics.time(ProviderMetrics.RequestType.RECORD_INSTANCE, () -> {
+            WebApiRecordDefinitionMetadata metadata = getWebApiRecordDefinition(recordDefinitionName);
+
+            catalogSnapshotStore.saveIfDue();
+
+            RecordInstance recordInstance = findRecordInstance(recordDefinitionName, metadata, recordInstanceId,
+                    RequestDeadline.after(metadata.getSettings().getRequestTimeoutMillis()));
+
+            return recordInstance != null ? recordInstance : new RecordInstance();
+        });
+    }
+
+    /**
+     * Returns several games at once, for example for a process enriching many records.
+     * <p>
+     * Calling getRecordInstance() for each game would do one Rawg.io call after the other. Here the games already
+     * fetched are returned at once (see {@link RecordInstanceIndex}), and the others are fetched in parallel, at
+     * most {@link ProviderSettings#getBatchFetchParallelism()} at a time, the calls going through the rate limiter
+     * as any other call.
+     *
+     * @param recordDefinitionName String, custom record definition name.
+     * @param recordInstanceIds    Set<String>, record instance Ids, in our example they are "slugs".
+     * @return Map<String, RecordInstance>, the record instances per record instance Id. The games that were not found,
+     * or could not be fetched, are not in the map.
+     */
+    public Map<String, RecordInstance> getRecordInstances(String recordDefinitionName, Set<String> recordInstanceIds) {
+        return metrics.time(ProviderMetrics.RequestType.RECORD_INSTANCES, () -> readRecordInstances(recordDefinitionName, recordInstanceIds));
+    }
 
-        // Standard datapage type.
-        dataPageParams.put("dataPageType", new ArrayList<String>(Arrays.asList(DATAPAGEQUERY_TYPE)));
+    /**
+     * Answers a getRecordInstances() call.
+     *
+     * @param recordDefinitionName String, custom record definition name.
+     * @param recordInstanceIds    Set<String>, record instance Ids.
+     * @return Map<String, RecordInstance>, the record instances found per record instance Id.
+     */
+    private Map<String, RecordInstance> readRecordInstances(String recordDefinitionName, Set<String> recordInstanceIds) {
+        WebApiRecordDefinitionMetadata metadata = getWebApiRecordDefinition(recordDefinitionName);
+        RequestDeadline deadline = RequestDeadline.after(metadata.getSettings().getRequestTimeoutMillis());
 
-        // We want to get all fields back.
-        // LMA:: TODO:: Add all fields (?)
-        List<String> propertySelections = new ArrayList<String>();
-        dataPageParams.put("propertySelection", new ArrayList<String>(propertySelections));
+        catalogSnapshotStore.saveIfDue();
 
-        // We want to fetch data from the Web Api Record Definition.
-        dataPageParams.put("recorddefinition", new ArrayList<String>(Arrays.asList(webApiRecordDefinition.getName())));
+        RecordInstanceIndex recordInstanceIndex = webApiDataPageLoader.getRecordInstanceIndex();
+        List<String> fieldIds = metadata.getFieldIndex().getMappedFieldIds();
+        Map<String, RecordInstance> recordInstances = new ConcurrentHashMap<>();
+        Queue<String> recordInstanceIdsToFetch = new ConcurrentLinkedQueue<>();
 
-        // Number of records to return (1) and first page.
-        // It is not important, as they will be ignored by the Platform call to the web api.
-        dataPageParams.put("pageSize", new ArrayList<String>(Arrays.asList("1")));
-        dataPageParams.put("startIndex", new ArrayList<String>(Arrays.asList("0")));
+        for (String recordInstanceId : recordInstanceIds) {
+            Map<?, ?> indexedRow = recordInstanceIndex.get(metadata.getWebApiRecordDefinitionName(), recordInstanceId, fieldIds);
 
-        /** Pagination */
-        // Please check the method "getWebApiDataPage" for details.
-        // We only want one record back, so page is 1 and page_size is 1.
-        String pageFieldId = getQueryParameterFieldId("page");
-        myQualification = "'" + pageFieldId + "' = \"%PAGE_ID%\"";
-        myQualification = myQualification.replace("%PAGE_ID%", "1");
+            if (indexedRow != null) {
+                recordInstances.put(recordInstanceId, toRecordInstance(recordDefinitionName, metadata, indexedRow));
+            } else {
+                recordInstanceIdsToFetch.add(recordInstanceId);
+            }
+        }
 
-        String pageSizeFieldId = getQueryParameterFieldId("page_size");
-        myQualification += " AND '" + pageSizeFieldId + "' = \"%PAGE_SIZE%\"";
-        myQualification = myQualification.replace("%PAGE_SIZE%", "1");
+        // Each fetcher takes the next game to fetch until there is none left, or the deadline passed. The request
+        // thread is one of them.
+        Runnable fetcher = () -> {
+            String recordInstanceId;
 
-        /** Adding the final queryExpression: */
-        dataPageParams.put("queryExpression", new ArrayList<String>(Arrays.asList(myQualification)));
-        dataPageQueryParameters = new DataPageQueryParameters(dataPageParams);
+            while (!deadline.isExpired() && (recordInstanceId = recordInstanceIdsToFetch.poll()) != null) {
+                try {
+                    RecordInstance recordInstance = findRecordInstance(recordDefinitionName, metadata, recordInstanceId, deadline);
 
-        // Getting the dataPage:
-        DataPage recordInstanceDataPage = getWebApiDataPage(1, dataPageQueryParameters, recordInstanceId);
+                    if (recordInstance != null) {
+                        recordInstances.put(recordInstanceId, recordInstance);
+                    }
+                } catch (RuntimeException e) {
+                    // This game could not be fetched (rejected by the rate limiter for example), the others can.
+                    metrics.recordUpstreamError(e);
+                }
+            }
+        };
+        int backgroundFetchers = Math.min(recordInstanceIdsToFetch.size(), metadata.getSettings().getBatchFetchParallelism()) - 1;
+        List<Future<?>> backgroundFetcherFutures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < backgroundFetchers; i++) {
+                backgroundFetcherFutures.add(upstreamExecutor.submit(() -> {
+                    fetcher.run();
+                    return null;
+                }));
+            }
+
+            fetcher.run();
 
-        // LMA:: TODO:: Conversion.
-        // We need to "convert" the DataPage to make it a RecordInstance.
-        int totalSize = recordInstanceDataPage.getTotalSize();
+            for (Future<?> backgroundFetcherFuture : backgroundFetcherFutures) {
+                deadline.await(backgroundFetcherFuture, metadata.getWebApiRecordDefinitionName());
+            }
+        } catch (WebApiCallRejectedException e) {
+            // The deadline passed, the games fetched so far are returned.
+        } finally {
+            // Only useful if the deadline passed or the request thread was interrupted: the fetchers not started yet
+            // are dropped. The running ones are not interrupted, they stop after their current game once the deadline
+            // passed, and that call still fills the caches.
+            for (Future<?> backgroundFetcherFuture : backgroundFetcherFutures) {
+                backgroundFetcherFuture.cancel(false);
+            }
+        }
+
+        // A copy, as a background fetcher still running could add a game.
+        return new HashMap<>(recordInstances);
+    }
+
+    /**
+     * Returns a game with all its fields.
+     *
+     * @param recordDefinitionName String, custom record definition name.
+     * @param metadata             WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param recordInstanceId     String, record instance Id, the Rawg.io "slug".
+     * @param deadline             RequestDeadline, time left to the request.
+     * @return RecordInstance, the record instance, or null if the game was not found.
+     */
+    private RecordInstance findRecordInstance(String recordDefinitionName, WebApiRecordDefinitionMetadata metadata, String recordInstanceId, RequestDeadline deadline) {
+        // We want to get all the fields of the game back.
+        List<Object> recordInstanceRows = getRecordInstanceRows(metadata, recordInstanceId, metadata.getFieldIndex().getMappedFieldIds(), deadline);
+
+        return recordInstanceRows.isEmpty() ? null : toRecordInstance(recordDefinitionName, metadata, (Map<?, ?>) recordInstanceRows.get(0));
+    }
+
+    /**
+     * Returns the record instance Id when the grid queryExpression only looks for one record instance:
+     * '379' = "{record instance Id}"
+     *
+     * @param dataPageQueryParameters DataPageQueryParameters, datapagequeryparameters object sent by the Platform.
+     * @return String, the record instance Id, or null if the queryExpression is not a record instance query.
+     */
+    private String getRecordInstanceId(DataPageQueryParameters dataPageQueryParameters) {
+        QueryExpression queryExpression = queryExpressionParser.parseOrEmpty(dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand());
+
+        if (!(queryExpression.getRoot() instanceof QueryExpression.Condition)) {
+            return null;
+        }
+
+        QueryExpression.Condition condition = (QueryExpression.Condition) queryExpression.getRoot();
+
+        return condition.getFieldId().equals(RecordInstanceIndex.RECORD_INSTANCE_ID_FIELD_ID) && condition.getOperator() == QueryExpression.Operator.EQUAL
+                ? condition.getValue()
+                : null;
+    }
+
+    /**
+     * Returns the row of a game.
+     * The game is first looked for in the games already fetched (see {@link RecordInstanceIndex}). If it is not
+     * there, or does not have all the needed fields, Rawg.io is searched for its slug with search_exact.
+     * As the Rawg.io search can return several games, the game having exactly this Id is kept. If there is none we
+     * return what Rawg.io found.
+     *
+     * @param metadata         WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param recordInstanceId String, record instance Id, the Rawg.io "slug".
+     * @param fieldIds         List<String>, the fields needed.
+     * @param deadline         RequestDeadline, time left to the request.
+     * @return List<Object>, the row of the game, or the rows returned by the Rawg.io search.
+     */
+    private List<Object> getRecordInstanceRows(WebApiRecordDefinitionMetadata metadata, String recordInstanceId, List<String> fieldIds, RequestDeadline deadline) {
+        Map<?, ?> indexedRow = webApiDataPageLoader.getRecordInstanceIndex().get(metadata.getWebApiRecordDefinitionName(), recordInstanceId, fieldIds);
+
+        if (indexedRow != null) {
+            return List.of(indexedRow);
+        }
+
+        // The Id field is needed to find the right game in the Rawg.io search results.
+        List<String> propertySelections = new ArrayList<>(fieldIds);
+
+        if (!propertySelections.contains(RecordInstanceIndex.RECORD_INSTANCE_ID_FIELD_ID)) {
+            propertySelections.add(RecordInstanceIndex.RECORD_INSTANCE_ID_FIELD_ID);
+        }
+
+        WebApiQualificationBuilder qualification = new WebApiQualificationBuilder(metadata);
+        appendPaginationQualification(qualification, 1, RAWGIO_DEFAULT_PAGE_SIZE);
+        appendRecordInstanceQualification(qualification, recordInstanceId);
+
+        WebApiQuery webApiQuery = new WebApiQuery(metadata.getWebApiRecordDefinitionName(),
+                qualification.build(),
+                propertySelections,
+                RAWGIO_DEFAULT_PAGE_SIZE,
+                0);
+        List<Object> rows = webApiDataPageLoader.load(webApiQuery, metadata, deadline).getData();
+
+        for (Object row : rows) {
+            if (row instanceof Map && recordInstanceId.equals(String.valueOf(((Map<?, ?>) row).get(RecordInstanceIndex.RECORD_INSTANCE_ID_FIELD_ID)))) {
+                return List.of(row);
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * "Converts" a row returned by the Web Api Record Definition to a RecordInstance of the Custom Record Definition.
+     * Both definitions use the same field Ids.
+     *
+     * @param recordDefinitionName String, custom record definition name.
+     * @param metadata             WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param row                  Map<?, ?>, the row, field Id to value.
+     * @return RecordInstance, the record instance.
+     */
+    private RecordInstance toRecordInstance(String recordDefinitionName, WebApiRecordDefinitionMetadata metadata, Map<?, ?> row) {
+        WebApiFieldIndex fieldIndex = metadata.getFieldIndex();
+        RecordInstance recordInstance = new RecordInstance();
+
+        recordInstance.setRecordDefinitionName(recordDefinitionName);
+
+        for (Map.Entry<?, ?> field : row.entrySet()) {
+            int slot = fieldIndex.indexOf(String.valueOf(field.getKey()));
+
+            if (slot >= 0) {
+                recordInstance.setFieldValue(fieldIndex.getFieldId(slot), field.getValue());
+            }
+        }
+
+        Object recordInstanceId = row.get(RecordInstanceIndex.RECORD_INSTANCE_ID_FIELD_ID);
+
+        if (recordInstanceId != null) {
+            recordInstance.setId(recordInstanceId.toString());
+        }
 
         return recordInstance;
     }
@@ -576,69 +1193,13 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
      */
     @Override
     public Integer getRecordInstanceCount(String recordDefinitionName, DataPageQueryParameters dataPageQueryParameters, Set<DataProviderMappingConfig> customRecordDefinition, Set<Integer> noIdea) {
-        // In this case get the rest api call, and just use the count.
-        // If this is a real count we should have:
-        //  pageSize is 1, startIndex is 0 and shouldIncludeTotalSize is "true"
-        DataPage dataPage = getDataPage(recordDefinitionName, dataPageQueryParameters, customRecordDefinition, noIdea);
-
-        return dataPage.getTotalSize();
-    }
-
-    /**
-     * The goal is to map the different filters and searches by fieldId, so if we have a combination
-     * of filters (test, me, %foobar% for name, and Xbox, PS1 for platforms) and grid global search (foo) such as:
-     * ('536870913' = "test" OR '536870913' = "me" OR '536870913' like "%foobar%")
-     * AND ('536870916' = "xbox" OR '536870916' = "PS1")
-     * AND ('536870913' LIKE "%foo%" OR '536870914' LIKE "%foo%" OR '536870916' LIKE "%foo%")
-     * We would like to end up having a mapping of different operators and values, per field id:
-     * fieldIdMapping["536870913"] = [
-     * {
-     * "operator": "=",
-     * "value": "test"
-     * },
-     * {
-     * "operator": "=",
-     * "value": "me"
-     * },
-     * {
-     * "operator": "like",
-     * "value": "%foobar%"
-     * }
-     * ]
-     * <p>
-     * Note:
-     * This code has been generated by ChatGPT and modified.
-     * Who said I don't credit AI work :)
-     * Don't hit me Skynet...
-     *
-     * @param queryExpression String
-     * @return HashMap<String, ArrayList < HashMap < String, String>>> mapping of fieldIds with their matching operators and values.
-     */
-    private HashMap<String, ArrayList<HashMap<String, String>>> parseQueryExpression(String queryExpression) {
-        HashMap<String, ArrayList<HashMap<String, String>>> fieldIdMapping = new HashMap<>();
-
-        // Regular expression pattern to match fieldId, operator, and value.
-        Pattern pattern = Pattern.compile("'(\\d+)' (?:=|like|LIKE) \"([^\"]+)\"");
-        Matcher matcher = pattern.matcher(queryExpression);
+        // We only need the Rawg.io "count", whatever the pagination, sorting or displayed columns are.
+        return metrics.time(ProviderMetrics.RequestType.COUNT,
+                () -> {
+                    WebApiRecordDefinitionMetadata metadata = getWebApiRecordDefinition(recordDefinitionName);
 
-        // Iterate through the matches and populate the mapping
-        while (matcher.find()) {
-            String fieldId = matcher.group(1);
-            String operator = matcher.group(0).toUpperCase().contains("' LIKE \"") ? "LIKE" : "=";
-            String value = matcher.group(2);
-
-            HashMap<String, String> condition = new HashMap<>();
-            condition.put("operator", operator);
-            condition.put("value", value);
-
-            if (!fieldIdMapping.containsKey(fieldId)) {
-                fieldIdMapping.put(fieldId, new ArrayList<>());
-            }
-
-            fieldIdMapping.get(fieldId).add(condition);
-        }
-
-        return fieldIdMapping;
+                    return getWebApiCount(metadata, dataPageQueryParameters, RequestDeadline.after(metadata.getSettings().getRequestTimeoutMillis()));
+                });
     }
 
     /**
@@ -652,10 +1213,16 @@ public class VideoGameGamesCustomRecordProvider implements ExternalRecordDataPro
      * @return boolean, is the input string has only digits.
      */
     private boolean isOnlyDigits(String platformId) {
-        if (platformId == null) {
+        if (platformId == null || platformId.isEmpty()) {
             return false;
         }
 
-        return platformId.matches("\\d+");
+        for (int i = 0; i < platformId.length(); i++) {
+            if (platformId.charAt(i) < '0' || platformId.charAt(i) > '9') {
+                return false;
+            }
+        }
+
+        return true;
     }
 }
@@ -0,0 +1,19 @@
+package com.example.bundle;
+
+/**
+ * Thrown when a call to the Web Api Record Definition is not done because the provider protects Rawg.io (and
+ * our api key), for example when the call waited too long for the rate limit.
+ * The grid then gets an error at once, instead of a request thread being blocked for an unknown time.
+ */
+class WebApiCallRejectedException extends RuntimeException {
+    private final String webApiRecordDefinitionName;
+
+    WebApiCallRejectedException(String webApiRecordDefinitionName, String message) {
+        super(message + " (Web Api Record Definition: " + webApiRecordDefinitionName + ")");
+        this.webApiRecordDefinitionName = webApiRecordDefinitionName;
+    }
+
+    String getWebApiRecordDefinitionName() {
+        return webApiRecordDefinitionName;
+    }
+}
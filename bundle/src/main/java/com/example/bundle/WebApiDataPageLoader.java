@@ -0,0 +1,462 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import com.bmc.arsys.rx.services.record.RecordService;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Calls the Web Api Record Definition for a {@link WebApiQuery}.
+ * <p>
+ * Many users open the same grid with the same sort and search, so the returned DataPages are kept in a
+ * shared {@link TtlLruCache}, keyed by the translated query. A repeated page view is then answered without
+ * calling Rawg.io at all, which protects our rate limited api key.
+ * <p>
+ * When the same query is asked by several requests at the same time and is not cached yet, only one of them
+ * calls the Web Api Record Definition, the others wait for it and share its DataPage ({@link SingleFlight}).
+ * <p>
+ * With the stale-while-revalidate mode ({@link ProviderSettings#getDataPageMaxStaleSeconds()}), a DataPage older
+ * than its time to live is still returned at once for a while, and refreshed in the background. The games
+ * catalog changes slowly, so a grid is then answered from memory even when its DataPage just expired, and
+ * keeps working with the last known DataPage while Rawg.io fails or is too slow.
+ * <p>
+ * The rows of every fetched DataPage are also indexed by record instance Id ({@link RecordInstanceIndex}).
+ * <p>
+ * Counts are cached on their own, with a shorter time to live, as only the number is needed.
+ * <p>
+ * The calls that do reach the Web Api Record Definition go through the {@link UpstreamRateLimiter} of the
+ * definition, so a burst of grids does not get our api key throttled by Rawg.io, and through its
+ * {@link UpstreamCircuitBreaker}, so the calls fail at once while Rawg.io is failing. The cached DataPages, stale
+ * ones included, are still served meanwhile.
+ * <p>
+ * A request never waits for Rawg.io longer than its {@link RequestDeadline}, and a slow call can be hedged by a
+ * second identical call, see {@link #fetchWithinDeadline}.
+ */
+final class WebApiDataPageLoader {
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
+    private final Supplier<RecordService> recordServiceSupplier;
+    private final TtlLruCache<WebApiQuery, DataPage> dataPageCache;
+    private final TtlLruCache<WebApiQuery, Integer> countCache;
+    private final SingleFlight<WebApiQuery, DataPage> singleFlight = new SingleFlight<>();
+    private final ConcurrentHashMap<String, UpstreamRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, UpstreamCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final UpstreamExecutor upstreamExecutor;
+    private final ProviderMetrics metrics;
+    private final RecordInstanceIndex recordInstanceIndex = new RecordInstanceIndex();
+    private final Set<WebApiQuery> refreshesInFlight = ConcurrentHashMap.newKeySet();
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder failedRefreshes = new LongAdder();
+    private final LongAdder timedOutRequests = new LongAdder();
+    private final LongAdder hedgedCalls = new LongAdder();
+    private final LongAdder callerThreadFetches = new LongAdder();
+    private final LongAdder circuitBreakerOpenings = new LongAdder();
+
+    WebApiDataPageLoader(Supplier<RecordService> recordServiceSupplier, UpstreamExecutor upstreamExecutor, ProviderMetrics metrics) {
+        this.recordServiceSupplier = recordServiceSupplier;
+        this.upstreamExecutor = upstreamExecutor;
+        this.metrics = metrics;
+        this.dataPageCache = new TtlLruCache<>(ProviderSettings.getGlobalInt("dataPageCacheSize", DEFAULT_CACHE_SIZE), 0);
+        this.countCache = new TtlLruCache<>(ProviderSettings.getGlobalInt("countCacheSize", DEFAULT_CACHE_SIZE), 0);
+    }
+
+    /**
+     * Returns the DataPage of a query, from the cache if possible.
+     *
+     * @param query    WebApiQuery, the translated query.
+     * @param metadata WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param deadline RequestDeadline, time left to the request.
+     * @return DataPage, the DataPage returned by the Web Api Record Definition.
+     */
+    DataPage load(WebApiQuery query, WebApiRecordDefinitionMetadata metadata, RequestDeadline deadline) {
+        ProviderSettings settings = metadata.getSettings();
+        TtlLruCache.Entry<DataPage> entry = dataPageCache.getEntry(query);
+
+        if (entry == null) {
+            return fetchWithinDeadline(query, metadata, deadline, () -> fetch(query, metadata));
+        }
+
+        // The entry is kept up to the maximum staleness, past its time to live it is stale: it is still
+        // returned, but refreshed for the next requests.
+        if (System.nanoTime() - entry.getCreatedAtNanos() >= TimeUnit.SECONDS.toNanos(settings.getDataPageCacheTimeToLiveSeconds())) {
+            staleServed.increment();
+            refreshInBackground(query, metadata);
+        }
+
+        return entry.getValue();
+    }
+
+    /**
+     * Refreshes a stale DataPage in the background, once at a time per query. If the refresh fails the stale
+     * DataPage stays in the cache until its maximum staleness.
+     */
+    private void refreshInBackground(WebApiQuery query, WebApiRecordDefinitionMetadata metadata) {
+        if (!refreshesInFlight.add(query)) {
+            return;
+        }
+
+        boolean accepted = upstreamExecutor.tryExecuteInBackground(() -> {
+            try {
+                singleFlight.execute(query, () -> fetch(query, metadata));
+            } catch (RuntimeException e) {
+                failedRefreshes.increment();
+            } finally {
+                refreshesInFlight.remove(query);
+            }
+        });
+
+        // The background threads are busy, a next request will try again.
+        if (!accepted) {
+            refreshesInFlight.remove(query);
+        }
+    }
+
+    /**
+     * Returns the count of a count query, from the cache if possible.
+     *
+     * @param countQuery  WebApiQuery, the translated count query (page_size = 1, only the "count" field).
+     * @param metadata    WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param deadline    RequestDeadline, time left to the request.
+     * @param countReader ToIntFunction<DataPage>, reads the count from the DataPage returned by the
+     *                    Web Api Record Definition.
+     * @return int, the count.
+     */
+    int loadCount(WebApiQuery countQuery, WebApiRecordDefinitionMetadata metadata, RequestDeadline deadline, ToIntFunction<DataPage> countReader) {
+        ProviderSettings settings = metadata.getSettings();
+        Integer count = countCache.get(countQuery);
+
+        if (count == null) {
+            count = countReader.applyAsInt(fetchWithinDeadline(countQuery, metadata, deadline, () -> call(countQuery, metadata)));
+            countCache.put(countQuery, count, TimeUnit.SECONDS.toNanos(settings.getCountCacheTimeToLiveSeconds()));
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the count of a count query if it is known, read by the query itself or from a grid page, without
+     * calling Rawg.io.
+     *
+     * @param countQuery WebApiQuery, the translated count query.
+     * @return Integer, the count, or null if it is not known.
+     */
+    Integer getKnownCount(WebApiQuery countQuery) {
+        return countCache.get(countQuery);
+    }
+
+    /**
+     * Remembers the Rawg.io "count" returned with a grid page, so the "50+" link and the next grid pages of the same
+     * search and filters do not need to ask for it again.
+     *
+     * @param countQuery WebApiQuery, the translated count query of the search and filters.
+     * @param count      int, the count.
+     * @param settings   ProviderSettings, settings of the Web Api Record Definition.
+     */
+    void rememberCount(WebApiQuery countQuery, int count, ProviderSettings settings) {
+        countCache.put(countQuery, count, TimeUnit.SECONDS.toNanos(settings.getCountCacheTimeToLiveSeconds()));
+    }
+
+    /**
+     * Fetches a query not cached yet, only once when several requests ask for it at the same time
+     * ({@link SingleFlight}).
+     * <p>
+     * With a deadline, the fetch runs on a thread of the {@link UpstreamExecutor} and the request thread waits for it
+     * until the deadline only. The fetch is not cancelled when the deadline passes, so its DataPage still fills the
+     * cache for the next requests. On a thread of the pool (the second Rawg.io page of a grid page for example) the
+     * fetch runs where it is, the request thread already waits for that thread with the same deadline. When the pool
+     * is busy, the request thread runs the fetch itself, as without a deadline.
+     * <p>
+     * With hedging ({@link ProviderSettings#getHedgeDelayMillis()}), when the fetch did not answer after the hedge
+     * delay, the same call is sent again if the rate limiter has spare capacity, and the first answer is used. Rawg.io
+     * latency has a long tail, a second call usually answers faster than the slowest calls.
+     *
+     * @param query    WebApiQuery, the translated query.
+     * @param metadata WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @param deadline RequestDeadline, time left to the request.
+     * @param fetcher  Supplier<DataPage>, calls the Web Api Record Definition.
+     * @return DataPage, the DataPage returned by the Web Api Record Definition.
+     * @throws WebApiCallRejectedException if the deadline passed, or the circuit breaker is open.
+     */
+    private DataPage fetchWithinDeadline(WebApiQuery query, WebApiRecordDefinitionMetadata metadata, RequestDeadline deadline, Supplier<DataPage> fetcher) {
+        ProviderSettings settings = metadata.getSettings();
+        Supplier<DataPage> sharedFetcher = () -> singleFlight.execute(query, fetcher);
+
+        if ((!deadline.isBounded() && settings.getHedgeDelayMillis() <= 0) || UpstreamExecutor.isUpstreamThread()) {
+            return sharedFetcher.get();
+        }
+
+        String webApiRecordDefinitionName = query.getWebApiRecordDefinitionName();
+
+        try {
+            // Failing at once, without using a thread of the pool.
+            getCircuitBreaker(webApiRecordDefinitionName, settings).rejectIfOpen();
+
+            if (deadline.isExpired()) {
+                timedOutRequests.increment();
+                throw new WebApiCallRejectedException(webApiRecordDefinitionName, "Rawg.io did not answer within the request timeout");
+            }
+        } catch (WebApiCallRejectedException e) {
+            metrics.recordUpstreamError(e);
+            throw e;
+        }
+
+        CompletableFuture<DataPage> dataPageFuture = upstreamExecutor.trySupplyInBackground(sharedFetcher);
+
+        if (dataPageFuture == null) {
+            // The pool is busy, the request thread fetches the page itself. It cannot stop waiting at the deadline,
+            // but the rate limiter never makes it wait longer than the call queue timeout.
+            callerThreadFetches.increment();
+            return sharedFetcher.get();
+        }
+
+        long hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(settings.getHedgeDelayMillis());
+
+        if (hedgeDelayNanos > 0 && deadline.getRemainingNanos() > hedgeDelayNanos) {
+            try {
+                return UpstreamExecutor.await(dataPageFuture, hedgeDelayNanos);
+            } catch (TimeoutException e) {
+                dataPageFuture = hedge(query, metadata, dataPageFuture, fetcher);
+            }
+        }
+
+        try {
+            return deadline.await(dataPageFuture, webApiRecordDefinitionName);
+        } catch (WebApiCallRejectedException e) {
+            if (deadline.isExpired()) {
+                timedOutRequests.increment();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a second call for a slow call, and returns the first successful answer of both, or the last error.
+     * The second call is not shared through the {@link SingleFlight}, the first one is.
+     */
+    private CompletableFuture<DataPage> hedge(WebApiQuery query, WebApiRecordDefinitionMetadata metadata, CompletableFuture<DataPage> slowCall, Supplier<DataPage> fetcher) {
+        if (!getRateLimiter(query.getWebApiRecordDefinitionName(), metadata.getSettings()).hasSpareCapacity()) {
+            return slowCall;
+        }
+
+        CompletableFuture<DataPage> hedgedCall = upstreamExecutor.trySupplyInBackground(fetcher);
+
+        if (hedgedCall == null) {
+            return slowCall;
+        }
+
+        hedgedCalls.increment();
+
+        CompletableFuture<DataPage> firstAnswer = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<DataPage, Throwable> onAnswer = (dataPage, error) -> {
+            if (error == null) {
+                firstAnswer.complete(dataPage);
+            } else if (failures.incrementAndGet() == 2) {
+                firstAnswer.completeExceptionally(error);
+            }
+        };
+
+        slowCall.whenComplete(onAnswer);
+        hedgedCall.whenComplete(onAnswer);
+
+        return firstAnswer;
+    }
+
+    /**
+     * Calls the Web Api Record Definition and caches the DataPage.
+     */
+    private DataPage fetch(WebApiQuery query, WebApiRecordDefinitionMetadata metadata) {
+        ProviderSettings settings = metadata.getSettings();
+        DataPage dataPage = call(query, metadata);
+
+        // Without a time to live there is nothing to refresh, the DataPage is not cached at all.
+        if (settings.getDataPageCacheTimeToLiveSeconds() > 0) {
+            dataPageCache.put(query, dataPage, TimeUnit.SECONDS.toNanos(settings.getDataPageCacheTimeToLiveSeconds() + Math.max(0, settings.getDataPageMaxStaleSeconds())));
+        }
+
+        // The games of the page can then be opened without calling Rawg.io again.
+        recordInstanceIndex.index(query.getWebApiRecordDefinitionName(), dataPage.getData(), TimeUnit.SECONDS.toNanos(settings.getDataPageCacheTimeToLiveSeconds()));
+
+        return dataPage;
+    }
+
+    /**
+     * Calls the Web Api Record Definition through its rate limiter, without using nor filling the caches, for
+     * example for the crawl of the {@link CatalogMirror}, which would evict the DataPages of the End Users.
+     * <p>
+     * Every call is measured here, the wait for the rate limiter excluded, and its errors are counted.
+     *
+     * @param query    WebApiQuery, the translated query.
+     * @param metadata WebApiRecordDefinitionMetadata, Custom and Web Api Record Definitions information.
+     * @return DataPage, the DataPage returned by the Web Api Record Definition.
+     * @throws WebApiCallRejectedException if the circuit breaker is open or the rate limiter rejected the call.
+     */
+    DataPage call(WebApiQuery query, WebApiRecordDefinitionMetadata metadata) {
+        ProviderSettings settings = metadata.getSettings();
+        String webApiRecordDefinitionName = query.getWebApiRecordDefinitionName();
+        UpstreamCircuitBreaker circuitBreaker = getCircuitBreaker(webApiRecordDefinitionName, settings);
+
+        try {
+            boolean trialCall = circuitBreaker.acquirePermission();
+            // Set by callRecordService(), which reports the outcome of the call to the circuit breaker.
+            AtomicBoolean called = new AtomicBoolean();
+
+            try {
+                DataPage dataPage = getRateLimiter(webApiRecordDefinitionName, settings).call(() -> callRecordService(query, circuitBreaker, trialCall, called));
+
+                // The rows are kept by the caches, the index and the mirror, they are compacted once here.
+                return new DataPage(dataPage.getTotalSize(), CompactRow.compact(metadata.getFieldIndex(), dataPage.getData()));
+            } finally {
+                // Rejected or interrupted by the rate limiter, the trial call was not done: the next call is the trial,
+                // otherwise the circuit would stay open for good.
+                if (trialCall && !called.get()) {
+                    circuitBreaker.onNotCalled();
+                }
+            }
+        } catch (RuntimeException e) {
+            metrics.recordUpstreamError(e);
+            throw e;
+        }
+    }
+
+    private DataPage callRecordService(WebApiQuery query, UpstreamCircuitBreaker circuitBreaker, boolean trialCall, AtomicBoolean called) {
+        long startNanos = System.nanoTime();
+        called.set(true);
+
+        try {
+            DataPage dataPage = metrics.time(ProviderMetrics.Stage.UPSTREAM_CALL,
+                    () -> recordServiceSupplier.get().getRecordInstancesByIdDataPage(query.toDataPageQueryParameters()));
+
+            circuitBreaker.onSuccess(System.nanoTime() - startNanos, trialCall);
+
+            return dataPage;
+        } catch (RuntimeException | Error e) {
+            // An Error of the RecordService is a failure too, the trial call must be reported whatever happens.
+            if (UpstreamRateLimiter.isThrottlingError(e)) {
+                // Left to the rate limiter, the trial call can be done again.
+                if (trialCall) {
+                    circuitBreaker.onNotCalled();
+                }
+            } else {
+                circuitBreaker.onFailure(trialCall);
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the rate limiter of a Web Api Record Definition. It is created again when its settings changed, with
+     * the state of the previous one, see {@link UpstreamRateLimiter#withSettings(ProviderSettings)}.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param settings                   ProviderSettings, current settings of the Web Api Record Definition.
+     * @return UpstreamRateLimiter, the rate limiter.
+     */
+    UpstreamRateLimiter getRateLimiter(String webApiRecordDefinitionName, ProviderSettings settings) {
+        UpstreamRateLimiter rateLimiter = rateLimiters.get(webApiRecordDefinitionName);
+
+        if (rateLimiter != null && rateLimiter.getSettings().equals(settings)) {
+            return rateLimiter;
+        }
+
+        return rateLimiters.compute(webApiRecordDefinitionName, (name, current) ->
+                current == null ? new UpstreamRateLimiter(name, settings)
+                        : current.getSettings().equals(settings) ? current : current.withSettings(settings));
+    }
+
+    /**
+     * Returns the current rate limiter of a Web Api Record Definition, whatever its settings.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param settings                   ProviderSettings, settings used if the rate limiter is not created yet.
+     * @return Supplier<UpstreamRateLimiter>, the current rate limiter, read again at each call.
+     */
+    Supplier<UpstreamRateLimiter> getCurrentRateLimiter(String webApiRecordDefinitionName, ProviderSettings settings) {
+        return () -> rateLimiters.computeIfAbsent(webApiRecordDefinitionName, name -> new UpstreamRateLimiter(name, settings));
+    }
+
+    /**
+     * Returns the circuit breaker of a Web Api Record Definition. It is created again when its settings changed,
+     * with the state of the previous one, see {@link UpstreamCircuitBreaker#withSettings(ProviderSettings)}.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param settings                   ProviderSettings, current settings of the Web Api Record Definition.
+     * @return UpstreamCircuitBreaker, the circuit breaker.
+     */
+    UpstreamCircuitBreaker getCircuitBreaker(String webApiRecordDefinitionName, ProviderSettings settings) {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreakers.get(webApiRecordDefinitionName);
+
+        if (circuitBreaker != null && circuitBreaker.getSettings().equals(settings)) {
+            return circuitBreaker;
+        }
+
+        return circuitBreakers.compute(webApiRecordDefinitionName, (name, current) ->
+                current == null ? new UpstreamCircuitBreaker(name, settings, circuitBreakerOpenings)
+                        : current.getSettings().equals(settings) ? current : current.withSettings(settings));
+    }
+
+    TtlLruCache<WebApiQuery, DataPage> getDataPageCache() {
+        return dataPageCache;
+    }
+
+    TtlLruCache<WebApiQuery, Integer> getCountCache() {
+        return countCache;
+    }
+
+    SingleFlight<WebApiQuery, DataPage> getSingleFlight() {
+        return singleFlight;
+    }
+
+    RecordInstanceIndex getRecordInstanceIndex() {
+        return recordInstanceIndex;
+    }
+
+    /**
+     * @return long, number of stale DataPages returned while they were refreshed.
+     */
+    long getStaleServedCount() {
+        return staleServed.sum();
+    }
+
+    long getFailedRefreshCount() {
+        return failedRefreshes.sum();
+    }
+
+    /**
+     * @return long, number of requests that stopped waiting for Rawg.io at their deadline.
+     */
+    long getTimedOutRequestCount() {
+        return timedOutRequests.sum();
+    }
+
+    long getHedgedCallCount() {
+        return hedgedCalls.sum();
+    }
+
+    long getCallerThreadFetchCount() {
+        return callerThreadFetches.sum();
+    }
+
+    long getCircuitBreakerOpeningCount() {
+        return circuitBreakerOpenings.sum();
+    }
+
+    /**
+     * @return long, number of Web Api Record Definitions whose calls are currently suspended.
+     */
+    long getOpenCircuitBreakerCount() {
+        return circuitBreakers.values().stream().filter(UpstreamCircuitBreaker::isOpen).count();
+    }
+}
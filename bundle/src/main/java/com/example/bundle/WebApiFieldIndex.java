@@ -0,0 +1,223 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.record.domain.ExternalRecordDefinitionFieldMapping;
+import com.bmc.arsys.rx.services.record.domain.FieldDefinition;
+import com.bmc.arsys.rx.services.record.domain.RecordDefinitionFieldMapping;
+import com.bmc.arsys.rx.services.record.domain.StorageType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable index of the fields of a Web Api Record Definition, keyed by the field Id as an int.
+ * <p>
+ * Each field gets a slot, and what the provider needs to know about it is computed once when the index is
+ * built and kept in arrays:
+ * - the field definition and its name,
+ * - the Rawg.io property, the last part of the Web Api mapping (for "results||name" it is "name"),
+ * - whether Rawg.io can sort on this property.
+ * <p>
+ * The slots are also the schema of the rows of the Web Api Record Definition ({@link CompactRow}), shared by all
+ * the rows, with the field Ids as strings kept once here as the keys of the rows.
+ * <p>
+ * Finding the slot of a field Id is an open addressing lookup in an int array, so translating the sort and the
+ * filters of a grid does not hash strings, box integers or split mappings for each request.
+ */
+final class WebApiFieldIndex {
+    /**
+     * As per Rawg.io, it is not possible to sort on some fields, only those are available:
+     * https://api.rawg.io/docs/#tag/games
+     */
+    static final Set<String> RAWGIO_SORTABLE_FIELDS = Set.of("name", "released", "added", "created", "updated", "rating", "metacritic");
+
+    private static final int EMPTY = -1;
+
+    private final int[] fieldIds;
+    private final String[] fieldIdKeys;
+    private final FieldDefinition<? extends StorageType>[] fieldDefinitions;
+    private final String[] fieldNames;
+    private final String[] webApiFieldNames;
+    private final boolean[] sortable;
+    // Open addressing table, contains the slot of a field or EMPTY, its size is a power of 2.
+    private final int[] slotByHash;
+    private final int hashMask;
+    private final int size;
+    private final List<String> mappedFieldIds;
+
+    @SuppressWarnings("unchecked")
+    WebApiFieldIndex(List<FieldDefinition<? extends StorageType>> fieldDefinitionList) {
+        int fieldCount = fieldDefinitionList.size();
+
+        this.fieldIds = new int[fieldCount];
+        this.fieldIdKeys = new String[fieldCount];
+        this.fieldDefinitions = (FieldDefinition<? extends StorageType>[]) new FieldDefinition[fieldCount];
+        this.fieldNames = new String[fieldCount];
+        this.webApiFieldNames = new String[fieldCount];
+        this.sortable = new boolean[fieldCount];
+
+        // At most half full, so a lookup usually finds the field (or an empty slot) at once.
+        int tableSize = Integer.highestOneBit(Math.max(2, fieldCount) * 2 - 1) << 1;
+        this.slotByHash = new int[tableSize];
+        this.hashMask = tableSize - 1;
+        Arrays.fill(slotByHash, EMPTY);
+
+        int slot = 0;
+
+        for (FieldDefinition<? extends StorageType> fieldDefinition : fieldDefinitionList) {
+            int fieldId = fieldDefinition.getId();
+
+            // A definition should not have the same field Id twice, but if it does the first one wins, as with a map.
+            if (indexOf(fieldId) != EMPTY) {
+                continue;
+            }
+
+            fieldIds[slot] = fieldId;
+            fieldIdKeys[slot] = Integer.toString(fieldId);
+            fieldDefinitions[slot] = fieldDefinition;
+            fieldNames[slot] = fieldDefinition.getName();
+            webApiFieldNames[slot] = getLastMappingPart(fieldDefinition.getFieldMapping());
+            sortable[slot] = webApiFieldNames[slot] != null && RAWGIO_SORTABLE_FIELDS.contains(webApiFieldNames[slot]);
+
+            int hash = hash(fieldId);
+
+            while (slotByHash[hash] != EMPTY) {
+                hash = (hash + 1) & hashMask;
+            }
+
+            slotByHash[hash] = slot++;
+        }
+
+        this.size = slot;
+
+        List<String> mappedFieldIds = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            if (webApiFieldNames[i] != null) {
+                mappedFieldIds.add(fieldIdKeys[i]);
+            }
+        }
+
+        this.mappedFieldIds = Collections.unmodifiableList(mappedFieldIds);
+    }
+
+    /**
+     * For a Web Api Record Definition field the Rawg.io property is stored in the mapping as a path, for example
+     * "results||name". We keep the last part ("name").
+     *
+     * @return String, the last part of the mapping, or null if the field has no Web Api mapping.
+     */
+    private static String getLastMappingPart(RecordDefinitionFieldMapping fieldMapping) {
+        if (!(fieldMapping instanceof ExternalRecordDefinitionFieldMapping)) {
+            return null;
+        }
+
+        String externalFieldId = ((ExternalRecordDefinitionFieldMapping) fieldMapping).getExternalFieldId();
+
+        if (externalFieldId == null || externalFieldId.isEmpty()) {
+            return null;
+        }
+
+        String lastPart = externalFieldId.substring(externalFieldId.lastIndexOf('|') + 1);
+
+        return lastPart.isEmpty() ? null : lastPart;
+    }
+
+    private int hash(int fieldId) {
+        // Field Ids are often consecutive (536870913, 536870914...), the multiplication spreads them.
+        return (fieldId * 0x9E3779B9 >>> 16) & hashMask;
+    }
+
+    /**
+     * @param fieldId int, field Id.
+     * @return int, the slot of the field, or -1 if the Web Api Record Definition has no such field.
+     */
+    int indexOf(int fieldId) {
+        int hash = hash(fieldId);
+        int slot;
+
+        while ((slot = slotByHash[hash]) != EMPTY) {
+            if (fieldIds[slot] == fieldId) {
+                return slot;
+            }
+
+            hash = (hash + 1) & hashMask;
+        }
+
+        return EMPTY;
+    }
+
+    /**
+     * Same as {@link #indexOf(int)} for a field Id sent as a string by the grid ("536870913"), without creating
+     * any object.
+     *
+     * @param fieldId String, field Id.
+     * @return int, the slot of the field, or -1 if the string is not a field Id of the Web Api Record Definition.
+     */
+    int indexOf(String fieldId) {
+        if (fieldId == null || fieldId.isEmpty() || fieldId.length() > 10) {
+            return EMPTY;
+        }
+
+        long value = 0;
+
+        for (int i = 0; i < fieldId.length(); i++) {
+            char c = fieldId.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return EMPTY;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value > Integer.MAX_VALUE ? EMPTY : indexOf((int) value);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getFieldId(int slot) {
+        return fieldIds[slot];
+    }
+
+    /**
+     * @return String, the field Id as a string, the key of the field in a row ("536870913").
+     */
+    String getFieldIdKey(int slot) {
+        return fieldIdKeys[slot];
+    }
+
+    FieldDefinition<? extends StorageType> getFieldDefinition(int slot) {
+        return fieldDefinitions[slot];
+    }
+
+    String getFieldName(int slot) {
+        return fieldNames[slot];
+    }
+
+    /**
+     * @return String, the Rawg.io property of the field ("name" for "results||name"), null if the field has
+     * no Web Api mapping.
+     */
+    String getWebApiFieldName(int slot) {
+        return webApiFieldNames[slot];
+    }
+
+    /**
+     * @return List<String>, the Ids of the fields having a Web Api mapping, the fields a Rawg.io game can have.
+     */
+    List<String> getMappedFieldIds() {
+        return mappedFieldIds;
+    }
+
+    /**
+     * @return boolean, true if Rawg.io can sort on the property of the field.
+     */
+    boolean isSortable(int slot) {
+        return sortable[slot];
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.bundle;
+
+/**
+ * Builds the qualification passed to the Web Api Record Definition, for example:
+ * '5310000001' = "1" AND '5310000002' = "25" AND '5310000003' = "-name,released"
+ * <p>
+ * Each condition sets a Rawg.io query parameter, through the field declared as "GET_QUERY_PARAMETER_{name}"
+ * in the Web Api Record Definition. The beginning of each condition ('{field Id}' = ") is computed once per
+ * Web Api Record Definition by {@link WebApiRecordDefinitionMetadata}, the builder only appends it and the
+ * value in a single StringBuilder.
+ * <p>
+ * Values are escaped: a double quote in a value is doubled, as expected in a qualification string, so a value
+ * searched by an End User cannot end the string or add another condition.
+ */
+final class WebApiQualificationBuilder {
+    private static final String AND = " AND ";
+
+    private final WebApiRecordDefinitionMetadata metadata;
+    private final StringBuilder qualification = new StringBuilder(160);
+
+    WebApiQualificationBuilder(WebApiRecordDefinitionMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    /**
+     * Adds a condition setting a Rawg.io query parameter to a number.
+     *
+     * @param queryParameterName String, Rawg.io query parameter name ("page" for example).
+     * @param value              int, the value.
+     * @return WebApiQualificationBuilder, this builder.
+     */
+    WebApiQualificationBuilder add(String queryParameterName, int value) {
+        if (appendConditionPrefix(queryParameterName)) {
+            qualification.append(value).append('"');
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds a condition setting a Rawg.io query parameter to a string.
+     * Nothing is added if the value is null or empty.
+     *
+     * @param queryParameterName String, Rawg.io query parameter name ("search" for example).
+     * @param value              CharSequence, the value, escaped by this method.
+     * @return WebApiQualificationBuilder, this builder.
+     */
+    WebApiQualificationBuilder add(String queryParameterName, CharSequence value) {
+        if (value == null || value.length() == 0) {
+            return this;
+        }
+
+        if (appendConditionPrefix(queryParameterName)) {
+            appendEscaped(value);
+            qualification.append('"');
+        }
+
+        return this;
+    }
+
+    /**
+     * Appends " AND " if needed and the beginning of the condition: '{field Id}' = "
+     *
+     * @return boolean, false if the Web Api Record Definition does not declare the query parameter, in this case
+     * nothing is appended.
+     */
+    private boolean appendConditionPrefix(String queryParameterName) {
+        String conditionPrefix = metadata.getQueryParameterConditionPrefix(queryParameterName);
+
+        if (conditionPrefix == null) {
+            return false;
+        }
+
+        if (qualification.length() > 0) {
+            qualification.append(AND);
+        }
+
+        qualification.append(conditionPrefix);
+
+        return true;
+    }
+
+    private void appendEscaped(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"') {
+                qualification.append('"');
+            }
+
+            qualification.append(c);
+        }
+    }
+
+    String build() {
+        return qualification.toString();
+    }
+
+    @Override
+    public String toString() {
+        return build();
+    }
+}
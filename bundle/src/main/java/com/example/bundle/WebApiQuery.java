@@ -0,0 +1,116 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPageQueryParameters;
+
+import java.util.*;
+
+/**
+ * One call to the Web Api Record Definition: the Web Api Record Definition name, the qualification that was
+ * translated from the grid query (page, page_size, ordering, search, platforms...) and the fields to return.
+ * <p>
+ * Two queries with the same values return the same records, so a WebApiQuery is used as the key of the
+ * Web Api data page caches. The property selection is sorted and without duplicates so the order of the
+ * grid columns does not matter.
+ */
+final class WebApiQuery {
+    private static final String DATAPAGEQUERY_TYPE = "com.bmc.arsys.rx.application.record.datapage.RecordInstanceDataPageQuery";
+
+    private final String webApiRecordDefinitionName;
+    private final String qualification;
+    private final List<String> propertySelections;
+    private final int pageSize;
+    private final int startIndex;
+    private final int hashCode;
+
+    /**
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @param qualification              String, qualification passed to the Web Api Record Definition.
+     * @param propertySelections         Collection<String>, field Ids to return.
+     * @param pageSize                   int, Rawg.io page size, only informative as the Platform ignores it
+     *                                   for a Web Api call.
+     * @param startIndex                 int, index of the first record of the Rawg.io page, only informative as the
+     *                                   Platform ignores it for a Web Api call.
+     */
+    WebApiQuery(String webApiRecordDefinitionName, String qualification, Collection<String> propertySelections, int pageSize, int startIndex) {
+        this.webApiRecordDefinitionName = webApiRecordDefinitionName;
+        this.qualification = qualification;
+        this.propertySelections = List.copyOf(new TreeSet<>(propertySelections));
+        this.pageSize = pageSize;
+        this.startIndex = startIndex;
+        this.hashCode = Objects.hash(webApiRecordDefinitionName, qualification, this.propertySelections, pageSize, startIndex);
+    }
+
+    /**
+     * Builds the datapagequery parameters expected by the RecordService for this query.
+     *
+     * @return DataPageQueryParameters, the datapagequery parameters.
+     */
+    DataPageQueryParameters toDataPageQueryParameters() {
+        Map<String, List<String>> dataPageParams = new HashMap<String, List<String>>();
+
+        //  Standard datapagequery.
+        dataPageParams.put("dataPageType", new ArrayList<String>(Arrays.asList(DATAPAGEQUERY_TYPE)));
+        // List of fields to fetch.
+        dataPageParams.put("propertySelection", new ArrayList<String>(propertySelections));
+        // We want to fetch data from the Web Api Record Definition.
+        dataPageParams.put("recorddefinition", new ArrayList<String>(Arrays.asList(webApiRecordDefinitionName)));
+        // Those two settings are not important, as they will be ignored by the Platform call to the web api,
+        // the pagination is done by the qualification.
+        dataPageParams.put("pageSize", new ArrayList<String>(Arrays.asList(Integer.toString(pageSize))));
+        dataPageParams.put("startIndex", new ArrayList<String>(Arrays.asList(Integer.toString(startIndex))));
+        // Adding the final queryExpression.
+        dataPageParams.put("queryExpression", new ArrayList<String>(Arrays.asList(qualification)));
+
+        return new DataPageQueryParameters(dataPageParams);
+    }
+
+    String getWebApiRecordDefinitionName() {
+        return webApiRecordDefinitionName;
+    }
+
+    String getQualification() {
+        return qualification;
+    }
+
+    List<String> getPropertySelections() {
+        return propertySelections;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    int getStartIndex() {
+        return startIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof WebApiQuery)) {
+            return false;
+        }
+
+        WebApiQuery that = (WebApiQuery) o;
+
+        return hashCode == that.hashCode
+                && pageSize == that.pageSize
+                && startIndex == that.startIndex
+                && webApiRecordDefinitionName.equals(that.webApiRecordDefinitionName)
+                && qualification.equals(that.qualification)
+                && propertySelections.equals(that.propertySelections);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return webApiRecordDefinitionName + " [" + qualification + "] " + propertySelections;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.record.domain.*;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of everything the provider needs to know about a Custom Record Definition and
+ * the Web Api Record Definition it points to.
+ * <p>
+ * Building this information means two calls to the RecordService and a loop over all the fields of the
+ * Web Api Record Definition, so it is built once per Custom Record Definition and kept in the
+ * {@link WebApiRecordDefinitionMetadataCache}.
+ * <p>
+ * Once built an instance is never modified, it can be read by as many request threads as needed.
+ */
+final class WebApiRecordDefinitionMetadata {
+    private static final String WEB_API_QUERY_PARAMETER_ROOT = "GET_QUERY_PARAMETER_";
+    private static final String RAWGIO_COUNT_FIELD_NAME = "count";
+
+    private final String customRecordDefinitionName;
+    private final String webApiRecordDefinitionName;
+    private final WebApiFieldIndex fieldIndex;
+    private final Map<String, String> webApiQueryParametersList;
+    private final Map<String, String> queryParameterConditionPrefixes;
+    private final String rawgioCountFieldId;
+    private final String signature;
+    private final ProviderSettings settings;
+
+    private WebApiRecordDefinitionMetadata(String customRecordDefinitionName,
+                                           String webApiRecordDefinitionName,
+                                           WebApiFieldIndex fieldIndex,
+                                           Map<String, String> webApiQueryParametersList,
+                                           String rawgioCountFieldId,
+                                           String signature,
+                                           ProviderSettings settings) {
+        this.customRecordDefinitionName = customRecordDefinitionName;
+        this.webApiRecordDefinitionName = webApiRecordDefinitionName;
+        this.fieldIndex = fieldIndex;
+        this.webApiQueryParametersList = Collections.unmodifiableMap(webApiQueryParametersList);
+
+        // The beginning of each qualification condition is always the same for a query parameter, for example
+        // for "page": '5310000001' = "
+        // so it is computed once here, see WebApiQualificationBuilder.
+        HashMap<String, String> queryParameterConditionPrefixes = new HashMap<>();
+
+        for (Map.Entry<String, String> webApiQueryParameter : webApiQueryParametersList.entrySet()) {
+            queryParameterConditionPrefixes.put(webApiQueryParameter.getKey(), "'" + webApiQueryParameter.getValue() + "' = \"");
+        }
+
+        this.queryParameterConditionPrefixes = Collections.unmodifiableMap(queryParameterConditionPrefixes);
+        this.rawgioCountFieldId = rawgioCountFieldId;
+        this.signature = signature;
+        this.settings = settings;
+    }
+
+    /**
+     * Builds the metadata from the Custom Record Definition and the Web Api Record Definition.
+     *
+     * @param customRecordDefinitionName String, Custom Record Definition Name.
+     * @param webApiRecordDefinition     RecordDefinition, Web Api Record Definition set in the Custom Record Definition
+     *                                   "Description" field.
+     * @return WebApiRecordDefinitionMetadata, the immutable metadata.
+     */
+    static WebApiRecordDefinitionMetadata build(String customRecordDefinitionName, RecordDefinition webApiRecordDefinition) {
+        HashMap<String, String> webApiQueryParametersList = new HashMap<>();
+        String rawgioCountFieldId = null;
+
+        // The field index (WebApiFieldIndex) will be used later to map a field Id to its name and Rawg.io property.
+        // For a Web Api Record Definition we have many different information we will need later, the id (field Id)
+        // and the Web api mapping.
+        // Here below the field 1 would be mapped to the JSON path results..name.
+        // Tbat means that if we query on the field 1 for a qualification, we want to use the "name" (last leaf
+        // from a branch).
+        //  id = 1
+        //  name = "Display ID"
+        //  fieldMapping.externalFieldId = "results||name";
+        List<FieldDefinition<? extends StorageType>> fieldDefinitions = webApiRecordDefinition.getFieldDefinitions();
+
+        for (FieldDefinition<? extends StorageType> fieldDefinition : fieldDefinitions) {
+            // Mapping the Rawg.io query parameters (they begin by "GET_QUERY_PARAMETER_" in the Web Api Record Definition).
+            // We just need just get the query parameter name:
+            // from "GET_QUERY_PARAMETER_page" to "page" in order to have a map with:
+            //  ["page"] = <fieldId>
+            if (fieldDefinition.getName().startsWith(WEB_API_QUERY_PARAMETER_ROOT)) {
+                webApiQueryParametersList.put(fieldDefinition.getName().replace(WEB_API_QUERY_PARAMETER_ROOT, ""), String.valueOf(fieldDefinition.getId()));
+            }
+
+            // We need the "count" field later for our logic. This count is set by the Rawg.io Rest api call
+            // and is the total count of games that are matching the rest api (with or without search).
+            // {
+            //    "count": 101713,
+            //        "next": "https://api.rawg.io/api/games?key=a6e082bd0974424b859762036fed6384&page=2&search=the-witcher-3-wild-hunt",
+            //        "previous": null,
+            if (fieldDefinition.getName().equals(RAWGIO_COUNT_FIELD_NAME)) {
+                rawgioCountFieldId = String.valueOf(fieldDefinition.getId());
+            }
+        }
+
+        return new WebApiRecordDefinitionMetadata(customRecordDefinitionName,
+                webApiRecordDefinition.getName(),
+                new WebApiFieldIndex(fieldDefinitions),
+                webApiQueryParametersList,
+                rawgioCountFieldId,
+                computeSignature(webApiRecordDefinition),
+                ProviderSettings.load(webApiRecordDefinition.getName()));
+    }
+
+    /**
+     * Computes a signature of the Web Api Record Definition: its name, and for each field its id, name and
+     * Web Api mapping. Two definitions with the same signature produce the same metadata, which allows the
+     * cache to detect when a definition really changed.
+     *
+     * @param webApiRecordDefinition RecordDefinition, Web Api Record Definition.
+     * @return String, the signature.
+     */
+    static String computeSignature(RecordDefinition webApiRecordDefinition) {
+        StringBuilder signature = new StringBuilder(webApiRecordDefinition.getName());
+
+        for (FieldDefinition<? extends StorageType> fieldDefinition : webApiRecordDefinition.getFieldDefinitions()) {
+            signature.append('|').append(fieldDefinition.getId()).append(':').append(fieldDefinition.getName());
+
+            RecordDefinitionFieldMapping fieldMapping = fieldDefinition.getFieldMapping();
+
+            if (fieldMapping instanceof ExternalRecordDefinitionFieldMapping) {
+                signature.append(':').append(((ExternalRecordDefinitionFieldMapping) fieldMapping).getExternalFieldId());
+            }
+        }
+
+        return signature.toString();
+    }
+
+    String getCustomRecordDefinitionName() {
+        return customRecordDefinitionName;
+    }
+
+    String getWebApiRecordDefinitionName() {
+        return webApiRecordDefinitionName;
+    }
+
+    WebApiFieldIndex getFieldIndex() {
+        return fieldIndex;
+    }
+
+    Map<String, String> getWebApiQueryParametersList() {
+        return webApiQueryParametersList;
+    }
+
+    /**
+     * Utility method that returns the fieldId corresponding to a Rawg.io query parameter.
+     *
+     * @param queryParameterName String, Parameter name ("page" for example)
+     * @return String, fieldId corresponding to the query parameter.
+     */
+    String getQueryParameterFieldId(String queryParameterName) {
+        return webApiQueryParametersList.get(queryParameterName);
+    }
+
+    /**
+     * Returns the beginning of a qualification condition setting a Rawg.io query parameter: '{field Id}' = "
+     *
+     * @param queryParameterName String, Parameter name ("page" for example)
+     * @return String, beginning of the condition, or null if the query parameter is not declared.
+     */
+    String getQueryParameterConditionPrefix(String queryParameterName) {
+        return queryParameterConditionPrefixes.get(queryParameterName);
+    }
+
+    /**
+     * Returns the Web Api Record Definition field definition for a field Id.
+     *
+     * @param fieldId String, field Id.
+     * @return FieldDefinition, the field definition or null if the field does not exist.
+     */
+    FieldDefinition<? extends StorageType> getFieldDefinition(String fieldId) {
+        int slot = fieldIndex.indexOf(fieldId);
+
+        return slot >= 0 ? fieldIndex.getFieldDefinition(slot) : null;
+    }
+
+    String getRawgioCountFieldId() {
+        return rawgioCountFieldId;
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    ProviderSettings getSettings() {
+        return settings;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.record.RecordService;
+import com.bmc.arsys.rx.services.record.domain.RecordDefinition;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of {@link WebApiRecordDefinitionMetadata}, one entry per Custom Record Definition.
+ * <p>
+ * The Platform does not tell a data provider when a definition is modified, so an entry is revalidated
+ * once it is older than {@link #REVALIDATION_INTERVAL_NANOS}: both definitions are read again and their
+ * signature and {@link ProviderSettings} are compared to the cached ones. If nothing changed the cached
+ * metadata is kept as is, otherwise it is rebuilt.
+ * <p>
+ * Entries are immutable and published through a ConcurrentHashMap, so readers never lock. One thread at a time
+ * reads the definitions of a Custom Record Definition: while an entry is revalidated, the other threads keep
+ * getting the cached metadata, and when there is no entry yet they wait for the one being built.
+ */
+final class WebApiRecordDefinitionMetadataCache {
+    private static final long REVALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final ConcurrentHashMap<String, CachedMetadata> metadataByCustomRecordDefinitionName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<WebApiRecordDefinitionMetadata>> readsInFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Returns the metadata for the Custom Record Definition, reading the definitions only if the metadata
+     * is unknown or needs to be revalidated.
+     *
+     * @param customRecordDefinitionName String, Custom Record Definition Name.
+     * @param recordService              RecordService, used to read the definitions.
+     * @return WebApiRecordDefinitionMetadata, the metadata.
+     */
+    WebApiRecordDefinitionMetadata get(String customRecordDefinitionName, RecordService recordService) {
+        long now = System.nanoTime();
+        CachedMetadata cachedMetadata = metadataByCustomRecordDefinitionName.get(customRecordDefinitionName);
+
+        if (cachedMetadata != null && now - cachedMetadata.validatedAtNanos < REVALIDATION_INTERVAL_NANOS) {
+            hits.increment();
+            return cachedMetadata.metadata;
+        }
+
+        CompletableFuture<WebApiRecordDefinitionMetadata> read = new CompletableFuture<>();
+        CompletableFuture<WebApiRecordDefinitionMetadata> readInFlight = readsInFlight.putIfAbsent(customRecordDefinitionName, read);
+
+        if (readInFlight != null) {
+            // Another thread reads the definitions, the metadata a few seconds too old is still good meanwhile.
+            if (cachedMetadata != null) {
+                hits.increment();
+                return cachedMetadata.metadata;
+            }
+
+            return await(readInFlight);
+        }
+
+        try {
+            CachedMetadata latestMetadata = metadataByCustomRecordDefinitionName.get(customRecordDefinitionName);
+
+            // Revalidated by another thread since it was read above.
+            if (latestMetadata != null && now - latestMetadata.validatedAtNanos < REVALIDATION_INTERVAL_NANOS) {
+                read.complete(latestMetadata.metadata);
+                hits.increment();
+                return latestMetadata.metadata;
+            }
+
+            WebApiRecordDefinitionMetadata metadata = readDefinitions(customRecordDefinitionName, recordService, latestMetadata, now);
+            read.complete(metadata);
+            return metadata;
+        } catch (RuntimeException | Error e) {
+            read.completeExceptionally(e);
+            throw e;
+        } finally {
+            readsInFlight.remove(customRecordDefinitionName, read);
+        }
+    }
+
+    /**
+     * Reads both definitions, and keeps the cached metadata if they did not change.
+     */
+    private WebApiRecordDefinitionMetadata readDefinitions(String customRecordDefinitionName, RecordService recordService, CachedMetadata cachedMetadata, long now) {
+        revalidations.increment();
+
+        // We get the Web Api Record Definition from the Custom Record Definition "Description" field.
+        // It is a workaround and it is ugly, but it should work :)
+        RecordDefinition customFullRecordDefinition = recordService.getRecordDefinition(customRecordDefinitionName);
+        RecordDefinition webApiRecordDefinition = recordService.getRecordDefinition(customFullRecordDefinition.getDescription());
+        WebApiRecordDefinitionMetadata metadata;
+
+        if (cachedMetadata != null
+                && cachedMetadata.metadata.getSignature().equals(WebApiRecordDefinitionMetadata.computeSignature(webApiRecordDefinition))
+                && cachedMetadata.metadata.getSettings().equals(ProviderSettings.load(webApiRecordDefinition.getName()))) {
+            metadata = cachedMetadata.metadata;
+        } else {
+            rebuilds.increment();
+            metadata = WebApiRecordDefinitionMetadata.build(customRecordDefinitionName, webApiRecordDefinition);
+        }
+
+        metadataByCustomRecordDefinitionName.put(customRecordDefinitionName, new CachedMetadata(metadata, now));
+
+        return metadata;
+    }
+
+    private static WebApiRecordDefinitionMetadata await(CompletableFuture<WebApiRecordDefinitionMetadata> readInFlight) {
+        try {
+            return readInFlight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * @return long, number of calls answered without reading the definitions.
+     */
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return long, number of calls that read the definitions, the metadata being unknown or too old.
+     */
+    long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return long, number of revalidations that found a changed definition, or no metadata, and rebuilt it.
+     */
+    long getRebuildCount() {
+        return rebuilds.sum();
+    }
+
+    private static final class CachedMetadata {
+        private final WebApiRecordDefinitionMetadata metadata;
+        private final long validatedAtNanos;
+
+        private CachedMetadata(WebApiRecordDefinitionMetadata metadata, long validatedAtNanos) {
+            this.metadata = metadata;
+            this.validatedAtNanos = validatedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bundle;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sets the provider settings ({@link ProviderSettings}) of a benchmark or a test as system properties, before the
+ * provider reads them, and removes them afterwards.
+ * <p>
+ * The rate limit is disabled unless set: the benchmarks measure the provider, not the Rawg.io limits.
+ */
+final class BenchmarkSettings {
+    private static final String PROPERTY_ROOT = "com.example.bundle.";
+
+    private final Map<String, String> settings = new LinkedHashMap<>();
+
+    BenchmarkSettings() {
+        settings.put("rateLimitPerSecond", "0");
+        settings.put("maxConcurrentCalls", "0");
+    }
+
+    /**
+     * @param cached boolean, false disables the DataPage and count caches, each grid then calls the Web Api.
+     * @return BenchmarkSettings, this.
+     */
+    BenchmarkSettings cached(boolean cached) {
+        settings.put("dataPageCacheTimeToLiveSeconds", cached ? "3600" : "0");
+        settings.put("countCacheTimeToLiveSeconds", cached ? "3600" : "0");
+        return this;
+    }
+
+    BenchmarkSettings concurrentFetch(boolean concurrentFetch) {
+        settings.put("concurrentFetch", Boolean.toString(concurrentFetch));
+        return this;
+    }
+
+    BenchmarkSettings set(String key, String value) {
+        settings.put(key, value);
+        return this;
+    }
+
+    void apply() {
+        settings.forEach((key, value) -> System.setProperty(PROPERTY_ROOT + key, value));
+    }
+
+    /**
+     * Loads the settings of a Web Api Record Definition with these values, without leaving them set.
+     *
+     * @param webApiRecordDefinitionName String, Web Api Record Definition name.
+     * @return ProviderSettings, the settings.
+     */
+    ProviderSettings load(String webApiRecordDefinitionName) {
+        apply();
+
+        try {
+            return ProviderSettings.load(webApiRecordDefinitionName);
+        } finally {
+            clear();
+        }
+    }
+
+    void clear() {
+        settings.keySet().forEach(key -> System.clearProperty(PROPERTY_ROOT + key));
+    }
+}
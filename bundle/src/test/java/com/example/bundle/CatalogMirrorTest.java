@@ -0,0 +1,78 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+public class CatalogMirrorTest {
+    private final CatalogMirror catalogMirror = new CatalogMirror(new UpstreamExecutor(1), 40);
+
+    @Test(timeOut = 10_000)
+    public void crawlFailsWhenTheRateLimiterCanNeverHaveSpareCapacity() {
+        AtomicInteger fetchedPages = new AtomicInteger();
+        UpstreamRateLimiter singleCallSlot = rateLimiter(0, 0, 1);
+        UpstreamRateLimiter singleToken = rateLimiter(10, 1, 0);
+
+        assertFalse(singleCallSlot.canHaveSpareCapacity());
+        assertFalse(singleToken.canHaveSpareCapacity());
+        assertThrows(IllegalStateException.class, () -> catalogMirror.crawl(FakeRecordDefinitions.metadata(), () -> singleCallSlot,
+                page -> fetchPage(fetchedPages, page)));
+        assertThrows(IllegalStateException.class, () -> catalogMirror.crawl(FakeRecordDefinitions.metadata(), () -> singleToken,
+                page -> fetchPage(fetchedPages, page)));
+        assertEquals(fetchedPages.get(), 0);
+    }
+
+    /**
+     * The crawl waits on the rate limiter created again with the new settings, not on the one it started with.
+     */
+    @Test(timeOut = 10_000)
+    public void crawlWaitsOnTheCurrentRateLimiter() {
+        AtomicInteger fetchedPages = new AtomicInteger();
+        AtomicInteger polls = new AtomicInteger();
+        UpstreamRateLimiter busyRateLimiter = rateLimiter(1, 2, 0);
+        UpstreamRateLimiter idleRateLimiter = rateLimiter(0, 0, 0);
+
+        busyRateLimiter.call(() -> null);
+        assertTrue(busyRateLimiter.canHaveSpareCapacity());
+        assertFalse(busyRateLimiter.hasSpareCapacity());
+
+        MirrorTable table = catalogMirror.crawl(FakeRecordDefinitions.metadata(),
+                () -> polls.incrementAndGet() <= 3 ? busyRateLimiter : idleRateLimiter,
+                page -> fetchPage(fetchedPages, page));
+
+        assertEquals(polls.get(), 4);
+        assertEquals(fetchedPages.get(), 1);
+        assertEquals(table.getRowCount(), 1);
+    }
+
+    private static DataPage fetchPage(AtomicInteger fetchedPages, int page) {
+        fetchedPages.incrementAndGet();
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put(Integer.toString(FakeRecordDefinitions.ID_FIELD_ID), "1");
+        row.put(Integer.toString(FakeRecordDefinitions.NAME_FIELD_ID), "Portal 2");
+        List<Object> rows = Collections.singletonList(row);
+
+        return new DataPage(1, rows);
+    }
+
+    private static UpstreamRateLimiter rateLimiter(int ratePerSecond, int burst, int maxConcurrentCalls) {
+        ProviderSettings settings = new BenchmarkSettings()
+                .set("rateLimitPerSecond", Integer.toString(ratePerSecond))
+                .set("rateLimitBurst", Integer.toString(burst))
+                .set("maxConcurrentCalls", Integer.toString(maxConcurrentCalls))
+                .load("test:CatalogMirror");
+
+        return new UpstreamRateLimiter("test:CatalogMirror", settings);
+    }
+}
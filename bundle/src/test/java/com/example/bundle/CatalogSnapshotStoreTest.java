@@ -0,0 +1,124 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+public class CatalogSnapshotStoreTest {
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final UpstreamExecutor upstreamExecutor = new UpstreamExecutor(2);
+    private Path file;
+
+    @BeforeMethod
+    public void createFile() throws IOException {
+        file = Files.createTempDirectory("catalog-snapshot").resolve("snapshots/catalog-snapshot.bin");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void cachesAreReadBack() throws IOException {
+        Map<String, Object> row = CompactRowTest.row("379", "zelda", "536870913", "Zelda", "536870915", new BigDecimal("4.5"),
+                "536870917", 12, "536870914", null, "536870916", List.of(4, 7L, true), "536870918", "x".repeat(70_000),
+                "536870919", new Date(500_000_000_000L));
+        WebApiQuery query = new WebApiQuery(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "'531000001' = \"1\"", List.of("379", "536870913"), 25, 0);
+        WebApiDataPageLoader saved = newWebApiDataPageLoader();
+
+        saved.getDataPageCache().put(query, new DataPage(1, List.of(row)), MINUTE_NANOS);
+        saved.getCountCache().put(query, 42, MINUTE_NANOS);
+        saved.getRecordInstanceIndex().index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, List.of(row), MINUTE_NANOS);
+        new CatalogSnapshotStore(file, 1, saved, upstreamExecutor).save();
+
+        WebApiDataPageLoader restored = newWebApiDataPageLoader();
+
+        assertEquals(new CatalogSnapshotStore(file, 1, restored, upstreamExecutor).restore(), 3);
+        assertEquals(restored.getDataPageCache().get(query).getData(), List.of(row));
+        assertEquals(restored.getDataPageCache().get(query).getTotalSize(), 1);
+        assertEquals(restored.getCountCache().get(query), Integer.valueOf(42));
+        assertEquals(restored.getRecordInstanceIndex().get(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "zelda", List.of("536870913")), row);
+
+        // The entries expire when they would have expired without the restart.
+        long timeToLiveNanos = restored.getDataPageCache().getEntry(query).getExpiresAtNanos() - System.nanoTime();
+
+        assertTrue(timeToLiveNanos > MINUTE_NANOS - TimeUnit.SECONDS.toNanos(10) && timeToLiveNanos <= MINUTE_NANOS, Long.toString(timeToLiveNanos));
+    }
+
+    @Test
+    public void unsupportedValuesAndExpiredEntriesAreSkipped() throws IOException {
+        WebApiQuery query = new WebApiQuery(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "'531000001' = \"1\"", List.of("379"), 25, 0);
+        WebApiQuery otherQuery = new WebApiQuery(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "'531000001' = \"2\"", List.of("379"), 25, 25);
+        WebApiDataPageLoader saved = newWebApiDataPageLoader();
+
+        saved.getDataPageCache().put(query, new DataPage(1, List.of(Map.of("379", new Object()))), MINUTE_NANOS);
+        saved.getDataPageCache().put(otherQuery, new DataPage(0, List.of()), MINUTE_NANOS);
+        saved.getCountCache().put(query, 42, 1);
+        new CatalogSnapshotStore(file, 1, saved, upstreamExecutor).save();
+
+        WebApiDataPageLoader restored = newWebApiDataPageLoader();
+
+        assertEquals(new CatalogSnapshotStore(file, 1, restored, upstreamExecutor).restore(), 1);
+        assertNull(restored.getDataPageCache().get(query));
+        assertNotNull(restored.getDataPageCache().get(otherQuery));
+        assertNull(restored.getCountCache().get(query));
+    }
+
+    @Test
+    public void missingOrForeignFileIsIgnored() throws IOException {
+        WebApiDataPageLoader restored = newWebApiDataPageLoader();
+
+        assertEquals(new CatalogSnapshotStore(file, 1, restored, upstreamExecutor).restore(), 0);
+
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[]{0, 0, 0, 1, 0, 0, 0, 1});
+
+        assertEquals(new CatalogSnapshotStore(file, 1, restored, upstreamExecutor).restore(), 0);
+    }
+
+    @Test
+    public void snapshotIsPrivateToTheServer() throws IOException {
+        WebApiDataPageLoader saved = newWebApiDataPageLoader();
+
+        saved.getCountCache().put(new WebApiQuery(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "", List.of("379"), 25, 0), 42, MINUTE_NANOS);
+        new CatalogSnapshotStore(file, 1, saved, upstreamExecutor).save();
+
+        assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(file.getParent())), "rwx------");
+        assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(file)), "rw-------");
+
+        // Other users could have replaced the content.
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-rw-"));
+
+        assertThrows(IOException.class, () -> new CatalogSnapshotStore(file, 1, newWebApiDataPageLoader(), upstreamExecutor).restore());
+    }
+
+    @Test
+    public void noSnapshotWithoutAConfiguredFile() {
+        CatalogSnapshotStore catalogSnapshotStore = new CatalogSnapshotStore(newWebApiDataPageLoader(), upstreamExecutor);
+
+        assertNull(catalogSnapshotStore.getFile());
+        catalogSnapshotStore.restoreInBackground();
+        catalogSnapshotStore.saveIfDue();
+    }
+
+    private WebApiDataPageLoader newWebApiDataPageLoader() {
+        return new WebApiDataPageLoader(() -> null, upstreamExecutor, new ProviderMetrics());
+    }
+}
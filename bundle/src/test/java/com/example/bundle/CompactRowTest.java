@@ -0,0 +1,122 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class CompactRowTest {
+    private final WebApiFieldIndex schema = FakeRecordDefinitions.metadata().getFieldIndex();
+
+    @Test
+    public void compactRowEqualsTheRow() {
+        Map<String, Object> row = row("379", "zelda", "536870913", "Zelda", "536870915", 4.5d, "536870917", 12,
+                "536870914", null, "536870916", List.of(4, 7));
+        Map<?, ?> compactRow = CompactRow.compact(schema, row);
+
+        assertTrue(compactRow instanceof CompactRow);
+        assertEquals(compactRow, row);
+        assertEquals(row, compactRow);
+        assertEquals(compactRow.hashCode(), row.hashCode());
+        assertEquals(compactRow.size(), 6);
+    }
+
+    @Test
+    public void numbersKeepTheirType() {
+        Map<?, ?> compactRow = CompactRow.compact(schema, row("536870915", 4.5d, "536870917", 12, "379", 3_000_000_000L));
+
+        assertEquals(compactRow.get("536870915"), 4.5d);
+        assertEquals(compactRow.get("536870917"), 12);
+        assertEquals(compactRow.get("379"), 3_000_000_000L);
+    }
+
+    @Test
+    public void nullValueIsPresent() {
+        Map<?, ?> compactRow = CompactRow.compact(schema, row("379", "zelda", "536870914", null));
+
+        assertTrue(compactRow.containsKey("536870914"));
+        assertNull(compactRow.get("536870914"));
+        assertFalse(compactRow.containsKey("536870913"));
+        assertNull(compactRow.get("536870913"));
+    }
+
+    @Test
+    public void rowWithAnUnknownFieldIsKept() {
+        Map<String, Object> row = row("379", "zelda", "999", "unknown");
+
+        assertSame(CompactRow.compact(schema, row), row);
+    }
+
+    @Test
+    public void fieldIdIsNotANumber() {
+        Map<String, Object> row = row("0379", "zelda");
+        Map<?, ?> compactRow = CompactRow.compact(schema, row("379", "zelda"));
+
+        assertSame(CompactRow.compact(schema, row), row);
+        assertNull(compactRow.get("0379"));
+        assertFalse(compactRow.containsKey("0379"));
+        assertNull(compactRow.get(379));
+    }
+
+    @Test
+    public void newerFieldsWin() {
+        CompactRow older = (CompactRow) CompactRow.compact(schema, row("379", "zelda", "536870913", "Zelda", "536870915", 4.5d));
+        CompactRow newer = (CompactRow) CompactRow.compact(schema, row("379", "zelda", "536870915", 4.8d, "536870914", "1986-02-21"));
+        CompactRow merged = CompactRow.merge(older, newer);
+
+        assertEquals(merged, row("379", "zelda", "536870913", "Zelda", "536870915", 4.8d, "536870914", "1986-02-21"));
+    }
+
+    @Test
+    public void rowsOfAPageWithOtherFields() {
+        List<Object> rows = CompactRow.compact(schema, List.of(row("379", "zelda", "536870913", "Zelda"),
+                row("536870913", "Mario", "379", "mario"), row("379", "halo", "536870915", 4.1d)));
+
+        assertEquals(rows.get(0), row("379", "zelda", "536870913", "Zelda"));
+        assertEquals(rows.get(1), row("379", "mario", "536870913", "Mario"));
+        assertEquals(rows.get(2), row("379", "halo", "536870915", 4.1d));
+        assertFalse(((Map<?, ?>) rows.get(2)).containsKey("536870913"));
+    }
+
+    @Test
+    public void mergeWithoutPrimitivesInTheNewerRow() {
+        CompactRow older = (CompactRow) CompactRow.compact(schema, row("379", "zelda", "536870915", 4.5d, "536870917", 12));
+        CompactRow newer = (CompactRow) CompactRow.compact(schema, row("379", "zelda", "536870913", "Zelda", "536870917", null));
+        CompactRow merged = CompactRow.merge(older, newer);
+
+        assertEquals(merged, row("379", "zelda", "536870913", "Zelda", "536870915", 4.5d, "536870917", null));
+        assertEquals(merged.size(), 4);
+    }
+
+    @Test
+    public void listsOfRows() {
+        List<Object> rows = CompactRow.compact(schema, List.of(row("379", "zelda"), "not a row"));
+
+        assertTrue(rows.get(0) instanceof CompactRow);
+        assertEquals(rows.get(1), "not a row");
+        assertNull(CompactRow.compact(schema, (List<Object>) null));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void compactRowIsImmutable() {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> compactRow = (Map<String, Object>) CompactRow.compact(schema, row("379", "zelda"));
+
+        compactRow.put("536870913", "Zelda");
+    }
+
+    static Map<String, Object> row(Object... fieldIdsAndValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+
+        for (int i = 0; i < fieldIdsAndValues.length; i += 2) {
+            row.put((String) fieldIdsAndValues[i], fieldIdsAndValues[i + 1]);
+        }
+
+        return row;
+    }
+}
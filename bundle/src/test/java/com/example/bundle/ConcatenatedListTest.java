@@ -0,0 +1,57 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ConcatenatedListTest {
+    private final List<List<Integer>> lists = List.of(List.of(0, 1, 2, 3), List.of(4, 5), List.of(6, 7, 8));
+
+    @Test
+    public void windowOverSeveralLists() {
+        List<Integer> window = ConcatenatedList.of(lists, 3, 8);
+
+        assertEquals(window, List.of(3, 4, 5, 6, 7));
+        assertEquals(window.size(), 5);
+        assertEquals((int) window.get(2), 5);
+        assertEquals(new ArrayList<>(window), List.of(3, 4, 5, 6, 7));
+    }
+
+    @Test
+    public void windowWithinTheFirstList() {
+        assertEquals(ConcatenatedList.of(lists, 1, 3), List.of(1, 2));
+        assertEquals(ConcatenatedList.of(List.of(List.of(0, 1, 2)), 1, 10), List.of(1, 2));
+    }
+
+    @Test
+    public void windowIsLimitedToTheElements() {
+        assertEquals(ConcatenatedList.of(lists, 7, 20), List.of(7, 8));
+        assertTrue(ConcatenatedList.of(lists, 9, 20).isEmpty());
+        assertTrue(ConcatenatedList.of(List.of(), 0, 5).isEmpty());
+        assertEquals(ConcatenatedList.of(lists, -2, 1), List.of(0));
+    }
+
+    @Test
+    public void emptyListsAreSkipped() {
+        assertEquals(ConcatenatedList.of(List.of(List.of(1), List.of(), List.of(2, 3)), 0, 3), List.of(1, 2, 3));
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void indexOutOfTheWindow() {
+        ConcatenatedList.of(lists, 3, 8).get(5);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void windowIsReadOnly() {
+        ConcatenatedList.of(lists, 3, 8).set(0, 42);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void singleListWindowIsReadOnly() {
+        ConcatenatedList.of(lists, 0, 2).add(42);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPageQueryParameters;
+import com.bmc.arsys.rx.services.record.domain.*;
+
+import java.util.*;
+
+/**
+ * Custom and Web Api Record Definitions looking like the ones of the "Games" application, so the provider
+ * can be exercised without an Innovation Studio server.
+ * <p>
+ * Web Api Record Definition fields:
+ * 379        ID         results||slug
+ * 536870913  name       results||name
+ * 536870914  released   results||released
+ * 536870915  rating     results||rating
+ * 536870916  platforms  results||platforms||platform||id
+ * 536870917  count      count
+ * 531000001  GET_QUERY_PARAMETER_page ... 531000006 GET_QUERY_PARAMETER_platforms
+ */
+final class FakeRecordDefinitions {
+    static final String CUSTOM_RECORD_DEFINITION_NAME = "com.example.games:Games";
+    static final String WEB_API_RECORD_DEFINITION_NAME = "com.example.games:Rawg Games";
+
+    static final int ID_FIELD_ID = 379;
+    static final int NAME_FIELD_ID = 536870913;
+    static final int RELEASED_FIELD_ID = 536870914;
+    static final int RATING_FIELD_ID = 536870915;
+    static final int PLATFORMS_FIELD_ID = 536870916;
+    static final int COUNT_FIELD_ID = 536870917;
+
+    private static final String[] QUERY_PARAMETERS = {"page", "page_size", "ordering", "search", "search_exact", "platforms"};
+    private static final int FIRST_QUERY_PARAMETER_FIELD_ID = 531000001;
+
+    private FakeRecordDefinitions() {
+    }
+
+    /**
+     * @param fieldId int, field Id of a Web Api Record Definition field.
+     * @return String, the Rawg.io query parameter of a GET_QUERY_PARAMETER_ field, null for another field.
+     */
+    static String getQueryParameterName(int fieldId) {
+        int index = fieldId - FIRST_QUERY_PARAMETER_FIELD_ID;
+
+        return index >= 0 && index < QUERY_PARAMETERS.length ? QUERY_PARAMETERS[index] : null;
+    }
+
+    /**
+     * @param rawgioPropertyName String, Rawg.io property of a game, for example "name".
+     * @return String, the Id of the field mapped to it, null if none is.
+     */
+    static String getFieldId(String rawgioPropertyName) {
+        switch (rawgioPropertyName) {
+            case "slug":
+                return Integer.toString(ID_FIELD_ID);
+            case "name":
+                return Integer.toString(NAME_FIELD_ID);
+            case "released":
+                return Integer.toString(RELEASED_FIELD_ID);
+            case "rating":
+                return Integer.toString(RATING_FIELD_ID);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Builds the datapagequery parameters a grid of the Custom Record Definition sends.
+     *
+     * @param startIndex             int, index of the first game.
+     * @param pageSize               int, number of games.
+     * @param queryExpression        String, the grid qualification, can be empty.
+     * @param sortBy                 String, field Id to sort on, prefixed by "-" for a descending sort, null for none.
+     * @param shouldIncludeTotalSize boolean, true for the "50+" link count.
+     * @return DataPageQueryParameters, the parameters.
+     */
+    static DataPageQueryParameters gridQuery(int startIndex, int pageSize, String queryExpression, String sortBy, boolean shouldIncludeTotalSize) {
+        Map<String, List<String>> dataPageParams = new HashMap<>();
+
+        dataPageParams.put("dataPageType", List.of("com.bmc.arsys.rx.application.record.datapage.RecordInstanceDataPageQuery"));
+        dataPageParams.put("recorddefinition", List.of(CUSTOM_RECORD_DEFINITION_NAME));
+        dataPageParams.put("propertySelection", List.of(Integer.toString(ID_FIELD_ID), Integer.toString(NAME_FIELD_ID),
+                Integer.toString(RELEASED_FIELD_ID), Integer.toString(RATING_FIELD_ID), Integer.toString(PLATFORMS_FIELD_ID)));
+        dataPageParams.put("startIndex", List.of(Integer.toString(startIndex)));
+        dataPageParams.put("pageSize", List.of(Integer.toString(pageSize)));
+        dataPageParams.put("queryExpression", List.of(queryExpression));
+        dataPageParams.put("shouldIncludeTotalSize", List.of(Boolean.toString(shouldIncludeTotalSize)));
+
+        if (sortBy != null) {
+            dataPageParams.put("sortBy", List.of(sortBy));
+        }
+
+        return new DataPageQueryParameters(dataPageParams);
+    }
+
+    /**
+     * @return RecordDefinition, the Custom Record Definition, its "Description" is the Web Api Record Definition name.
+     */
+    static RecordDefinition customRecordDefinition() {
+        RecordDefinition recordDefinition = new RecordDefinition();
+
+        recordDefinition.setName(CUSTOM_RECORD_DEFINITION_NAME);
+        recordDefinition.setDescription(WEB_API_RECORD_DEFINITION_NAME);
+        recordDefinition.setFieldDefinitions(new ArrayList<>());
+
+        return recordDefinition;
+    }
+
+    /**
+     * @return RecordDefinition, the Web Api Record Definition.
+     */
+    static RecordDefinition webApiRecordDefinition() {
+        List<FieldDefinition<? extends StorageType>> fieldDefinitions = new ArrayList<>();
+
+        fieldDefinitions.add(characterField(ID_FIELD_ID, "ID", "results||slug"));
+        fieldDefinitions.add(characterField(NAME_FIELD_ID, "name", "results||name"));
+        fieldDefinitions.add(characterField(RELEASED_FIELD_ID, "released", "results||released"));
+        fieldDefinitions.add(characterField(RATING_FIELD_ID, "rating", "results||rating"));
+        fieldDefinitions.add(characterField(PLATFORMS_FIELD_ID, "platforms", "results||platforms||platform||id"));
+        fieldDefinitions.add(integerField(COUNT_FIELD_ID, "count", "count"));
+
+        for (int i = 0; i < QUERY_PARAMETERS.length; i++) {
+            fieldDefinitions.add(characterField(FIRST_QUERY_PARAMETER_FIELD_ID + i, "GET_QUERY_PARAMETER_" + QUERY_PARAMETERS[i], null));
+        }
+
+        RecordDefinition recordDefinition = new RecordDefinition();
+
+        recordDefinition.setName(WEB_API_RECORD_DEFINITION_NAME);
+        recordDefinition.setFieldDefinitions(fieldDefinitions);
+
+        return recordDefinition;
+    }
+
+    /**
+     * @return WebApiRecordDefinitionMetadata, the metadata built by the provider for those definitions.
+     */
+    static WebApiRecordDefinitionMetadata metadata() {
+        return WebApiRecordDefinitionMetadata.build(CUSTOM_RECORD_DEFINITION_NAME, webApiRecordDefinition());
+    }
+
+    private static FieldDefinition<? extends StorageType> characterField(int id, String name, String externalFieldId) {
+        return withMapping(new CharacterFieldDefinition(), id, name, externalFieldId);
+    }
+
+    private static FieldDefinition<? extends StorageType> integerField(int id, String name, String externalFieldId) {
+        return withMapping(new IntegerFieldDefinition(), id, name, externalFieldId);
+    }
+
+    private static FieldDefinition<? extends StorageType> withMapping(FieldDefinition<? extends StorageType> fieldDefinition, int id, String name, String externalFieldId) {
+        fieldDefinition.setId(id);
+        fieldDefinition.setName(name);
+
+        if (externalFieldId != null) {
+            ExternalRecordDefinitionFieldMapping fieldMapping = new ExternalRecordDefinitionFieldMapping();
+            fieldMapping.setExternalFieldId(externalFieldId);
+            fieldDefinition.setFieldMapping(fieldMapping);
+        }
+
+        return fieldDefinition;
+    }
+}
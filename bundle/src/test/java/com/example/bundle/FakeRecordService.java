@@ -0,0 +1,346 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import com.bmc.arsys.rx.services.common.DataPageQueryParameters;
+import com.bmc.arsys.rx.services.record.RecordService;
+import com.bmc.arsys.rx.services.record.domain.RecordDefinition;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RecordService answering like the Platform calling Rawg.io, for the {@link FakeRecordDefinitions}, with a synthetic
+ * catalog of games, a tunable latency per Web Api call and, for the soak runs, random failures: server errors and
+ * throttling (HTTP 429) as Rawg.io returns them.
+ * <p>
+ * Only the two methods used by the provider are implemented, the RecordService is a dynamic proxy of the SDK
+ * interface so the benchmarks do not depend on its other methods:
+ * - getRecordDefinition(), returning the fake Custom and Web Api Record Definitions,
+ * - getRecordInstancesByIdDataPage(), reading the Rawg.io query parameters from the qualification (page, page_size,
+ * ordering, search, search_exact, platforms) as Rawg.io would, and returning the selected fields and the "count".
+ */
+final class FakeRecordService {
+    private static final String[] WORDS = {"Grand", "Theft", "Auto", "Witcher", "Portal", "Half-Life", "Zelda", "Mario",
+            "Kart", "Doom", "Quake", "Wild", "Hunt", "Legends", "Souls", "Dark", "Red", "Dead", "Redemption", "Tomb"};
+    private static final int[] PLATFORMS = {4, 5, 6, 7, 18, 187, 186, 1};
+
+    private final List<Map<String, Object>> games;
+    private final long latencyNanos;
+    private final double errorRate;
+    private final double throttleRate;
+    private final RecordDefinition customRecordDefinition = FakeRecordDefinitions.customRecordDefinition();
+    private final RecordDefinition webApiRecordDefinition = FakeRecordDefinitions.webApiRecordDefinition();
+    private final QueryExpressionParser queryExpressionParser = new QueryExpressionParser();
+    // The games matching a search, platforms and ordering, so the fake does not sort the catalog at each call and
+    // the time measured stays the time of the provider.
+    private final Map<String, List<Map<String, Object>>> matchingGamesByFilter = new ConcurrentHashMap<>();
+    private final LongAdder webApiCalls = new LongAdder();
+    private final LongAdder definitionCalls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder throttledCalls = new LongAdder();
+
+    /**
+     * @param gameCount     int, number of games of the synthetic catalog.
+     * @param latencyMicros long, time taken by each Web Api call, as the round trip to Rawg.io.
+     */
+    FakeRecordService(int gameCount, long latencyMicros) {
+        this(gameCount, latencyMicros, 0, 0);
+    }
+
+    /**
+     * @param gameCount     int, number of games of the synthetic catalog.
+     * @param latencyMicros long, time taken by each Web Api call, as the round trip to Rawg.io.
+     * @param errorRate     double, share of the Web Api calls failing with a server error, between 0 and 1.
+     * @param throttleRate  double, share of the Web Api calls rejected with an HTTP 429, between 0 and 1.
+     */
+    FakeRecordService(int gameCount, long latencyMicros, double errorRate, double throttleRate) {
+        this.games = createGames(gameCount);
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+    }
+
+    /**
+     * The same games for the same count, so two runs can be compared.
+     */
+    private static List<Map<String, Object>> createGames(int gameCount) {
+        Random random = new Random(42);
+        List<Map<String, Object>> games = new ArrayList<>(gameCount);
+
+        for (int i = 0; i < gameCount; i++) {
+            Map<String, Object> game = new HashMap<>();
+            List<Integer> platforms = new ArrayList<>();
+
+            for (int platform : PLATFORMS) {
+                if (random.nextInt(3) == 0) {
+                    platforms.add(platform);
+                }
+            }
+
+            game.put(Integer.toString(FakeRecordDefinitions.ID_FIELD_ID), "game-" + i);
+            game.put(Integer.toString(FakeRecordDefinitions.NAME_FIELD_ID), WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i);
+            game.put(Integer.toString(FakeRecordDefinitions.RELEASED_FIELD_ID), String.format("%d-%02d-%02d", 1990 + random.nextInt(35), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            game.put(Integer.toString(FakeRecordDefinitions.RATING_FIELD_ID), random.nextInt(501) / 100d);
+            game.put(Integer.toString(FakeRecordDefinitions.PLATFORMS_FIELD_ID), platforms);
+            games.add(game);
+        }
+
+        return games;
+    }
+
+    /**
+     * @return RecordService, the RecordService to give to the provider.
+     */
+    RecordService recordService() {
+        return (RecordService) Proxy.newProxyInstance(RecordService.class.getClassLoader(), new Class<?>[]{RecordService.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRecordDefinition":
+                            return getRecordDefinition((String) args[0]);
+                        case "getRecordInstancesByIdDataPage":
+                            return getRecordInstancesByIdDataPage((DataPageQueryParameters) args[0]);
+                        case "toString":
+                            return "FakeRecordService";
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName() + " is not simulated.");
+                    }
+                });
+    }
+
+    private RecordDefinition getRecordDefinition(String recordDefinitionName) {
+        definitionCalls.increment();
+
+        if (FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME.equals(recordDefinitionName)) {
+            return customRecordDefinition;
+        }
+
+        if (FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME.equals(recordDefinitionName)) {
+            return webApiRecordDefinition;
+        }
+
+        throw new IllegalArgumentException("Unknown record definition " + recordDefinitionName);
+    }
+
+    private DataPage getRecordInstancesByIdDataPage(DataPageQueryParameters dataPageQueryParameters) {
+        webApiCalls.increment();
+
+        // A throttled call is answered at once, a failing one after the usual latency.
+        double outcome = errorRate > 0 || throttleRate > 0 ? ThreadLocalRandom.current().nextDouble() : 1;
+
+        if (outcome < throttleRate) {
+            throttledCalls.increment();
+            throw new IllegalStateException("Rawg.io answered HTTP 429 Too Many Requests");
+        }
+
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+
+        if (outcome < throttleRate + errorRate) {
+            failedCalls.increment();
+            throw new IllegalStateException("Rawg.io answered HTTP 502 Bad Gateway");
+        }
+
+        Map<String, String> queryParameters = readQueryParameters(dataPageQueryParameters.getQueryPredicatesByName().get("queryExpression").getRightOperand());
+        List<Map<String, Object>> matchingGames = getMatchingGames(queryParameters);
+
+        int page = parseInt(queryParameters.get("page"), 1);
+        int pageSize = Math.min(40, parseInt(queryParameters.get("page_size"), 20));
+        int from = Math.min(matchingGames.size(), (page - 1) * pageSize);
+        int to = Math.min(matchingGames.size(), from + pageSize);
+        List<Object> rows = new ArrayList<>(to - from);
+        String countFieldId = Integer.toString(FakeRecordDefinitions.COUNT_FIELD_ID);
+
+        for (Map<String, Object> game : matchingGames.subList(from, to)) {
+            Map<String, Object> row = new HashMap<>();
+
+            for (String fieldId : dataPageQueryParameters.getPropertySelections()) {
+                if (game.containsKey(fieldId)) {
+                    row.put(fieldId, game.get(fieldId));
+                }
+            }
+
+            row.put(countFieldId, matchingGames.size());
+            rows.add(row);
+        }
+
+        // As the Platform does for a Web Api, the total size is the number of returned rows.
+        return new DataPage(rows.size(), rows);
+    }
+
+    private List<Map<String, Object>> getMatchingGames(Map<String, String> queryParameters) {
+        String filterKey = queryParameters.get("search") + '\n' + queryParameters.get("search_exact") + '\n'
+                + queryParameters.get("platforms") + '\n' + queryParameters.get("ordering");
+        List<Map<String, Object>> matchingGames = matchingGamesByFilter.get(filterKey);
+
+        if (matchingGames == null) {
+            matchingGames = filter(queryParameters);
+
+            if (matchingGamesByFilter.size() < 1000) {
+                matchingGamesByFilter.put(filterKey, matchingGames);
+            }
+        }
+
+        return matchingGames;
+    }
+
+    /**
+     * Returns the Ids of the games Rawg.io returns for a search and an ordering, in order, to check what the provider
+     * returned. No Web Api call is counted.
+     *
+     * @param search   String, the searched name, null for none.
+     * @param ordering String, the Rawg.io ordering ("-name,released"), null for none.
+     * @return List<String>, the game Ids (slugs).
+     */
+    List<String> getGameIds(String search, String ordering) {
+        Map<String, String> queryParameters = new HashMap<>();
+
+        if (search != null) {
+            queryParameters.put("search", search);
+        }
+
+        if (ordering != null) {
+            queryParameters.put("ordering", ordering);
+        }
+
+        String idFieldId = Integer.toString(FakeRecordDefinitions.ID_FIELD_ID);
+        List<String> gameIds = new ArrayList<>();
+
+        for (Map<String, Object> game : getMatchingGames(queryParameters)) {
+            gameIds.add((String) game.get(idFieldId));
+        }
+
+        return gameIds;
+    }
+
+    /**
+     * Reads the Rawg.io query parameters from the qualification: '531000001' = "1" AND '531000002' = "25"...
+     */
+    private Map<String, String> readQueryParameters(String qualification) {
+        Map<String, String> queryParameters = new HashMap<>();
+        QueryExpression queryExpression = queryExpressionParser.parse(qualification);
+
+        for (Map.Entry<String, List<QueryExpression.Condition>> fieldConditions : queryExpression.getConditionsByFieldId().entrySet()) {
+            String queryParameterName = FakeRecordDefinitions.getQueryParameterName(Integer.parseInt(fieldConditions.getKey()));
+
+            if (queryParameterName != null) {
+                queryParameters.put(queryParameterName, fieldConditions.getValue().get(0).getValue());
+            }
+        }
+
+        return queryParameters;
+    }
+
+    private List<Map<String, Object>> filter(Map<String, String> queryParameters) {
+        String search = queryParameters.get("search");
+        boolean searchExact = Boolean.parseBoolean(queryParameters.get("search_exact"));
+        String platforms = queryParameters.get("platforms");
+        String ordering = queryParameters.get("ordering");
+
+        if (search == null && platforms == null && ordering == null) {
+            return games;
+        }
+
+        String nameFieldId = Integer.toString(FakeRecordDefinitions.NAME_FIELD_ID);
+        String idFieldId = Integer.toString(FakeRecordDefinitions.ID_FIELD_ID);
+        String platformsFieldId = Integer.toString(FakeRecordDefinitions.PLATFORMS_FIELD_ID);
+        Set<Integer> platformIds = new HashSet<>();
+
+        if (platforms != null) {
+            for (String platform : platforms.split(",")) {
+                platformIds.add(Integer.parseInt(platform.trim()));
+            }
+        }
+
+        List<Map<String, Object>> matchingGames = new ArrayList<>();
+
+        for (Map<String, Object> game : games) {
+            if (search != null && (searchExact
+                    ? !search.equals(game.get(idFieldId))
+                    : !game.get(nameFieldId).toString().toLowerCase(Locale.ROOT).contains(search.toLowerCase(Locale.ROOT)))) {
+                continue;
+            }
+
+            if (!platformIds.isEmpty() && Collections.disjoint(platformIds, (List<?>) game.get(platformsFieldId))) {
+                continue;
+            }
+
+            matchingGames.add(game);
+        }
+
+        if (ordering != null && !ordering.isEmpty()) {
+            matchingGames.sort(comparator(ordering));
+        }
+
+        return matchingGames;
+    }
+
+    /**
+     * Rawg.io ordering: "-name,released", a "-" for a descending order.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Map<String, Object>> comparator(String ordering) {
+        Comparator<Map<String, Object>> comparator = (game1, game2) -> 0;
+
+        for (String property : ordering.split(",")) {
+            boolean descending = property.startsWith("-");
+            String fieldId = FakeRecordDefinitions.getFieldId(descending ? property.substring(1) : property);
+
+            if (fieldId == null) {
+                continue;
+            }
+
+            Comparator<Map<String, Object>> propertyComparator = Comparator.comparing(game -> (Comparable) game.get(fieldId),
+                    Comparator.nullsLast(Comparator.naturalOrder()));
+            comparator = comparator.thenComparing(descending ? propertyComparator.reversed() : propertyComparator);
+        }
+
+        return comparator;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * @return long, number of Web Api calls (calls to Rawg.io) received.
+     */
+    long getWebApiCallCount() {
+        return webApiCalls.sum();
+    }
+
+    long getDefinitionCallCount() {
+        return definitionCalls.sum();
+    }
+
+    /**
+     * @return long, number of Web Api calls answered with a server error.
+     */
+    long getFailedCallCount() {
+        return failedCalls.sum();
+    }
+
+    /**
+     * @return long, number of Web Api calls answered with an HTTP 429.
+     */
+    long getThrottledCallCount() {
+        return throttledCalls.sum();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MirrorTableTest {
+    private static final String ID = "379";
+    private static final String NAME = "536870913";
+    private static final String RATING = "536870915";
+    private static final String PLATFORMS = "536870916";
+
+    private final QueryExpressionParser parser = new QueryExpressionParser();
+    private final MirrorTable table = table(
+            CompactRowTest.row(ID, "zelda", NAME, "The Legend of Zelda", RATING, 4.5, PLATFORMS, List.of(7, 8)),
+            CompactRowTest.row(ID, "portal", NAME, "Portal", RATING, 4.8, PLATFORMS, List.of(4, 187)),
+            CompactRowTest.row(ID, "portal-2", NAME, "Portal 2", RATING, 4.6, PLATFORMS, List.of(4, 186)),
+            CompactRowTest.row(ID, "doom", NAME, "DOOM", RATING, 4.1, PLATFORMS, List.of(4)),
+            CompactRowTest.row(ID, "quake", NAME, "Quake", RATING, null, PLATFORMS, null));
+
+    @Test
+    public void everyRowInCrawlOrder() {
+        MirrorTable.Result result = query("", List.of(), 0, 10);
+
+        assertEquals(result.getTotalSize(), 5);
+        assertEquals(ids(result), List.of("zelda", "portal", "portal-2", "doom", "quake"));
+    }
+
+    @Test
+    public void likeOnTheIndexedName() {
+        assertEquals(ids(query("'" + NAME + "' LIKE \"%portal%\"", List.of(), 0, 10)), List.of("portal", "portal-2"));
+        assertEquals(ids(query("'" + NAME + "' LIKE \"por%2\"", List.of(), 0, 10)), List.of("portal-2"));
+        assertEquals(ids(query("'" + NAME + "' = \"doom\"", List.of(), 0, 10)), List.of("doom"));
+        assertEquals(query("'" + NAME + "' LIKE \"%mario%\"", List.of(), 0, 10).getTotalSize(), 0);
+    }
+
+    /**
+     * The % and _ of an equality are characters of the value, the index must still find the row.
+     */
+    @Test
+    public void equalityWithWildcardCharacters() {
+        MirrorTable table = table(
+                CompactRowTest.row(ID, "100-orange-juice", NAME, "100% Orange Juice"),
+                CompactRowTest.row(ID, "100-orange", NAME, "100 Orange Juice"),
+                CompactRowTest.row(ID, "mario-kart", NAME, "Mario_Kart"));
+
+        assertEquals(ids(table.query(parser.parse("'" + NAME + "' = \"100% Orange Juice\""), List.of(), 0, 10, List.of(ID))),
+                List.of("100-orange-juice"));
+        assertEquals(ids(table.query(parser.parse("'" + NAME + "' = \"mario_kart\""), List.of(), 0, 10, List.of(ID))),
+                List.of("mario-kart"));
+        assertEquals(table.query(parser.parse("'" + NAME + "' = \"100% Orange Juice\""), List.of(), 0, 0, List.of(ID)).getTotalSize(), 1);
+    }
+
+    @Test
+    public void platformFilters() {
+        assertEquals(ids(query("'" + PLATFORMS + "' = \"4\"", List.of(), 0, 10)), List.of("portal", "portal-2", "doom"));
+        assertEquals(ids(query("('" + PLATFORMS + "' = \"187\" OR '" + PLATFORMS + "' = \"7\")", List.of(), 0, 10)), List.of("zelda", "portal"));
+        assertEquals(ids(query("'" + PLATFORMS + "' = \"4\" AND '" + NAME + "' LIKE \"%portal%\"", List.of(), 0, 10)), List.of("portal", "portal-2"));
+        assertEquals(query("'" + PLATFORMS + "' = \"4\"", List.of(), 0, 0).getTotalSize(), 3);
+    }
+
+    @Test
+    public void comparisons() {
+        assertEquals(ids(query("'" + RATING + "' >= 4.6", List.of(), 0, 10)), List.of("portal", "portal-2"));
+        assertEquals(ids(query("'" + RATING + "' = $NULL$", List.of(), 0, 10)), List.of("quake"));
+        assertEquals(ids(query("NOT ('" + RATING + "' < 4.5) AND '" + RATING + "' != $NULL$", List.of(), 0, 10)),
+                List.of("zelda", "portal", "portal-2"));
+    }
+
+    /**
+     * A game without value matches neither = nor != a value, on an indexed column or not, but NOT reverses it.
+     */
+    @Test
+    public void notEqualDoesNotMatchNullValues() {
+        assertEquals(ids(query("'" + PLATFORMS + "' != \"4\"", List.of(), 0, 10)), List.of("zelda"));
+        assertEquals(query("'" + PLATFORMS + "' != \"4\"", List.of(), 0, 0).getTotalSize(), 1);
+        assertEquals(ids(query("NOT ('" + PLATFORMS + "' = \"4\")", List.of(), 0, 10)), List.of("zelda", "quake"));
+        assertEquals(ids(query("'" + RATING + "' != 4.5", List.of(), 0, 10)), List.of("portal", "portal-2", "doom"));
+        assertEquals(ids(query("'" + PLATFORMS + "' != $NULL$", List.of(), 0, 10)), List.of("zelda", "portal", "portal-2", "doom"));
+    }
+
+    /**
+     * In a column mixing numbers and texts, the numbers come first, in numeric order, then the texts.
+     */
+    @Test
+    public void sortOnAMixedColumn() {
+        MirrorTable table = table(
+                CompactRowTest.row(ID, "a", RATING, "tba"),
+                CompactRowTest.row(ID, "b", RATING, 10),
+                CompactRowTest.row(ID, "c", RATING, "100"),
+                CompactRowTest.row(ID, "d", RATING, 9.5),
+                CompactRowTest.row(ID, "e", RATING, "N/A"),
+                CompactRowTest.row(ID, "f", RATING, null));
+
+        assertEquals(ids(table.query(QueryExpression.EMPTY, List.of(new MirrorTable.SortKey(RATING, true)), 0, 10, List.of(ID))),
+                List.of("d", "b", "c", "e", "a", "f"));
+        assertEquals(ids(table.query(QueryExpression.EMPTY, List.of(new MirrorTable.SortKey(RATING, false)), 0, 10, List.of(ID))),
+                List.of("a", "e", "c", "b", "d", "f"));
+    }
+
+    @Test
+    public void sortAndPage() {
+        List<MirrorTable.SortKey> byRatingDescending = List.of(new MirrorTable.SortKey(RATING, false));
+
+        // The null values are last in both directions.
+        assertEquals(ids(query("", byRatingDescending, 0, 10)), List.of("portal", "portal-2", "zelda", "doom", "quake"));
+        assertEquals(ids(query("", List.of(new MirrorTable.SortKey(RATING, true)), 0, 10)), List.of("doom", "zelda", "portal-2", "portal", "quake"));
+        assertEquals(ids(query("", byRatingDescending, 1, 2)), List.of("portal-2", "zelda"));
+        assertEquals(ids(query("", List.of(new MirrorTable.SortKey(NAME, true)), 0, 2)), List.of("doom", "portal"));
+    }
+
+    @Test
+    public void onlyTheSelectedFieldsAreReturned() {
+        Map<?, ?> row = (Map<?, ?>) table.query(QueryExpression.EMPTY, List.of(), 0, 1, List.of(ID, "999")).getRows().get(0);
+
+        assertEquals(row, Map.of(ID, "zelda"));
+    }
+
+    @Test
+    public void like() {
+        assertTrue(MirrorTable.like("The Legend of Zelda", "%zelda"));
+        assertTrue(MirrorTable.like("Portal 2", "p_rtal%"));
+        assertTrue(MirrorTable.like("100% Orange Juice", "100%"));
+        assertFalse(MirrorTable.like("Portal", "portal_"));
+    }
+
+    MirrorTable.Result query(String queryExpression, List<MirrorTable.SortKey> sortKeys, int startIndex, int pageSize) {
+        return table.query(parser.parse(queryExpression), sortKeys, startIndex, pageSize, List.of(ID, NAME, RATING, PLATFORMS));
+    }
+
+    @SafeVarargs
+    static MirrorTable table(Map<String, Object>... rows) {
+        MirrorTable.Builder builder = new MirrorTable.Builder(List.of(ID, NAME, RATING, PLATFORMS), Set.of(NAME), Set.of(PLATFORMS));
+
+        builder.addAll(List.of((Object[]) rows));
+
+        return builder.build(rows.length);
+    }
+
+    static List<String> ids(MirrorTable.Result result) {
+        List<String> ids = new ArrayList<>();
+
+        for (Object row : result.getRows()) {
+            ids.add((String) ((Map<?, ?>) row).get(ID));
+        }
+
+        return ids;
+    }
+}
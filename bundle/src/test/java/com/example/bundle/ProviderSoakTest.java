@@ -0,0 +1,507 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import com.bmc.arsys.rx.services.common.DataPageQueryParameters;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Soak run of the provider: many End Users replaying grid sessions for a while against a {@link FakeRecordService}
+ * with Rawg.io latency, server errors and throttling, to find the concurrency issues and throughput limits before a
+ * server does.
+ * <p>
+ * A session is what an End User does on the grid: browsing pages in order, jumping to a page, searching, sorting,
+ * clicking the "50+" link and opening a game. The sessions are generated from a fixed seed, or read from a traffic
+ * file (see {@link #readSessions(Reader)}), and each thread replays them one after the other.
+ * <p>
+ * Every answer is checked against the synthetic catalog: a grid page must hold exactly the games of its window,
+ * in order, however the Rawg.io pages were merged, cached or fetched concurrently. A failed request (Rawg.io error,
+ * circuit open, timeout) is counted as an error, it is not wrong. The test fails on the first wrong answer.
+ * <p>
+ * The throughput, the p50 / p99 latencies, the errors and the wrong answers are printed per request type, with the
+ * Web Api calls and the main provider metrics.
+ * <p>
+ * The run is short by default, a longer one is started with the system properties:
+ * mvn test -Dtest=ProviderSoakTest -Dsoak.threads=32 -Dsoak.seconds=300
+ * soak.threads       number of End Users, 8 by default,
+ * soak.seconds       duration of each run, 5 by default,
+ * soak.games         number of games of the catalog, 2000 by default,
+ * soak.latencyMicros latency of a Web Api call, 2000 by default,
+ * soak.errorRate     share of the Web Api calls failing, 0.01 by default,
+ * soak.throttleRate  share of the Web Api calls throttled (HTTP 429), 0.01 by default,
+ * soak.sessions      number of generated sessions, 200 by default,
+ * soak.traffic       traffic file replayed by {@link #soakRecordedTraffic()}, soak-traffic.tsv of the test resources
+ *                    by default.
+ * The provider settings can be given as usual, -Dcom.example.bundle.prefetchPages=2 for example.
+ */
+public class ProviderSoakTest {
+    private static final String PROVIDER_PROPERTY_ROOT = "com.example.bundle.";
+    private static final String[] SEARCHES = {"witcher", "portal", "zelda", "mario", "doom", "souls", "dark", "red dead"};
+    private static final String[] SORTABLE_PROPERTIES = {"name", "released", "rating"};
+    private static final int MAX_REPORTED_MISMATCHES = 10;
+
+    private final int threads = Integer.getInteger("soak.threads", 8);
+    private final int seconds = Integer.getInteger("soak.seconds", 5);
+    private final int games = Integer.getInteger("soak.games", 2000);
+    private final long latencyMicros = Long.getLong("soak.latencyMicros", 2000);
+    private final double errorRate = Double.parseDouble(System.getProperty("soak.errorRate", "0.01"));
+    private final double throttleRate = Double.parseDouble(System.getProperty("soak.throttleRate", "0.01"));
+
+    private BenchmarkSettings settings;
+    private FakeRecordService fakeRecordService;
+    private VideoGameGamesCustomRecordProvider provider;
+    private Map<RequestType, LatencyHistogram> latencies;
+    private Map<RequestType, LongAdder> errors;
+    private Map<RequestType, LongAdder> mismatches;
+    // The expected games per search and ordering, computed once per run.
+    private Map<String, List<String>> expectedGameIds;
+    private Map<String, LongAdder> errorsByMessage;
+    private AtomicInteger reportedMismatches;
+
+    @BeforeClass
+    public void applySettings() {
+        // The settings of the benchmarks, unless given on the command line.
+        settings = new BenchmarkSettings().cached(true).concurrentFetch(true);
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROVIDER_PROPERTY_ROOT)) {
+                settings.set(name.substring(PROVIDER_PROPERTY_ROOT.length()), System.getProperty(name));
+            }
+        }
+
+        settings.apply();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearSettings() {
+        settings.clear();
+    }
+
+    /**
+     * Each run begins with a new provider, so its caches are empty.
+     */
+    @BeforeMethod
+    public void createProvider() {
+        fakeRecordService = new FakeRecordService(games, latencyMicros, errorRate, throttleRate);
+        provider = new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+        latencies = new EnumMap<>(RequestType.class);
+        errors = new EnumMap<>(RequestType.class);
+        mismatches = new EnumMap<>(RequestType.class);
+        expectedGameIds = new ConcurrentHashMap<>();
+        errorsByMessage = new ConcurrentHashMap<>();
+        reportedMismatches = new AtomicInteger();
+
+        for (RequestType requestType : RequestType.values()) {
+            latencies.put(requestType, new LatencyHistogram());
+            errors.put(requestType, new LongAdder());
+            mismatches.put(requestType, new LongAdder());
+        }
+    }
+
+    @Test
+    public void soakGeneratedSessions() throws InterruptedException {
+        soak(generateSessions(Integer.getInteger("soak.sessions", 200)));
+    }
+
+    @Test
+    public void soakRecordedTraffic() throws IOException, InterruptedException {
+        String traffic = System.getProperty("soak.traffic");
+
+        if (traffic != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(traffic), StandardCharsets.UTF_8)) {
+                soak(readSessions(reader));
+            }
+
+            return;
+        }
+
+        try (InputStream in = ProviderSoakTest.class.getResourceAsStream("/soak-traffic.tsv")) {
+            assertNotNull(in, "soak-traffic.tsv is missing from the test resources");
+            soak(readSessions(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        }
+    }
+
+    private void soak(List<List<GridRequest>> sessions) throws InterruptedException {
+        System.out.printf("Soak run: %d threads, %d s, %d games, %d sessions, latency %d us, errors %.3f, throttled %.3f%n",
+                threads, seconds, games, sessions.size(), latencyMicros, errorRate, throttleRate);
+
+        long elapsedNanos = run(sessions, threads, TimeUnit.SECONDS.toNanos(seconds));
+        long requests = report(elapsedNanos);
+        long wrong = 0;
+
+        for (LongAdder requestTypeMismatches : mismatches.values()) {
+            wrong += requestTypeMismatches.sum();
+        }
+
+        assertTrue(requests > 0, "No grid request was answered");
+        assertEquals(wrong, 0, "Wrong answers, see the output of the run");
+    }
+
+    /**
+     * Replays the sessions with several threads until the duration is over, printing the progress every 10 s.
+     *
+     * @return long, the duration of the run in nanoseconds.
+     */
+    private long run(List<List<GridRequest>> sessions, int threads, long durationNanos) throws InterruptedException {
+        AtomicInteger nextSession = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + durationNanos;
+
+        for (int i = 0; i < threads; i++) {
+            Thread endUser = new Thread(() -> {
+                try {
+                    while (System.nanoTime() - endNanos < 0) {
+                        List<GridRequest> session = sessions.get(Math.floorMod(nextSession.getAndIncrement(), sessions.size()));
+
+                        for (GridRequest gridRequest : session) {
+                            if (System.nanoTime() - endNanos >= 0) {
+                                break;
+                            }
+
+                            execute(gridRequest);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "soak-end-user-" + i);
+
+            endUser.setDaemon(true);
+            endUser.start();
+        }
+
+        while (!done.await(10, TimeUnit.SECONDS)) {
+            System.out.printf("  %4d s: %d requests, %d Web Api calls%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos), getRequestCount(), fakeRecordService.getWebApiCallCount());
+        }
+
+        return System.nanoTime() - startNanos;
+    }
+
+    private void execute(GridRequest gridRequest) {
+        long startNanos = System.nanoTime();
+
+        try {
+            DataPage dataPage = provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME, gridRequest.toDataPageQueryParameters(), null, null);
+
+            latencies.get(gridRequest.type).record(System.nanoTime() - startNanos);
+            check(gridRequest, dataPage);
+        } catch (RuntimeException e) {
+            latencies.get(gridRequest.type).record(System.nanoTime() - startNanos);
+            errors.get(gridRequest.type).increment();
+            errorsByMessage.computeIfAbsent(e.getClass().getSimpleName() + ": " + e.getMessage(), message -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Compares an answer to the synthetic catalog.
+     */
+    private void check(GridRequest gridRequest, DataPage dataPage) {
+        List<String> expected;
+        List<String> actual = new ArrayList<>();
+        String idFieldId = Integer.toString(FakeRecordDefinitions.ID_FIELD_ID);
+
+        for (Object row : dataPage.getData()) {
+            actual.add(String.valueOf(((Map<?, ?>) row).get(idFieldId)));
+        }
+
+        switch (gridRequest.type) {
+            case PAGE:
+                List<String> gameIds = getExpectedGameIds(gridRequest.search, gridRequest.getRawgioOrdering());
+                int from = Math.min(gridRequest.startIndex, gameIds.size());
+                expected = gameIds.subList(from, Math.min(from + gridRequest.pageSize, gameIds.size()));
+                break;
+            case COUNT:
+                expected = List.of(Integer.toString(getExpectedGameIds(gridRequest.search, null).size()));
+                actual = List.of(Integer.toString(dataPage.getTotalSize()));
+                break;
+            default:
+                expected = List.of(gridRequest.recordInstanceId);
+                break;
+        }
+
+        if (!expected.equals(actual)) {
+            mismatches.get(gridRequest.type).increment();
+
+            if (reportedMismatches.incrementAndGet() <= MAX_REPORTED_MISMATCHES) {
+                System.out.printf("  Wrong answer to %s%n    expected %s%n    actual   %s%n", gridRequest, expected, actual);
+            }
+        }
+    }
+
+    private List<String> getExpectedGameIds(String search, String ordering) {
+        return expectedGameIds.computeIfAbsent(search + '\n' + ordering, key -> fakeRecordService.getGameIds(search, ordering));
+    }
+
+    private long getRequestCount() {
+        long requests = 0;
+
+        for (LatencyHistogram histogram : latencies.values()) {
+            requests += histogram.getCount();
+        }
+
+        return requests;
+    }
+
+    /**
+     * Prints the results of the run.
+     *
+     * @return long, number of grid requests answered or failed.
+     */
+    private long report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.printf("%nRequest type   requests   per s    p50 ms   p99 ms   max ms   errors   wrong%n");
+
+        for (RequestType requestType : RequestType.values()) {
+            LatencyHistogram histogram = latencies.get(requestType);
+
+            System.out.printf("%-12s %10d %7.1f %9.2f %8.2f %8.2f %8d %7d%n", requestType.name().toLowerCase(Locale.ROOT),
+                    histogram.getCount(), histogram.getCount() / seconds,
+                    histogram.getPercentileNanos(50) / 1e6, histogram.getPercentileNanos(99) / 1e6, histogram.getMaxNanos() / 1e6,
+                    errors.get(requestType).sum(), mismatches.get(requestType).sum());
+        }
+
+        System.out.printf("%nWeb Api calls: %d (%.1f per s), failed: %d, throttled: %d%n",
+                fakeRecordService.getWebApiCallCount(), fakeRecordService.getWebApiCallCount() / seconds,
+                fakeRecordService.getFailedCallCount(), fakeRecordService.getThrottledCallCount());
+
+        if (!errorsByMessage.isEmpty()) {
+            System.out.println("Errors:");
+            new TreeMap<>(errorsByMessage).forEach((message, count) -> System.out.printf("  %6d  %s%n", count.sum(), message));
+        }
+
+        System.out.println("Provider metrics:");
+
+        for (Map.Entry<String, Number> metric : provider.getMetrics().snapshot().entrySet()) {
+            String name = metric.getKey();
+
+            if (name.startsWith("upstream.") || name.startsWith("circuitBreaker.") || name.startsWith("gridPage.") || name.endsWith(".hitRatio")) {
+                System.out.printf("  %-40s %s%n", name, metric.getValue());
+            }
+        }
+
+        return getRequestCount();
+    }
+
+    /**
+     * Generates End User sessions, always the same ones for the same number of sessions.
+     */
+    private List<List<GridRequest>> generateSessions(int sessionCount) {
+        Random random = new Random(7);
+        List<List<GridRequest>> sessions = new ArrayList<>(sessionCount);
+
+        for (int i = 0; i < sessionCount; i++) {
+            String search = random.nextInt(5) < 2 ? SEARCHES[random.nextInt(SEARCHES.length)] : null;
+            String sortProperty = random.nextBoolean() ? SORTABLE_PROPERTIES[random.nextInt(SORTABLE_PROPERTIES.length)] : null;
+            boolean ascending = random.nextBoolean();
+            int pageSize = random.nextInt(5) == 0 ? (random.nextBoolean() ? 25 : 100) : 50;
+            int gameCount = getExpectedGameIds(search, null).size();
+            List<GridRequest> session = new ArrayList<>();
+
+            // Pages read in order, sometimes a jump further.
+            int startIndex = 0;
+
+            for (int page = 1 + random.nextInt(6); page > 0; page--) {
+                GridRequest gridPage = GridRequest.page(startIndex, pageSize, search, sortProperty, ascending);
+                session.add(gridPage);
+
+                if (random.nextInt(4) == 0) {
+                    session.add(GridRequest.count(search));
+                }
+
+                // Opening a game of the page.
+                if (random.nextInt(4) == 0) {
+                    List<String> gameIds = getExpectedGameIds(search, gridPage.getRawgioOrdering());
+
+                    if (startIndex < gameIds.size()) {
+                        session.add(GridRequest.recordInstance(gameIds.get(startIndex + random.nextInt(Math.min(pageSize, gameIds.size() - startIndex)))));
+                    }
+                }
+
+                startIndex += random.nextInt(5) == 0 ? pageSize * (1 + random.nextInt(20)) : pageSize;
+
+                // Past the end, a few grid pages are still asked, as the "next" button of a stale grid does.
+                if (startIndex > gameCount + pageSize) {
+                    break;
+                }
+            }
+
+            sessions.add(session);
+        }
+
+        return sessions;
+    }
+
+    /**
+     * Reads the sessions from a traffic file, one grid request per line, an empty line between two sessions.
+     * The fields are separated by tabulations, an empty field being "none":
+     * page    startIndex  pageSize  search  sortBy (field Id, prefixed by "-" for a descending sort)
+     * count   search
+     * open    record instance Id
+     * Lines beginning with "#" are ignored.
+     */
+    private static List<List<GridRequest>> readSessions(Reader reader) throws IOException {
+        List<List<GridRequest>> sessions = new ArrayList<>();
+        List<GridRequest> session = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            if (line.trim().isEmpty()) {
+                if (!session.isEmpty()) {
+                    sessions.add(session);
+                    session = new ArrayList<>();
+                }
+
+                continue;
+            }
+
+            if (line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = Arrays.copyOf(line.split("\t", -1), 5);
+
+            switch (fields[0]) {
+                case "page":
+                    String sortBy = emptyToNull(fields[4]);
+                    boolean ascending = sortBy == null || !sortBy.startsWith("-");
+                    String sortProperty = sortBy != null ? getRawgioPropertyName(ascending ? sortBy : sortBy.substring(1)) : null;
+
+                    session.add(GridRequest.page(Integer.parseInt(fields[1].trim()), Integer.parseInt(fields[2].trim()), emptyToNull(fields[3]), sortProperty, ascending));
+                    break;
+                case "count":
+                    session.add(GridRequest.count(emptyToNull(fields[1])));
+                    break;
+                case "open":
+                    session.add(GridRequest.recordInstance(fields[1].trim()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown grid request: " + line);
+            }
+        }
+
+        if (!session.isEmpty()) {
+            sessions.add(session);
+        }
+
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("No grid request in the traffic file");
+        }
+
+        return sessions;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static String getRawgioPropertyName(String fieldId) {
+        for (String property : SORTABLE_PROPERTIES) {
+            if (fieldId.equals(FakeRecordDefinitions.getFieldId(property))) {
+                return property;
+            }
+        }
+
+        throw new IllegalArgumentException("Rawg.io cannot sort on the field " + fieldId);
+    }
+
+    private enum RequestType {
+        PAGE, COUNT, OPEN
+    }
+
+    /**
+     * A request of the grid: a page, the "50+" link count, or opening a game.
+     */
+    private static final class GridRequest {
+        private final RequestType type;
+        private final int startIndex;
+        private final int pageSize;
+        private final String search;
+        private final String sortProperty;
+        private final boolean ascending;
+        private final String recordInstanceId;
+
+        private GridRequest(RequestType type, int startIndex, int pageSize, String search, String sortProperty, boolean ascending, String recordInstanceId) {
+            this.type = type;
+            this.startIndex = startIndex;
+            this.pageSize = pageSize;
+            this.search = search;
+            this.sortProperty = sortProperty;
+            this.ascending = ascending;
+            this.recordInstanceId = recordInstanceId;
+        }
+
+        static GridRequest page(int startIndex, int pageSize, String search, String sortProperty, boolean ascending) {
+            return new GridRequest(RequestType.PAGE, startIndex, pageSize, search, sortProperty, ascending, null);
+        }
+
+        static GridRequest count(String search) {
+            return new GridRequest(RequestType.COUNT, 0, 1, search, null, true, null);
+        }
+
+        static GridRequest recordInstance(String recordInstanceId) {
+            return new GridRequest(RequestType.OPEN, 0, 1, null, null, true, recordInstanceId);
+        }
+
+        /**
+         * The provider sends an ascending sort of the grid as a "-" Rawg.io ordering, see appendSortQualification().
+         *
+         * @return String, the Rawg.io ordering the games are expected in, null for none.
+         */
+        String getRawgioOrdering() {
+            return sortProperty != null ? (ascending ? "-" : "") + sortProperty : null;
+        }
+
+        DataPageQueryParameters toDataPageQueryParameters() {
+            switch (type) {
+                case PAGE:
+                    String sortBy = sortProperty != null ? (ascending ? "" : "-") + FakeRecordDefinitions.getFieldId(sortProperty) : null;
+
+                    return FakeRecordDefinitions.gridQuery(startIndex, pageSize, getQueryExpression(), sortBy, false);
+                case COUNT:
+                    return FakeRecordDefinitions.gridQuery(0, 1, getQueryExpression(), null, true);
+                default:
+                    return FakeRecordDefinitions.gridQuery(0, 1, "'" + FakeRecordDefinitions.ID_FIELD_ID + "' = \"" + recordInstanceId + "\"", null, false);
+            }
+        }
+
+        private String getQueryExpression() {
+            return search != null ? "'" + FakeRecordDefinitions.NAME_FIELD_ID + "' LIKE \"%" + search + "%\"" : "";
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case PAGE:
+                    return "page " + startIndex + "+" + pageSize + (search != null ? " search " + search : "") + (sortProperty != null ? " ordering " + getRawgioOrdering() : "");
+                case COUNT:
+                    return "count" + (search != null ? " search " + search : "");
+                default:
+                    return "open " + recordInstanceId;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class QueryExpressionParserTest {
+    private final QueryExpressionParser parser = new QueryExpressionParser();
+
+    @Test
+    public void emptyExpression() {
+        assertSame(parser.parse(null), QueryExpression.EMPTY);
+        assertSame(parser.parse("  "), QueryExpression.EMPTY);
+        assertTrue(QueryExpression.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void gridExpression() {
+        QueryExpression queryExpression = parser.parse("('536870913' = \"test\" OR '536870913' like \"%foobar%\") "
+                + "AND ('536870916' = \"187\" OR '536870916' = \"4\")");
+
+        assertEquals(queryExpression.toString(),
+                "(('536870913' = \"test\" OR '536870913' LIKE \"%foobar%\") AND ('536870916' = \"187\" OR '536870916' = \"4\"))");
+        assertEquals(queryExpression.getConditions("536870913").size(), 2);
+        assertEquals(queryExpression.getConditions("536870913").get(1).getOperator(), QueryExpression.Operator.LIKE);
+        assertEquals(queryExpression.getConditions("536870916").get(0).getValue(), "187");
+        assertTrue(queryExpression.getConditions("379").isEmpty());
+    }
+
+    @Test
+    public void andHasPriorityOverOr() {
+        QueryExpression.Node root = parser.parse("'1' = \"a\" OR '2' = \"b\" && '3' = \"c\"").getRoot();
+
+        assertTrue(root instanceof QueryExpression.Or);
+        assertTrue(((QueryExpression.Or) root).getOperands().get(1) instanceof QueryExpression.And);
+    }
+
+    @Test
+    public void nestedAndAreFlattened() {
+        QueryExpression.Node root = parser.parse("(('1' = \"a\" AND '2' = \"b\") AND '3' = \"c\")").getRoot();
+
+        assertEquals(((QueryExpression.And) root).getOperands().size(), 3);
+    }
+
+    @Test
+    public void negatedConditionsAreKeptApart() {
+        QueryExpression queryExpression = parser.parse("NOT ('1' = \"a\" OR !('2' != \"b\"))");
+
+        assertEquals(queryExpression.getNegatedConditions().size(), 1);
+        assertEquals(queryExpression.getNegatedConditions().get(0).getFieldId(), "1");
+        assertEquals(queryExpression.getConditions("2").get(0).getOperator(), QueryExpression.Operator.NOT_EQUAL);
+    }
+
+    @Test
+    public void valuesAreUnescaped() {
+        QueryExpression queryExpression = parser.parse("'1' = \"say \"\"hi\"\"\" AND '2' >= 4.5 AND '3' = $NULL$ AND '4' < -1");
+
+        assertEquals(queryExpression.getConditions("1").get(0).getValue(), "say \"hi\"");
+        assertEquals(queryExpression.getConditions("2").get(0).getValue(), "4.5");
+        assertEquals(queryExpression.getConditions("2").get(0).getOperator(), QueryExpression.Operator.GREATER_OR_EQUAL);
+        assertEquals(queryExpression.getConditions("3").get(0).getValue(), "$NULL$");
+        assertEquals(queryExpression.getConditions("4").get(0).getValue(), "-1");
+    }
+
+    @Test
+    public void parsedExpressionsAreCached() {
+        String expression = "'1' LIKE \"%zelda%\"";
+
+        assertSame(parser.parse(expression), parser.parse(expression));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unterminatedString() {
+        parser.parse("'1' = \"zelda");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void missingParenthesis() {
+        parser.parse("('1' = \"a\"");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void missingValue() {
+        parser.parse("'1' = AND '2' = \"b\"");
+    }
+
+    @Test
+    public void invalidExpressionsAreNotFiltered() {
+        QueryExpressionParser countingParser = new QueryExpressionParser();
+
+        assertSame(countingParser.parseOrEmpty("'1' ~ \"zelda\""), QueryExpression.EMPTY);
+        assertSame(countingParser.parseOrEmpty("'1' = \"a\" XOR '2' = \"b\""), QueryExpression.EMPTY);
+        assertEquals(countingParser.parseOrEmpty("'1' = \"a\"").getConditions("1").size(), 1);
+        assertEquals(countingParser.getInvalidQueryExpressionCount(), 2);
+    }
+
+    @Test
+    public void deepNestingIsInvalid() {
+        String tooDeep = "(".repeat(QueryExpressionParser.MAX_NESTING_DEPTH + 1) + "'1' = \"a\"" + ")".repeat(QueryExpressionParser.MAX_NESTING_DEPTH + 1);
+        String deepest = "(".repeat(QueryExpressionParser.MAX_NESTING_DEPTH) + "'1' = \"a\"" + ")".repeat(QueryExpressionParser.MAX_NESTING_DEPTH);
+
+        assertSame(parser.parseOrEmpty(tooDeep), QueryExpression.EMPTY);
+        assertSame(parser.parseOrEmpty("NOT ".repeat(100_000) + "'1' = \"a\""), QueryExpression.EMPTY);
+        assertSame(parser.parseOrEmpty("(".repeat(100_000)), QueryExpression.EMPTY);
+        assertEquals(parser.parse(deepest).getConditions("1").size(), 1);
+    }
+
+    @Test
+    public void invalidExpressionsAreCached() {
+        QueryExpressionParser cachingParser = new QueryExpressionParser();
+        String expression = "'1' = \"a\" XOR '2' = \"b\"";
+
+        assertSame(cachingParser.parseOrEmpty(expression), QueryExpression.EMPTY);
+        assertSame(cachingParser.parseOrEmpty(expression), QueryExpression.EMPTY);
+        assertEquals(cachingParser.getInvalidQueryExpressionCache().getMissCount(), 1);
+        assertEquals(cachingParser.getInvalidQueryExpressionCache().getHitCount(), 1);
+        assertEquals(cachingParser.getInvalidQueryExpressionCount(), 2);
+    }
+
+    @Test
+    public void conditionsInOrder() {
+        QueryExpression queryExpression = parser.parse("'2' = \"b\" AND '1' = \"a\" AND '2' = \"c\"");
+
+        assertEquals(List.copyOf(queryExpression.getConditionsByFieldId().keySet()), List.of("2", "1"));
+    }
+}
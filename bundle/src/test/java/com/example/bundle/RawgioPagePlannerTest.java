@@ -0,0 +1,152 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.StringJoiner;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class RawgioPagePlannerTest {
+    private final RawgioPagePlanner planner = new RawgioPagePlanner(40, 1000);
+
+    @Test
+    public void windowSplitInEqualPages() {
+        RawgioPagePlanner.Plan plan = planner.plan(0, 50);
+
+        assertEquals(describe(plan), "1x25 2x25");
+        assertEquals(plan.getSkip(), 0);
+        assertEquals(plan.getLimit(), 50);
+    }
+
+    @Test
+    public void windowWithinOnePage() {
+        RawgioPagePlanner.Plan plan = planner.plan(30, 20);
+
+        assertEquals(describe(plan), "2x25");
+        assertEquals(plan.getSkip(), 5);
+        assertEquals(plan.getLimit(), 20);
+    }
+
+    @Test
+    public void windowMatchingOnePage() {
+        RawgioPagePlanner.Plan plan = planner.plan(10, 10);
+
+        assertEquals(describe(plan), "2x10");
+        assertEquals(plan.getSkip(), 0);
+    }
+
+    @Test
+    public void pagesCoverTheWindow() {
+        for (int startIndex = 0; startIndex < 120; startIndex += 7) {
+            for (int pageSize = 1; pageSize <= 100; pageSize += 9) {
+                assertCovers(planner.plan(startIndex, pageSize), startIndex, pageSize);
+            }
+        }
+    }
+
+    @Test
+    public void windowAtAnOddOffset() {
+        RawgioPagePlanner.Plan plan = planner.plan(7, 13);
+
+        assertEquals(describe(plan), "1x20");
+        assertEquals(plan.getSkip(), 7);
+        assertCovers(plan, 7, 13);
+    }
+
+    @Test
+    public void windowLargerThanOnePage() {
+        RawgioPagePlanner.Plan plan = planner.plan(3, 97);
+
+        assertEquals(describe(plan), "1x40 2x40 5x20");
+        assertEquals(plan.getSkip(), 3);
+        assertCovers(plan, 3, 97);
+    }
+
+    /**
+     * For the same number of calls the fewest records are fetched, and between plans fetching as many records the
+     * first call is the smallest page, or the pages are equal when the window is aligned.
+     */
+    @Test
+    public void costTies() {
+        assertEquals(describe(planner.plan(0, 80)), "1x40 2x40");
+        // 2x20 3x20 also fetches 40 records in 2 calls.
+        assertEquals(describe(planner.plan(20, 40)), "3x10 2x30");
+        assertEquals(describe(planner.plan(0, 3)), "1x3");
+        // 4x20 3x40 also fetches 60 records in 2 calls.
+        assertEquals(describe(planner.plan(60, 60)), "3x30 4x30");
+    }
+
+    /**
+     * The aligned windows, planned directly, cost as much as the best plan searched.
+     */
+    @Test
+    public void alignedPlansAreTheBest() {
+        for (int pageSize = 1; pageSize <= 200; pageSize++) {
+            for (int startIndex = 0; startIndex <= 400; startIndex += pageSize) {
+                RawgioPagePlanner.Plan plan = planner.plan(startIndex, pageSize);
+                RawgioPagePlanner.Plan searchedPlan = planner.searchPlan(startIndex, pageSize);
+
+                assertCovers(plan, startIndex, pageSize);
+                assertEquals(plan.getPageRequests().size(), searchedPlan.getPageRequests().size(), startIndex + " " + pageSize);
+                assertEquals(fetchedRecords(plan), fetchedRecords(searchedPlan), startIndex + " " + pageSize);
+            }
+        }
+    }
+
+    @Test
+    public void windowIsCappedToTheMaximumSize() {
+        RawgioPagePlanner.Plan plan = planner.plan(5, 100_000);
+
+        assertCovers(plan, 5, 1000);
+        assertTrue(plan.getPageRequests().size() <= 26, describe(plan));
+    }
+
+    @Test
+    public void truncateDropsThePagesAfterTheCount() {
+        RawgioPagePlanner.Plan plan = planner.plan(0, 50);
+
+        assertSame(plan.truncate(26), plan);
+        assertEquals(describe(plan.truncate(25)), "1x25");
+        assertEquals(describe(plan.truncate(0)), "");
+    }
+
+    private static int fetchedRecords(RawgioPagePlanner.Plan plan) {
+        int fetchedRecords = 0;
+
+        for (RawgioPagePlanner.PageRequest pageRequest : plan.getPageRequests()) {
+            fetchedRecords += pageRequest.getPageSize();
+        }
+
+        return fetchedRecords;
+    }
+
+    /**
+     * The pages follow each other without overlap and, once the skipped records are dropped, hold the window.
+     */
+    static void assertCovers(RawgioPagePlanner.Plan plan, int startIndex, int pageSize) {
+        int position = plan.getPageRequests().get(0).getStartIndex();
+
+        assertEquals(position + plan.getSkip(), startIndex, describe(plan));
+
+        for (RawgioPagePlanner.PageRequest pageRequest : plan.getPageRequests()) {
+            assertTrue(pageRequest.getPageSize() >= 1 && pageRequest.getPageSize() <= 40, describe(plan));
+            assertEquals(pageRequest.getStartIndex(), position, describe(plan));
+            position = pageRequest.getEndIndex();
+        }
+
+        assertTrue(position >= startIndex + pageSize, describe(plan));
+        assertEquals(plan.getLimit(), pageSize);
+    }
+
+    static String describe(RawgioPagePlanner.Plan plan) {
+        StringJoiner pages = new StringJoiner(" ");
+
+        for (RawgioPagePlanner.PageRequest pageRequest : plan.getPageRequests()) {
+            pages.add(pageRequest.getPage() + "x" + pageRequest.getPageSize());
+        }
+
+        return pages.toString();
+    }
+}
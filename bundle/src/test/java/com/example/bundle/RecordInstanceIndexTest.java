@@ -0,0 +1,99 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static com.example.bundle.CompactRowTest.row;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class RecordInstanceIndexTest {
+    private static final long TIME_TO_LIVE_NANOS = 60_000_000_000L;
+
+    private final WebApiFieldIndex schema = FakeRecordDefinitions.metadata().getFieldIndex();
+
+    /**
+     * A row restored from the snapshot is a LinkedHashMap, merged with the CompactRow of a new query.
+     */
+    @Test
+    public void restoredRowMergedWithACompactRow() {
+        RecordInstanceIndex recordInstanceIndex = new RecordInstanceIndex();
+
+        recordInstanceIndex.index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME,
+                List.of(row("379", "zelda", "536870913", "Zelda", "536870915", 4.5d)), TIME_TO_LIVE_NANOS);
+        recordInstanceIndex.index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME,
+                List.of(CompactRow.compact(schema, row("379", "zelda", "536870915", 4.8d, "536870914", "1986-02-21"))), TIME_TO_LIVE_NANOS);
+
+        Map<?, ?> indexedRow = recordInstanceIndex.get(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "zelda",
+                List.of("379", "536870913", "536870914", "536870915"));
+
+        assertEquals(indexedRow, row("379", "zelda", "536870913", "Zelda", "536870915", 4.8d, "536870914", "1986-02-21"));
+        assertTrue(indexedRow instanceof CompactRow);
+    }
+
+    @Test
+    public void rowMissingAFieldIsNotUsed() {
+        RecordInstanceIndex recordInstanceIndex = new RecordInstanceIndex();
+
+        recordInstanceIndex.index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME,
+                List.of(CompactRow.compact(schema, row("379", "zelda", "536870913", "Zelda"))), TIME_TO_LIVE_NANOS);
+
+        assertNull(recordInstanceIndex.get(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "zelda", List.of("379", "536870915")));
+        assertNull(recordInstanceIndex.get(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "mario", List.of("379")));
+    }
+
+    @Test
+    public void indexingIsNotALookup() {
+        RecordInstanceIndex recordInstanceIndex = new RecordInstanceIndex();
+
+        recordInstanceIndex.index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME,
+                List.of(row("379", "zelda", "536870913", "Zelda"), row("379", "mario", "536870913", "Mario")), TIME_TO_LIVE_NANOS);
+        recordInstanceIndex.index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME,
+                List.of(row("379", "zelda", "536870915", 4.5d)), TIME_TO_LIVE_NANOS);
+
+        assertEquals(recordInstanceIndex.getRowByRecordInstanceId().getHitCount(), 0);
+        assertEquals(recordInstanceIndex.getRowByRecordInstanceId().getMissCount(), 0);
+    }
+
+    /**
+     * Pages returning the same games with other fields at the same time do not drop each other's fields.
+     */
+    @Test(timeOut = 10_000)
+    public void concurrentPagesKeepEachOthersFields() {
+        RecordInstanceIndex recordInstanceIndex = new RecordInstanceIndex();
+        List<String> fieldIds = List.of("536870913", "536870914", "536870915", "536870916");
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Void>> pages = new ArrayList<>();
+
+        for (String fieldId : fieldIds) {
+            pages.add(CompletableFuture.runAsync(() -> {
+                List<Object> rows = new ArrayList<>();
+
+                for (int game = 0; game < 2000; game++) {
+                    rows.add(row("379", "game-" + game, fieldId, "value"));
+                }
+
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                recordInstanceIndex.index(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, rows, TIME_TO_LIVE_NANOS);
+            }));
+        }
+
+        start.countDown();
+        pages.forEach(CompletableFuture::join);
+
+        for (int game = 0; game < 2000; game++) {
+            assertEquals(recordInstanceIndex.get(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "game-" + game, fieldIds).size(), 5);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.bundle;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SingleFlightTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterClass(alwaysRun = true)
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeOut = 10_000)
+    public void identicalCallsShareOneCall() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Integer> first = executor.submit(() -> singleFlight.execute("page 1", () -> {
+            calls.incrementAndGet();
+            callStarted.countDown();
+            await(release);
+            return 42;
+        }));
+
+        callStarted.await();
+
+        Future<Integer> second = executor.submit(() -> singleFlight.execute("page 1", () -> calls.incrementAndGet() + 100));
+
+        // The second caller waits for the first call.
+        while (singleFlight.getSharedCallCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+
+        assertEquals(first.get(), Integer.valueOf(42));
+        assertEquals(second.get(), Integer.valueOf(42));
+        assertEquals(calls.get(), 1);
+        assertEquals(singleFlight.getCallsInFlight(), 0);
+    }
+
+    @Test(timeOut = 10_000)
+    public void exceptionIsShared() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Integer> first = executor.submit(() -> singleFlight.execute("page 1", () -> {
+            callStarted.countDown();
+            await(release);
+            throw new IllegalStateException("Rawg.io answered HTTP 502 Bad Gateway");
+        }));
+
+        callStarted.await();
+
+        Future<Integer> second = executor.submit(() -> singleFlight.execute("page 1", () -> 0));
+
+        while (singleFlight.getSharedCallCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+
+        for (Future<Integer> caller : List.of(first, second)) {
+            try {
+                caller.get();
+                fail("The call should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException, e.toString());
+            }
+        }
+
+        // The failed call is not kept, the next call is done again.
+        assertEquals(singleFlight.execute("page 1", () -> 7), Integer.valueOf(7));
+    }
+
+    @Test
+    public void differentKeysAreNotShared() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+        assertEquals(singleFlight.execute("page 1", () -> 1), Integer.valueOf(1));
+        assertEquals(singleFlight.execute("page 2", () -> 2), Integer.valueOf(2));
+        assertEquals(singleFlight.getSharedCallCount(), 0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TtlLruCacheTest {
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    public void hitsAndMisses() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, MINUTE_NANOS);
+
+        cache.put("a", 1);
+
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+        assertNull(cache.get("b"));
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test
+    public void expiredEntriesAreRemoved() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, MINUTE_NANOS);
+
+        cache.put("a", 1, TimeUnit.MILLISECONDS.toNanos(1));
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertNull(cache.get("a"));
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getEvictionCount(), 1);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(2, MINUTE_NANOS);
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+        assertEquals(cache.get("c"), Integer.valueOf(3));
+        assertEquals(cache.getEvictionCount(), 1);
+    }
+
+    @Test
+    public void noTimeToLiveCachesNothing() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, MINUTE_NANOS);
+
+        cache.put("a", 1, 0);
+        new TtlLruCache<String, Integer>(0, MINUTE_NANOS).put("a", 1);
+
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void restoreKeepsTheNewerEntry() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, MINUTE_NANOS);
+        long now = System.nanoTime();
+
+        cache.put("a", 1);
+        cache.restore("a", new TtlLruCache.Entry<>(0, now - MINUTE_NANOS, now + MINUTE_NANOS));
+        cache.restore("b", new TtlLruCache.Entry<>(2, now - MINUTE_NANOS, now + MINUTE_NANOS));
+        cache.restore("c", new TtlLruCache.Entry<>(3, now - MINUTE_NANOS, now - 1));
+
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+        assertEquals(cache.get("b"), Integer.valueOf(2));
+        assertNull(cache.get("c"));
+    }
+
+    @Test
+    public void snapshotFromLeastToMostRecentlyUsed() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, MINUTE_NANOS);
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+
+        List<Map.Entry<String, TtlLruCache.Entry<Integer>>> snapshot = cache.snapshot();
+
+        assertEquals(snapshot.size(), 2);
+        assertEquals(snapshot.get(0).getKey(), "b");
+        assertEquals(snapshot.get(1).getKey(), "a");
+        // Reading the snapshot does not change the order.
+        assertEquals(cache.snapshot().get(0).getKey(), "b");
+    }
+
+    @Test
+    public void mergeIsNotALookup() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(10, MINUTE_NANOS);
+
+        cache.merge("a", 1, MINUTE_NANOS, Integer::sum);
+        cache.merge("a", 2, MINUTE_NANOS, Integer::sum);
+
+        assertEquals(cache.getHitCount(), 0);
+        assertEquals(cache.getMissCount(), 0);
+        assertEquals(cache.get("a"), Integer.valueOf(3));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bundle;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+public class UpstreamCircuitBreakerTest {
+    private LongAdder openings;
+
+    @BeforeMethod
+    public void resetOpenings() {
+        openings = new LongAdder();
+    }
+
+    @Test
+    public void opensAfterTheFailureThreshold() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(3, 60);
+
+        circuitBreaker.onFailure(false);
+        circuitBreaker.onFailure(false);
+
+        assertFalse(circuitBreaker.acquirePermission());
+
+        circuitBreaker.onFailure(false);
+
+        assertTrue(circuitBreaker.isOpen());
+        assertThrows(WebApiCallRejectedException.class, circuitBreaker::acquirePermission);
+        assertThrows(WebApiCallRejectedException.class, circuitBreaker::rejectIfOpen);
+        assertEquals(circuitBreaker.getRejectedCallCount(), 2);
+        assertEquals(openings.sum(), 1);
+    }
+
+    @Test
+    public void newSettingsKeepTheState() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(2, 60);
+
+        circuitBreaker.onFailure(false);
+        circuitBreaker.onFailure(false);
+
+        UpstreamCircuitBreaker openCircuitBreaker = circuitBreaker.withSettings(circuitBreaker(3, 60).getSettings());
+
+        assertTrue(openCircuitBreaker.isOpen());
+        assertThrows(WebApiCallRejectedException.class, openCircuitBreaker::rejectIfOpen);
+
+        UpstreamCircuitBreaker closedCircuitBreaker = circuitBreaker(3, 60);
+
+        closedCircuitBreaker.onFailure(false);
+        closedCircuitBreaker.onFailure(false);
+        closedCircuitBreaker = closedCircuitBreaker.withSettings(circuitBreaker(3, 30).getSettings());
+        closedCircuitBreaker.onFailure(false);
+
+        assertTrue(closedCircuitBreaker.isOpen());
+    }
+
+    @Test
+    public void successResetsTheFailures() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(3, 60);
+
+        circuitBreaker.onFailure(false);
+        circuitBreaker.onFailure(false);
+        circuitBreaker.onSuccess(0, false);
+        circuitBreaker.onFailure(false);
+        circuitBreaker.onFailure(false);
+
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void successfulTrialCallClosesTheCircuit() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(1, 0);
+
+        circuitBreaker.onFailure(false);
+
+        assertTrue(circuitBreaker.acquirePermission());
+        // Only one trial call at a time.
+        assertThrows(WebApiCallRejectedException.class, circuitBreaker::acquirePermission);
+
+        circuitBreaker.onSuccess(0, true);
+
+        assertFalse(circuitBreaker.isOpen());
+        assertFalse(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    public void failedTrialCallKeepsTheCircuitOpen() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(1, 0);
+
+        circuitBreaker.onFailure(false);
+        assertTrue(circuitBreaker.acquirePermission());
+        circuitBreaker.onFailure(true);
+
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(openings.sum(), 1);
+        assertTrue(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    public void trialCallNotDone() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(1, 0);
+
+        circuitBreaker.onFailure(false);
+        assertTrue(circuitBreaker.acquirePermission());
+        circuitBreaker.onNotCalled();
+
+        assertTrue(circuitBreaker.acquirePermission());
+    }
+
+    /**
+     * The calls started before the circuit opened do not close it.
+     */
+    @Test
+    public void lateSuccessDoesNotCloseTheCircuit() {
+        UpstreamCircuitBreaker circuitBreaker = circuitBreaker(1, 60);
+
+        circuitBreaker.onFailure(false);
+        circuitBreaker.onSuccess(0, false);
+
+        assertTrue(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void callAnsweringAfterTheTimeoutIsAFailure() {
+        UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker("test:Breaker", new BenchmarkSettings()
+                .set("circuitBreakerFailureThreshold", "1")
+                .set("requestTimeoutMillis", "10")
+                .load("test:Breaker"), openings);
+
+        circuitBreaker.onSuccess(TimeUnit.SECONDS.toNanos(1), false);
+
+        assertTrue(circuitBreaker.isOpen());
+    }
+
+    private UpstreamCircuitBreaker circuitBreaker(int failureThreshold, int openSeconds) {
+        ProviderSettings settings = new BenchmarkSettings()
+                .set("circuitBreakerFailureThreshold", Integer.toString(failureThreshold))
+                .set("circuitBreakerOpenSeconds", Integer.toString(openSeconds))
+                .load("test:Breaker");
+
+        return new UpstreamCircuitBreaker("test:Breaker", settings, openings);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.*;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class UpstreamExecutorTest {
+    /**
+     * Once shut down, the running task is interrupted, the queued ones are cancelled and the new ones rejected.
+     */
+    @Test(timeOut = 10_000)
+    public void shutdownStopsTheTasks() throws Exception {
+        UpstreamExecutor upstreamExecutor = new UpstreamExecutor(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        upstreamExecutor.submit(() -> {
+            started.countDown();
+
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+
+            return null;
+        });
+        started.await();
+
+        Future<String> queuedTask = upstreamExecutor.submit(() -> "queued");
+        CompletableFuture<String> queuedSupplier = upstreamExecutor.trySupplyInBackground(() -> "queued");
+
+        upstreamExecutor.shutdown();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(queuedTask.isCancelled());
+        assertTrue(queuedSupplier.isCancelled());
+        assertFalse(upstreamExecutor.tryExecuteInBackground(() -> fail("Run after the shutdown")));
+        assertNull(upstreamExecutor.trySupplyInBackground(() -> "rejected"));
+
+        try {
+            upstreamExecutor.submit(() -> "rejected");
+            fail("Submitted after the shutdown");
+        } catch (RejectedExecutionException e) {
+            // Expected, not run by the calling thread either.
+        }
+    }
+}
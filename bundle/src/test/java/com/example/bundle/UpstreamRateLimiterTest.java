@@ -0,0 +1,147 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class UpstreamRateLimiterTest {
+    @Test
+    public void throttlingErrors() {
+        assertTrue(UpstreamRateLimiter.isThrottlingError(new IllegalStateException("Rawg.io answered HTTP 429")));
+        assertTrue(UpstreamRateLimiter.isThrottlingError(new RuntimeException("Web Api call failed",
+                new IllegalStateException("Too Many Requests"))));
+        assertFalse(UpstreamRateLimiter.isThrottlingError(new IllegalStateException("Rawg.io answered HTTP 502 Bad Gateway")));
+        assertFalse(UpstreamRateLimiter.isThrottlingError(new IllegalStateException()));
+    }
+
+    @Test
+    public void callsAboveTheBurstAreRejected() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(1, 2, 0, 50);
+
+        assertEquals(rateLimiter.call(() -> 1), Integer.valueOf(1));
+        assertEquals(rateLimiter.call(() -> 2), Integer.valueOf(2));
+        assertThrows(WebApiCallRejectedException.class, () -> rateLimiter.call(() -> 3));
+        assertEquals(rateLimiter.getRejectedCallCount(), 1);
+    }
+
+    @Test(timeOut = 10_000)
+    public void callsAboveTheConcurrencyLimitAreRejected() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(0, 0, 1, 50);
+
+        rateLimiter.call(() -> {
+            assertEquals(rateLimiter.getCallsInFlight(), 1);
+
+            try {
+                CompletableFuture.supplyAsync(() -> rateLimiter.call(() -> 0)).join();
+                fail("The second call should have been rejected");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof WebApiCallRejectedException, e.toString());
+            }
+
+            return null;
+        });
+
+        assertEquals(rateLimiter.getCallsInFlight(), 0);
+        assertEquals(rateLimiter.call(() -> 1), Integer.valueOf(1));
+    }
+
+    /**
+     * A call rejected for the calls in flight gives its rate limit token back.
+     */
+    @Test(timeOut = 10_000)
+    public void callRejectedForTheConcurrencyKeepsTheToken() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(1, 2, 1, 50);
+
+        rateLimiter.call(() -> {
+            try {
+                CompletableFuture.supplyAsync(() -> rateLimiter.call(() -> 0)).join();
+                fail("The second call should have been rejected");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof WebApiCallRejectedException, e.toString());
+            }
+
+            return null;
+        });
+
+        // The token taken by the rejected call is the one this call gets, there would be none left for a second.
+        assertEquals(rateLimiter.call(() -> 1), Integer.valueOf(1));
+        assertEquals(rateLimiter.getRejectedCallCount(), 1);
+    }
+
+    @Test
+    public void throttlingSlowsDown() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(10, 20, 0, 50);
+
+        assertTrue(rateLimiter.hasSpareCapacity());
+        assertThrows(IllegalStateException.class, () -> rateLimiter.call(() -> {
+            throw new IllegalStateException("Rawg.io answered HTTP 429 Too Many Requests");
+        }));
+
+        assertEquals(rateLimiter.getThrottledCallCount(), 1);
+        assertEquals(rateLimiter.getCurrentRate(), 5d);
+        // The calls are paused for a second.
+        assertFalse(rateLimiter.hasSpareCapacity());
+        assertThrows(WebApiCallRejectedException.class, () -> rateLimiter.call(() -> 1));
+    }
+
+    @Test
+    public void newSettingsKeepTheThrottling() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(10, 20, 0, 50);
+
+        assertThrows(IllegalStateException.class, () -> rateLimiter.call(() -> {
+            throw new IllegalStateException("Rawg.io answered HTTP 429 Too Many Requests");
+        }));
+
+        UpstreamRateLimiter newRateLimiter = rateLimiter.withSettings(rateLimiter(20, 20, 0, 50).getSettings());
+
+        // Halved by the throttling, and still paused.
+        assertEquals(newRateLimiter.getCurrentRate(), 10d);
+        assertThrows(WebApiCallRejectedException.class, () -> newRateLimiter.call(() -> 1));
+        assertEquals(newRateLimiter.getThrottledCallCount(), 1);
+        assertEquals(newRateLimiter.getRejectedCallCount(), 1);
+    }
+
+    @Test
+    public void newSettingsKeepTheCallsInFlight() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(0, 0, 1, 50);
+
+        rateLimiter.call(() -> {
+            UpstreamRateLimiter newRateLimiter = rateLimiter.withSettings(rateLimiter(0, 0, 1, 20).getSettings());
+
+            assertEquals(newRateLimiter.getCallsInFlight(), 1);
+            assertThrows(WebApiCallRejectedException.class, () -> newRateLimiter.call(() -> 1));
+
+            return null;
+        });
+    }
+
+    @Test
+    public void noLimit() {
+        UpstreamRateLimiter rateLimiter = rateLimiter(0, 0, 0, 0);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.call(() -> null);
+        }
+
+        assertTrue(rateLimiter.hasSpareCapacity());
+        assertEquals(rateLimiter.getRejectedCallCount(), 0);
+    }
+
+    private static UpstreamRateLimiter rateLimiter(int ratePerSecond, int burst, int maxConcurrentCalls, int queueTimeoutMillis) {
+        ProviderSettings settings = new BenchmarkSettings()
+                .set("rateLimitPerSecond", Integer.toString(ratePerSecond))
+                .set("rateLimitBurst", Integer.toString(burst))
+                .set("maxConcurrentCalls", Integer.toString(maxConcurrentCalls))
+                .set("callQueueTimeoutMillis", Integer.toString(queueTimeoutMillis))
+                .load("test:RateLimiter");
+
+        return new UpstreamRateLimiter("test:RateLimiter", settings);
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class VideoGameGamesCustomRecordProviderTest {
+    private BenchmarkSettings settings;
+
+    @AfterMethod(alwaysRun = true)
+    public void clearSettings() {
+        if (settings != null) {
+            settings.clear();
+        }
+    }
+
+    /**
+     * A page cached while the count was known is still found once the count expired, and the count is read
+     * from it again.
+     */
+    @Test
+    public void cachedPageOutlivesTheCount() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        VideoGameGamesCustomRecordProvider provider = provider(fakeRecordService, "0");
+
+        assertEquals(getDataPage(provider, 0, 1, true).getTotalSize(), 200);
+        assertEquals(getDataPage(provider, 0, 50, false).getData().size(), 50);
+        assertEquals(fakeRecordService.getWebApiCallCount(), 3);
+
+        waitForTheCountToExpire();
+
+        assertEquals(getDataPage(provider, 0, 50, false).getData().size(), 50);
+        assertEquals(fakeRecordService.getWebApiCallCount(), 3);
+        assertEquals(getDataPage(provider, 0, 1, true).getTotalSize(), 200);
+        assertEquals(fakeRecordService.getWebApiCallCount(), 3);
+    }
+
+    /**
+     * A page read ahead is served once the count expired.
+     */
+    @Test(timeOut = 10_000)
+    public void prefetchedPageOutlivesTheCount() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        VideoGameGamesCustomRecordProvider provider = provider(fakeRecordService, "1");
+
+        getDataPage(provider, 0, 25, false);
+        getDataPage(provider, 25, 25, false);
+        waitForPrefetchedPages(provider, 1);
+
+        waitForTheCountToExpire();
+
+        // Served from the cache, then the next page is read ahead: one call more, not two.
+        assertEquals(getDataPage(provider, 50, 25, false).getData().size(), 25);
+        waitForPrefetchedPages(provider, 2);
+        assertEquals(fakeRecordService.getWebApiCallCount(), 4);
+    }
+
+    /**
+     * A queryExpression the parser cannot read does not fail the grid, the games are not filtered, as before the
+     * parser.
+     */
+    @Test
+    public void invalidQueryExpressionIsNotFiltered() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        VideoGameGamesCustomRecordProvider provider = provider(fakeRecordService, "0");
+        String queryExpression = "'" + FakeRecordDefinitions.NAME_FIELD_ID + "' ~ \"Halo\"";
+
+        assertEquals(provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                FakeRecordDefinitions.gridQuery(0, 50, queryExpression, null, false), null, null).getData().size(), 50);
+        assertEquals(provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                FakeRecordDefinitions.gridQuery(0, 1, queryExpression, null, true), null, null).getTotalSize(), 200);
+        assertEquals(provider.getMetrics().snapshot().get("request.list.errors"), 0L);
+        assertEquals(provider.getMetrics().snapshot().get("request.count.errors"), 0L);
+        assertTrue(provider.getMetrics().snapshot().get("queryExpression.invalid").longValue() > 0);
+    }
+
+    /**
+     * The grids with conditions Rawg.io cannot apply are still answered by Rawg.io, and counted.
+     */
+    @Test
+    public void partiallyFilteredGridsAreCounted() {
+        VideoGameGamesCustomRecordProvider provider = provider(new FakeRecordService(200, 0), "0");
+        String name = "'" + FakeRecordDefinitions.NAME_FIELD_ID + "'";
+        String released = "'" + FakeRecordDefinitions.RELEASED_FIELD_ID + "'";
+        String platforms = "'" + FakeRecordDefinitions.PLATFORMS_FIELD_ID + "'";
+
+        getGridPage(provider, "(" + name + " LIKE \"%Halo%\") AND (" + platforms + " = \"4\" OR " + platforms + " = \"5\")");
+        assertEquals(provider.getMetrics().snapshot().get("gridPage.partiallyFiltered"), 0L);
+
+        getGridPage(provider, name + " LIKE \"%Halo%\" OR " + released + " LIKE \"%Halo%\"");
+        getGridPage(provider, name + " = \"Halo\" AND NOT " + platforms + " = \"4\"");
+        getGridPage(provider, name + " = \"Halo\" OR " + name + " = \"Doom\"");
+        assertEquals(provider.getMetrics().snapshot().get("gridPage.partiallyFiltered"), 3L);
+    }
+
+    /**
+     * A truncated mirror only answers the grids in the Rawg.io default order within its games, with the Rawg.io
+     * count as total, the other grids are answered by Rawg.io.
+     */
+    @Test(timeOut = 10_000)
+    public void truncatedMirrorFallsBackToRawgio() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        settings = new BenchmarkSettings()
+                .set("mirror", "true")
+                .set("mirrorMaxRecords", "80");
+        settings.apply();
+
+        VideoGameGamesCustomRecordProvider provider = new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+        String searchExpression = "'" + FakeRecordDefinitions.NAME_FIELD_ID + "' LIKE \"%1%\"";
+
+        waitForTheMirror(provider);
+        assertEquals(provider.getMetrics().snapshot().get("mirror.truncatedTables"), 1L);
+
+        long mirroredGridPages = provider.getMetrics().snapshot().get("gridPage.mirrored").longValue();
+
+        assertEquals(getDataPage(provider, 0, 1, true).getTotalSize(), 200);
+        assertEquals(getDataPage(provider, 0, 50, false).getData().size(), 50);
+        assertEquals(provider.getMetrics().snapshot().get("gridPage.mirrored").longValue(), mirroredGridPages + 2);
+
+        assertEquals(getDataPage(provider, 60, 50, false).getData().size(), 50);
+        provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                FakeRecordDefinitions.gridQuery(0, 50, searchExpression, null, false), null, null);
+        assertEquals(provider.getMetrics().snapshot().get("gridPage.mirrored").longValue(), mirroredGridPages + 2);
+        assertEquals(provider.getMetrics().snapshot().get("gridPage.truncatedMirrorFallbacks"), 2L);
+    }
+
+    /**
+     * The mirror sorts a grid in the same direction as Rawg.io, in both directions.
+     */
+    @Test(timeOut = 10_000)
+    public void mirrorSortsLikeRawgio() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        String nameFieldId = Integer.toString(FakeRecordDefinitions.NAME_FIELD_ID);
+
+        settings = new BenchmarkSettings().set("mirror", "false");
+        settings.apply();
+        VideoGameGamesCustomRecordProvider rawgioProvider = new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+        List<String> rawgioAscending = getGameIds(rawgioProvider, nameFieldId);
+        List<String> rawgioDescending = getGameIds(rawgioProvider, "-" + nameFieldId);
+        settings.clear();
+
+        settings = new BenchmarkSettings().set("mirror", "true");
+        settings.apply();
+        VideoGameGamesCustomRecordProvider mirrorProvider = new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+        waitForTheMirror(mirrorProvider);
+        long mirroredGridPages = mirrorProvider.getMetrics().snapshot().get("gridPage.mirrored").longValue();
+
+        assertNotEquals(rawgioAscending, rawgioDescending);
+        assertEquals(getGameIds(mirrorProvider, nameFieldId), rawgioAscending);
+        assertEquals(getGameIds(mirrorProvider, "-" + nameFieldId), rawgioDescending);
+        assertEquals(mirrorProvider.getMetrics().snapshot().get("gridPage.mirrored").longValue(), mirroredGridPages + 2);
+    }
+
+    private VideoGameGamesCustomRecordProvider provider(FakeRecordService fakeRecordService, String prefetchPages) {
+        settings = new BenchmarkSettings()
+                .set("dataPageCacheTimeToLiveSeconds", "60")
+                .set("countCacheTimeToLiveSeconds", "1")
+                .set("concurrentFetch", "false")
+                .set("prefetchPages", prefetchPages);
+        settings.apply();
+
+        return new VideoGameGamesCustomRecordProvider(fakeRecordService::recordService);
+    }
+
+    private static DataPage getDataPage(VideoGameGamesCustomRecordProvider provider, int startIndex, int pageSize, boolean shouldIncludeTotalSize) {
+        return provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                FakeRecordDefinitions.gridQuery(startIndex, pageSize, "", null, shouldIncludeTotalSize), null, null);
+    }
+
+    private static List<String> getGameIds(VideoGameGamesCustomRecordProvider provider, String sortBy) {
+        List<String> gameIds = new ArrayList<>();
+        DataPage dataPage = provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                FakeRecordDefinitions.gridQuery(0, 50, "", sortBy, false), null, null);
+
+        for (Object row : dataPage.getData()) {
+            gameIds.add(String.valueOf(((Map<?, ?>) row).get(Integer.toString(FakeRecordDefinitions.ID_FIELD_ID))));
+        }
+
+        return gameIds;
+    }
+
+    /**
+     * Waits until a grid is answered by the mirror, its first crawl being done in the background.
+     */
+    private static void waitForTheMirror(VideoGameGamesCustomRecordProvider provider) {
+        while (provider.getMetrics().snapshot().get("gridPage.mirrored").longValue() < 1) {
+            getDataPage(provider, 0, 1, true);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    private static void waitForPrefetchedPages(VideoGameGamesCustomRecordProvider provider, long prefetchedPages) {
+        while (provider.getMetrics().snapshot().get("prefetch.pages").longValue() < prefetchedPages) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    private static void getGridPage(VideoGameGamesCustomRecordProvider provider, String queryExpression) {
+        provider.getDataPage(FakeRecordDefinitions.CUSTOM_RECORD_DEFINITION_NAME,
+                FakeRecordDefinitions.gridQuery(0, 50, queryExpression, null, false), null, null);
+    }
+
+    private static void waitForTheCountToExpire() {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1100));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.bundle;
+
+import com.bmc.arsys.rx.services.common.DataPage;
+import com.bmc.arsys.rx.services.record.RecordService;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+public class WebApiDataPageLoaderTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicReference<Throwable> nextFailure = new AtomicReference<>();
+    private BenchmarkSettings settings;
+
+    @AfterMethod(alwaysRun = true)
+    public void releaseThePool() {
+        release.countDown();
+        Thread.interrupted();
+
+        if (settings != null) {
+            settings.clear();
+        }
+    }
+
+    /**
+     * With a deadline and the pool busy, the request thread fetches the page itself instead of failing.
+     */
+    @Test(timeOut = 10_000)
+    public void busyPoolFetchesOnTheRequestThread() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        UpstreamExecutor upstreamExecutor = new UpstreamExecutor(1);
+        WebApiDataPageLoader webApiDataPageLoader = new WebApiDataPageLoader(fakeRecordService::recordService, upstreamExecutor, new ProviderMetrics());
+        WebApiRecordDefinitionMetadata metadata = FakeRecordDefinitions.metadata();
+
+        // The only thread is blocked, then half of the queue is used.
+        int blockedTasks = 0;
+
+        while (upstreamExecutor.tryExecuteInBackground(this::awaitRelease)) {
+            blockedTasks++;
+        }
+
+        assertTrue(blockedTasks > 1);
+
+        WebApiQuery query = new WebApiQuery(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "",
+                List.of(Integer.toString(FakeRecordDefinitions.ID_FIELD_ID)), 25, 0);
+        DataPage dataPage = webApiDataPageLoader.load(query, metadata, RequestDeadline.after(15_000));
+
+        assertTrue(!dataPage.getData().isEmpty());
+        assertEquals(fakeRecordService.getWebApiCallCount(), 1);
+        assertEquals(webApiDataPageLoader.getCallerThreadFetchCount(), 1);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A trial call failing with an Error instead of an exception still reports to the circuit breaker, the next
+     * call is let through.
+     */
+    @Test(timeOut = 10_000)
+    public void errorDuringTheTrialCallDoesNotKeepTheCircuitOpen() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        WebApiDataPageLoader webApiDataPageLoader = circuitBreakingLoader(fakeRecordService, "0", "0");
+        WebApiRecordDefinitionMetadata metadata = FakeRecordDefinitions.metadata();
+
+        nextFailure.set(new IllegalStateException("Rawg.io answered HTTP 502 Bad Gateway"));
+        assertThrows(IllegalStateException.class, () -> webApiDataPageLoader.call(query(), metadata));
+
+        nextFailure.set(new LinkageError("RecordService failed"));
+        assertThrows(LinkageError.class, () -> webApiDataPageLoader.call(query(), metadata));
+
+        assertTrue(!webApiDataPageLoader.call(query(), metadata).getData().isEmpty());
+        assertEquals(webApiDataPageLoader.getOpenCircuitBreakerCount(), 0);
+    }
+
+    /**
+     * A trial call interrupted while it waits for the rate limiter was not done, the next call is the trial.
+     */
+    @Test(timeOut = 10_000)
+    public void interruptedTrialCallDoesNotKeepTheCircuitOpen() {
+        FakeRecordService fakeRecordService = new FakeRecordService(200, 0);
+        WebApiDataPageLoader webApiDataPageLoader = circuitBreakingLoader(fakeRecordService, "1", "1");
+        WebApiRecordDefinitionMetadata metadata = FakeRecordDefinitions.metadata();
+
+        // Uses the only token.
+        nextFailure.set(new IllegalStateException("Rawg.io answered HTTP 502 Bad Gateway"));
+        assertThrows(IllegalStateException.class, () -> webApiDataPageLoader.call(query(), metadata));
+
+        Thread.currentThread().interrupt();
+        assertThrows(IllegalStateException.class, () -> webApiDataPageLoader.call(query(), metadata));
+        assertTrue(Thread.interrupted());
+
+        assertTrue(!webApiDataPageLoader.call(query(), metadata).getData().isEmpty());
+        assertEquals(fakeRecordService.getWebApiCallCount(), 1);
+        assertEquals(webApiDataPageLoader.getOpenCircuitBreakerCount(), 0);
+    }
+
+    private WebApiDataPageLoader circuitBreakingLoader(FakeRecordService fakeRecordService, String rateLimitPerSecond, String rateLimitBurst) {
+        settings = new BenchmarkSettings()
+                .set("circuitBreakerFailureThreshold", "1")
+                .set("circuitBreakerOpenSeconds", "0")
+                .set("rateLimitPerSecond", rateLimitPerSecond)
+                .set("rateLimitBurst", rateLimitBurst)
+                .set("callQueueTimeoutMillis", "5000");
+        settings.apply();
+
+        return new WebApiDataPageLoader(() -> recordService(fakeRecordService), new UpstreamExecutor(1), new ProviderMetrics());
+    }
+
+    private RecordService recordService(FakeRecordService fakeRecordService) {
+        Throwable failure = nextFailure.getAndSet(null);
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+
+        return fakeRecordService.recordService();
+    }
+
+    private static WebApiQuery query() {
+        return new WebApiQuery(FakeRecordDefinitions.WEB_API_RECORD_DEFINITION_NAME, "",
+                List.of(Integer.toString(FakeRecordDefinitions.ID_FIELD_ID)), 25, 0);
+    }
+}
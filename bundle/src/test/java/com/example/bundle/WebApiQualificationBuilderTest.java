@@ -0,0 +1,54 @@
+package com.example.bundle;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class WebApiQualificationBuilderTest {
+    private final WebApiRecordDefinitionMetadata metadata = FakeRecordDefinitions.metadata();
+
+    @Test
+    public void conditionsAreJoinedWithAnd() {
+        String qualification = new WebApiQualificationBuilder(metadata)
+                .add("page", 2)
+                .add("page_size", 25)
+                .add("ordering", "-name,released")
+                .build();
+
+        assertEquals(qualification, "'531000001' = \"2\" AND '531000002' = \"25\" AND '531000003' = \"-name,released\"");
+    }
+
+    @Test
+    public void emptyValuesAndUnknownParametersAreSkipped() {
+        String qualification = new WebApiQualificationBuilder(metadata)
+                .add("search", "")
+                .add("search", (CharSequence) null)
+                .add("genres", "action")
+                .add("page", 1)
+                .build();
+
+        assertEquals(qualification, "'531000001' = \"1\"");
+    }
+
+    @Test
+    public void doubleQuotesAreEscaped() {
+        String qualification = new WebApiQualificationBuilder(metadata).add("search", "the \"best\" game").build();
+
+        assertEquals(qualification, "'531000004' = \"the \"\"best\"\" game\"");
+    }
+
+    /**
+     * A searched value trying to close the string and add a condition stays a single value.
+     */
+    @Test
+    public void searchedValueCannotAddACondition() {
+        String search = "zelda\" OR '531000001' = \"7";
+        String qualification = new WebApiQualificationBuilder(metadata).add("page", 1).add("search", search).build();
+        QueryExpression queryExpression = new QueryExpressionParser().parse(qualification);
+
+        assertEquals(queryExpression.getConditionsByFieldId().size(), 2);
+        assertEquals(queryExpression.getConditions("531000001").size(), 1);
+        assertEquals(queryExpression.getConditions("531000001").get(0).getValue(), "1");
+        assertEquals(queryExpression.getConditions("531000004").get(0).getValue(), search);
+    }
+}